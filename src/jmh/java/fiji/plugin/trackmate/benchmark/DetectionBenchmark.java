@@ -0,0 +1,102 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.detection.DetectionUtils;
+import fiji.plugin.trackmate.detection.DogDetector;
+import fiji.plugin.trackmate.detection.LogDetector;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Benchmarks the LoG and DoG detectors, and the local maxima search they rely
+ * upon, on synthetic 2D images with Gaussian blobs.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DetectionBenchmark
+{
+
+	private static final double RADIUS = 4.;
+
+	private static final double THRESHOLD = 1.;
+
+	@Param( { "256", "1024" } )
+	public int size;
+
+	private Img< FloatType > img;
+
+	private final double[] calibration = new double[] { 1., 1. };
+
+	@Setup
+	public void setup()
+	{
+		final int nBlobs = size * size / 400;
+		img = SyntheticData.gaussianBlobs( new long[] { size, size }, nBlobs, RADIUS / Math.sqrt( 2. ), 1l );
+	}
+
+	@Benchmark
+	public List< Spot > logDetector()
+	{
+		final LogDetector< FloatType > detector = new LogDetector<>( img, img, calibration, RADIUS, THRESHOLD, true, false );
+		detector.setNumThreads( 1 );
+		detector.process();
+		return detector.getResult();
+	}
+
+	@Benchmark
+	public List< Spot > dogDetector()
+	{
+		final DogDetector< FloatType > detector = new DogDetector<>( img, img, calibration, RADIUS, THRESHOLD, true, false );
+		detector.setNumThreads( 1 );
+		detector.process();
+		return detector.getResult();
+	}
+
+	@Benchmark
+	public List< Spot > findLocalMaxima()
+	{
+		return DetectionUtils.findLocalMaxima( img, THRESHOLD, calibration, RADIUS, false, 1 );
+	}
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.LAPUtils;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTracker;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+
+/**
+ * Benchmarks the creation of the frame-to-frame cost matrix, its solving by
+ * the LAPJV solver, and the full sparse LAP tracker, on spots undergoing
+ * Brownian motion.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class LinkingBenchmark
+{
+
+	private static final double MAX_DISTANCE = 15.;
+
+	private static final double ALTERNATIVE_COST_FACTOR = 1.05;
+
+	private static final int N_FRAMES = 10;
+
+	@Param( { "1000", "10000" } )
+	public int nSpots;
+
+	private SpotCollection spots;
+
+	private List< Spot > sources;
+
+	private List< Spot > targets;
+
+	private SparseCostMatrix fullMatrix;
+
+	@Setup
+	public void setup()
+	{
+		// Keep the density constant: about 1 spot per 30x30 pixels.
+		final double size = 30. * Math.sqrt( nSpots );
+		spots = SyntheticData.randomWalk( nSpots, N_FRAMES, size, 3., 1l );
+
+		sources = new ArrayList<>();
+		for ( final Iterator< Spot > it = spots.iterator( 0, true ); it.hasNext(); )
+			sources.add( it.next() );
+		targets = new ArrayList<>();
+		for ( final Iterator< Spot > it = spots.iterator( 1, true ); it.hasNext(); )
+			targets.add( it.next() );
+
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = costMatrixCreator();
+		creator.process();
+		fullMatrix = complete( creator );
+	}
+
+	@Benchmark
+	public SparseCostMatrix costMatrix()
+	{
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = costMatrixCreator();
+		creator.process();
+		return creator.getResult();
+	}
+
+	@Benchmark
+	public int[] lapjv()
+	{
+		final LAPJV solver = new LAPJV( fullMatrix );
+		solver.process();
+		return solver.getResult();
+	}
+
+	@Benchmark
+	public SimpleWeightedGraph< Spot, DefaultWeightedEdge > sparseLAPTracker()
+	{
+		final Map< String, Object > settings = LAPUtils.getDefaultLAPSettingsMap();
+		settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( MAX_DISTANCE ) );
+		final SparseLAPTracker tracker = new SparseLAPTracker( spots, settings );
+		tracker.setNumThreads( 1 );
+		tracker.process();
+		return tracker.getResult();
+	}
+
+	private JaqamanLinkingCostMatrixCreator< Spot, Spot > costMatrixCreator()
+	{
+		return new JaqamanLinkingCostMatrixCreator<>( sources, targets, new SquareDistCostFunction(), MAX_DISTANCE * MAX_DISTANCE, ALTERNATIVE_COST_FACTOR, 1. );
+	}
+
+	/**
+	 * Builds the square cost matrix with alternative costs, the same way
+	 * {@link fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker}
+	 * does.
+	 */
+	private static SparseCostMatrix complete( final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator )
+	{
+		final SparseCostMatrix tl = creator.getResult();
+		final int nRows = tl.getNRows();
+		final int nCols = tl.getNCols();
+		final double alternativeCost = creator.getAlternativeCostForSource( null );
+
+		final SparseCostMatrix tr = diagonal( nRows, alternativeCost );
+		final SparseCostMatrix bl = diagonal( nCols, alternativeCost );
+		final SparseCostMatrix br = tl.transpose();
+		br.fillWith( alternativeCost );
+		return ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
+	}
+
+	private static SparseCostMatrix diagonal( final int n, final double value )
+	{
+		final double[] cc = new double[ n ];
+		Arrays.fill( cc, value );
+		final int[] kk = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+			kk[ i ] = i;
+		final int[] number = new int[ n ];
+		Arrays.fill( number, 1 );
+		return new SparseCostMatrix( cc, kk, number, n );
+	}
+}
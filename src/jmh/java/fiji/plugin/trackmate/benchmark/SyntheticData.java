@@ -0,0 +1,188 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.util.Random;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * Generators of synthetic data for the benchmarks. All of them are
+ * deterministic for a given seed.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class SyntheticData
+{
+
+	private SyntheticData()
+	{}
+
+	/**
+	 * Generates an image with Gaussian blobs of random intensity at random
+	 * positions, over a uniform background.
+	 *
+	 * @param dims
+	 *            the image dimensions, 2D or 3D.
+	 * @param nBlobs
+	 *            the number of blobs.
+	 * @param sigma
+	 *            the standard deviation of the blobs, in pixels.
+	 * @param seed
+	 *            the random seed.
+	 * @return a new image.
+	 */
+	public static Img< FloatType > gaussianBlobs( final long[] dims, final int nBlobs, final double sigma, final long seed )
+	{
+		final Random ran = new Random( seed );
+		final int nDims = dims.length;
+		final double[][] centers = new double[ nBlobs ][ nDims ];
+		final double[] amplitudes = new double[ nBlobs ];
+		for ( int b = 0; b < nBlobs; b++ )
+		{
+			for ( int d = 0; d < nDims; d++ )
+				centers[ b ][ d ] = ran.nextDouble() * dims[ d ];
+			amplitudes[ b ] = 50. + 200. * ran.nextDouble();
+		}
+
+		final Img< FloatType > img = ArrayImgs.floats( dims );
+		final double radius = 3. * sigma;
+		final double twoSigmaSq = 2. * sigma * sigma;
+		final double[] pos = new double[ nDims ];
+		final Cursor< FloatType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.localize( pos );
+			double val = 10.;
+			BLOBS: for ( int b = 0; b < nBlobs; b++ )
+			{
+				double d2 = 0.;
+				for ( int d = 0; d < nDims; d++ )
+				{
+					final double dx = pos[ d ] - centers[ b ][ d ];
+					if ( Math.abs( dx ) > radius )
+						continue BLOBS;
+					d2 += dx * dx;
+				}
+				val += amplitudes[ b ] * Math.exp( -d2 / twoSigmaSq );
+			}
+			cursor.get().setReal( val );
+		}
+		return img;
+	}
+
+	/**
+	 * Generates spots undergoing 2D Brownian motion in a square field.
+	 *
+	 * @param nSpots
+	 *            the number of spots per frame.
+	 * @param nFrames
+	 *            the number of frames.
+	 * @param size
+	 *            the size of the field.
+	 * @param step
+	 *            the standard deviation of the displacement between two
+	 *            frames.
+	 * @param seed
+	 *            the random seed.
+	 * @return a new, visible, spot collection.
+	 */
+	public static SpotCollection randomWalk( final int nSpots, final int nFrames, final double size, final double step, final long seed )
+	{
+		final SpotCollection spots = new SpotCollection();
+		final Spot[][] tracks = randomWalkTracks( nSpots, nFrames, size, step, seed );
+		for ( int t = 0; t < nFrames; t++ )
+			for ( int s = 0; s < nSpots; s++ )
+				spots.add( tracks[ s ][ t ], Integer.valueOf( t ) );
+
+		spots.setVisible( true );
+		return spots;
+	}
+
+	/**
+	 * Generates a model made of spots undergoing 2D Brownian motion in a
+	 * square field, linked in one track per spot.
+	 *
+	 * @param nSpots
+	 *            the number of spots per frame, and the number of tracks.
+	 * @param nFrames
+	 *            the number of frames.
+	 * @param size
+	 *            the size of the field.
+	 * @param step
+	 *            the standard deviation of the displacement between two
+	 *            frames.
+	 * @param seed
+	 *            the random seed.
+	 * @return a new model.
+	 */
+	public static Model randomWalkModel( final int nSpots, final int nFrames, final double size, final double step, final long seed )
+	{
+		final Model model = new Model();
+		final Spot[][] tracks = randomWalkTracks( nSpots, nFrames, size, step, seed );
+		model.beginUpdate();
+		try
+		{
+			for ( int s = 0; s < nSpots; s++ )
+			{
+				for ( int t = 0; t < nFrames; t++ )
+				{
+					model.addSpotTo( tracks[ s ][ t ], Integer.valueOf( t ) );
+					if ( t > 0 )
+						model.addEdge( tracks[ s ][ t - 1 ], tracks[ s ][ t ], step * step );
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	private static Spot[][] randomWalkTracks( final int nSpots, final int nFrames, final double size, final double step, final long seed )
+	{
+		final Random ran = new Random( seed );
+		final Spot[][] tracks = new Spot[ nSpots ][ nFrames ];
+		for ( int s = 0; s < nSpots; s++ )
+		{
+			double x = size * ran.nextDouble();
+			double y = size * ran.nextDouble();
+			for ( int t = 0; t < nFrames; t++ )
+			{
+				final Spot spot = new Spot( x, y, 0., 1., 1. );
+				spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+				tracks[ s ][ t ] = spot;
+				x += step * ran.nextGaussian();
+				y += step * ran.nextGaussian();
+			}
+		}
+		return tracks;
+	}
+}
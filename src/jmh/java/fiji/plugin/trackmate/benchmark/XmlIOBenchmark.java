@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.io.TmBinaryReader;
+import fiji.plugin.trackmate.io.TmBinaryWriter;
+import fiji.plugin.trackmate.io.TmXmlReader;
+import fiji.plugin.trackmate.io.TmXmlStreamReader;
+import fiji.plugin.trackmate.io.TmXmlWriter;
+
+/**
+ * Benchmarks writing and reading a TrackMate XML or binary file containing a model made
+ * of Brownian tracks.
+ *
+ * @author Jean-Yves Tinevez
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class XmlIOBenchmark
+{
+
+	private static final int N_FRAMES = 50;
+
+	@Param( { "100", "1000" } )
+	public int nTracks;
+
+	private Model model;
+
+	private File file;
+
+	private File gzFile;
+
+	private File binaryFile;
+
+	@Setup
+	public void setup() throws IOException
+	{
+		model = SyntheticData.randomWalkModel( nTracks, N_FRAMES, 30. * Math.sqrt( nTracks ), 3., 1l );
+		model.setLogger( Logger.VOID_LOGGER );
+		file = File.createTempFile( "TrackMateBenchmark", ".xml" );
+		gzFile = File.createTempFile( "TrackMateBenchmark", ".xml.gz" );
+		binaryFile = File.createTempFile( "TrackMateBenchmark", ".tmb" );
+		write();
+		writeBinary();
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		file.delete();
+		gzFile.delete();
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	public File write() throws IOException
+	{
+		final TmXmlWriter writer = new TmXmlWriter( file, Logger.VOID_LOGGER );
+		writer.appendModel( model );
+		writer.writeToFile();
+		return file;
+	}
+
+	@Benchmark
+	public File writeCompressed() throws IOException
+	{
+		final TmXmlWriter writer = new TmXmlWriter( gzFile, Logger.VOID_LOGGER, true );
+		writer.appendModel( model );
+		writer.writeToFile();
+		return gzFile;
+	}
+
+	@Benchmark
+	public File writeBinary() throws IOException
+	{
+		final TmBinaryWriter writer = new TmBinaryWriter( binaryFile, Logger.VOID_LOGGER );
+		writer.appendModel( model );
+		writer.writeToFile();
+		return binaryFile;
+	}
+
+	@Benchmark
+	public Model read()
+	{
+		final TmXmlReader reader = new TmXmlReader( file );
+		return reader.getModel();
+	}
+
+	@Benchmark
+	public Model readStreaming()
+	{
+		final TmXmlStreamReader reader = new TmXmlStreamReader( file );
+		return reader.getModel();
+	}
+
+	@Benchmark
+	public Model readBinary()
+	{
+		final TmBinaryReader reader = new TmBinaryReader( binaryFile );
+		return reader.getModel();
+	}
+}
@@ -0,0 +1,120 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.function.Supplier;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.io.TmXmlReader;
+import fiji.plugin.trackmate.io.TmXmlStreamReader;
+import fiji.plugin.trackmate.io.TmXmlWriter;
+
+/**
+ * Compares the peak heap usage and the wall time of reading a large TrackMate
+ * XML file with the document reader and with the streaming reader.
+ * <p>
+ * JMH does not report peak memory, so this is a plain main method. Run it with
+ * a fixed heap, for instance <code>-Xmx4g</code>, and give the number of
+ * tracks as argument.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class XmlReadMemoryBenchmark
+{
+
+	private static final int N_FRAMES = 50;
+
+	public static void main( final String[] args ) throws IOException
+	{
+		final int nTracks = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 10000;
+
+		final File file = File.createTempFile( "TrackMateBenchmark", ".xml" );
+		file.deleteOnExit();
+		Model model = SyntheticData.randomWalkModel( nTracks, N_FRAMES, 30. * Math.sqrt( nTracks ), 3., 1l );
+		model.setLogger( Logger.VOID_LOGGER );
+		final TmXmlWriter writer = new TmXmlWriter( file, Logger.VOID_LOGGER );
+		writer.appendModel( model );
+		writer.writeToFile();
+		final int nSpots = model.getSpots().getNSpots( false );
+		model = null;
+
+		System.out.println( String.format( "Reading %d spots in %d tracks from a %.1f MB file.",
+				nSpots, nTracks, file.length() / 1024. / 1024. ) );
+
+		// Warm up both readers.
+		new TmXmlReader( file ).getModel();
+		new TmXmlStreamReader( file ).getModel();
+
+		measure( "TmXmlReader", () -> new TmXmlReader( file ).getModel() );
+		measure( "TmXmlStreamReader", () -> new TmXmlStreamReader( file ).getModel() );
+		measure( "TmXmlReader, streamed model", () -> new TmXmlReader( file, true ).getModel() );
+	}
+
+	private static void measure( final String name, final Supplier< Model > reader )
+	{
+		System.gc();
+		final long baseline = heapUsed();
+		resetPeaks();
+
+		final long start = System.currentTimeMillis();
+		Model model = reader.get();
+		final long end = System.currentTimeMillis();
+
+		final long peak = peakHeapUsed() - baseline;
+		System.gc();
+		final long retained = heapUsed() - baseline;
+		System.out.println( String.format( "%-30s %6d ms, peak heap %7.1f MB, model %7.1f MB, %d spots.",
+				name, end - start, peak / 1024. / 1024., retained / 1024. / 1024., model.getSpots().getNSpots( false ) ) );
+		model = null;
+	}
+
+	private static long heapUsed()
+	{
+		long used = 0;
+		for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+			if ( pool.getType() == MemoryType.HEAP )
+				used += pool.getUsage().getUsed();
+		return used;
+	}
+
+	private static long peakHeapUsed()
+	{
+		long used = 0;
+		for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+			if ( pool.getType() == MemoryType.HEAP )
+				used += pool.getPeakUsage().getUsed();
+		return used;
+	}
+
+	private static void resetPeaks()
+	{
+		for ( final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans() )
+			if ( pool.getType() == MemoryType.HEAP )
+				pool.resetPeakUsage();
+	}
+}
@@ -0,0 +1,252 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+/**
+ * Compact storage for the feature values of edges.
+ * <p>
+ * Each edge is given a primitive row index, found in an open-addressing table
+ * keyed by edge identity. Feature values are stored in one primitive column
+ * per feature. Compared to a map of maps of boxed values, this cuts the memory
+ * used per edge by a factor of about 5 for typical feature sets.
+ * <p>
+ * Writes are serialized. Reads are lock-free in the absence of concurrent
+ * writes.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class EdgeFeatureTable
+{
+
+	/**
+	 * Bit pattern of missing values. This is a signaling NaN, that
+	 * {@link Double#doubleToLongBits(double)} never returns.
+	 */
+	private static final long MISSING = 0x7ff0000000000001L;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final StampedLock lock = new StampedLock();
+
+	/**
+	 * Open-addressing table of edges, with linear probing. Its length is a
+	 * power of 2 and it is kept at most half full.
+	 */
+	private DefaultWeightedEdge[] keys = new DefaultWeightedEdge[ 2 * INITIAL_CAPACITY ];
+
+	/**
+	 * Row index of the edge at the same position in {@link #keys}.
+	 */
+	private int[] rows = new int[ 2 * INITIAL_CAPACITY ];
+
+	/**
+	 * Edges in row order.
+	 */
+	private DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ INITIAL_CAPACITY ];
+
+	private int nRows = 0;
+
+	/**
+	 * Feature columns, indexed by row. Values are stored as their bit pattern.
+	 */
+	private final Map< String, long[] > columns = new HashMap<>();
+
+	public void put( final DefaultWeightedEdge edge, final String feature, final double value )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			int row = find( edge );
+			if ( row < 0 )
+				row = add( edge );
+
+			long[] column = columns.get( feature );
+			if ( null == column )
+			{
+				column = new long[ edges.length ];
+				Arrays.fill( column, MISSING );
+				columns.put( feature, column );
+			}
+			column[ row ] = Double.doubleToLongBits( value );
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	public void remove( final DefaultWeightedEdge edge, final String feature )
+	{
+		final long stamp = lock.writeLock();
+		try
+		{
+			final int row = find( edge );
+			final long[] column = columns.get( feature );
+			if ( row >= 0 && null != column )
+				column[ row ] = MISSING;
+		}
+		finally
+		{
+			lock.unlockWrite( stamp );
+		}
+	}
+
+	/**
+	 * Returns the value of the feature for the specified edge, or
+	 * <code>null</code> if it is not stored in this table.
+	 */
+	public Double get( final DefaultWeightedEdge edge, final String feature )
+	{
+		long stamp = lock.tryOptimisticRead();
+		long bits;
+		try
+		{
+			bits = read( edge, feature );
+		}
+		catch ( final RuntimeException e )
+		{
+			// Arrays changed under our feet.
+			bits = MISSING;
+			stamp = 0l;
+		}
+		if ( !lock.validate( stamp ) )
+		{
+			stamp = lock.readLock();
+			try
+			{
+				bits = read( edge, feature );
+			}
+			finally
+			{
+				lock.unlockRead( stamp );
+			}
+		}
+		return ( bits == MISSING ) ? null : Double.valueOf( Double.longBitsToDouble( bits ) );
+	}
+
+	/**
+	 * Appends the values stored in this table to the specified builder.
+	 */
+	public void echo( final StringBuilder str )
+	{
+		final long stamp = lock.readLock();
+		try
+		{
+			for ( int row = 0; row < nRows; row++ )
+			{
+				str.append( "   - " + edges[ row ] + ":\n" );
+				for ( final Map.Entry< String, long[] > entry : columns.entrySet() )
+				{
+					final long bits = entry.getValue()[ row ];
+					if ( bits != MISSING )
+						str.append( "     - " + entry.getKey() + " = " + Double.longBitsToDouble( bits ) + '\n' );
+				}
+			}
+		}
+		finally
+		{
+			lock.unlockRead( stamp );
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private long read( final DefaultWeightedEdge edge, final String feature )
+	{
+		final long[] column = columns.get( feature );
+		if ( null == column )
+			return MISSING;
+		final int row = find( edge );
+		if ( row < 0 )
+			return MISSING;
+		return column[ row ];
+	}
+
+	private static int hash( final DefaultWeightedEdge edge )
+	{
+		final int h = System.identityHashCode( edge );
+		return h ^ ( h >>> 16 );
+	}
+
+	private int find( final DefaultWeightedEdge edge )
+	{
+		final DefaultWeightedEdge[] k = keys;
+		final int mask = k.length - 1;
+		int i = hash( edge ) & mask;
+		while ( null != k[ i ] )
+		{
+			if ( k[ i ] == edge )
+				return rows[ i ];
+			i = ( i + 1 ) & mask;
+		}
+		return -1;
+	}
+
+	private int add( final DefaultWeightedEdge edge )
+	{
+		if ( nRows == edges.length )
+			grow();
+
+		final int row = nRows++;
+		edges[ row ] = edge;
+		insert( keys, rows, edge, row );
+		return row;
+	}
+
+	private static void insert( final DefaultWeightedEdge[] keys, final int[] rows, final DefaultWeightedEdge edge, final int row )
+	{
+		final int mask = keys.length - 1;
+		int i = hash( edge ) & mask;
+		while ( null != keys[ i ] )
+			i = ( i + 1 ) & mask;
+		keys[ i ] = edge;
+		rows[ i ] = row;
+	}
+
+	private void grow()
+	{
+		final int capacity = 2 * edges.length;
+		edges = Arrays.copyOf( edges, capacity );
+		for ( final Map.Entry< String, long[] > entry : columns.entrySet() )
+		{
+			final long[] column = Arrays.copyOf( entry.getValue(), capacity );
+			Arrays.fill( column, nRows, capacity, MISSING );
+			entry.setValue( column );
+		}
+
+		final DefaultWeightedEdge[] newKeys = new DefaultWeightedEdge[ 2 * capacity ];
+		final int[] newRows = new int[ 2 * capacity ];
+		for ( int row = 0; row < nRows; row++ )
+			insert( newKeys, newRows, edges[ row ], row );
+		rows = newRows;
+		keys = newKeys;
+	}
+}
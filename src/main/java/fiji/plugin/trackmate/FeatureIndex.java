@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns feature keys to dense <code>int</code> indices, so that feature
+ * values can be stored in primitive arrays instead of maps keyed by
+ * {@link String}s.
+ * <p>
+ * Indices are attributed in the order keys are first seen, starting from 0,
+ * and never change afterwards. The keys given at construction receive the
+ * first indices, in the order they are specified, so that they can be
+ * addressed by constant indices.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public final class FeatureIndex
+{
+
+	private final ConcurrentHashMap< String, Integer > indices = new ConcurrentHashMap<>();
+
+	private volatile String[] keys;
+
+	/**
+	 * Creates a new feature index.
+	 *
+	 * @param reservedKeys
+	 *            the keys to intern first. The i-th key receives the index i.
+	 */
+	public FeatureIndex( final String... reservedKeys )
+	{
+		this.keys = new String[ 0 ];
+		for ( final String key : reservedKeys )
+			indexOf( key );
+	}
+
+	/**
+	 * Returns the index of the specified feature key, interning it if it was
+	 * not seen before.
+	 *
+	 * @param key
+	 *            the feature key.
+	 * @return the index of the key.
+	 */
+	public int indexOf( final String key )
+	{
+		final Integer index = indices.get( key );
+		if ( null != index )
+			return index.intValue();
+
+		synchronized ( this )
+		{
+			final Integer other = indices.get( key );
+			if ( null != other )
+				return other.intValue();
+
+			final int newIndex = keys.length;
+			final String[] newKeys = Arrays.copyOf( keys, newIndex + 1 );
+			newKeys[ newIndex ] = key;
+			keys = newKeys;
+			indices.put( key, Integer.valueOf( newIndex ) );
+			return newIndex;
+		}
+	}
+
+	/**
+	 * Returns the index of the specified feature key, without interning it.
+	 *
+	 * @param key
+	 *            the feature key.
+	 * @return the index of the key, or <code>-1</code> if it was never
+	 *         interned.
+	 */
+	public int find( final String key )
+	{
+		final Integer index = indices.get( key );
+		return ( null == index ) ? -1 : index.intValue();
+	}
+
+	/**
+	 * Returns the feature key with the specified index.
+	 *
+	 * @param index
+	 *            the index.
+	 * @return the feature key.
+	 */
+	public String keyOf( final int index )
+	{
+		return keys[ index ];
+	}
+
+	/**
+	 * Returns the number of keys interned so far.
+	 *
+	 * @return the number of keys.
+	 */
+	public int size()
+	{
+		return keys.length;
+	}
+}
@@ -64,9 +64,10 @@ public class FeatureModel
 	Map< Integer, Map< String, Double > > trackFeatureValues = new ConcurrentHashMap<>();
 
 	/**
-	 * Feature storage for edges.
+	 * Feature storage for edges. Stored in columns of primitive values, for
+	 * there can be millions of edges.
 	 */
-	private final ConcurrentHashMap< DefaultWeightedEdge, ConcurrentHashMap< String, Double > > edgeFeatureValues = new ConcurrentHashMap<>();
+	private final EdgeFeatureTable edgeFeatureValues = new EdgeFeatureTable();
 
 	private final Collection< String > edgeFeatures = new LinkedHashSet<>();
 
@@ -144,23 +145,14 @@ public class FeatureModel
 	 * @param value
 	 *            the feature value
 	 */
-	public synchronized void putEdgeFeature( final DefaultWeightedEdge edge, final String feature, final Double value )
+	public void putEdgeFeature( final DefaultWeightedEdge edge, final String feature, final Double value )
 	{
-		ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-		{
-			map = new ConcurrentHashMap<>();
-			edgeFeatureValues.put( edge, map );
-		}
-		map.put( feature, value );
+		edgeFeatureValues.put( edge, feature, value.doubleValue() );
 	}
 
 	public Double getEdgeFeature( final DefaultWeightedEdge edge, final String featureName )
 	{
-		final ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-			return null;
-		return map.get( featureName );
+		return edgeFeatureValues.get( edge, featureName );
 	}
 
 	/**
@@ -173,10 +165,7 @@ public class FeatureModel
 	 */
 	public void removeEdgeFeature( final DefaultWeightedEdge edge, final String feature )
 	{
-		final ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-			return;
-		map.remove( feature );
+		edgeFeatureValues.remove( edge, feature );
 	}
 
 	/**
@@ -623,7 +612,7 @@ public class FeatureModel
 		appendFeatureDeclarations( str, edgeFeatures, edgeFeatureNames, edgeFeatureShortNames, edgeFeatureDimensions, edgeFeatureIsInt );
 		str.append( '\n' );
 		str.append( " - Values:\n" );
-		appendFeatureValues( str, edgeFeatureValues );
+		edgeFeatureValues.echo( str );
 
 		// Track
 		str.append( "Track features:\n" );
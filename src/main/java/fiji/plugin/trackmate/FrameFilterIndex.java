@@ -0,0 +1,368 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fiji.plugin.trackmate.features.FeatureFilter;
+import net.imglib2.util.Util;
+
+/**
+ * Filtering index over the spots of a single frame of a
+ * {@link SpotCollection}.
+ * <p>
+ * The spots of the frame are given a fixed position, and their visibility is
+ * mirrored in a {@link BitSet}. For each feature a filter was applied on, the
+ * spot positions are sorted by feature value, so that the spots failing a
+ * threshold form a contiguous range of this order. The index remembers the
+ * filters it applied last and how many of them each spot fails. When the
+ * same filters are applied again with different thresholds, only the spots
+ * whose values lie between the old and the new threshold are toggled.
+ * <p>
+ * The index is only valid as long as the frame content and the spot feature
+ * values are not modified, which is checked by {@link #isValid(Set)}.
+ * Writing the visibility through {@link Spot#setVisible(boolean)} does not
+ * invalidate the index.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class FrameFilterIndex
+{
+
+	/** The spots of the frame, at their position in the index. */
+	private final Spot[] spots;
+
+	/** The modification count of each spot, when last seen by this index. */
+	private final int[] modCounts;
+
+	/** The visibility of each spot. */
+	private final BitSet visible;
+
+	/** Sorted values of the features filtered so far, built lazily. */
+	private final Map< String, Column > columns = new HashMap<>();
+
+	/** The filters applied last, or <code>null</code> if none were. */
+	private List< FeatureFilter > applied;
+
+	/** How many of the filters applied last each spot fails. */
+	private int[] failures;
+
+	FrameFilterIndex( final Set< Spot > frameContent )
+	{
+		this.spots = frameContent.toArray( new Spot[ frameContent.size() ] );
+		this.modCounts = new int[ spots.length ];
+		this.visible = new BitSet( spots.length );
+		for ( int i = 0; i < spots.length; i++ )
+		{
+			modCounts[ i ] = spots[ i ].modCount();
+			if ( spots[ i ].isVisible() )
+				visible.set( i );
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if this index still reflects the specified
+	 * frame content: same number of spots, and none of them had a feature
+	 * value written since it was last seen by this index.
+	 *
+	 * @param frameContent
+	 *            the current content of the frame.
+	 * @return whether this index can be used.
+	 */
+	boolean isValid( final Set< Spot > frameContent )
+	{
+		if ( frameContent.size() != spots.length )
+			return false;
+		for ( int i = 0; i < spots.length; i++ )
+			if ( spots[ i ].modCount() != modCounts[ i ] )
+				return false;
+		return true;
+	}
+
+	/**
+	 * Marks all the spots of the frame as visible or invisible, and forgets
+	 * the filters applied last.
+	 *
+	 * @param visibility
+	 *            the visibility to set.
+	 */
+	void setVisible( final boolean visibility )
+	{
+		for ( int i = 0; i < spots.length; i++ )
+			if ( visible.get( i ) != visibility )
+				spots[ i ].setVisible( visibility );
+
+		if ( visibility )
+			visible.set( 0, spots.length );
+		else
+			visible.clear();
+		applied = null;
+		failures = null;
+	}
+
+	/**
+	 * Filters the spots of the frame. A spot is made visible if it passes all
+	 * the specified filters, and invisible otherwise. A spot that has no value
+	 * for a filtered feature does not pass the filter.
+	 *
+	 * @param filters
+	 *            the filters to apply.
+	 */
+	void filter( final Collection< FeatureFilter > filters )
+	{
+		final List< FeatureFilter > target = new ArrayList<>( filters );
+		if ( sameFeatures( target ) )
+		{
+			// Only move the thresholds that changed.
+			for ( int f = 0; f < target.size(); f++ )
+			{
+				final FeatureFilter from = applied.get( f );
+				final FeatureFilter to = target.get( f );
+				if ( Double.compare( from.value, to.value ) != 0 )
+					moveThreshold( columns.get( to.feature ), to.isAbove, from.value, to.value );
+			}
+		}
+		else
+		{
+			// Count the failures from scratch.
+			failures = new int[ spots.length ];
+			for ( final FeatureFilter filter : target )
+			{
+				final Column column = column( filter.feature );
+				final int[] order = column.order;
+				final int start = filter.isAbove ? 0 : column.upperBound( filter.value );
+				final int end = filter.isAbove ? column.lowerBound( filter.value ) : column.nValues;
+				for ( int k = start; k < end; k++ )
+					failures[ order[ k ] ]++;
+				for ( int k = column.nValues; k < order.length; k++ )
+					failures[ order[ k ] ]++;
+			}
+			for ( int i = 0; i < spots.length; i++ )
+				updateVisibility( i );
+		}
+		applied = target;
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified filters are applied to the
+	 * same features and in the same direction that the filters applied last.
+	 */
+	private boolean sameFeatures( final List< FeatureFilter > target )
+	{
+		if ( null == applied || applied.size() != target.size() )
+			return false;
+		for ( int f = 0; f < target.size(); f++ )
+		{
+			final FeatureFilter a = applied.get( f );
+			final FeatureFilter b = target.get( f );
+			if ( !a.feature.equals( b.feature ) || a.isAbove != b.isAbove )
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the failure counts and the visibility of the spots whose value
+	 * lies between two successive thresholds of a filter.
+	 */
+	private void moveThreshold( final Column column, final boolean isAbove, final double from, final double to )
+	{
+		/*
+		 * Above: the spots in [0, lowerBound(t)) fail. Below: the spots in
+		 * [upperBound(t), nValues) fail.
+		 */
+		final int a = isAbove ? column.lowerBound( from ) : column.upperBound( from );
+		final int b = isAbove ? column.lowerBound( to ) : column.upperBound( to );
+		if ( a == b )
+			return;
+
+		final int increment = ( isAbove == b > a ) ? 1 : -1;
+		final int start = Math.min( a, b );
+		final int end = Math.max( a, b );
+		final int[] order = column.order;
+		for ( int k = start; k < end; k++ )
+		{
+			final int i = order[ k ];
+			failures[ i ] += increment;
+			updateVisibility( i );
+		}
+	}
+
+	private void updateVisibility( final int i )
+	{
+		final boolean v = failures[ i ] == 0;
+		if ( visible.get( i ) == v )
+			return;
+		visible.set( i, v );
+		spots[ i ].setVisible( v );
+	}
+
+	private Column column( final String feature )
+	{
+		Column column = columns.get( feature );
+		if ( null == column )
+		{
+			column = new Column( feature );
+			columns.put( feature, column );
+		}
+		return column;
+	}
+
+	/**
+	 * The spot positions sorted by ascending values of one feature. Values
+	 * that are NaN come after all the others, as with
+	 * {@link Double#compare(double, double)}, and the spots that have no value
+	 * for the feature are at the end of the order.
+	 */
+	private final class Column
+	{
+
+		/** Spot positions, sorted by value. */
+		private final int[] order;
+
+		/** The values that are not NaN, in sorted order. */
+		private final double[] sorted;
+
+		/** The number of spots whose value is not NaN. */
+		private final int nNumbers;
+
+		/** The number of spots that have a value for the feature. */
+		private final int nValues;
+
+		private Column( final String feature )
+		{
+			final int n = spots.length;
+			final double[] values = new double[ n ];
+			this.order = new int[ n ];
+			final int[] nans = new int[ n ];
+			int nv = 0;
+			int nn = 0;
+			int nm = 0;
+			for ( int i = 0; i < n; i++ )
+			{
+				final Double val = spots[ i ].getFeature( feature );
+				if ( null == val )
+				{
+					order[ n - 1 - nm++ ] = i;
+				}
+				else if ( val.isNaN() )
+				{
+					nans[ nn++ ] = i;
+				}
+				else
+				{
+					values[ nv ] = val.doubleValue();
+					order[ nv++ ] = i;
+				}
+			}
+
+			if ( nv > 1 )
+			{
+				Util.quicksort( values, order, 0, nv - 1 );
+				sortZeros( values, order, nv );
+			}
+			System.arraycopy( nans, 0, order, nv, nn );
+			this.sorted = values;
+			this.nNumbers = nv;
+			this.nValues = nv + nn;
+		}
+
+		/**
+		 * Moves the negative zeros before the positive ones. The sort does not
+		 * tell them apart, but {@link Double#compare(double, double)} does.
+		 */
+		private void sortZeros( final double[] values, final int[] order, final int nv )
+		{
+			int lo = 0;
+			int hi = nv;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				if ( values[ mid ] < 0. )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			int first = lo;
+			int k = lo;
+			while ( k < nv && values[ k ] == 0. )
+			{
+				if ( Double.doubleToRawLongBits( values[ k ] ) != 0l )
+				{
+					final int tmp = order[ k ];
+					order[ k ] = order[ first ];
+					order[ first ] = tmp;
+					values[ k ] = values[ first ];
+					values[ first ] = -0.;
+					first++;
+				}
+				k++;
+			}
+		}
+
+		/**
+		 * Returns the first position in the order whose value is not smaller
+		 * than the specified threshold.
+		 */
+		private int lowerBound( final double threshold )
+		{
+			int lo = 0;
+			int hi = nNumbers;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				if ( Double.compare( sorted[ mid ], threshold ) < 0 )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		/**
+		 * Returns the first position in the order whose value is strictly
+		 * larger than the specified threshold.
+		 */
+		private int upperBound( final double threshold )
+		{
+			int lo = 0;
+			int hi = nNumbers;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				if ( Double.compare( sorted[ mid ], threshold ) <= 0 )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+	}
+}
@@ -42,6 +42,7 @@ import fiji.plugin.trackmate.gui.wizard.descriptors.LogPanelDescriptor2;
 import fiji.plugin.trackmate.gui.wizard.descriptors.StartDialogDescriptor;
 import fiji.plugin.trackmate.io.IOUtils;
 import fiji.plugin.trackmate.io.SettingsPersistence;
+import fiji.plugin.trackmate.io.TmBinaryReader;
 import fiji.plugin.trackmate.io.TmXmlReader;
 import fiji.plugin.trackmate.util.TMUtils;
 import fiji.plugin.trackmate.visualization.TrackMateModelView;
@@ -281,7 +282,9 @@ public class LoadTrackMatePlugIn extends TrackMatePlugIn
 	 */
 	protected TmXmlReader createReader( final File lFile )
 	{
-		return new TmXmlReader( lFile );
+		if ( TmBinaryReader.isBinaryFile( lFile ) )
+			return new TmBinaryReader( lFile );
+		return new TmXmlReader( lFile, true );
 	}
 
 	/*
@@ -25,6 +25,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.jgrapht.Graphs;
@@ -783,10 +784,15 @@ public class Model
 		// Track model.
 		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graphCopy = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
 		Graphs.addGraph( graphCopy, trackModel.graph );
+		// Track sets are edited in place: they must not be shared.
+		final Map< Integer, Set< Spot > > trackSpots = new HashMap<>( trackModel.connectedVertexSets.size() );
+		trackModel.connectedVertexSets.forEach( ( id, set ) -> trackSpots.put( id, new HashSet<>( set ) ) );
+		final Map< Integer, Set< DefaultWeightedEdge > > trackEdges = new HashMap<>( trackModel.connectedEdgeSets.size() );
+		trackModel.connectedEdgeSets.forEach( ( id, set ) -> trackEdges.put( id, new HashSet<>( set ) ) );
 		copy.getTrackModel().from(
 				graphCopy,
-				new HashMap<>( trackModel.connectedVertexSets ),
-				new HashMap<>( trackModel.connectedEdgeSets ),
+				trackSpots,
+				trackEdges,
 				new HashMap<>( trackModel.visibility ),
 				new HashMap<>( trackModel.names ) );
 
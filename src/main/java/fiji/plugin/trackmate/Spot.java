@@ -23,12 +23,17 @@ package fiji.plugin.trackmate;
 
 import static fiji.plugin.trackmate.SpotCollection.VISIBILITY;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import fiji.plugin.trackmate.util.AlphanumComparator;
@@ -51,6 +56,12 @@ import net.imglib2.util.Util;
  * Each spot received at creation a unique ID (as an <code>int</code>), used
  * later for saving, retrieving and loading. Interfering with this value will
  * predictively cause undesired behavior.
+ * <p>
+ * Feature values are stored in a primitive <code>double</code> array, indexed
+ * by the feature keys interned in {@link #FEATURE_INDEX}. The privileged
+ * features have fixed indices and can be read without any lookup nor boxing
+ * with {@link #getDoublePosition(int)}, {@link #getPositionT()},
+ * {@link #getRadius()} and {@link #getQuality()}.
  *
  * @author Jean-Yves Tinevez &lt;jeanyves.tinevez@gmail.com&gt; 2010, 2013
  *
@@ -64,8 +75,19 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 
 	public static AtomicInteger IDcounter = new AtomicInteger( -1 );
 
-	/** Store the individual features, and their values. */
-	private final ConcurrentHashMap< String, Double > features = new ConcurrentHashMap< >();
+	/**
+	 * Store the individual feature values, indexed by {@link #FEATURE_INDEX}.
+	 * Features that are not set have the {@link #MISSING} value. The array is
+	 * replaced by a larger copy when a new feature is stored.
+	 */
+	private volatile double[] values = newValues( N_PRIVILEGED_FEATURES );
+
+	/**
+	 * Incremented each time a feature value is written, except by
+	 * {@link #setVisible(boolean)}. Lets the {@link SpotCollection} filter
+	 * index detect stale feature values.
+	 */
+	private int modCount = 0;
 
 	/** A user-supplied name for this spot. */
 	private String name;
@@ -199,13 +221,10 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	{
 		super( 3 );
 		this.ID = ID;
-		synchronized ( IDcounter )
-		{
-			if ( IDcounter.get() < ID )
-			{
-				IDcounter.set( ID );
-			}
-		}
+		// Lock-free, so that spots can be loaded concurrently.
+		int current;
+		while ( ( current = IDcounter.get() ) < ID && !IDcounter.compareAndSet( current, ID ) )
+		{}
 	}
 
 	/*
@@ -306,7 +325,8 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 		s.append( "Position: " + Util.printCoordinates( coordinates ) + "\n" );
 
 		// Feature list
-		if ( null == features || features.size() < 1 )
+		final Map< String, Double > features = getFeatures();
+		if ( features.size() < 1 )
 			s.append( "No features calculated\n" );
 		else
 		{
@@ -331,14 +351,14 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 
 	/**
-	 * Exposes the storage map of features for this spot. Altering the returned
-	 * map will alter the spot.
+	 * Exposes the features of this spot as a map. The map is a view backed by
+	 * the spot storage: altering the returned map will alter the spot.
 	 *
 	 * @return a map of {@link String}s to {@link Double}s.
 	 */
 	public Map< String, Double > getFeatures()
 	{
-		return features;
+		return new FeatureMap();
 	}
 
 	/**
@@ -351,7 +371,8 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public Double getFeature( final String feature )
 	{
-		return features.get( feature );
+		final double val = get( FEATURE_INDEX.find( feature ) );
+		return isMissing( val ) ? null : Double.valueOf( val );
 	}
 
 	/**
@@ -361,11 +382,88 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 *            the name of the feature to store, as a {@link String}.
 	 * @param value
 	 *            the value to store, as a {@link Double}. Using
-	 *            <code>null</code> will have unpredicted outcomes.
+	 *            <code>null</code> removes the feature from this spot.
 	 */
 	public void putFeature( final String feature, final Double value )
 	{
-		features.put( feature, value );
+		if ( null == value )
+			removeFeature( feature );
+		else
+			set( FEATURE_INDEX.indexOf( feature ), value.doubleValue() );
+	}
+
+	/**
+	 * Stores the specified feature value for this spot, without boxing.
+	 *
+	 * @param feature
+	 *            the name of the feature to store, as a {@link String}.
+	 * @param value
+	 *            the value to store.
+	 */
+	public void putFeature( final String feature, final double value )
+	{
+		set( FEATURE_INDEX.indexOf( feature ), value );
+	}
+
+	/**
+	 * Removes the specified feature from this spot.
+	 *
+	 * @param feature
+	 *            the name of the feature to remove.
+	 * @return <code>true</code> if the feature was set for this spot.
+	 */
+	public boolean removeFeature( final String feature )
+	{
+		final int index = FEATURE_INDEX.find( feature );
+		if ( isMissing( get( index ) ) )
+			return false;
+		set( index, MISSING );
+		return true;
+	}
+
+	/**
+	 * Returns the value of the specified feature as a primitive
+	 * <code>double</code>.
+	 *
+	 * @param feature
+	 *            the feature to retrieve the value of.
+	 * @return the feature value, or {@link Double#NaN} if it has not been set.
+	 */
+	public double getDoubleFeature( final String feature )
+	{
+		final double val = get( FEATURE_INDEX.find( feature ) );
+		return isMissing( val ) ? Double.NaN : val;
+	}
+
+	/**
+	 * Returns the {@link #POSITION_T} feature value of this spot.
+	 *
+	 * @return the spot time position, or {@link Double#NaN} if it has not been
+	 *         set.
+	 */
+	public double getPositionT()
+	{
+		return primitive( POSITION_T_INDEX );
+	}
+
+	/**
+	 * Returns the {@link #RADIUS} feature value of this spot.
+	 *
+	 * @return the spot radius, or {@link Double#NaN} if it has not been set.
+	 */
+	public double getRadius()
+	{
+		return primitive( RADIUS_INDEX );
+	}
+
+	/**
+	 * Returns the {@link #QUALITY} feature value of this spot.
+	 *
+	 * @return the spot quality, or {@link Double#NaN} if it has not been set.
+	 */
+	public double getQuality()
+	{
+		return primitive( QUALITY_INDEX );
 	}
 
 	/**
@@ -384,8 +482,9 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public double diffTo( final Spot s, final String feature )
 	{
-		final double f1 = features.get( feature ).doubleValue();
-		final double f2 = s.getFeature( feature ).doubleValue();
+		final int index = FEATURE_INDEX.find( feature );
+		final double f1 = valueOrThrow( index, feature );
+		final double f2 = s.valueOrThrow( index, feature );
 		return f1 - f2;
 	}
 
@@ -412,8 +511,9 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public double normalizeDiffTo( final Spot s, final String feature )
 	{
-		final double a = features.get( feature ).doubleValue();
-		final double b = s.getFeature( feature ).doubleValue();
+		final int index = FEATURE_INDEX.find( feature );
+		final double a = valueOrThrow( index, feature );
+		final double b = s.valueOrThrow( index, feature );
 		if ( a == -b )
 			return 0d;
 		
@@ -429,15 +529,229 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public double squareDistanceTo( final RealLocalizable s )
 	{
+		final double[] v = values;
 		double sumSquared = 0d;
 		for ( int d = 0; d < 3; d++ )
 		{
-			final double dx = this.getDoublePosition( d ) - s.getDoublePosition( d );
+			final double dx = v[ POSITION_X_INDEX + d ] - s.getDoublePosition( d );
 			sumSquared += dx * dx;
 		}
 		return sumSquared;
 	}
 
+	/*
+	 * PRIMITIVE STORAGE
+	 */
+
+	/**
+	 * Returns the raw value stored at the specified index, or {@link #MISSING}
+	 * if there is none.
+	 */
+	private double get( final int index )
+	{
+		final double[] v = values;
+		if ( index < 0 || index >= v.length )
+			return MISSING;
+		return v[ index ];
+	}
+
+	/**
+	 * Returns the value stored at the specified index of privileged feature,
+	 * or {@link Double#NaN} if there is none.
+	 */
+	private double primitive( final int index )
+	{
+		final double val = values[ index ];
+		return isMissing( val ) ? Double.NaN : val;
+	}
+
+	private double valueOrThrow( final int index, final String feature )
+	{
+		final double val = get( index );
+		if ( isMissing( val ) )
+			throw new NullPointerException( "Spot " + this + " does not store a value for feature " + feature + "." );
+		return val;
+	}
+
+	/**
+	 * Stores a value at the specified index, growing the storage array if
+	 * required. Writes are serialized so that concurrent writes to new
+	 * features are not lost.
+	 */
+	private synchronized void set( final int index, final double value )
+	{
+		double[] v = values;
+		if ( index >= v.length )
+		{
+			final int newLength = Math.max( index + 1, v.length + ( v.length >> 1 ) );
+			final double[] grown = Arrays.copyOf( v, newLength );
+			Arrays.fill( grown, v.length, newLength, MISSING );
+			v = grown;
+		}
+		v[ index ] = value;
+		values = v;
+		modCount++;
+	}
+
+	/**
+	 * Returns the modification count of the feature values of this spot.
+	 */
+	int modCount()
+	{
+		return modCount;
+	}
+
+	/**
+	 * Returns <code>true</code> if the {@link SpotCollection#VISIBILITY}
+	 * feature of this spot is set and strictly positive.
+	 */
+	boolean isVisible()
+	{
+		return primitive( VISIBILITY_INDEX ) > 0.;
+	}
+
+	/**
+	 * Stores the {@link SpotCollection#VISIBILITY} feature of this spot,
+	 * without incrementing its modification count.
+	 */
+	synchronized void setVisible( final boolean visible )
+	{
+		values[ VISIBILITY_INDEX ] = visible ? 1. : 0.;
+	}
+
+	private static double[] newValues( final int length )
+	{
+		final double[] v = new double[ length ];
+		Arrays.fill( v, MISSING );
+		return v;
+	}
+
+	private static boolean isMissing( final double val )
+	{
+		return Double.doubleToRawLongBits( val ) == MISSING_BITS;
+	}
+
+	/**
+	 * A {@link Map} view over the feature values of this spot.
+	 */
+	private final class FeatureMap extends AbstractMap< String, Double >
+	{
+
+		@Override
+		public Double get( final Object key )
+		{
+			if ( !( key instanceof String ) )
+				return null;
+			return getFeature( ( String ) key );
+		}
+
+		@Override
+		public boolean containsKey( final Object key )
+		{
+			return null != get( key );
+		}
+
+		@Override
+		public Double put( final String key, final Double value )
+		{
+			final Double old = getFeature( key );
+			putFeature( key, value );
+			return old;
+		}
+
+		@Override
+		public Double remove( final Object key )
+		{
+			final Double old = get( key );
+			if ( null != old )
+				removeFeature( ( String ) key );
+			return old;
+		}
+
+		@Override
+		public Set< Entry< String, Double > > entrySet()
+		{
+			return new AbstractSet< Entry< String, Double > >()
+			{
+
+				@Override
+				public Iterator< Entry< String, Double > > iterator()
+				{
+					return new FeatureIterator();
+				}
+
+				@Override
+				public int size()
+				{
+					final double[] v = values;
+					int size = 0;
+					for ( final double val : v )
+						if ( !isMissing( val ) )
+							size++;
+					return size;
+				}
+			};
+		}
+	}
+
+	private final class FeatureIterator implements Iterator< Map.Entry< String, Double > >
+	{
+
+		private final double[] v = values;
+
+		private int next = -1;
+
+		private int current = -1;
+
+		private FeatureIterator()
+		{
+			advance();
+		}
+
+		private void advance()
+		{
+			next++;
+			while ( next < v.length && isMissing( v[ next ] ) )
+				next++;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return next < v.length;
+		}
+
+		@Override
+		public Map.Entry< String, Double > next()
+		{
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+			current = next;
+			advance();
+			final String key = FEATURE_INDEX.keyOf( current );
+			return new AbstractMap.SimpleEntry< String, Double >( key, Double.valueOf( v[ current ] ) )
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Double setValue( final Double value )
+				{
+					putFeature( key, value );
+					return super.setValue( value );
+				}
+			};
+		}
+
+		@Override
+		public void remove()
+		{
+			if ( current < 0 )
+				throw new IllegalStateException();
+			set( current, MISSING );
+			current = -1;
+		}
+	}
+
 	/*
 	 * PUBLIC UTILITY CONSTANTS
 	 */
@@ -490,6 +804,32 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	/** The 7 privileged spot feature isInt flags. */
 	public final static Map< String, Boolean > IS_INT = new HashMap< >( 7 );
 
+	/**
+	 * The index of spot feature keys. The privileged features are interned
+	 * first, so that their index is constant.
+	 */
+	public static final FeatureIndex FEATURE_INDEX = new FeatureIndex( Spot.QUALITY, Spot.POSITION_X, Spot.POSITION_Y, Spot.POSITION_Z, Spot.POSITION_T, Spot.FRAME, Spot.RADIUS, SpotCollection.VISIBILITY );
+
+	private static final int QUALITY_INDEX = 0;
+
+	private static final int POSITION_X_INDEX = 1;
+
+	private static final int POSITION_T_INDEX = 4;
+
+	private static final int RADIUS_INDEX = 6;
+
+	private static final int VISIBILITY_INDEX = 7;
+
+	private static final int N_PRIVILEGED_FEATURES = 8;
+
+	/**
+	 * The bits of the value marking a feature as not set: a NaN with a
+	 * specific payload, so that genuine NaN values can still be stored.
+	 */
+	private static final long MISSING_BITS = 0x7ff80000deadbeefL;
+
+	private static final double MISSING = Double.longBitsToDouble( MISSING_BITS );
+
 	static
 	{
 		FEATURES.add( QUALITY );
@@ -563,7 +903,7 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	@Override
 	public double getDoublePosition( final int d )
 	{
-		return getFeature( POSITION_FEATURES[ d ] );
+		return primitive( POSITION_X_INDEX + d );
 	}
 
 	/*
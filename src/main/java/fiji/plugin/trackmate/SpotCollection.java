@@ -23,18 +23,23 @@ package fiji.plugin.trackmate;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
 
 import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.util.TMExecutors;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import net.imglib2.algorithm.MultiThreaded;
 
 /**
@@ -47,6 +52,16 @@ import net.imglib2.algorithm.MultiThreaded;
  * This class is {@link MultiThreaded}. There are a few processes that can
  * benefit from multithreaded computation ({@link #filter(Collection)},
  * {@link #filter(FeatureFilter)}
+ * <p>
+ * Filtering relies on a per-frame index that keeps the spots sorted by the
+ * values of the filtered features, and their visibility in a bitset. When the
+ * same filters are applied again with different thresholds, only the spots
+ * crossing a threshold are updated. The index of a frame is rebuilt when the
+ * frame content or the feature values of its spots have changed.
+ * <p>
+ * Spots can be retrieved by ID in constant time. The ID index is built the
+ * first time a spot is searched for, and is then maintained by the methods of
+ * this class that change its content.
  *
  * @author Jean-Yves Tinevez - Feb 2011 -2013. Revised December 2020.
  */
@@ -59,20 +74,20 @@ public class SpotCollection implements MultiThreaded
 
 	public static final String VISIBILITY = "VISIBILITY";
 
-	/**
-	 * Time units for filtering and cropping operation timeouts. Filtering
-	 * should not take more than 1 minute.
-	 */
-	private static final TimeUnit TIME_OUT_UNITS = TimeUnit.MINUTES;
+	/** The frame by frame list of spot this object wrap. */
+	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap<>();
+
+	/** The filtering indices of the frames, built upon filtering. */
+	private final ConcurrentHashMap< Integer, FrameFilterIndex > filterIndices = new ConcurrentHashMap<>();
 
 	/**
-	 * Time for filtering and cropping operation timeouts. Filtering should not
-	 * take more than 1 minute.
+	 * The spots of this collection by ID. Only valid if {@link #indexed} is
+	 * <code>true</code>. Accesses are synchronized on this map.
 	 */
-	private static final long TIME_OUT_DELAY = 1;
+	private final TIntObjectHashMap< Spot > ids = new TIntObjectHashMap<>();
 
-	/** The frame by frame list of spot this object wrap. */
-	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap<>();
+	/** Whether the ID index has been built. */
+	private boolean indexed = false;
 
 	private int numThreads;
 
@@ -104,15 +119,79 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public Spot search( final int ID )
 	{
-		/*
-		 * Having a map id -> spot would be better, but we don't have a big need
-		 * for this.
-		 */
-		for ( final Spot spot : iterable( false ) )
-			if ( spot.ID() == ID )
+		synchronized ( ids )
+		{
+			buildIDIndex();
+			final Spot spot = get( ID );
+			if ( null != spot )
 				return spot;
 
-		return null;
+			rebuildIDIndex();
+			return get( ID );
+		}
+	}
+
+	/**
+	 * Retrieves the {@link Spot} objects in this collection with the
+	 * specified IDs. All spots, visible or not, are searched for.
+	 *
+	 * @param IDs
+	 *            the IDs to look for.
+	 * @return a new array, the same length as <code>IDs</code>, containing
+	 *         the spot with each ID, or <code>null</code> if this spot does not
+	 *         exist or does not belong to this collection.
+	 */
+	public Spot[] searchAll( final int[] IDs )
+	{
+		final Spot[] spots = new Spot[ IDs.length ];
+		synchronized ( ids )
+		{
+			buildIDIndex();
+			boolean rebuilt = false;
+			for ( int i = 0; i < IDs.length; i++ )
+			{
+				spots[ i ] = get( IDs[ i ] );
+				if ( null == spots[ i ] && !rebuilt )
+				{
+					rebuildIDIndex();
+					rebuilt = true;
+					spots[ i ] = get( IDs[ i ] );
+				}
+			}
+		}
+		return spots;
+	}
+
+	/**
+	 * Retrieves the {@link Spot} objects in this collection with the
+	 * specified IDs. All spots, visible or not, are searched for.
+	 *
+	 * @param IDs
+	 *            the IDs to look for.
+	 * @return a new map from ID to spot. IDs that cannot be found in this
+	 *         collection are not in the map.
+	 */
+	public Map< Integer, Spot > searchAll( final Collection< Integer > IDs )
+	{
+		final Map< Integer, Spot > spots = new HashMap<>( 2 * IDs.size() );
+		synchronized ( ids )
+		{
+			buildIDIndex();
+			boolean rebuilt = false;
+			for ( final Integer ID : IDs )
+			{
+				Spot spot = get( ID.intValue() );
+				if ( null == spot && !rebuilt )
+				{
+					rebuildIDIndex();
+					rebuilt = true;
+					spot = get( ID.intValue() );
+				}
+				if ( null != spot )
+					spots.put( ID, spot );
+			}
+		}
+		return spots;
 	}
 
 	@Override
@@ -154,6 +233,12 @@ public class SpotCollection implements MultiThreaded
 		spots.add( spot );
 		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
 		spot.putFeature( VISIBILITY, ONE );
+		filterIndices.remove( frame );
+		synchronized ( ids )
+		{
+			if ( indexed )
+				ids.put( spot.ID(), spot );
+		}
 	}
 
 	/**
@@ -174,7 +259,17 @@ public class SpotCollection implements MultiThreaded
 		final Set< Spot > spots = content.get( frame );
 		if ( null == spots )
 			return false;
-		return spots.remove( spot );
+		filterIndices.remove( frame );
+		final boolean removed = spots.remove( spot );
+		if ( removed )
+		{
+			synchronized ( ids )
+			{
+				if ( indexed && ids.get( spot.ID() ) == spot )
+					ids.remove( spot.ID() );
+			}
+		}
+		return removed;
 	}
 
 	/**
@@ -185,38 +280,12 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void setVisible( final boolean visible )
 	{
-		final Double val = visible ? ONE : ZERO;
 		final Collection< Integer > frames = content.keySet();
-
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
+		final List< Callable< Object > > tasks = new ArrayList<>( frames.size() );
 		for ( final Integer frame : frames )
-		{
-
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
+			tasks.add( Executors.callable( () -> filterIndex( frame ).setVisible( visible ) ) );
 
-					final Set< Spot > spots = content.get( frame );
-					for ( final Spot spot : spots )
-						spot.putFeature( VISIBILITY, val );
-				}
-			};
-			executors.execute( command );
-		}
-
-		executors.shutdown();
-		try
-		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.setVisible()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached." );
-		}
-		catch ( final InterruptedException e )
-		{
-			e.printStackTrace();
-		}
+		execute( tasks, "setVisible" );
 	}
 
 	/**
@@ -229,113 +298,63 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public final void filter( final FeatureFilter featurefilter )
 	{
-
-		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-
-		for ( final Integer frame : frames )
-		{
-
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					final Set< Spot > spots = content.get( frame );
-					final double tval = featurefilter.value;
-
-					if ( featurefilter.isAbove )
-					{
-						for ( final Spot spot : spots )
-						{
-							final Double val = spot.getFeature( featurefilter.feature );
-							spot.putFeature( VISIBILITY, val.compareTo( tval ) < 0 ? ZERO : ONE );
-						}
-
-					}
-					else
-					{
-						for ( final Spot spot : spots )
-						{
-							final Double val = spot.getFeature( featurefilter.feature );
-							spot.putFeature( VISIBILITY, val.compareTo( tval ) > 0 ? ZERO : ONE );
-						}
-					}
-				}
-			};
-			executors.execute( command );
-		}
-
-		executors.shutdown();
-		try
-		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
-		}
-		catch ( final InterruptedException e )
-		{
-			e.printStackTrace();
-		}
+		filter( Collections.singletonList( featurefilter ) );
 	}
 
 	/**
 	 * Filters out the content of this collection using the specified
 	 * {@link FeatureFilter} collection. Spots that are filtered out are marked
 	 * as invisible, and visible otherwise. To be marked as visible, a spot must
-	 * pass <b>all</b> of the specified filters (AND chaining).
+	 * pass <b>all</b> of the specified filters (AND chaining). Spots that do
+	 * not have a value for one of the filtered features are marked as
+	 * invisible.
+	 * <p>
+	 * If this method was last called with filters on the same features and in
+	 * the same order, only the spots whose values lie between the previous
+	 * and the new thresholds are updated.
 	 *
 	 * @param filters
 	 *            the filter collection to use.
 	 */
 	public final void filter( final Collection< FeatureFilter > filters )
 	{
-
 		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-
+		final List< Callable< Object > > tasks = new ArrayList<>( frames.size() );
 		for ( final Integer frame : frames )
-		{
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					final Set< Spot > spots = content.get( frame );
-					for ( final Spot spot : spots )
-					{
-
-						boolean shouldNotBeVisible = false;
-						for ( final FeatureFilter featureFilter : filters )
-						{
+			tasks.add( Executors.callable( () -> filterIndex( frame ).filter( filters ) ) );
 
-							final Double val = spot.getFeature( featureFilter.feature );
-							final double tval = featureFilter.value;
-							final boolean isAbove = featureFilter.isAbove;
-
-							if ( null == val || isAbove && val.compareTo( tval ) < 0 || !isAbove && val.compareTo( tval ) > 0 )
-							{
-								shouldNotBeVisible = true;
-								break;
-							}
-						} // loop over filters
-						spot.putFeature( VISIBILITY, shouldNotBeVisible ? ZERO : ONE );
+		execute( tasks, "filter" );
+	}
 
-					} // loop over spots
-				}
-			};
-			executors.execute( command );
+	/**
+	 * Returns the filtering index of the specified frame, rebuilding it if it
+	 * does not exist or is not valid anymore.
+	 */
+	private FrameFilterIndex filterIndex( final Integer frame )
+	{
+		final Set< Spot > spots = content.get( frame );
+		FrameFilterIndex index = filterIndices.get( frame );
+		if ( null == index || !index.isValid( spots ) )
+		{
+			index = new FrameFilterIndex( spots );
+			filterIndices.put( frame, index );
 		}
+		return index;
+	}
 
-		executors.shutdown();
+	/**
+	 * Executes the specified per-frame tasks on the shared TrackMate executor
+	 * and waits for their completion.
+	 */
+	private void execute( final List< Callable< Object > > tasks, final String methodName )
+	{
 		try
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			TMExecutors.invokeAll( tasks, numThreads );
 		}
-		catch ( final InterruptedException e )
+		catch ( InterruptedException | ExecutionException e )
 		{
+			System.err.println( "[SpotCollection." + methodName + "()] Problem executing tasks: " + e.getMessage() );
 			e.printStackTrace();
 		}
 	}
@@ -365,7 +384,7 @@ public class SpotCollection implements MultiThreaded
 		for ( final Spot spot : spots )
 		{
 
-			if ( visibleSpotsOnly && !isVisible( spot ) )
+			if ( visibleSpotsOnly && !spot.isVisible() )
 				continue;
 
 			final double d2 = spot.squareDistanceTo( location );
@@ -405,7 +424,7 @@ public class SpotCollection implements MultiThreaded
 		Spot bestSpot = null;
 		for ( final Spot spot : spots )
 		{
-			if ( visibleSpotsOnly && !isVisible( spot ) )
+			if ( visibleSpotsOnly && !spot.isVisible() )
 				continue;
 
 			final double d2 = spot.squareDistanceTo( location );
@@ -582,7 +601,20 @@ public class SpotCollection implements MultiThreaded
 			spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
 			spot.putFeature( VISIBILITY, ZERO );
 		}
-		content.put( frame, value );
+		final Set< Spot > previous = content.put( frame, value );
+		filterIndices.remove( frame );
+		synchronized ( ids )
+		{
+			if ( indexed )
+			{
+				if ( null != previous )
+					for ( final Spot spot : previous )
+						if ( ids.get( spot.ID() ) == spot )
+							ids.remove( spot.ID() );
+				for ( final Spot spot : value )
+					ids.put( spot.ID(), spot );
+			}
+		}
 	}
 
 	/**
@@ -637,6 +669,76 @@ public class SpotCollection implements MultiThreaded
 	public void clear()
 	{
 		content.clear();
+		filterIndices.clear();
+		synchronized ( ids )
+		{
+			ids.clear();
+		}
+	}
+
+	/**
+	 * Builds the ID index if it does not exist yet. Must be called while
+	 * holding the lock on {@link #ids}.
+	 */
+	private void buildIDIndex()
+	{
+		if ( indexed )
+			return;
+
+		ids.ensureCapacity( getNSpots( false ) );
+		for ( final Spot spot : iterable( false ) )
+			ids.put( spot.ID(), spot );
+		indexed = true;
+	}
+
+	/**
+	 * Rebuilds the ID index from the frame sets. Must be called while holding
+	 * the lock on {@link #ids}.
+	 * <p>
+	 * The frame sets are reachable from outside, for instance through the map
+	 * passed to {@link #fromMap(Map)}, so spots may have been added to them
+	 * without going through this collection. A lookup that misses therefore
+	 * rebuilds the index once, which costs one scan of the spots, as the
+	 * linear search it replaces.
+	 */
+	private void rebuildIDIndex()
+	{
+		ids.clear();
+		indexed = false;
+		buildIDIndex();
+	}
+
+	/**
+	 * Returns the spot with the specified ID from the ID index, checking that
+	 * it still belongs to this collection. Must be called while holding the
+	 * lock on {@link #ids}.
+	 */
+	private Spot get( final int ID )
+	{
+		final Spot spot = ids.get( ID );
+		if ( null == spot )
+			return null;
+
+		/*
+		 * The frame sets are reachable from outside, for instance through
+		 * keySet() or the map passed to fromMap(). Make sure the spot was not
+		 * removed behind our back.
+		 */
+		final Double frame = spot.getFeature( Spot.FRAME );
+		if ( null == frame )
+		{
+			for ( final Set< Spot > spots : content.values() )
+				if ( spots.contains( spot ) )
+					return spot;
+		}
+		else
+		{
+			final Set< Spot > spots = content.get( Integer.valueOf( frame.intValue() ) );
+			if ( null != spots && spots.contains( spot ) )
+				return spot;
+		}
+		ids.remove( ID );
+		return null;
 	}
 
 	/*
@@ -787,7 +889,7 @@ public class SpotCollection implements MultiThreaded
 				}
 				next = contentIterator.next();
 				// Is it visible?
-				if ( next.getFeature( VISIBILITY ).compareTo( ZERO ) > 0 )
+				if ( next.isVisible() )
 				{
 					// Yes! Be happy and return
 					return;
@@ -844,7 +946,7 @@ public class SpotCollection implements MultiThreaded
 				}
 				next = contentIterator.next();
 				// Is it visible?
-				if ( next.getFeature( VISIBILITY ).compareTo( ZERO ) > 0 )
+				if ( next.isVisible() )
 				{
 					// Yes. Be happy, and return.
 					return;
@@ -884,10 +986,18 @@ public class SpotCollection implements MultiThreaded
 			final Set< Spot > fc = content.get( frame );
 			final List< Spot > toRemove = new ArrayList<>();
 			for ( final Spot spot : fc )
-				if ( !isVisible( spot ) )
+				if ( !spot.isVisible() )
 					toRemove.add( spot );
 
 			fc.removeAll( toRemove );
+			filterIndices.remove( frame );
+			synchronized ( ids )
+			{
+				if ( indexed )
+					for ( final Spot spot : toRemove )
+						if ( ids.get( spot.ID() ) == spot )
+							ids.remove( spot.ID() );
+			}
 		}
 	}
 
@@ -1003,9 +1113,4 @@ public class SpotCollection implements MultiThreaded
 		sc.content = new ConcurrentSkipListMap<>( source );
 		return sc;
 	}
-
-	private static final boolean isVisible( final Spot spot )
-	{
-		return spot.getFeature( VISIBILITY ).compareTo( ZERO ) > 0;
-	}
 }
@@ -24,18 +24,20 @@ package fiji.plugin.trackmate;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
 
 import org.scijava.Cancelable;
 import org.scijava.Named;
 import org.scijava.util.VersionUtils;
 
+import fiji.plugin.trackmate.detection.DetectionListener;
 import fiji.plugin.trackmate.detection.ManualDetectorFactory;
 import fiji.plugin.trackmate.detection.SpotDetector;
 import fiji.plugin.trackmate.detection.SpotDetectorFactory;
@@ -47,6 +49,9 @@ import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.features.SpotFeatureCalculator;
 import fiji.plugin.trackmate.features.TrackFeatureCalculator;
 import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.util.PlaneCache;
+import fiji.plugin.trackmate.util.ProfilingReport;
+import fiji.plugin.trackmate.util.TMExecutors;
 import fiji.plugin.trackmate.util.TMUtils;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
@@ -98,6 +103,38 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 
 	private final List< Cancelable > cancelables = Collections.synchronizedList( new ArrayList<>() );
 
+	/**
+	 * If <code>true</code>, frame-by-frame detection publishes each frame as
+	 * soon as it is detected, after initial filtering and spot feature
+	 * computation.
+	 */
+	private boolean streamingDetection = false;
+
+	/**
+	 * If <code>true</code>, frames are published in increasing frame order
+	 * in streaming mode.
+	 */
+	private boolean orderedStreaming = true;
+
+	/**
+	 * Whether the spot features were already computed during the last
+	 * detection step, in streaming mode.
+	 */
+	private boolean spotFeaturesStreamed = false;
+
+	private final List< DetectionListener > detectionListeners = new ArrayList<>();
+
+	/**
+	 * The maximal number of bytes of image data kept in memory when detecting
+	 * in a virtual stack.
+	 */
+	private long planeCacheSize = Runtime.getRuntime().maxMemory() / 4;
+
+	/**
+	 * The time spent in each step of the pipeline since the last detection.
+	 */
+	private final ProfilingReport profilingReport = new ProfilingReport();
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -136,6 +173,98 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return settings;
 	}
 
+	/**
+	 * Sets whether frame-by-frame detection runs in streaming mode.
+	 * <p>
+	 * In streaming mode, each frame is processed as soon as it has been
+	 * detected: the initial quality filter is applied to its spots, their
+	 * features are computed, and the frame is published to the registered
+	 * {@link DetectionListener}s. Detection, initial filtering and feature
+	 * computation then overlap instead of running one after the other, and
+	 * {@link #process()} skips the spot feature computation step. This has no
+	 * effect on detectors that process all frames at once.
+	 *
+	 * @param streamingDetection
+	 *            whether to use the streaming mode.
+	 * @param ordered
+	 *            if <code>true</code>, frames are published to listeners by
+	 *            increasing frame number. Otherwise they are published as
+	 *            soon as they complete.
+	 */
+	public void setStreamingDetection( final boolean streamingDetection, final boolean ordered )
+	{
+		this.streamingDetection = streamingDetection;
+		this.orderedStreaming = ordered;
+	}
+
+	/**
+	 * Sets the maximal number of bytes of image data kept in memory when
+	 * detecting in a virtual stack.
+	 * <p>
+	 * When the source image is a virtual stack, detection does not load the
+	 * whole movie. It works on a lazily loaded view whose planes are read on
+	 * demand and kept in a cache of this size, reading the planes of the next
+	 * frame ahead while the current ones are processed. The number of frames
+	 * processed simultaneously is reduced so that they fit in the cache. By
+	 * default, the cache may use a fourth of the maximal heap size.
+	 *
+	 * @param planeCacheSize
+	 *            the cache size, in bytes.
+	 * @see PlaneCache
+	 */
+	public void setPlaneCacheSize( final long planeCacheSize )
+	{
+		this.planeCacheSize = planeCacheSize;
+	}
+
+	/**
+	 * Returns the maximal number of bytes of image data kept in memory when
+	 * detecting in a virtual stack.
+	 *
+	 * @return the cache size, in bytes.
+	 * @see #setPlaneCacheSize(long)
+	 */
+	public long getPlaneCacheSize()
+	{
+		return planeCacheSize;
+	}
+
+	/**
+	 * Returns whether frame-by-frame detection runs in streaming mode.
+	 *
+	 * @return <code>true</code> if detection is streamed.
+	 * @see #setStreamingDetection(boolean, boolean)
+	 */
+	public boolean isStreamingDetection()
+	{
+		return streamingDetection;
+	}
+
+	/**
+	 * Registers a listener that will be notified of each frame detected in
+	 * streaming mode.
+	 *
+	 * @param listener
+	 *            the listener to add.
+	 * @return <code>true</code> if the listener was added.
+	 */
+	public boolean addDetectionListener( final DetectionListener listener )
+	{
+		return detectionListeners.add( listener );
+	}
+
+	/**
+	 * Removes a detection listener.
+	 *
+	 * @param listener
+	 *            the listener to remove.
+	 * @return <code>true</code> if the listener was registered.
+	 */
+	public boolean removeDetectionListener( final DetectionListener listener )
+	{
+		return detectionListeners.remove( listener );
+	}
+
 	/*
 	 * PROCESSES
 	 */
@@ -154,6 +283,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 *         <code>false</code> otherwise.
 	 */
 	public boolean computeSpotFeatures( final boolean doLogIt )
+	{
+		return profile( "Spot features", null, () -> computeSpotFeaturesAgent( doLogIt ), () -> model.getSpots().getNSpots( false ), "spots" );
+	}
+
+	private boolean computeSpotFeaturesAgent( final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -173,6 +307,8 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
 			}
 
+			addAnalyzerEntries( "Spot features", calculator.getAnalyzerProcessingTimes(), model.getSpots().getNSpots( false ), "spots" );
+
 			model.notifyFeaturesComputed();
 			return true;
 		}
@@ -195,6 +331,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 *         <code>false</code> otherwise.
 	 */
 	public boolean computeEdgeFeatures( final boolean doLogIt )
+	{
+		return profile( "Edge features", null, () -> computeEdgeFeaturesAgent( doLogIt ), () -> model.getTrackModel().edgeSet().size(), "edges" );
+	}
+
+	private boolean computeEdgeFeaturesAgent( final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -217,6 +358,8 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 			logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
 		}
 
+		addAnalyzerEntries( "Edge features", calculator.getAnalyzerProcessingTimes(), model.getTrackModel().edgeSet().size(), "edges" );
+
 		model.notifyFeaturesComputed();
 		return true;
 	}
@@ -229,6 +372,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 * @return <code>true</code> if the computation completed without errors.
 	 */
 	public boolean computeTrackFeatures( final boolean doLogIt )
+	{
+		return profile( "Track features", null, () -> computeTrackFeaturesAgent( doLogIt ), () -> model.getTrackModel().nTracks( false ), "tracks" );
+	}
+
+	private boolean computeTrackFeaturesAgent( final boolean doLogIt )
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -248,6 +396,8 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				logger.log( "Computation done in " + calculator.getProcessingTime() + " ms.\n" );
 			}
 
+			addAnalyzerEntries( "Track features", calculator.getAnalyzerProcessingTimes(), model.getTrackModel().nTracks( false ), "tracks" );
+
 			model.notifyFeaturesComputed();
 			return true;
 		}
@@ -271,6 +421,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 * @return <code>true</code> if the computation completed without errors.
 	 */
 	public boolean execTracking()
+	{
+		return profile( "Tracking", ( null == settings.trackerFactory ) ? null : settings.trackerFactory.getKey(), this::execTrackingAgent, () -> model.getTrackModel().edgeSet().size(), "edges" );
+	}
+
+	private boolean execTrackingAgent()
 	{
 		isCanceled = false;
 		cancelReason = null;
@@ -319,12 +474,23 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 *
 	 * @return true if the whole detection step has executed correctly.
 	 */
-	@SuppressWarnings( { "rawtypes", "unchecked" } )
 	public boolean execDetection()
+	{
+		// A new detection starts a new pipeline run.
+		profilingReport.clear();
+		return profile( "Detection",
+				( null == settings.detectorFactory ) ? null : settings.detectorFactory.getKey(),
+				this::execDetectionAgent,
+				() -> model.getSpots().getNSpots( false ), "spots" );
+	}
+
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private boolean execDetectionAgent()
 	{
 		isCanceled = false;
 		cancelReason = null;
 		cancelables.clear();
+		spotFeaturesStreamed = false;
 
 		final Logger logger = model.getLogger();
 		logger.log( "Starting detection process using "
@@ -350,32 +516,51 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		}
 
 		/*
-		 * Prepare interval
+		 * Prepare interval. Virtual stacks are read lazily through a bounded
+		 * plane cache instead of being loaded as a whole.
 		 */
-		final ImgPlus img = TMUtils.rawWraps( settings.imp );
+		final PlaneCache planeCache = settings.imp.getStack().isVirtual()
+				? new PlaneCache( settings.imp, planeCacheSize )
+				: null;
+		final ImgPlus img = ( null == planeCache )
+				? TMUtils.rawWraps( settings.imp )
+				: planeCache.getImgPlus();
+		if ( null != planeCache )
+			logger.log( String.format( "Reading the virtual stack through a %.1f MB plane cache.\n", planeCacheSize / 1e6 ) );
 
-		if ( !factory.setTarget( img, settings.detectorSettings ) )
+		try
 		{
-			errorMessage = factory.getErrorMessage();
-			return false;
-		}
+			if ( !factory.setTarget( img, settings.detectorSettings ) )
+			{
+				errorMessage = factory.getErrorMessage();
+				return false;
+			}
 
-		/*
-		 * Separate frame-by-frame or global detection depending on the factory
-		 * type.
-		 */
+			/*
+			 * Separate frame-by-frame or global detection depending on the
+			 * factory type.
+			 */
 
-		if ( factory instanceof SpotGlobalDetectorFactory )
-		{
-			return processGlobal( ( SpotGlobalDetectorFactory ) factory, img, logger );
+			if ( factory instanceof SpotGlobalDetectorFactory )
+			{
+				return processGlobal( ( SpotGlobalDetectorFactory ) factory, img, logger );
+			}
+			else if ( factory instanceof SpotDetectorFactory )
+			{
+				return processFrameByFrame( ( SpotDetectorFactory ) factory, img, planeCache, logger );
+			}
+
+			errorMessage = "Don't know how to handle detector factory of type: " + factory.getClass();
+			return false;
 		}
-		else if ( factory instanceof SpotDetectorFactory )
-		{ 
-			return processFrameByFrame( ( SpotDetectorFactory ) factory, img, logger ); 
+		finally
+		{
+			if ( null != planeCache )
+			{
+				logger.log( "Read " + planeCache.getReadCount() + " planes from the virtual stack.\n" );
+				planeCache.clear();
+			}
 		}
-
-		errorMessage = "Don't know how to handle detector factory of type: " + factory.getClass();
-		return false;
 	}
 
 	@SuppressWarnings( "rawtypes" )
@@ -456,7 +641,7 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	}
 
 	@SuppressWarnings( "rawtypes" )
-	private boolean processFrameByFrame( final SpotDetectorFactory factory, final ImgPlus img, final Logger logger )
+	private boolean processFrameByFrame( final SpotDetectorFactory factory, final ImgPlus img, final PlaneCache planeCache, final Logger logger )
 	{
 		final Interval interval = TMUtils.getInterval( img, settings );
 		final int zindex = img.dimensionIndex( Axes.Z );
@@ -476,9 +661,21 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		 * frame. But if we have 10 threads and 2 frames, we process the 2
 		 * frames at once, and allocate 5 threads per frame if we can.
 		 */
-		final int nSimultaneousFrames = ( factory.forbidMultithreading() )
+		int maxSimultaneousFrames = ( factory.forbidMultithreading() )
 				? 1
 				: Math.min( numThreads, numFrames );
+		if ( null != planeCache )
+		{
+			/*
+			 * Keep room in the plane cache for the frames being processed,
+			 * plus the one read ahead.
+			 */
+			final long framesInCache = planeCache.getMaxBytes() / Math.max( 1, planeCache.getFrameBytes() );
+			if ( framesInCache < 2 )
+				logger.log( "Warning: the plane cache cannot hold two frames. Planes may have to be read several times.\n", Logger.ERROR_COLOR );
+			maxSimultaneousFrames = ( int ) Math.max( 1, Math.min( maxSimultaneousFrames, framesInCache - 1 ) );
+		}
+		final int nSimultaneousFrames = maxSimultaneousFrames;
 		final int threadsPerFrame = Math.max( 1, numThreads / nSimultaneousFrames );
 
 		logger.log( "Detection processes "
@@ -487,8 +684,24 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				+ ( ( threadsPerFrame > 1 ) ? ( threadsPerFrame + " threads" ) : "1 thread" )
 				+ " per frame.\n" );
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( nSimultaneousFrames );
-		final List< Future< Boolean > > tasks = new ArrayList<>( numFrames );
+		/*
+		 * In streaming mode, each frame is filtered, its features computed
+		 * and then published as soon as it is detected.
+		 */
+		final FramePublisher publisher;
+		if ( streamingDetection )
+		{
+			logger.log( "Streaming detection: initial filtering and spot features are computed frame by frame"
+					+ ( orderedStreaming ? ", in frame order.\n" : ".\n" ) );
+			new SpotFeatureCalculator( model, settings, false ).declareFeatures();
+			publisher = new FramePublisher( settings.tstart, orderedStreaming );
+		}
+		else
+		{
+			publisher = null;
+		}
+
+		final List< Callable< Boolean > > tasks = new ArrayList<>( numFrames );
 		for ( int i = settings.tstart; i <= settings.tend; i++ )
 		{
 			final int frame = i;
@@ -499,7 +712,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				public Boolean call() throws Exception
 				{
 					if ( isCanceled() )
+					{
+						if ( null != publisher )
+							publisher.publish( frame, null );
 						return Boolean.TRUE; // ok to be canceled.
+					}
 
 					// Yield detector for target frame
 					final SpotDetector< ? > detector = factory.getDetector( interval, frame );
@@ -556,24 +773,50 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 							// SpotCollection.
 							spot.putFeature( Spot.POSITION_T, frame * settings.dt );
 						}
+
+						if ( null != publisher )
+							prunedSpots = streamFrame( frame, prunedSpots, threadsPerFrame );
+
 						// Store final results for this frame
 						spots.put( frame, prunedSpots );
 						// Report
 						spotFound.addAndGet( prunedSpots.size() );
 						logger.setProgress( progress.incrementAndGet() / ( double ) numFrames );
 
+						if ( null != publisher )
+							publisher.publish( frame, prunedSpots );
 					}
 					else
 					{
 						// Fail: exit and report error.
 						errorMessage = detector.getErrorMessage();
+						if ( null != publisher )
+							publisher.publish( frame, null );
 						return Boolean.FALSE;
 					}
 					return Boolean.TRUE;
 				}
 			};
-			final Future< Boolean > task = executorService.submit( callable );
-			tasks.add( task );
+			if ( null == planeCache )
+			{
+				tasks.add( callable );
+			}
+			else
+			{
+				// Read the next frame ahead, and release this one when done.
+				tasks.add( () -> {
+					if ( frame + nSimultaneousFrames <= settings.tend )
+						planeCache.prefetch( frame + nSimultaneousFrames );
+					try
+					{
+						return callable.call();
+					}
+					finally
+					{
+						planeCache.evict( frame );
+					}
+				} );
+			}
 		}
 		logger.setStatus( "Detection..." );
 		logger.setProgress( 0 );
@@ -581,9 +824,8 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		final AtomicBoolean reportOk = new AtomicBoolean( true );
 		try
 		{
-			for ( final Future< Boolean > task : tasks )
+			for ( final Boolean ok : TMExecutors.invokeAll( tasks, nSimultaneousFrames ) )
 			{
-				final Boolean ok = task.get();
 				if ( !ok )
 				{
 					reportOk.set( false );
@@ -598,6 +840,13 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 			e.printStackTrace();
 		}
 
+		if ( null != publisher )
+		{
+			// Release frames held back by a failed or canceled frame.
+			publisher.flush();
+			spotFeaturesStreamed = reportOk.get() && !isCanceled();
+		}
+
 		model.setSpots( spots, true );
 
 		if ( reportOk.get() )
@@ -616,6 +865,117 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return reportOk.get();
 	}
 
+	/**
+	 * Applies the initial quality filter to the spots of a single frame and
+	 * computes their features, in streaming mode.
+	 *
+	 * @param frame
+	 *            the frame the spots belong to.
+	 * @param spotsThisFrame
+	 *            the spots detected in this frame.
+	 * @param nThreads
+	 *            the number of threads to use for feature computation.
+	 * @return the spots that passed the initial filter.
+	 */
+	private List< Spot > streamFrame( final int frame, final List< Spot > spotsThisFrame, final int nThreads )
+	{
+		final SpotCollection frameSpots = new SpotCollection();
+		frameSpots.setNumThreads( 1 );
+		frameSpots.put( frame, spotsThisFrame );
+		if ( null != settings.initialSpotFilterValue )
+		{
+			// Same filter as execInitialSpotFiltering().
+			frameSpots.filter( new FeatureFilter( Spot.QUALITY, settings.initialSpotFilterValue, true ) );
+			frameSpots.crop();
+		}
+		final List< Spot > filtered = new ArrayList<>( frameSpots.getNSpots( frame, false ) );
+		for ( final Spot spot : frameSpots.iterable( frame, false ) )
+			filtered.add( spot );
+
+		if ( isCanceled() )
+			return filtered;
+
+		final SpotFeatureCalculator calculator = new SpotFeatureCalculator( model, settings, false );
+		cancelables.add( calculator );
+		calculator.setNumThreads( nThreads );
+		calculator.computeSpotFeatures( frameSpots, false );
+		cancelables.remove( calculator );
+		return filtered;
+	}
+
+	/**
+	 * Dispatches the frames detected in streaming mode to the detection
+	 * listeners. In ordered mode, frames that complete early are held back
+	 * until all the frames before them have been published.
+	 */
+	private final class FramePublisher
+	{
+
+		private final boolean ordered;
+
+		private final TreeMap< Integer, List< Spot > > pending = new TreeMap<>();
+
+		private int next;
+
+		private FramePublisher( final int firstFrame, final boolean ordered )
+		{
+			this.next = firstFrame;
+			this.ordered = ordered;
+		}
+
+		/**
+		 * Publishes the spots of the specified frame.
+		 *
+		 * @param frame
+		 *            the frame.
+		 * @param spotsThisFrame
+		 *            the spots of the frame, or <code>null</code> if the frame
+		 *            could not be detected and should be skipped.
+		 */
+		private void publish( final int frame, final List< Spot > spotsThisFrame )
+		{
+			if ( !ordered )
+			{
+				if ( null != spotsThisFrame )
+					fire( frame, spotsThisFrame );
+				return;
+			}
+
+			synchronized ( this )
+			{
+				pending.put( Integer.valueOf( frame ), spotsThisFrame );
+				while ( pending.containsKey( Integer.valueOf( next ) ) )
+				{
+					final List< Spot > toFire = pending.remove( Integer.valueOf( next ) );
+					if ( null != toFire )
+						fire( next, toFire );
+					next++;
+				}
+			}
+		}
+
+		/**
+		 * Publishes all the frames still pending, in order.
+		 */
+		private synchronized void flush()
+		{
+			for ( final Integer frame : pending.keySet() )
+			{
+				final List< Spot > toFire = pending.get( frame );
+				if ( null != toFire )
+					fire( frame.intValue(), toFire );
+			}
+			pending.clear();
+		}
+
+		private void fire( final int frame, final List< Spot > spotsThisFrame )
+		{
+			final List< Spot > view = Collections.unmodifiableList( spotsThisFrame );
+			for ( final DetectionListener listener : detectionListeners )
+				listener.frameDetected( frame, view );
+		}
+	}
+
 	/**
 	 * Execute the initial spot filtering part.
 	 * <p>
@@ -641,6 +1001,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 * @return <code>true</code> if the computation completed without errors.
 	 */
 	public boolean execInitialSpotFiltering()
+	{
+		return profile( "Initial spot filtering", null, this::execInitialSpotFilteringAgent, () -> model.getSpots().getNSpots( false ), "spots" );
+	}
+
+	private boolean execInitialSpotFilteringAgent()
 	{
 		// Cannot be canceled.
 		final Logger logger = model.getLogger();
@@ -675,6 +1040,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	 * @return <code>true</code> if the computation completed without errors.
 	 */
 	public boolean execSpotFiltering( final boolean doLogIt )
+	{
+		return profile( "Spot filtering", null, () -> execSpotFilteringAgent( doLogIt ), () -> model.getSpots().getNSpots( false ), "spots" );
+	}
+
+	private boolean execSpotFilteringAgent( final boolean doLogIt )
 	{
 		// Cannot be canceled.
 		if ( doLogIt )
@@ -687,6 +1057,11 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	}
 
 	public boolean execTrackFiltering( final boolean doLogIt )
+	{
+		return profile( "Track filtering", null, () -> execTrackFilteringAgent( doLogIt ), () -> model.getTrackModel().nTracks( false ), "tracks" );
+	}
+
+	private boolean execTrackFilteringAgent( final boolean doLogIt )
 	{
 		// Cannot be canceled.
 
@@ -736,6 +1111,36 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return true;
 	}
 
+	/**
+	 * Returns the time spent in each step of the pipeline, and in each
+	 * analyzer, detector and tracker, since the last detection. The report is
+	 * cleared when a new detection starts.
+	 *
+	 * @return the profiling report.
+	 */
+	public ProfilingReport getProfilingReport()
+	{
+		return profilingReport;
+	}
+
+	/**
+	 * Runs a step of the pipeline and adds its measures to the profiling
+	 * report.
+	 */
+	private boolean profile( final String stage, final String component, final BooleanSupplier step, final LongSupplier items, final String itemName )
+	{
+		final ProfilingReport.Measurement measurement = profilingReport.start( stage, component, numThreads );
+		final boolean ok = step.getAsBoolean();
+		measurement.stop( items.getAsLong(), itemName );
+		return ok;
+	}
+
+	private void addAnalyzerEntries( final String stage, final Map< String, Long > processingTimes, final long items, final String itemName )
+	{
+		for ( final String analyzer : processingTimes.keySet() )
+			profilingReport.add( stage, analyzer, processingTimes.get( analyzer ).longValue() * 1000000l, items, itemName );
+	}
+
 	@Override
 	public String toString()
 	{
@@ -786,7 +1191,9 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		if ( isCanceled() )
 			return true;
 
-		if ( !computeSpotFeatures( true ) )
+		if ( spotFeaturesStreamed )
+			model.notifyFeaturesComputed();
+		else if ( !computeSpotFeatures( true ) )
 			return false;
 		if ( isCanceled() )
 			return true;
@@ -814,6 +1221,7 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		if ( !execTrackFiltering( true ) )
 			return false;
 
+		model.getLogger().log( profilingReport.toString() );
 		return true;
 	}
 
@@ -826,7 +1234,7 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 	@Override
 	public void setNumThreads()
 	{
-		this.numThreads = Runtime.getRuntime().availableProcessors();
+		setNumThreads( Runtime.getRuntime().availableProcessors() );
 	}
 
 	@Override
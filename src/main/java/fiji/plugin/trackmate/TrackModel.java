@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -35,13 +36,9 @@ import java.util.regex.Pattern;
 
 import org.jgrapht.Graph;
 import org.jgrapht.alg.shortestpath.DijkstraShortestPath;
-import org.jgrapht.event.ConnectedComponentTraversalEvent;
-import org.jgrapht.event.EdgeTraversalEvent;
 import org.jgrapht.event.GraphEdgeChangeEvent;
 import org.jgrapht.event.GraphListener;
 import org.jgrapht.event.GraphVertexChangeEvent;
-import org.jgrapht.event.TraversalListener;
-import org.jgrapht.event.VertexTraversalEvent;
 import org.jgrapht.graph.AsUnweightedGraph;
 import org.jgrapht.graph.DefaultListenableGraph;
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -675,14 +672,89 @@ public class TrackModel
 		tracksUpdated.clear();
 
 		final Set< Spot > vertexSet = lGraph.vertexSet();
-		if ( vertexSet.size() > 0 )
+		final int nVertices = vertexSet.size();
+		if ( nVertices == 0 )
+			return;
+
+		/*
+		 * Find the connected components with a union-find over primitive
+		 * vertex indices.
+		 */
+		final Spot[] vertices = vertexSet.toArray( new Spot[ nVertices ] );
+		final Map< Spot, Integer > index = new HashMap<>( 2 * nVertices );
+		for ( int i = 0; i < nVertices; i++ )
+			index.put( vertices[ i ], Integer.valueOf( i ) );
+
+		final Set< DefaultWeightedEdge > edgeSet = lGraph.edgeSet();
+		final int nEdges = edgeSet.size();
+		final DefaultWeightedEdge[] edges = edgeSet.toArray( new DefaultWeightedEdge[ nEdges ] );
+		final int[] edgeSources = new int[ nEdges ];
+		final UnionFind uf = new UnionFind( nVertices );
+		for ( int i = 0; i < nEdges; i++ )
+		{
+			final int source = index.get( lGraph.getEdgeSource( edges[ i ] ) ).intValue();
+			final int target = index.get( lGraph.getEdgeTarget( edges[ i ] ) ).intValue();
+			edgeSources[ i ] = source;
+			uf.union( source, target );
+		}
+
+		/*
+		 * Number the components in the order of the first vertex they contain,
+		 * lonely vertices included, and count their edges.
+		 */
+		final int[] componentIDs = new int[ nVertices ];
+		final int[] componentEdges = new int[ nVertices ];
+		Arrays.fill( componentIDs, -1 );
+		final int[] roots = new int[ nVertices ];
+		int nComponents = 0;
+		for ( int i = 0; i < nVertices; i++ )
+		{
+			final int root = uf.find( i );
+			if ( componentIDs[ root ] < 0 )
+			{
+				componentIDs[ root ] = IDcounter++;
+				roots[ nComponents++ ] = root;
+			}
+		}
+		for ( int i = 0; i < nEdges; i++ )
+			componentEdges[ uf.find( edgeSources[ i ] ) ]++;
+
+		/*
+		 * Materialize the sets of the components that have edges. Lonely
+		 * vertices do not make a track.
+		 */
+		final Map< Integer, Set< Spot > > vertexSets = new HashMap<>();
+		final Map< Integer, Set< DefaultWeightedEdge > > edgeSets = new HashMap<>();
+		for ( int c = 0; c < nComponents; c++ )
+		{
+			final int root = roots[ c ];
+			if ( componentEdges[ root ] == 0 )
+				continue;
+
+			final Integer ID = Integer.valueOf( componentIDs[ root ] );
+			vertexSets.put( ID, new HashSet<>( 2 * uf.size( root ) ) );
+			edgeSets.put( ID, new HashSet<>( 2 * componentEdges[ root ] ) );
+			visibility.put( ID, DEFAULT_VISIBILITY );
+			names.put( ID, nameGenerator.next() );
+		}
+		for ( int i = 0; i < nVertices; i++ )
 		{
-			final BreadthFirstIterator< Spot, DefaultWeightedEdge > i = new BreadthFirstIterator<>( lGraph );
-			i.addTraversalListener( new MyTraversalListener() );
+			final int root = uf.find( i );
+			if ( componentEdges[ root ] == 0 )
+				continue;
 
-			while ( i.hasNext() )
-				i.next();
+			final Integer ID = Integer.valueOf( componentIDs[ root ] );
+			vertexSets.get( ID ).add( vertices[ i ] );
+			vertexToID.put( vertices[ i ], ID );
 		}
+		for ( int i = 0; i < nEdges; i++ )
+		{
+			final Integer ID = Integer.valueOf( componentIDs[ uf.find( edgeSources[ i ] ) ] );
+			edgeSets.get( ID ).add( edges[ i ] );
+			edgeToID.put( edges[ i ], ID );
+		}
+		connectedVertexSets.putAll( vertexSets );
+		connectedEdgeSets.putAll( edgeSets );
 	}
 
 	/*
@@ -815,67 +887,62 @@ public class TrackModel
 	 * Inner Classes
 	 */
 
-	private class MyTraversalListener implements TraversalListener< Spot, DefaultWeightedEdge >
+	/**
+	 * Disjoint-set forest over primitive indices, with path halving and union
+	 * by size.
+	 */
+	private static final class UnionFind
 	{
-		private Set< Spot > currentConnectedVertexSet;
 
-		private Set< DefaultWeightedEdge > currentConnectedEdgeSet;
+		private final int[] parents;
 
-		private Integer ID;
+		private final int[] sizes;
 
-		/**
-		 * Called when after traversing a connected set. Stores it, gives it
-		 * default visibility, and a default name. Discard sets made of 1
-		 * vertices or 0 edges.
-		 */
-		@Override
-		public void connectedComponentFinished( final ConnectedComponentTraversalEvent event )
+		private UnionFind( final int n )
 		{
-			if ( currentConnectedVertexSet.size() <= 1 || currentConnectedEdgeSet.size() == 0 )
+			parents = new int[ n ];
+			sizes = new int[ n ];
+			for ( int i = 0; i < n; i++ )
 			{
-				// Forget them
-				for ( final DefaultWeightedEdge e : currentConnectedEdgeSet )
-					edgeToID.remove( e );
-
-				for ( final Spot v : currentConnectedVertexSet )
-					vertexToID.remove( v );
-
-				return;
+				parents[ i ] = i;
+				sizes[ i ] = 1;
 			}
-			// Adds them
-			connectedVertexSets.put( ID, currentConnectedVertexSet );
-			connectedEdgeSets.put( ID, currentConnectedEdgeSet );
-			visibility.put( ID, DEFAULT_VISIBILITY );
-			names.put( ID, nameGenerator.next() );
 		}
 
-		@Override
-		public void connectedComponentStarted( final ConnectedComponentTraversalEvent e )
+		private int find( int i )
 		{
-			currentConnectedVertexSet = new HashSet<>();
-			currentConnectedEdgeSet = new HashSet<>();
-			ID = IDcounter++;
+			while ( parents[ i ] != i )
+			{
+				parents[ i ] = parents[ parents[ i ] ];
+				i = parents[ i ];
+			}
+			return i;
 		}
 
-		@Override
-		public void vertexTraversed( final VertexTraversalEvent< Spot > event )
+		private void union( final int i, final int j )
 		{
-			final Spot v = event.getVertex();
-			currentConnectedVertexSet.add( v );
-			vertexToID.put( v, ID );
+			int ri = find( i );
+			int rj = find( j );
+			if ( ri == rj )
+				return;
+
+			if ( sizes[ ri ] < sizes[ rj ] )
+			{
+				final int tmp = ri;
+				ri = rj;
+				rj = tmp;
+			}
+			parents[ rj ] = ri;
+			sizes[ ri ] += sizes[ rj ];
 		}
 
-		@Override
-		public void edgeTraversed( final EdgeTraversalEvent< DefaultWeightedEdge > event )
+		/**
+		 * Size of the component, to be called on a root.
+		 */
+		private int size( final int root )
 		{
-			final DefaultWeightedEdge e = event.getEdge();
-			currentConnectedEdgeSet.add( e );
-			edgeToID.put( e, ID );
+			return sizes[ root ];
 		}
-
-		@Override
-		public void vertexFinished( final VertexTraversalEvent< Spot > e )
-		{}
 	}
 
 	/**
@@ -988,57 +1055,42 @@ public class TrackModel
 					final Set< DefaultWeightedEdge > ses = connectedEdgeSets.get( sid );
 					ses.add( e );
 					edgeToID.put( e, sid );
+					tracksUpdated.add( sid );
 
 				}
 				else
 				{
 					// They come from different sets.
 
-					// Edges:
-					final Set< DefaultWeightedEdge > ses = connectedEdgeSets.get( sid );
-					final Set< DefaultWeightedEdge > tes = connectedEdgeSets.get( tid );
-					final HashSet< DefaultWeightedEdge > nes = new HashSet<>( ses.size() + tes.size() + 1 );
-					nes.addAll( ses );
-					nes.addAll( tes );
-					nes.add( e );
-
-					// Vertices:
-					final Set< Spot > svs = connectedVertexSets.get( sid );
-					final Set< Spot > tvs = connectedVertexSets.get( tid );
-					final HashSet< Spot > nvs = new HashSet<>( ses.size() + tes.size() );
-					nvs.addAll( svs );
-					nvs.addAll( tvs );
-
-					Integer nid, rid;
-					if ( nvs.size() > tvs.size() )
+					/*
+					 * The smallest set is merged into the largest one, so
+					 * that only the vertices and edges of the smallest set
+					 * change id.
+					 */
+					final Integer nid, rid;
+					if ( connectedVertexSets.get( sid ).size() >= connectedVertexSets.get( tid ).size() )
 					{
 						nid = sid;
 						rid = tid;
-						for ( final Spot v : tvs )
-						{
-							// Vertices of target set change id
-							vertexToID.put( v, nid );
-						}
-						for ( final DefaultWeightedEdge te : tes )
-							edgeToID.put( te, nid );
 					}
 					else
 					{
 						nid = tid;
 						rid = sid;
-						for ( final Spot v : svs )
-						{
-							// Vertices of source set change id
-							vertexToID.put( v, nid );
-						}
-						for ( final DefaultWeightedEdge se : ses )
-							edgeToID.put( se, nid );
 					}
+
+					final Set< Spot > rvs = connectedVertexSets.remove( rid );
+					for ( final Spot v : rvs )
+						vertexToID.put( v, nid );
+					connectedVertexSets.get( nid ).addAll( rvs );
+
+					final Set< DefaultWeightedEdge > res = connectedEdgeSets.remove( rid );
+					for ( final DefaultWeightedEdge re : res )
+						edgeToID.put( re, nid );
+					final Set< DefaultWeightedEdge > nes = connectedEdgeSets.get( nid );
+					nes.addAll( res );
+					nes.add( e );
 					edgeToID.put( e, nid );
-					connectedVertexSets.put( nid, nvs );
-					connectedVertexSets.remove( rid );
-					connectedEdgeSets.put( nid, nes );
-					connectedEdgeSets.remove( rid );
 
 					// Transaction: we signal that the large id is to be
 					// updated, and forget about the small one
@@ -1169,35 +1221,49 @@ public class TrackModel
 			}
 			else
 			{
-				// So there are some edges remaining in the set.
-				// Look at the connected component of its source and target.
-				// Source
-				final HashSet< Spot > sourceVCS = new HashSet<>();
-				final HashSet< DefaultWeightedEdge > sourceECS = new HashSet<>();
+				/*
+				 * So there are some edges remaining in the set. Explore the
+				 * connected components of its source and target in lockstep.
+				 * We stop as soon as they meet, or as soon as the smallest one
+				 * is exhausted, so that the cost of the exploration scales
+				 * with the smallest part.
+				 */
+				final BreadthFirstIterator< Spot, DefaultWeightedEdge > si = new BreadthFirstIterator<>( graph, graph.getEdgeSource( e ) );
+				final BreadthFirstIterator< Spot, DefaultWeightedEdge > ti = new BreadthFirstIterator<>( graph, graph.getEdgeTarget( e ) );
+				final Set< Spot > sourceVCS = new HashSet<>();
+				final Set< Spot > targetVCS = new HashSet<>();
+				final Set< Spot > smallVCS;
+				while ( true )
 				{
-					final Spot source = graph.getEdgeSource( e );
-					// Get its connected set
-					final BreadthFirstIterator< Spot, DefaultWeightedEdge > i = new BreadthFirstIterator<>( graph, source );
-					while ( i.hasNext() )
+					if ( !si.hasNext() )
+					{
+						/*
+						 * The source part is exhausted. If the target part has
+						 * the same size, the source part keeps the id.
+						 */
+						smallVCS = ti.hasNext() ? sourceVCS : targetVCS;
+						break;
+					}
+					final Spot sv = si.next();
+					if ( targetVCS.contains( sv ) )
 					{
-						final Spot sv = i.next();
-						sourceVCS.add( sv );
-						sourceECS.addAll( graph.edgesOf( sv ) );
+						smallVCS = null;
+						break;
 					}
-				}
-				// Target
-				final HashSet< Spot > targetVCS = new HashSet<>();
-				final HashSet< DefaultWeightedEdge > targetECS = new HashSet<>();
-				{
-					final Spot target = graph.getEdgeTarget( e );
-					// Get its connected set
-					final BreadthFirstIterator< Spot, DefaultWeightedEdge > i = new BreadthFirstIterator<>( graph, target );
-					while ( i.hasNext() )
+					sourceVCS.add( sv );
+
+					if ( !ti.hasNext() )
 					{
-						final Spot sv = i.next();
-						targetVCS.add( sv );
-						targetECS.addAll( graph.edgesOf( sv ) );
+						smallVCS = targetVCS;
+						break;
 					}
+					final Spot tv = ti.next();
+					if ( sourceVCS.contains( tv ) )
+					{
+						smallVCS = null;
+						break;
+					}
+					targetVCS.add( tv );
 				}
 
 				/*
@@ -1207,119 +1273,52 @@ public class TrackModel
 				 * split the track in 2. We therefore need not to re-attribute
 				 * it.
 				 */
-				if ( targetVCS.equals( sourceVCS ) )
-				{
-					tracksUpdated.add( id );
-					connectedEdgeSets.get( id ).remove( e );
+				tracksUpdated.add( id );
+				if ( null == smallVCS )
 					return;
-				}
 
 				/*
-				 * Re-attribute the found connected sets to the model. The
-				 * largest one (in vertices) gets the original id, the other
-				 * gets a new id. As for names: the largest one keeps its name,
-				 * the small one gets a new name.
+				 * The largest part (in vertices) keeps the original id, the
+				 * other is removed from it and gets a new id. As for names:
+				 * the largest one keeps its name, the small one gets a new
+				 * name.
 				 */
+				final Set< DefaultWeightedEdge > smallECS = new HashSet<>();
+				for ( final Spot v : smallVCS )
+					smallECS.addAll( graph.edgesOf( v ) );
 
-				if ( targetVCS.size() > sourceVCS.size() )
-				{
-
-					connectedEdgeSets.put( id, targetECS );
-					connectedVertexSets.put( id, targetVCS ); // they already
-																// have the
-																// right id in
-																// #vertexToId
-					tracksUpdated.add( id ); // old track has changed
-
-					if ( sourceECS.size() > 0 )
-					{
-						// the smaller part is still a track
-						final int newid = IDcounter++;
-						connectedEdgeSets.put( newid, sourceECS ); // otherwise
-																	// forget it
-						for ( final DefaultWeightedEdge te : sourceECS )
-							edgeToID.put( te, newid );
-
-						connectedVertexSets.put( newid, sourceVCS );
-						for ( final Spot tv : sourceVCS )
-							vertexToID.put( tv, newid );
-
-						final Boolean targetVisibility = visibility.get( id );
-						visibility.put( newid, targetVisibility );
-						names.put( newid, nameGenerator.next() );
-						// Transaction: both children tracks are marked for
-						// update.
-						tracksUpdated.add( newid );
-
-					}
-					else
-					{
-						/*
-						 * Nothing remains from the smallest part. The remaining
-						 * solitary vertex has no right to be called a track.
-						 */
-						final Spot solitary = sourceVCS.iterator().next();
-						vertexToID.remove( solitary );
-					}
+				connectedVertexSets.get( id ).removeAll( smallVCS );
+				set.removeAll( smallECS );
 
+				if ( smallECS.size() > 0 )
+				{
+					// the smaller part is still a track
+					final int newid = IDcounter++;
+					connectedEdgeSets.put( newid, smallECS );
+					for ( final DefaultWeightedEdge se : smallECS )
+						edgeToID.put( se, newid );
+
+					connectedVertexSets.put( newid, smallVCS );
+					for ( final Spot v : smallVCS )
+						vertexToID.put( v, newid );
+
+					visibility.put( newid, visibility.get( id ) );
+					names.put( newid, nameGenerator.next() );
+					// Transaction: both children tracks are marked for
+					// update.
+					tracksUpdated.add( newid );
 				}
 				else
 				{
-
-					if ( sourceECS.size() > 0 )
-					{
-						// There are still some pieces left. It is worth noting
-						// it.
-						connectedEdgeSets.put( id, sourceECS );
-						connectedVertexSets.put( id, sourceVCS );
-						tracksUpdated.add( id );
-
-						if ( targetECS.size() > 0 )
-						{
-							// the small part is still a track
-							final int newid = IDcounter++;
-							connectedEdgeSets.put( newid, targetECS );
-							for ( final DefaultWeightedEdge te : targetECS )
-								edgeToID.put( te, newid );
-
-							connectedVertexSets.put( newid, targetVCS );
-							for ( final Spot v : targetVCS )
-								vertexToID.put( v, newid );
-
-							final Boolean targetVisibility = visibility.get( id );
-							visibility.put( newid, targetVisibility );
-							names.put( newid, nameGenerator.next() );
-							// Transaction: both children tracks are marked for
-							// update.
-							tracksUpdated.add( newid );
-						}
-						else
-						{
-							/*
-							 * Nothing remains from the smallest part. The
-							 * remaining solitary vertex has no right to be
-							 * called a track.
-							 */
-							final Spot solitary = targetVCS.iterator().next();
-							vertexToID.remove( solitary );
-						}
-
-					}
-					else
-					{
-						// Nothing remains (maybe a solitary vertex) -> forget
-						// about it all.
-						connectedEdgeSets.remove( id );
-						connectedVertexSets.remove( id );
-						names.remove( id );
-						visibility.remove( id );
-						tracksUpdated.remove( id );
-					}
-
+					/*
+					 * Nothing remains from the smallest part. The remaining
+					 * solitary vertex has no right to be called a track.
+					 */
+					for ( final Spot solitary : smallVCS )
+						vertexToID.remove( solitary );
 				}
 			}
 		}
-
 	}
 
 	private static class DefaultNameGenerator implements Iterator< String >
@@ -162,14 +162,10 @@ public class PlotNSpotsVsTimeAction extends AbstractTMAction
 		}
 
 		@Override
-		public Number getX( final int series, final int item )
-		{
-			return Double.valueOf( time[ item ] );
-		}
-
-		@Override
-		public Number getY( final int series, final int item )
+		protected Double getFeature( final int item, final String feature )
 		{
+			if ( xFeature.equals( feature ) )
+				return Double.valueOf( time[ item ] );
 			return Double.valueOf( nspots[ item ] );
 		}
 
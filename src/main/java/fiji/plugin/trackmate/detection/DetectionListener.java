@@ -0,0 +1,64 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.EventListener;
+import java.util.List;
+
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Interface for listeners that are notified every time the detection of a
+ * single frame completes, when {@link fiji.plugin.trackmate.TrackMate} runs
+ * in streaming detection mode.
+ * <p>
+ * In streaming mode, the spots of a frame are published as soon as this frame
+ * has been detected, without waiting for the other frames. By the time they
+ * are published, the initial quality filter has been applied to them and
+ * their features have been computed. Listeners can therefore start downstream
+ * processing (feature-based filtering, frame-to-frame linking, display...)
+ * while the detection of the other frames is still running.
+ * <p>
+ * Notifications are emitted from the detection threads. If the streaming mode
+ * is ordered, frames are published by increasing frame number, one at a time,
+ * and a listener can rely on frame <code>t-1</code> having been published
+ * before frame <code>t</code>. If it is unordered, frames are published in the
+ * order they complete, possibly concurrently, and listeners must be
+ * thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface DetectionListener extends EventListener
+{
+
+	/**
+	 * Called when the detection of the specified frame is complete.
+	 *
+	 * @param frame
+	 *            the frame that has been detected.
+	 * @param spots
+	 *            the spots found in this frame, after initial filtering. Must
+	 *            not be modified by listeners.
+	 */
+	public void frameDetected( final int frame, final List< Spot > spots );
+
+}
@@ -27,8 +27,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 import fiji.plugin.trackmate.Logger;
@@ -38,6 +36,7 @@ import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.detection.util.MedianFilter2D;
+import fiji.plugin.trackmate.util.TMExecutors;
 import ij.ImagePlus;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
@@ -344,18 +343,16 @@ public class DetectionUtils
 		val.setReal( threshold );
 		final LocalNeighborhoodCheck< Point, FloatType > localNeighborhoodCheck = new LocalExtrema.MaximumCheck<>( val );
 		final IntervalView< FloatType > dogWithBorder = Views.interval( Views.extendMirrorSingle( source ), Intervals.expand( source, 1 ) );
-		final ExecutorService service = Executors.newFixedThreadPool( numThreads );
 		List< Point > peaks;
 		try
 		{
-			peaks = LocalExtrema.findLocalExtrema( dogWithBorder, localNeighborhoodCheck, new RectangleShape( 1, true ), service, numThreads );
+			peaks = LocalExtrema.findLocalExtrema( dogWithBorder, localNeighborhoodCheck, new RectangleShape( 1, true ), TMExecutors.getExecutor(), numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 			peaks = Collections.emptyList();
 		}
-		service.shutdown();
 
 		if ( peaks.isEmpty() )
 		{ return Collections.emptyList(); }
@@ -23,10 +23,9 @@ package fiji.plugin.trackmate.detection;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TMExecutors;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.algorithm.MultiThreaded;
@@ -160,11 +159,8 @@ public class LogDetector< T extends RealType< T > & NativeType< T >> implements
 		final ImgFactory< ComplexFloatType > imgFactory = Util.getArrayOrCellImgFactory( fftinterval, new ComplexFloatType() );
 		fftconv.setFFTImgFactory( imgFactory );
 
-		final ExecutorService service = Executors.newFixedThreadPool(numThreads);
-		fftconv.setExecutorService(service);
-
+		fftconv.setExecutorService( TMExecutors.getExecutor() );
 		fftconv.convolve();
-		service.shutdown();
 
 		final long[] minopposite = new long[ interval.numDimensions() ];
 		interval.min( minopposite );
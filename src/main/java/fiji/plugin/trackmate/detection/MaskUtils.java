@@ -23,13 +23,17 @@ package fiji.plugin.trackmate.detection;
 
 import java.awt.Polygon;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.util.TMExecutors;
 import ij.ImagePlus;
 import ij.gui.PolygonRoi;
 import ij.measure.Measurements;
@@ -206,10 +210,13 @@ public class MaskUtils
 		// Structuring element.
 		final StructuringElement se = StructuringElement.FOUR_CONNECTED;
 
-		// Get connected components.
+		/*
+		 * Get connected components, on the shared executor or in the calling
+		 * thread. The shared executor must not be shut down.
+		 */
 		final ExecutorService executorService = numThreads > 1
-				? Executors.newFixedThreadPool( numThreads )
-				: Executors.newSingleThreadExecutor();
+				? TMExecutors.getExecutor()
+				: new CallerRunsExecutor();
 
 		ConnectedComponents.labelAllConnectedComponents(
 				bitMask,
@@ -217,7 +224,6 @@ public class MaskUtils
 				MaskUtils.labelGenerator(),
 				se,
 				executorService );
-		executorService.shutdown();
 		return labeling;
 	}
 
@@ -1140,4 +1146,52 @@ public class MaskUtils
 		}
 	}
 
+
+	/**
+	 * Executes the tasks in the calling thread.
+	 */
+	private static final class CallerRunsExecutor extends AbstractExecutorService
+	{
+
+		private volatile boolean shutdown = false;
+
+		@Override
+		public void execute( final Runnable command )
+		{
+			if ( shutdown )
+				throw new RejectedExecutionException( "Executor is shut down." );
+			command.run();
+		}
+
+		@Override
+		public void shutdown()
+		{
+			shutdown = true;
+		}
+
+		@Override
+		public List< Runnable > shutdownNow()
+		{
+			shutdown = true;
+			return Collections.emptyList();
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return shutdown;
+		}
+
+		@Override
+		public boolean awaitTermination( final long timeout, final TimeUnit unit )
+		{
+			return shutdown;
+		}
+	}
 }
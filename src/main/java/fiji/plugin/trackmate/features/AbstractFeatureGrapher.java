@@ -25,6 +25,8 @@ import static fiji.plugin.trackmate.gui.Fonts.FONT;
 import static fiji.plugin.trackmate.gui.Fonts.SMALL_FONT;
 
 import java.awt.Color;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
@@ -103,6 +105,7 @@ public abstract class AbstractFeatureGrapher
 
 		// Generate one panel per different dimension
 		final ArrayList< ExportableChartPanel > chartPanels = new ArrayList<>( dimensions.size() );
+		final ArrayList< ModelDataset > datasets = new ArrayList<>( dimensions.size() );
 		for ( final Dimension dimension : dimensions )
 		{
 
@@ -117,6 +120,7 @@ public abstract class AbstractFeatureGrapher
 
 			// Dataset.
 			final ModelDataset dataset = buildMainDataSet( featuresThisDimension );
+			datasets.add( dataset );
 			final XYItemRenderer renderer = dataset.getRenderer();
 
 			// The chart
@@ -154,7 +158,19 @@ public abstract class AbstractFeatureGrapher
 			chartPanels.add( chartPanel );
 		}
 
-		return renderCharts( chartPanels );
+		final JFrame frame = renderCharts( chartPanels );
+
+		// Stop updating the datasets when the plot is closed.
+		frame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				for ( final ModelDataset dataset : datasets )
+					dataset.close();
+			}
+		} );
+		return frame;
 	}
 
 	protected abstract ModelDataset buildMainDataSet( final List< String > targetYFeatures );
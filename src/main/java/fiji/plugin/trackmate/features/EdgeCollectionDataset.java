@@ -26,11 +26,10 @@ import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Stroke;
 import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.function.Function;
 
 import org.jfree.chart.LegendItem;
@@ -60,7 +59,16 @@ public class EdgeCollectionDataset extends ModelDataset
 
 	private final List< DefaultWeightedEdge > edges;
 
-	private final Map< Integer, Set< DefaultWeightedEdge > > edgeMap;
+	/**
+	 * For each item, the items whose source is its target. Items without
+	 * successors map to <code>null</code>.
+	 */
+	private final int[][] edgeMap;
+
+	/**
+	 * The edge color generator, created lazily from the display settings.
+	 */
+	private volatile FeatureColorGenerator< DefaultWeightedEdge > edgeColorGenerator;
 
 	private final Function< DefaultWeightedEdge, String > labelGenerator;
 
@@ -87,25 +95,24 @@ public class EdgeCollectionDataset extends ModelDataset
 	 *            the spot collection.
 	 * @param trackModel
 	 *            the graph.
-	 * @return a new map.
+	 * @return for each edge, the index of the edges that start where it ends.
 	 */
-	private static Map< Integer, Set< DefaultWeightedEdge > > createEdgeMap( final List< DefaultWeightedEdge > edges, final TrackModel trackModel )
+	static int[][] createEdgeMap( final List< DefaultWeightedEdge > edges, final TrackModel trackModel )
 	{
-		final Map< Integer, Set< DefaultWeightedEdge > > edgeMap = new HashMap<>();
+		final Map< Spot, List< Integer > > bySource = new HashMap<>( 2 * edges.size() );
+		for ( int i = 0; i < edges.size(); i++ )
+			bySource.computeIfAbsent( trackModel.getEdgeSource( edges.get( i ) ), k -> new ArrayList<>( 1 ) ).add( Integer.valueOf( i ) );
+
+		final int[][] edgeMap = new int[ edges.size() ][];
 		for ( int i = 0; i < edges.size(); i++ )
 		{
-			final Set< DefaultWeightedEdge > successors = new HashSet<>();
-			final DefaultWeightedEdge edge = edges.get( i );
-			final Spot target = trackModel.getEdgeTarget( edge );
-			for ( final DefaultWeightedEdge edgeCandidate : edges )
-			{
-				final Spot source = trackModel.getEdgeSource( edgeCandidate );
-				if ( source == target )
-					successors.add( edgeCandidate );
+			final List< Integer > successors = bySource.get( trackModel.getEdgeTarget( edges.get( i ) ) );
+			if ( successors == null )
+				continue;
 
-			}
-			if ( !successors.isEmpty() )
-				edgeMap.put( Integer.valueOf( i ), successors );
+			edgeMap[ i ] = new int[ successors.size() ];
+			for ( int k = 0; k < successors.size(); k++ )
+				edgeMap[ i ][ k ] = successors.get( k ).intValue();
 		}
 		return edgeMap;
 	}
@@ -125,15 +132,16 @@ public class EdgeCollectionDataset extends ModelDataset
 	}
 
 	@Override
-	public Number getX( final int series, final int item )
+	protected Double getFeature( final int item, final String feature )
 	{
-		return model.getFeatureModel().getEdgeFeature( edges.get( item ), xFeature );
+		return model.getFeatureModel().getEdgeFeature( edges.get( item ), feature );
 	}
 
 	@Override
-	public Number getY( final int series, final int item )
+	protected void refresh()
 	{
-		return model.getFeatureModel().getEdgeFeature( edges.get( item ), yFeatures.get( series ) );
+		edgeColorGenerator = null;
+		super.refresh();
 	}
 
 	@Override
@@ -171,26 +179,22 @@ public class EdgeCollectionDataset extends ModelDataset
 				final ValueAxis rangeAxis,
 				final Rectangle2D dataArea )
 		{
-			if ( edgeMap == null || !edgeMap.containsKey( Integer.valueOf( item ) ) )
+			if ( edgeMap == null || edgeMap[ item ] == null )
+				return;
+
+			final double x0 = getXValue( series, item );
+			final double y0 = getYValue( series, item );
+			if ( Double.isNaN( x0 ) || Double.isNaN( y0 ) )
 				return;
 
 			final RectangleEdge xAxisLocation = plot.getDomainAxisEdge();
 			final RectangleEdge yAxisLocation = plot.getRangeAxisEdge();
 			final PlotOrientation orientation = plot.getOrientation();
-			final String yFeature = yFeatures.get( series );
-			final DefaultWeightedEdge sourceEdge = edges.get( item );
-			final Set< DefaultWeightedEdge > edges = edgeMap.get( Integer.valueOf( item ) );
-			for ( final DefaultWeightedEdge targetEdge : edges )
+			for ( final int target : edgeMap[ item ] )
 			{
-
-				final Double x1 = model.getFeatureModel().getEdgeFeature( targetEdge, xFeature );
-				final Double y1 = model.getFeatureModel().getEdgeFeature( targetEdge, yFeature );
-				if ( x1 == null || y1 == null || x1.isNaN() || y1.isNaN() )
-					continue;
-
-				final Double x0 = model.getFeatureModel().getEdgeFeature( sourceEdge, xFeature );
-				final Double y0 = model.getFeatureModel().getEdgeFeature( sourceEdge, yFeature );
-				if ( x0 == null || y0 == null || x0.isNaN() || y0.isNaN() )
+				final double x1 = getXValue( series, target );
+				final double y1 = getYValue( series, target );
+				if ( Double.isNaN( x1 ) || Double.isNaN( y1 ) )
 					continue;
 
 				final double transX0 = domainAxis.valueToJava2D( x0, dataArea, xAxisLocation );
@@ -219,8 +223,13 @@ public class EdgeCollectionDataset extends ModelDataset
 			if ( selectionModel != null && selectionModel.getEdgeSelection().contains( edge ) )
 				return ds.getHighlightColor();
 
-			final FeatureColorGenerator< DefaultWeightedEdge > edgeColorGenerator = FeatureUtils.createTrackColorGenerator( model, ds );
-			return edgeColorGenerator.color( edges.get( item ) );
+			FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = edgeColorGenerator;
+			if ( colorGenerator == null )
+			{
+				colorGenerator = FeatureUtils.createTrackColorGenerator( model, ds );
+				edgeColorGenerator = colorGenerator;
+			}
+			return colorGenerator.color( edge );
 		}
 
 		@Override
@@ -22,6 +22,8 @@
 package fiji.plugin.trackmate.features;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -57,6 +59,8 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 
 	private final boolean doLogIt;
 
+	private final Map< String, Long > analyzerProcessingTimes = new LinkedHashMap<>();
+
 	public EdgeFeatureCalculator( final Model model, final Settings settings, final boolean doLogIt )
 	{
 		this.settings = settings;
@@ -134,6 +138,7 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 
 	private void computeEdgeFeaturesAgent( final Collection< DefaultWeightedEdge > edges, final List< EdgeAnalyzer > analyzers, final boolean doLogIt )
 	{
+		analyzerProcessingTimes.clear();
 		isCanceled = false;
 		cancelReason = null;
 
@@ -153,11 +158,23 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			}
 			analyzer.setNumThreads( numThreads );
 			analyzer.process( edges, model );
+			analyzerProcessingTimes.put( analyzer.getKey(), analyzer.getProcessingTime() );
 			if ( doLogIt )
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 		}
 	}
 
+	/**
+	 * Returns the time spent by each analyzer during the last computation, in
+	 * milliseconds.
+	 *
+	 * @return a map from analyzer key to processing time.
+	 */
+	public Map< String, Long > getAnalyzerProcessingTimes()
+	{
+		return Collections.unmodifiableMap( analyzerProcessingTimes );
+	}
+
 	// --- org.scijava.Cancelable methods ---
 
 	@Override
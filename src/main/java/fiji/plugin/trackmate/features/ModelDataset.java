@@ -33,15 +33,24 @@ import org.jfree.data.general.AbstractDataset;
 import org.jfree.data.xy.XYDataset;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeListener;
+import fiji.plugin.trackmate.SelectionChangeListener;
 import fiji.plugin.trackmate.SelectionModel;
 import fiji.plugin.trackmate.features.ModelDataset.DataItem;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.UpdateListener;
 
 public abstract class ModelDataset extends AbstractDataset implements XYDataset, Iterable< DataItem >
 {
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * Bit pattern of missing values. This is a signaling NaN, that
+	 * {@link Double#doubleToLongBits(double)} never returns.
+	 */
+	private static final long MISSING = 0x7ff0000000000001L;
+
 	protected final Model model;
 
 	protected final List< String > yFeatures;
@@ -58,6 +67,20 @@ public abstract class ModelDataset extends AbstractDataset implements XYDataset,
 
 	private final Map< String, Integer > featureNameMap;
 
+	/**
+	 * Feature values of the items, sampled from the model the first time
+	 * they are needed after a refresh. They are stored as double bits so
+	 * that missing values can be told apart from NaN. The first row holds
+	 * the X feature, the next ones the Y features.
+	 */
+	private volatile long[][] values;
+
+	private final ModelChangeListener modelListener = event -> refresh();
+
+	private final SelectionChangeListener selectionListener = event -> refresh();
+
+	private final UpdateListener displaySettingsListener = () -> refresh();
+
 	public ModelDataset(
 			final Model model,
 			final SelectionModel selectionModel,
@@ -76,13 +99,54 @@ public abstract class ModelDataset extends AbstractDataset implements XYDataset,
 		for ( int i = 0; i < yFeatures.size(); i++ )
 			featureNameMap.put( getSeriesKey( i ).toString(), Integer.valueOf( i ) );
 
+		// Listen to model changes, such as feature values being recomputed.
+		if ( model != null )
+			model.addModelChangeListener( modelListener );
+
 		// Listen to selection changes.
 		if ( selectionModel != null )
-			selectionModel.addSelectionChangeListener( l -> fireDatasetChanged() );
+			selectionModel.addSelectionChangeListener( selectionListener );
 
 		// Listen to changes in display settings.
 		if ( ds != null )
-			ds.listeners().add( () -> fireDatasetChanged() );
+			ds.listeners().add( displaySettingsListener );
+	}
+
+	/**
+	 * Stops listening to the model, the selection and the display settings.
+	 * Must be called when the plot showing this dataset is closed.
+	 */
+	public void close()
+	{
+		if ( model != null )
+			model.removeModelChangeListener( modelListener );
+		if ( selectionModel != null )
+			selectionModel.removeSelectionChangeListener( selectionListener );
+		if ( ds != null )
+			ds.listeners().remove( displaySettingsListener );
+	}
+
+	/**
+	 * Returns the value of a feature for the specified item, as stored in the
+	 * model.
+	 *
+	 * @param item
+	 *            the item index.
+	 * @param feature
+	 *            the feature.
+	 * @return the feature value, or <code>null</code> if it is not set.
+	 */
+	protected abstract Double getFeature( int item, String feature );
+
+	/**
+	 * Discards the sampled feature values and notifies the listeners of this
+	 * dataset. The values will be sampled again from the model when they are
+	 * next needed.
+	 */
+	protected void refresh()
+	{
+		values = null;
+		fireDatasetChanged();
 	}
 
 	public String getXFeature()
@@ -114,22 +178,56 @@ public abstract class ModelDataset extends AbstractDataset implements XYDataset,
 		return DomainOrder.NONE;
 	}
 
+	@Override
+	public Number getX( final int series, final int item )
+	{
+		return toDouble( values()[ 0 ][ item ] );
+	}
+
+	@Override
+	public Number getY( final int series, final int item )
+	{
+		return toDouble( values()[ 1 + series ][ item ] );
+	}
+
 	@Override
 	public double getXValue( final int series, final int item )
 	{
-		final Number val = getX( series, item );
-		if ( val == null )
-			return Double.NaN;
-		return val.doubleValue();
+		return Double.longBitsToDouble( values()[ 0 ][ item ] );
 	}
 
 	@Override
 	public double getYValue( final int series, final int item )
 	{
-		final Number val = getY( series, item );
-		if ( val == null )
-			return Double.NaN;
-		return val.doubleValue();
+		return Double.longBitsToDouble( values()[ 1 + series ][ item ] );
+	}
+
+	private long[][] values()
+	{
+		long[][] v = values;
+		if ( v == null )
+		{
+			final int nItems = getItemCount( 0 );
+			v = new long[ 1 + yFeatures.size() ][ nItems ];
+			for ( int f = 0; f < v.length; f++ )
+			{
+				final String feature = ( f == 0 ) ? xFeature : yFeatures.get( f - 1 );
+				for ( int item = 0; item < nItems; item++ )
+				{
+					final Double val = getFeature( item, feature );
+					v[ f ][ item ] = ( val == null ) ? MISSING : Double.doubleToLongBits( val.doubleValue() );
+				}
+			}
+			values = v;
+		}
+		return v;
+	}
+
+	private static final Double toDouble( final long bits )
+	{
+		if ( bits == MISSING )
+			return null;
+		return Double.valueOf( Double.longBitsToDouble( bits ) );
 	}
 
 	public abstract String getItemLabel( int item );
@@ -22,6 +22,10 @@
 package fiji.plugin.trackmate.features;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -31,12 +35,21 @@ import fiji.plugin.trackmate.ModelChangeListener;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.track.AggregatableTrackAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
 import net.imglib2.algorithm.MultiThreaded;
 
 /**
  * A utility class that listens to the change occurring in a model, and updates
  * its spot, edge and track features accordingly. Useful to keep the model in
  * sync with manual editing.
+ * <p>
+ * The features of the {@link AggregatableTrackAnalyzer}s are updated
+ * incrementally when tracks grow, which is the most frequent case during
+ * manual curation. Several successive model changes can be batched with
+ * {@link #beginBatch()} and {@link #endBatch()}, so that features are computed
+ * only once for the spots, edges and tracks they touch.
  * 
  * @author Jean-Yves Tinevez - 2013 - revised in 2021
  */
@@ -49,10 +62,37 @@ public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 
 	private final TrackFeatureCalculator trackFeatureCalculator;
 
+	private final TrackFeatureAggregator trackFeatureAggregator;
+
 	private final Model model;
 
+	private final Settings settings;
+
 	private int numThreads;
 
+	private int batchLevel = 0;
+
+	/*
+	 * Changes accumulated since the last update.
+	 */
+
+	private final Set< Spot > spotsToUpdate = new LinkedHashSet<>();
+
+	private final Set< Spot > spotsModified = new HashSet<>();
+
+	private final Set< DefaultWeightedEdge > edgesToUpdate = new LinkedHashSet<>();
+
+	private final Set< DefaultWeightedEdge > edgesAdded = new HashSet<>();
+
+	private final Set< Integer > tracksToUpdate = new HashSet<>();
+
+	private boolean edgesChanged = false;
+
+	/**
+	 * Whether the model was changed only by adding spots and edges.
+	 */
+	private boolean growthOnly = true;
+
 	/**
 	 * Constructs and activate a {@link ModelFeatureUpdater}. The new instance
 	 * is registered to listen to model changes, and update its feature.
@@ -66,50 +106,157 @@ public class ModelFeatureUpdater implements ModelChangeListener, MultiThreaded
 	public ModelFeatureUpdater( final Model model, final Settings settings )
 	{
 		this.model = model;
+		this.settings = settings;
 		// don't log feature computation for updates.
 		final boolean doLogIt = false;
 		this.spotFeatureCalculator = new SpotFeatureCalculator( model, settings, doLogIt );
 		this.edgeFeatureCalculator = new EdgeFeatureCalculator( model, settings, doLogIt );
 		this.trackFeatureCalculator = new TrackFeatureCalculator( model, settings, doLogIt );
+		this.trackFeatureAggregator = new TrackFeatureAggregator( model );
 		model.addModelChangeListener( this );
 		setNumThreads();
 	}
 
 	/**
 	 * Updates the model features against the change notified here. If the event
-	 * is not a {@link ModelChangeEvent#MODEL_MODIFIED}, does nothing.
+	 * is not a {@link ModelChangeEvent#MODEL_MODIFIED}, does nothing. If a
+	 * batch is in progress, the update is deferred until its end.
 	 */
 	@Override
 	public void modelChanged( final ModelChangeEvent event )
 	{
-		if ( event.getEventID() != ModelChangeEvent.MODEL_MODIFIED )
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_COMPUTED:
+		case ModelChangeEvent.TRACKS_COMPUTED:
+		case ModelChangeEvent.FEATURES_COMPUTED:
+			// Features were computed from scratch.
+			trackFeatureAggregator.clear();
 			return;
 
-		// Build spot list
-		final ArrayList< Spot > spots = new ArrayList<>( event.getSpots().size() );
+		case ModelChangeEvent.MODEL_MODIFIED:
+			break;
+
+		default:
+			return;
+		}
+
 		for ( final Spot spot : event.getSpots() )
 		{
-			if ( event.getSpotFlag( spot ) != ModelChangeEvent.FLAG_SPOT_REMOVED )
-				spots.add( spot );
+			final int flag = event.getSpotFlag( spot );
+			if ( flag == ModelChangeEvent.FLAG_SPOT_REMOVED )
+			{
+				spotsToUpdate.remove( spot );
+				spotsModified.remove( spot );
+				growthOnly = false;
+			}
+			else
+			{
+				spotsToUpdate.add( spot );
+				if ( flag != ModelChangeEvent.FLAG_SPOT_ADDED )
+				{
+					spotsModified.add( spot );
+					growthOnly = false;
+				}
+			}
 		}
-		final SpotCollection sc = SpotCollection.fromCollection( spots );
 
-		// Build edge list
-		final ArrayList< DefaultWeightedEdge > edges = new ArrayList<>( event.getEdges().size() );
 		for ( final DefaultWeightedEdge edge : event.getEdges() )
 		{
-			if ( event.getEdgeFlag( edge ) != ModelChangeEvent.FLAG_EDGE_REMOVED )
-				edges.add( edge );
+			final int flag = event.getEdgeFlag( edge );
+			if ( flag == ModelChangeEvent.FLAG_EDGE_REMOVED )
+			{
+				edgesToUpdate.remove( edge );
+				edgesAdded.remove( edge );
+				growthOnly = false;
+			}
+			else
+			{
+				edgesToUpdate.add( edge );
+				if ( flag == ModelChangeEvent.FLAG_EDGE_ADDED )
+					edgesAdded.add( edge );
+			}
+			edgesChanged = true;
 		}
 
-		// Update spot features
-		spotFeatureCalculator.computeSpotFeatures( sc, false );
+		tracksToUpdate.addAll( event.getTrackUpdated() );
 
-		// Update edge features
-		edgeFeatureCalculator.computeEdgesFeatures( edges, false );
+		if ( batchLevel == 0 )
+			update();
+	}
 
-		// Update track features
-		trackFeatureCalculator.computeTrackFeatures( event.getTrackUpdated(), false );
+	/**
+	 * Starts a batch of model changes. Until the matching call to
+	 * {@link #endBatch()}, the changes are accumulated and the features are
+	 * not updated. Batches can be nested.
+	 */
+	public void beginBatch()
+	{
+		batchLevel++;
+	}
+
+	/**
+	 * Ends a batch of model changes. If this is the outermost batch, the
+	 * features of the spots, edges and tracks changed during the batch are
+	 * updated.
+	 */
+	public void endBatch()
+	{
+		if ( batchLevel == 0 )
+			return;
+
+		batchLevel--;
+		if ( batchLevel == 0 )
+			update();
+	}
+
+	/**
+	 * Updates the features against the changes accumulated so far.
+	 */
+	private void update()
+	{
+		try
+		{
+			// Update spot features
+			if ( !spotsToUpdate.isEmpty() )
+				spotFeatureCalculator.computeSpotFeatures( SpotCollection.fromCollection( spotsToUpdate ), false );
+
+			// Update edge features
+			final TrackModel trackModel = model.getTrackModel();
+			edgesToUpdate.removeIf( e -> null == trackModel.trackIDOf( e ) );
+			if ( !edgesToUpdate.isEmpty() )
+				edgeFeatureCalculator.computeEdgesFeatures( edgesToUpdate, false );
+
+			// Update track features
+			tracksToUpdate.removeIf( id -> null == trackModel.trackSpots( id ) );
+			if ( tracksToUpdate.isEmpty() && !edgesChanged )
+				return;
+
+			for ( final Spot spot : spotsModified )
+				trackFeatureAggregator.invalidate( trackModel.trackIDOf( spot ) );
+
+			final List< TrackAnalyzer > analyzers = new ArrayList<>();
+			final List< AggregatableTrackAnalyzer > aggregatableAnalyzers = new ArrayList<>();
+			for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+			{
+				if ( !analyzer.isManualFeature() && analyzer.isLocal() && analyzer instanceof AggregatableTrackAnalyzer )
+					aggregatableAnalyzers.add( ( AggregatableTrackAnalyzer ) analyzer );
+				else
+					analyzers.add( analyzer );
+			}
+			trackFeatureCalculator.computeTrackFeatures( tracksToUpdate, analyzers, false );
+			trackFeatureAggregator.update( tracksToUpdate, aggregatableAnalyzers, growthOnly ? edgesAdded : null );
+		}
+		finally
+		{
+			spotsToUpdate.clear();
+			spotsModified.clear();
+			edgesToUpdate.clear();
+			edgesAdded.clear();
+			tracksToUpdate.clear();
+			edgesChanged = false;
+			growthOnly = true;
+		}
 	}
 
 	/**
@@ -26,8 +26,8 @@ import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.Stroke;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -58,7 +58,16 @@ public class SpotCollectionDataset extends ModelDataset implements XYDataset
 
 	private final List< Spot > spots;
 
-	private final Map< Integer, Set< DefaultWeightedEdge > > edgeMap;
+	/**
+	 * For each item, the items it is linked to in a later frame. Items
+	 * without such links map to <code>null</code>.
+	 */
+	private final int[][] edgeMap;
+
+	/**
+	 * The spot color generator, created lazily from the display settings.
+	 */
+	private volatile FeatureColorGenerator< Spot > spotColorGenerator;
 
 	public SpotCollectionDataset(
 			final Model model,
@@ -81,27 +90,37 @@ public class SpotCollectionDataset extends ModelDataset implements XYDataset
 	 *            the spot collection.
 	 * @param trackModel
 	 *            the graph.
-	 * @return a new map.
+	 * @return for each spot, the index of the spots it is linked to in the
+	 *         same or a later frame.
 	 */
-	private static Map< Integer, Set< DefaultWeightedEdge > > createEdgeMap( final List< Spot > spots, final TrackModel trackModel )
+	static int[][] createEdgeMap( final List< Spot > spots, final TrackModel trackModel )
 	{
-		final Map< Integer, Set< DefaultWeightedEdge > > edgeMap = new HashMap<>();
+		final Map< Spot, Integer > indices = new HashMap<>( 2 * spots.size() );
+		for ( int i = spots.size() - 1; i >= 0; i-- )
+			indices.put( spots.get( i ), Integer.valueOf( i ) );
+
+		final int[][] edgeMap = new int[ spots.size() ][];
 		for ( int i = 0; i < spots.size(); i++ )
 		{
 			final Spot source = spots.get( i );
-			final Set< DefaultWeightedEdge > edges = new HashSet<>();
-			for ( final Spot target : spots )
+			final int frame = source.getFeature( Spot.FRAME ).intValue();
+			final Set< DefaultWeightedEdge > edges = trackModel.edgesOf( source );
+			int[] targets = new int[ edges.size() ];
+			int n = 0;
+			for ( final DefaultWeightedEdge edge : edges )
 			{
-				if ( source.getFeature( Spot.FRAME ).intValue() > target.getFeature( Spot.FRAME ).intValue() )
-					continue;
+				Spot target = trackModel.getEdgeTarget( edge );
+				if ( target == source )
+					target = trackModel.getEdgeSource( edge );
 
-				if ( !trackModel.containsEdge( source, target ) )
+				final Integer j = indices.get( target );
+				if ( j == null || frame > target.getFeature( Spot.FRAME ).intValue() )
 					continue;
 
-				edges.add( trackModel.getEdge( source, target ) );
+				targets[ n++ ] = j.intValue();
 			}
-			if ( !edges.isEmpty() )
-				edgeMap.put( Integer.valueOf( i ), edges );
+			if ( n > 0 )
+				edgeMap[ i ] = ( n == targets.length ) ? targets : Arrays.copyOf( targets, n );
 		}
 		return edgeMap;
 	}
@@ -133,16 +152,18 @@ public class SpotCollectionDataset extends ModelDataset implements XYDataset
 	}
 
 	@Override
-	public Number getX( final int series, final int item )
+	protected Double getFeature( final int item, final String feature )
 	{
-		return spots.get( item ).getFeature( xFeature );
+		return spots.get( item ).getFeature( feature );
 	}
 
 	@Override
-	public Number getY( final int series, final int item )
+	protected void refresh()
 	{
-		return spots.get( item ).getFeature( yFeatures.get( series ) );
+		spotColorGenerator = null;
+		super.refresh();
 	}
+
 	@Override
 	public XYItemRenderer getRenderer()
 	{
@@ -167,30 +188,24 @@ public class SpotCollectionDataset extends ModelDataset implements XYDataset
 				final ValueAxis rangeAxis,
 				final Rectangle2D dataArea )
 		{
-			if ( edgeMap == null || !edgeMap.containsKey( Integer.valueOf( item ) ) )
+			if ( edgeMap == null || edgeMap[ item ] == null )
+				return;
+
+			final double x0 = getXValue( series, item );
+			final double y0 = getYValue( series, item );
+			if ( Double.isNaN( x0 ) || Double.isNaN( y0 ) )
 				return;
 
 			final RectangleEdge xAxisLocation = plot.getDomainAxisEdge();
 			final RectangleEdge yAxisLocation = plot.getRangeAxisEdge();
 			final PlotOrientation orientation = plot.getOrientation();
-			final String yFeature = yFeatures.get( series );
-			final Spot sourceSpot = spots.get( item );
-			final Set< DefaultWeightedEdge > edges = edgeMap.get( Integer.valueOf( item ) );
-			for ( final DefaultWeightedEdge edge : edges )
+			for ( final int target : edgeMap[ item ] )
 			{
-				final Spot targetSpot = model.getTrackModel().getEdgeTarget( edge );
-
-				final Double x1 = targetSpot.getFeature( xFeature );
-				final Double y1 = targetSpot.getFeature( yFeature );
-				if ( x1 == null || y1 == null || x1.isNaN() || y1.isNaN() )
+				final double x1 = getXValue( series, target );
+				final double y1 = getYValue( series, target );
+				if ( Double.isNaN( x1 ) || Double.isNaN( y1 ) )
 					continue;
 
-				final Double x0 = sourceSpot.getFeature( xFeature );
-				final Double y0 = sourceSpot.getFeature( yFeature );
-				if ( x0 == null || y0 == null || x0.isNaN() || y0.isNaN() )
-					continue;
-
-
 				final double transX0 = domainAxis.valueToJava2D( x0, dataArea, xAxisLocation );
 				final double transY0 = rangeAxis.valueToJava2D( y0, dataArea, yAxisLocation );
 
@@ -217,8 +232,13 @@ public class SpotCollectionDataset extends ModelDataset implements XYDataset
 			if ( selectionModel != null && selectionModel.getSpotSelection().contains( spot ) )
 				return ds.getHighlightColor();
 
-			final FeatureColorGenerator< Spot > spotColorGenerator = FeatureUtils.createSpotColorGenerator( model, ds );
-			return spotColorGenerator.color( spots.get( item ) );
+			FeatureColorGenerator< Spot > colorGenerator = spotColorGenerator;
+			if ( colorGenerator == null )
+			{
+				colorGenerator = FeatureUtils.createSpotColorGenerator( model, ds );
+				spotColorGenerator = colorGenerator;
+			}
+			return colorGenerator.color( spot );
 		}
 
 		@Override
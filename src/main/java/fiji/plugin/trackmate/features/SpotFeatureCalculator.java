@@ -23,14 +23,14 @@ package fiji.plugin.trackmate.features;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.scijava.Cancelable;
 
@@ -41,6 +41,7 @@ import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzer;
 import fiji.plugin.trackmate.features.spot.SpotAnalyzerFactoryBase;
+import fiji.plugin.trackmate.util.TMExecutors;
 import fiji.plugin.trackmate.util.TMUtils;
 import net.imagej.ImgPlus;
 import net.imglib2.algorithm.MultiThreaded;
@@ -68,6 +69,10 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 
 	private final boolean doLogIt;
 
+	private final Map< String, Double > throughputs = new LinkedHashMap<>();
+
+	private final Map< String, Long > analyzerProcessingTimes = new LinkedHashMap<>();
+
 	public SpotFeatureCalculator( final Model model, final Settings settings, final boolean doLogIt )
 	{
 		this.settings = settings;
@@ -106,8 +111,22 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 	@Override
 	public boolean process()
 	{
-
 		// Declare what you do.
+		declareFeatures();
+
+		// Do it.
+		computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), doLogIt );
+		return true;
+	}
+
+	/**
+	 * Declares the features of all the spot analyzers configured in the
+	 * {@link Settings} to the feature model. Must be called before features
+	 * are computed with {@link #computeSpotFeatures(SpotCollection, boolean)}
+	 * outside of {@link #process()}.
+	 */
+	public void declareFeatures()
+	{
 		for ( final SpotAnalyzerFactoryBase< ? > factory : settings.getSpotAnalyzerFactories() )
 		{
 			final Collection< String > features = factory.getFeatures();
@@ -117,10 +136,6 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			final Map< String, Boolean > isIntFeature = factory.getIsIntFeature();
 			model.getFeatureModel().declareSpotFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
 		}
-
-		// Do it.
-		computeSpotFeaturesAgent( model.getSpots(), settings.getSpotAnalyzerFactories(), doLogIt );
-		return true;
 	}
 
 	/**
@@ -183,6 +198,15 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			logger.setStatus( "Calculating " + toCompute.getNSpots( false ) + " spots features..." );
 		}
 
+		// Spots processed and time spent per analyzer, for the throughput.
+		final Map< String, AtomicLong > nSpotsProcessed = new LinkedHashMap<>();
+		final Map< String, AtomicLong > nanoTimes = new LinkedHashMap<>();
+		for ( final SpotAnalyzerFactoryBase< ? > factory : analyzerFactories )
+		{
+			nSpotsProcessed.put( factory.getKey(), new AtomicLong() );
+			nanoTimes.put( factory.getKey(), new AtomicLong() );
+		}
+
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		final List< Callable< Void > > tasks = new ArrayList<>( numFrames );
 		final int workToDo = numFrames * analyzerFactories.size() * settings.imp.getNChannels();
@@ -211,7 +235,10 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 							if ( analyzer instanceof MultiThreaded )
 								( ( MultiThreaded ) analyzer ).setNumThreads( threadsPerFrame );
 
+							final long t0 = System.nanoTime();
 							analyzer.process( toCompute.iterable( frame, false ) );
+							nanoTimes.get( factory.getKey() ).addAndGet( System.nanoTime() - t0 );
+							nSpotsProcessed.get( factory.getKey() ).addAndGet( toCompute.getNSpots( frame, false ) );
 
 							logger.setProgress( progress.incrementAndGet() / ( double ) workToDo );
 						} // Finished looping over analyzers
@@ -223,20 +250,29 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 			tasks.add( frameTask );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( nSimultaneousFrames );
-		List< Future< Void > > futures;
 		try
 		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TMExecutors.invokeAll( tasks, nSimultaneousFrames );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
 
-		executorService.shutdown();
+		throughputs.clear();
+		analyzerProcessingTimes.clear();
+		for ( final SpotAnalyzerFactoryBase< ? > factory : analyzerFactories )
+		{
+			final long nanoTime = nanoTimes.get( factory.getKey() ).get();
+			final long nSpots = nSpotsProcessed.get( factory.getKey() ).get();
+			final double throughput = ( nanoTime == 0 ) ? Double.NaN : nSpots * 1e9 / nanoTime;
+			throughputs.put( factory.getKey(), throughput );
+			analyzerProcessingTimes.put( factory.getKey(), nanoTime / 1000000 );
+			if ( doLogIt )
+				logger.log( String.format( "  - %s: %d spots in %d ms, %.0f spots/s.\n",
+						factory.getName(), nSpots, nanoTime / 1000000, throughput ) );
+		}
+
 		logger.setProgress( 1 );
 		logger.setStatus( "" );
 
@@ -244,6 +280,31 @@ public class SpotFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 		processingTime = end - start;
 	}
 
+	/**
+	 * Returns the time spent by each spot analyzer during the last
+	 * computation, in milliseconds. The time of an analyzer is summed over the
+	 * frames it processed, even if they were processed concurrently.
+	 *
+	 * @return a map from analyzer factory key to processing time.
+	 */
+	public Map< String, Long > getAnalyzerProcessingTimes()
+	{
+		return Collections.unmodifiableMap( analyzerProcessingTimes );
+	}
+
+	/**
+	 * Returns the throughput of each spot analyzer during the last
+	 * computation, in spots processed per second. The time of an analyzer is
+	 * summed over the frames it processed, even if they were processed
+	 * concurrently.
+	 *
+	 * @return a map from analyzer factory key to throughput.
+	 */
+	public Map< String, Double > getThroughputs()
+	{
+		return Collections.unmodifiableMap( throughputs );
+	}
+
 	// --- org.scijava.Cancelable methods ---
 
 	@Override
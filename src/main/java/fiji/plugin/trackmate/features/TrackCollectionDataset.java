@@ -42,6 +42,11 @@ public class TrackCollectionDataset extends ModelDataset
 
 	private final List< Integer > trackIDs;
 
+	/**
+	 * The track color generator, created lazily from the display settings.
+	 */
+	private volatile FeatureColorGenerator< Integer > trackColorGenerator;
+
 	public TrackCollectionDataset(
 			final Model model,
 			final SelectionModel selectionModel,
@@ -81,15 +86,16 @@ public class TrackCollectionDataset extends ModelDataset
 	}
 
 	@Override
-	public Number getX( final int series, final int item )
+	protected Double getFeature( final int item, final String feature )
 	{
-		return model.getFeatureModel().getTrackFeature( trackIDs.get( item ), xFeature );
+		return model.getFeatureModel().getTrackFeature( trackIDs.get( item ), feature );
 	}
 
 	@Override
-	public Number getY( final int series, final int item )
+	protected void refresh()
 	{
-		return model.getFeatureModel().getTrackFeature( trackIDs.get( item ), yFeatures.get( series ) );
+		trackColorGenerator = null;
+		super.refresh();
 	}
 
 	@Override
@@ -115,8 +121,13 @@ public class TrackCollectionDataset extends ModelDataset
 			if ( selectionModel != null && selectionModel.getSpotSelection().containsAll( model.getTrackModel().trackSpots( trackID ) ) )
 				return ds.getHighlightColor();
 
-			final FeatureColorGenerator< Integer > trackColorGenerator = FeatureUtils.createWholeTrackColorGenerator( model, ds );
-			return trackColorGenerator.color( trackIDs.get( item ) );
+			FeatureColorGenerator< Integer > colorGenerator = trackColorGenerator;
+			if ( colorGenerator == null )
+			{
+				colorGenerator = FeatureUtils.createWholeTrackColorGenerator( model, ds );
+				trackColorGenerator = colorGenerator;
+			}
+			return colorGenerator.color( trackID );
 		}
 
 		@Override
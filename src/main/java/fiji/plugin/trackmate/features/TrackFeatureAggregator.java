@@ -0,0 +1,258 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.track.AggregatableTrackAnalyzer;
+
+/**
+ * Maintains the aggregates of the {@link AggregatableTrackAnalyzer}s for the
+ * tracks of a model, so that their features can be updated from the changes
+ * made to the model rather than by iterating over all the spots of the
+ * modified tracks.
+ * <p>
+ * Only changes that make tracks grow (spots and edges added, tracks merged)
+ * are processed incrementally. The aggregates of the tracks affected by other
+ * changes are rebuilt from their spots.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class TrackFeatureAggregator
+{
+
+	private final Model model;
+
+	private final Map< Integer, Aggregate > aggregates = new HashMap<>();
+
+	private List< AggregatableTrackAnalyzer > analyzers = Collections.emptyList();
+
+	TrackFeatureAggregator( final Model model )
+	{
+		this.model = model;
+	}
+
+	/**
+	 * Computes the features of the specified analyzers for the specified
+	 * tracks.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to update.
+	 * @param analyzers
+	 *            the analyzers to compute features with.
+	 * @param edgesAdded
+	 *            the edges added since the last update, if the model was
+	 *            changed only by adding spots and edges. <code>null</code>
+	 *            otherwise, in which case the tracks are iterated over.
+	 */
+	void update( final Collection< Integer > trackIDs, final List< AggregatableTrackAnalyzer > analyzers, final Set< DefaultWeightedEdge > edgesAdded )
+	{
+		if ( !analyzers.equals( this.analyzers ) )
+		{
+			aggregates.clear();
+			this.analyzers = new ArrayList<>( analyzers );
+		}
+		if ( analyzers.isEmpty() )
+			return;
+
+		final TrackModel trackModel = model.getTrackModel();
+		final FeatureModel fm = model.getFeatureModel();
+
+		/*
+		 * Forget about the tracks that disappeared. If the model only grew,
+		 * they were merged into another track, that we can find from any of
+		 * their spots.
+		 */
+		final Map< Integer, List< Aggregate > > merged = new HashMap<>();
+		final Iterator< Map.Entry< Integer, Aggregate > > it = aggregates.entrySet().iterator();
+		while ( it.hasNext() )
+		{
+			final Map.Entry< Integer, Aggregate > entry = it.next();
+			if ( null != trackModel.trackSpots( entry.getKey() ) )
+				continue;
+
+			it.remove();
+			if ( null == edgesAdded )
+				continue;
+
+			final Integer trackID = trackModel.trackIDOf( entry.getValue().spot );
+			if ( null != trackID )
+				merged.computeIfAbsent( trackID, k -> new ArrayList<>() ).add( entry.getValue() );
+		}
+
+		/*
+		 * Spots that were not in a track before the changes: all their edges
+		 * are new.
+		 */
+		final Map< Integer, Set< Spot > > spotsAdded = new HashMap<>();
+		if ( null != edgesAdded )
+		{
+			for ( final DefaultWeightedEdge edge : edgesAdded )
+			{
+				final Integer trackID = trackModel.trackIDOf( edge );
+				if ( null == trackID )
+					continue;
+
+				for ( final Spot spot : new Spot[] { trackModel.getEdgeSource( edge ), trackModel.getEdgeTarget( edge ) } )
+				{
+					if ( edgesAdded.containsAll( trackModel.edgesOf( spot ) ) )
+						spotsAdded.computeIfAbsent( trackID, k -> new HashSet<>() ).add( spot );
+				}
+			}
+		}
+
+		for ( final Integer trackID : trackIDs )
+		{
+			final Set< Spot > spots = trackModel.trackSpots( trackID );
+			if ( null == spots || spots.isEmpty() )
+			{
+				aggregates.remove( trackID );
+				continue;
+			}
+
+			Aggregate aggregate = null;
+			if ( null != edgesAdded )
+			{
+				aggregate = grow( trackID, merged.get( trackID ), spotsAdded.get( trackID ) );
+				if ( null != aggregate && aggregate.nSpots != spots.size() )
+					aggregate = null;
+			}
+			if ( null == aggregate )
+				aggregate = aggregate( spots );
+
+			aggregates.put( trackID, aggregate );
+			for ( int i = 0; i < analyzers.size(); i++ )
+				analyzers.get( i ).putFeatures( trackID, aggregate.values[ i ], fm );
+		}
+	}
+
+	/**
+	 * Discards the aggregate of the specified track, for instance because one
+	 * of its spots was modified.
+	 *
+	 * @param trackID
+	 *            the ID of the track. Can be <code>null</code>.
+	 */
+	void invalidate( final Integer trackID )
+	{
+		if ( null != trackID )
+			aggregates.remove( trackID );
+	}
+
+	/**
+	 * Discards all the aggregates.
+	 */
+	void clear()
+	{
+		aggregates.clear();
+	}
+
+	/**
+	 * Returns the aggregate of a track built from the aggregate it had before
+	 * the changes, the aggregates of the tracks merged into it and the spots
+	 * added to it. Returns <code>null</code> if there is nothing to build on.
+	 */
+	private Aggregate grow( final Integer trackID, final List< Aggregate > merged, final Set< Spot > spotsAdded )
+	{
+		final Aggregate previous = aggregates.get( trackID );
+		if ( null == previous && null == merged )
+			return null;
+
+		final Aggregate aggregate = new Aggregate( analyzers );
+		if ( null != previous )
+			aggregate.combine( previous, analyzers );
+		if ( null != merged )
+			for ( final Aggregate other : merged )
+				aggregate.combine( other, analyzers );
+		if ( null != spotsAdded )
+			for ( final Spot spot : spotsAdded )
+				aggregate.accumulate( spot, analyzers );
+
+		return aggregate;
+	}
+
+	private Aggregate aggregate( final Set< Spot > spots )
+	{
+		final Aggregate aggregate = new Aggregate( analyzers );
+		for ( final Spot spot : spots )
+			aggregate.accumulate( spot, analyzers );
+		return aggregate;
+	}
+
+	/**
+	 * The aggregates of all the analyzers for one track.
+	 */
+	private static final class Aggregate
+	{
+
+		/**
+		 * The number of spots in the track.
+		 */
+		private int nSpots;
+
+		/**
+		 * One spot of the track, used to find the track it is merged into.
+		 */
+		private Spot spot;
+
+		private final double[][] values;
+
+		private Aggregate( final List< AggregatableTrackAnalyzer > analyzers )
+		{
+			this.values = new double[ analyzers.size() ][];
+			for ( int i = 0; i < values.length; i++ )
+				values[ i ] = new double[ analyzers.get( i ).getAggregateSize() ];
+		}
+
+		private void accumulate( final Spot s, final List< AggregatableTrackAnalyzer > analyzers )
+		{
+			for ( int i = 0; i < values.length; i++ )
+				analyzers.get( i ).accumulate( s, values[ i ] );
+			if ( null == spot )
+				spot = s;
+			nSpots++;
+		}
+
+		private void combine( final Aggregate other, final List< AggregatableTrackAnalyzer > analyzers )
+		{
+			for ( int i = 0; i < values.length; i++ )
+				analyzers.get( i ).combine( values[ i ], other.values[ i ] );
+			if ( null == spot )
+				spot = other.spot;
+			nSpots += other.nSpots;
+		}
+	}
+}
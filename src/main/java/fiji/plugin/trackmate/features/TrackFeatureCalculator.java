@@ -22,6 +22,8 @@
 package fiji.plugin.trackmate.features;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -56,6 +58,8 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 
 	private final boolean doLogIt;
 
+	private final Map< String, Long > analyzerProcessingTimes = new LinkedHashMap<>();
+
 	public TrackFeatureCalculator( final Model model, final Settings settings, final boolean doLogIt )
 	{
 		this.settings = settings;
@@ -121,6 +125,15 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 		computeTrackFeaturesAgent( trackIDs, trackFeatureAnalyzers, doLogIt );
 	}
 
+	/**
+	 * Calculates the track features of the specified analyzers for the
+	 * specified tracks.
+	 */
+	public void computeTrackFeatures( final Collection< Integer > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
+	{
+		computeTrackFeaturesAgent( trackIDs, analyzers, doLogIt );
+	}
+
 	/*
 	 * PRIVATE METHODS
 	 */
@@ -130,6 +143,7 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 	 */
 	private void computeTrackFeaturesAgent( final Collection< Integer > trackIDs, final List< TrackAnalyzer > analyzers, final boolean doLogIt )
 	{
+		analyzerProcessingTimes.clear();
 		isCanceled = false;
 		cancelReason = null;
 
@@ -159,6 +173,7 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 			{
 				analyzer.process( model.getTrackModel().trackIDs( false ), model );
 			}
+			analyzerProcessingTimes.put( analyzer.getKey(), analyzer.getProcessingTime() );
 
 			if ( doLogIt )
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
@@ -166,6 +181,17 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 		}
 	}
 
+	/**
+	 * Returns the time spent by each analyzer during the last computation, in
+	 * milliseconds.
+	 *
+	 * @return a map from analyzer key to processing time.
+	 */
+	public Map< String, Long > getAnalyzerProcessingTimes()
+	{
+		return Collections.unmodifiableMap( analyzerProcessingTimes );
+	}
+
 	// --- org.scijava.Cancelable methods ---
 
 	@Override
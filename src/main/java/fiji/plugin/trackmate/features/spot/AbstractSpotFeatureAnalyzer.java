@@ -25,26 +25,58 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.TMExecutors;
 import net.imglib2.algorithm.Benchmark;
 import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.type.numeric.RealType;
 
+/**
+ * Base class for spot analyzers that process each spot independently.
+ * <p>
+ * The spots are split in chunks of similar cost, which are processed
+ * concurrently on the shared executor. Each chunk is given a {@link Scratch}
+ * instance, reused for all the spots of the chunk, in which subclasses can
+ * keep their temporary arrays instead of allocating them for every spot.
+ */
 public abstract class AbstractSpotFeatureAnalyzer< T extends RealType< T > > implements SpotAnalyzer< T >, MultiThreaded, Benchmark
 {
 
+	/**
+	 * How many chunks to create per thread, so that threads that finish early
+	 * can pick up remaining work.
+	 */
+	private static final int CHUNKS_PER_THREAD = 4;
+
 	protected String errorMessage;
 
 	private long processingTime;
 
+	private double throughput;
+
 	private int numThreads;
 
 	public abstract void process( final Spot spot );
 
+	/**
+	 * Computes the features of the specified spot, using the specified scratch
+	 * space for temporary storage. The scratch space is reused for the other
+	 * spots of the same chunk, but is never shared between threads.
+	 * <p>
+	 * By default, this calls {@link #process(Spot)}. Analyzers that need
+	 * temporary arrays should override this method.
+	 *
+	 * @param spot
+	 *            the spot to process.
+	 * @param scratch
+	 *            the scratch space of the current chunk.
+	 */
+	public void process( final Spot spot, final Scratch scratch )
+	{
+		process( spot );
+	}
+
 	public AbstractSpotFeatureAnalyzer()
 	{
 		setNumThreads();
@@ -53,44 +85,107 @@ public abstract class AbstractSpotFeatureAnalyzer< T extends RealType< T > > imp
 	@Override
 	public void process( final Iterable< Spot > spots )
 	{
-		final long start = System.currentTimeMillis();
+		final long start = System.nanoTime();
 
-		final List< Callable< Void > > tasks = new ArrayList<>();
+		final List< Spot > list = new ArrayList<>();
 		for ( final Spot spot : spots )
+			list.add( spot );
+
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( final List< Spot > chunk : chunks( list, numThreads ) )
 		{
-			final Callable< Void > task = new Callable< Void >()
-			{
-				@Override
-				public Void call() throws Exception
+			tasks.add( () -> {
+				final Scratch scratch = new Scratch();
+				for ( final Spot spot : chunk )
 				{
 					try
 					{
-						process( spot );
+						process( spot, scratch );
 					}
 					catch ( final Exception e )
 					{
 						e.printStackTrace();
 					}
-					return null;
 				}
-			};
-			tasks.add( task );
+				return null;
+			} );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
 		try
 		{
-			final List< Future< Void > > futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TMExecutors.invokeAll( tasks, numThreads );
 		}
 		catch ( final InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
 
-		executorService.shutdown();
-		processingTime = System.currentTimeMillis() - start;
+		final long elapsed = System.nanoTime() - start;
+		processingTime = elapsed / 1000000;
+		throughput = ( elapsed == 0 ) ? Double.NaN : list.size() * 1e9 / elapsed;
+	}
+
+	/**
+	 * Returns the number of spots processed per second during the last call
+	 * to {@link #process(Iterable)}.
+	 *
+	 * @return the throughput in spots per second.
+	 */
+	public double getThroughput()
+	{
+		return throughput;
+	}
+
+	/**
+	 * Splits the spots in chunks of similar estimated cost. The cost of a spot
+	 * is taken proportional to its volume, so that a frame of many small
+	 * spots is split in few large chunks, and a frame of a few large spots in
+	 * chunks of a few spots.
+	 */
+	private static List< List< Spot > > chunks( final List< Spot > spots, final int numThreads )
+	{
+		final List< List< Spot > > chunks = new ArrayList<>();
+		if ( spots.isEmpty() )
+			return chunks;
+		if ( numThreads <= 1 )
+		{
+			chunks.add( spots );
+			return chunks;
+		}
+
+		final double[] costs = new double[ spots.size() ];
+		double totalCost = 0.;
+		for ( int i = 0; i < costs.length; i++ )
+		{
+			costs[ i ] = cost( spots.get( i ) );
+			totalCost += costs[ i ];
+		}
+		final double targetCost = totalCost / ( numThreads * CHUNKS_PER_THREAD );
+
+		int from = 0;
+		double cost = 0.;
+		for ( int i = 0; i < costs.length; i++ )
+		{
+			cost += costs[ i ];
+			if ( cost >= targetCost )
+			{
+				chunks.add( spots.subList( from, i + 1 ) );
+				from = i + 1;
+				cost = 0.;
+			}
+		}
+		if ( from < spots.size() )
+			chunks.add( spots.subList( from, spots.size() ) );
+		return chunks;
+	}
+
+	private static double cost( final Spot spot )
+	{
+		final Double radius = spot.getFeature( Spot.RADIUS );
+		if ( null == radius || !( radius.doubleValue() > 0. ) )
+			return 1.;
+		final double r = radius.doubleValue();
+		return 1. + r * r * r;
 	}
 
 	@Override
@@ -116,4 +211,28 @@ public abstract class AbstractSpotFeatureAnalyzer< T extends RealType< T > > imp
 	{
 		return processingTime;
 	}
+
+	/**
+	 * Temporary storage reused by an analyzer across the spots of a chunk.
+	 */
+	public static class Scratch
+	{
+
+		private double[] buffer = new double[ 0 ];
+
+		/**
+		 * Returns an array of at least the specified size. Its content is
+		 * undefined.
+		 *
+		 * @param size
+		 *            the minimal size of the array.
+		 * @return a <code>double[]</code> array.
+		 */
+		public double[] buffer( final int size )
+		{
+			if ( buffer.length < size )
+				buffer = new double[ Math.max( size, 2 * buffer.length ) ];
+			return buffer;
+		}
+	}
 }
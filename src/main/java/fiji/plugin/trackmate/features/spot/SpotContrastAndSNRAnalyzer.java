@@ -120,9 +120,7 @@ public class SpotContrastAndSNRAnalyzer< T extends RealType< T > > extends Abstr
 		else
 		{
 			// Otherwise default to circle / sphere.
-			final Spot largeSpot = new Spot( spot );
-			largeSpot.putFeature( Spot.RADIUS, outterRadius );
-			final SpotNeighborhood< T > neighborhood = new SpotNeighborhood<>( largeSpot, img );
+			final SpotNeighborhood< T > neighborhood = new SpotNeighborhood<>( spot, outterRadius, img );
 			if ( neighborhood.size() <= 1 )
 			{
 				spot.putFeature( makeFeatureKey( CONTRAST, channel ), Double.NaN );
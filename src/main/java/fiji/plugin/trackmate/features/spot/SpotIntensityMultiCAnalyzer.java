@@ -34,7 +34,6 @@ import fiji.plugin.trackmate.util.TMUtils;
 import net.imagej.ImgPlus;
 import net.imglib2.IterableInterval;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.util.Util;
 
 public class SpotIntensityMultiCAnalyzer< T extends RealType< T > > extends AbstractSpotFeatureAnalyzer< T >
 {
@@ -51,21 +50,61 @@ public class SpotIntensityMultiCAnalyzer< T extends RealType< T > > extends Abst
 
 	@Override
 	public void process( final Spot spot )
+	{
+		process( spot, new Scratch() );
+	}
+
+	@Override
+	public void process( final Spot spot, final Scratch scratch )
 	{
 		final IterableInterval< T > neighborhood = SpotUtil.iterable( spot, imgCT );
-		final double[] intensities = new double[ ( int ) neighborhood.size() ];
+		final double[] intensities = scratch.buffer( ( int ) neighborhood.size() );
+
+		// Single pass over the pixels.
 		int n = 0;
+		double sum = 0.;
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
 		for ( final T pixel : neighborhood )
 		{
 			final double val = pixel.getRealDouble();
 			intensities[ n++ ] = val;
+			sum += val;
+			if ( val < min )
+				min = val;
+			if ( val > max )
+				max = val;
 		}
-		Util.quicksort( intensities );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MEAN_INTENSITY, channel ), Double.valueOf( Util.average( intensities ) ) );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MEDIAN_INTENSITY, channel ), Double.valueOf( intensities[ intensities.length / 2 ] ) );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MIN_INTENSITY, channel ), Double.valueOf( intensities[ 0 ] ) );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MAX_INTENSITY, channel ), Double.valueOf( intensities[ intensities.length - 1 ] ) );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( TOTAL_INTENSITY, channel ), Double.valueOf( TMUtils.sum( intensities ) ) );
-		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( STD_INTENSITY, channel ), Double.valueOf( TMUtils.standardDeviation( intensities ) ) );
+
+		final double mean;
+		final double median;
+		final double std;
+		if ( n == 0 )
+		{
+			mean = Double.NaN;
+			median = Double.NaN;
+			min = Double.NaN;
+			max = Double.NaN;
+			std = Double.NaN;
+		}
+		else
+		{
+			mean = sum / n;
+			double variance = 0.;
+			for ( int i = 0; i < n; i++ )
+			{
+				final double dx = intensities[ i ] - mean;
+				variance += dx * dx;
+			}
+			std = Math.sqrt( variance / ( n - 1 ) );
+			median = TMUtils.select( intensities, n, n / 2 );
+		}
+
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MEAN_INTENSITY, channel ), Double.valueOf( mean ) );
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MEDIAN_INTENSITY, channel ), Double.valueOf( median ) );
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MIN_INTENSITY, channel ), Double.valueOf( min ) );
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( MAX_INTENSITY, channel ), Double.valueOf( max ) );
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( TOTAL_INTENSITY, channel ), Double.valueOf( sum ) );
+		spot.putFeature( SpotIntensityMultiCAnalyzerFactory.makeFeatureKey( STD_INTENSITY, channel ), Double.valueOf( std ) );
 	}
 }
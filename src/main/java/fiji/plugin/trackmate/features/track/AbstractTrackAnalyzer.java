@@ -27,9 +27,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.swing.ImageIcon;
 
@@ -37,6 +34,7 @@ import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.util.TMExecutors;
 
 /**
  * Abstract class for track analyzers that are local and not manual. Offers
@@ -198,19 +196,14 @@ public abstract class AbstractTrackAnalyzer implements TrackAnalyzer
 			tasks.add( task );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
-		List< Future< Void > > futures;
 		try
 		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TMExecutors.invokeAll( tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
-		executorService.shutdown();
 
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
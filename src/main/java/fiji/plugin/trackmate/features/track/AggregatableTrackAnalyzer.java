@@ -0,0 +1,89 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.track;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Interface for the {@link TrackAnalyzer}s whose features are aggregates of
+ * the spots of a track: sums, counts, means, <i>etc</i>.
+ * <p>
+ * The features of such an analyzer can be computed from a fixed-size
+ * aggregate array, built by accumulating the contribution of each spot of the
+ * track. Aggregates of two tracks can be combined to give the aggregate of the
+ * track resulting from their fusion. This allows the features of a track to
+ * be updated from the changes made to it, without iterating over all its
+ * spots. This is used when the model is curated manually, for instance by the
+ * {@link fiji.plugin.trackmate.features.ModelFeatureUpdater}.
+ * <p>
+ * Concrete implementations should compute their features in
+ * {@link #process(java.util.Collection, fiji.plugin.trackmate.Model)} with the
+ * same methods, so that both paths yield the same values.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface AggregatableTrackAnalyzer extends TrackAnalyzer
+{
+
+	/**
+	 * Returns the length of the aggregate array used by this analyzer.
+	 *
+	 * @return the aggregate size.
+	 */
+	public int getAggregateSize();
+
+	/**
+	 * Adds the contribution of the specified spot to the specified aggregate.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @param aggregate
+	 *            the aggregate to update, of length
+	 *            {@link #getAggregateSize()}.
+	 */
+	public void accumulate( Spot spot, double[] aggregate );
+
+	/**
+	 * Combines two aggregates. On return, the first aggregate is the aggregate
+	 * of the union of the spots of the two aggregates.
+	 *
+	 * @param aggregate
+	 *            the aggregate to update.
+	 * @param other
+	 *            the aggregate to add to the first one. Is not modified.
+	 */
+	public void combine( double[] aggregate, double[] other );
+
+	/**
+	 * Stores in the feature model the features of the specified track,
+	 * computed from its aggregate.
+	 *
+	 * @param trackID
+	 *            the ID of the track.
+	 * @param aggregate
+	 *            the aggregate of the track spots.
+	 * @param fm
+	 *            the feature model to store feature values in.
+	 */
+	public void putFeatures( Integer trackID, double[] aggregate, FeatureModel fm );
+}
@@ -51,6 +51,10 @@ import fiji.plugin.trackmate.features.FeatureAnalyzer;
  * or modified tracks every time a change happens. It will be called from the
  * {@link Model} after a {@link Model#endUpdate()}, before any listener gets
  * notified.
+ * <p>
+ * Analyzers whose features are aggregates of the track spots, such as sums or
+ * means, can implement {@link AggregatableTrackAnalyzer}, so that their
+ * features can be updated without iterating over the whole track.
  *
  * @author Jean-Yves Tinevez
  */
@@ -35,7 +35,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
+public class TrackLocationAnalyzer extends AbstractTrackAnalyzer implements AggregatableTrackAnalyzer
 {
 
 	public static final String KEY = "Track location";
@@ -80,26 +80,42 @@ public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
 		final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
+		final double[] aggregate = new double[ getAggregateSize() ];
+		for ( final Spot spot : track )
+			accumulate( spot, aggregate );
 
-		double x = 0.;
-		double y = 0.;
-		double z = 0.;
+		putFeatures( trackID, aggregate, model.getFeatureModel() );
+	}
 
-		for ( final Spot spot : track )
-		{
-			x += spot.getFeature( Spot.POSITION_X );
-			y += spot.getFeature( Spot.POSITION_Y );
-			z += spot.getFeature( Spot.POSITION_Z );
-		}
-		final int nspots = track.size();
-		x /= nspots;
-		y /= nspots;
-		z /= nspots;
-
-		fm.putTrackFeature( trackID, X_LOCATION, x );
-		fm.putTrackFeature( trackID, Y_LOCATION, y );
-		fm.putTrackFeature( trackID, Z_LOCATION, z );
+	@Override
+	public int getAggregateSize()
+	{
+		return 4;
+	}
+
+	@Override
+	public void accumulate( final Spot spot, final double[] aggregate )
+	{
+		aggregate[ 0 ] += spot.getFeature( Spot.POSITION_X );
+		aggregate[ 1 ] += spot.getFeature( Spot.POSITION_Y );
+		aggregate[ 2 ] += spot.getFeature( Spot.POSITION_Z );
+		aggregate[ 3 ]++;
+	}
+
+	@Override
+	public void combine( final double[] aggregate, final double[] other )
+	{
+		for ( int i = 0; i < aggregate.length; i++ )
+			aggregate[ i ] += other[ i ];
+	}
+
+	@Override
+	public void putFeatures( final Integer trackID, final double[] aggregate, final FeatureModel fm )
+	{
+		final double nspots = aggregate[ 3 ];
+		fm.putTrackFeature( trackID, X_LOCATION, aggregate[ 0 ] / nspots );
+		fm.putTrackFeature( trackID, Y_LOCATION, aggregate[ 1 ] / nspots );
+		fm.putTrackFeature( trackID, Z_LOCATION, aggregate[ 2 ] / nspots );
 	}
 }
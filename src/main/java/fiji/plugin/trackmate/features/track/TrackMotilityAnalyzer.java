@@ -30,9 +30,6 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
 import javax.swing.ImageIcon;
 
@@ -45,6 +42,7 @@ import fiji.plugin.trackmate.FeatureModel;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.features.edges.DirectionalChangeAnalyzer;
+import fiji.plugin.trackmate.util.TMExecutors;
 
 @Plugin( type = TrackAnalyzer.class, priority = Priority.LOW )
 public class TrackMotilityAnalyzer implements TrackAnalyzer
@@ -237,19 +235,14 @@ public class TrackMotilityAnalyzer implements TrackAnalyzer
 			tasks.add( task );
 		}
 
-		final ExecutorService executorService = Executors.newFixedThreadPool( numThreads );
-		List< Future< Void > > futures;
 		try
 		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
+			TMExecutors.invokeAll( tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			e.printStackTrace();
 		}
-		executorService.shutdown();
 
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
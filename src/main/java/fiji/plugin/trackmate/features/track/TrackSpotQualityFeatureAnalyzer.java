@@ -24,7 +24,6 @@ package fiji.plugin.trackmate.features.track;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Set;
 
 import org.scijava.plugin.Plugin;
@@ -35,7 +34,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer
+public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer implements AggregatableTrackAnalyzer
 {
 
 	public static final String KEY = "Track quality";
@@ -55,14 +54,40 @@ public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
 		final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-		final double mean = track
-				.stream()
-				.filter( Objects::nonNull )
-				.mapToDouble( s -> s.getFeature( Spot.QUALITY ).doubleValue() )
-				.average()
-				.getAsDouble();
+		final double[] aggregate = new double[ getAggregateSize() ];
+		for ( final Spot spot : track )
+		{
+			if ( spot != null )
+				accumulate( spot, aggregate );
+		}
+		putFeatures( trackID, aggregate, model.getFeatureModel() );
+	}
+
+	@Override
+	public int getAggregateSize()
+	{
+		return 2;
+	}
+
+	@Override
+	public void accumulate( final Spot spot, final double[] aggregate )
+	{
+		aggregate[ 0 ] += spot.getFeature( Spot.QUALITY ).doubleValue();
+		aggregate[ 1 ]++;
+	}
+
+	@Override
+	public void combine( final double[] aggregate, final double[] other )
+	{
+		aggregate[ 0 ] += other[ 0 ];
+		aggregate[ 1 ] += other[ 1 ];
+	}
+
+	@Override
+	public void putFeatures( final Integer trackID, final double[] aggregate, final FeatureModel fm )
+	{
+		final double mean = aggregate[ 0 ] / aggregate[ 1 ];
 		fm.putTrackFeature( trackID, TRACK_MEAN_QUALITY, Double.valueOf( mean ) );
 	}
 }
@@ -35,6 +35,7 @@ import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.gui.wizard.WizardPanelDescriptor;
 import fiji.plugin.trackmate.gui.wizard.WizardSequence;
 import fiji.plugin.trackmate.io.IOUtils;
+import fiji.plugin.trackmate.io.TmBinaryWriter;
 import fiji.plugin.trackmate.io.TmXmlWriter;
 import fiji.plugin.trackmate.util.TMUtils;
 
@@ -49,6 +50,12 @@ public class SaveDescriptor extends WizardPanelDescriptor
 
 	private final WizardSequence sequence;
 
+	/**
+	 * The profiling report last written to the log, so that saving several
+	 * times the same run does not repeat it.
+	 */
+	private String loggedReport;
+
 	public SaveDescriptor( final TrackMate trackmate, final DisplaySettings displaySettings, final WizardSequence sequence )
 	{
 		super( KEY );
@@ -87,7 +94,17 @@ public class SaveDescriptor extends WizardPanelDescriptor
 		 * Write model, settings and GUI state
 		 */
 
-		final TmXmlWriter writer = new TmXmlWriter( file, logger );
+		final TmXmlWriter writer = file.getName().endsWith( ".tmb" )
+				? new TmBinaryWriter( file, logger )
+				: new TmXmlWriter( file, logger );
+
+		// Keep the timing of the pipeline steps in the saved log, once.
+		final String report = trackmate.getProfilingReport().toString();
+		if ( !trackmate.getProfilingReport().isEmpty() && !report.equals( loggedReport ) )
+		{
+			logger.log( report );
+			loggedReport = report;
+		}
 
 		writer.appendLog( logPanel.getTextContent() );
 		writer.appendModel( trackmate.getModel() );
@@ -33,10 +33,16 @@ import java.awt.Component;
 import java.awt.FileDialog;
 import java.awt.Frame;
 import java.awt.HeadlessException;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.swing.JDialog;
 import javax.swing.JFileChooser;
@@ -107,13 +113,13 @@ public class IOUtils
 			dialog.setIconImage( TRACKMATE_ICON.getImage() );
 			dialog.setDirectory( file.getParent() );
 			dialog.setFile( file.getName() );
-			final FilenameFilter filter = ( dir, name ) -> name.endsWith( ".xml" );
+			final FilenameFilter filter = ( dir, name ) -> name.endsWith( ".xml" ) || name.endsWith( ".xml.gz" ) || name.endsWith( ".tmb" );
 			dialog.setFilenameFilter( filter );
 			dialog.setVisible( true );
 			String selectedFile = dialog.getFile();
 			if ( null == selectedFile )
 				return null;
-			if ( !selectedFile.endsWith( ".xml" ) )
+			if ( !selectedFile.endsWith( ".xml" ) && !selectedFile.endsWith( ".xml.gz" ) && !selectedFile.endsWith( ".tmb" ) )
 				selectedFile += ".xml";
 			return new File( dialog.getDirectory(), selectedFile );
 		}
@@ -132,7 +138,7 @@ public class IOUtils
 				}
 			};
 			fileChooser.setSelectedFile( file );
-			final FileNameExtensionFilter filter = new FileNameExtensionFilter( "XML files", "xml" );
+			final FileNameExtensionFilter filter = new FileNameExtensionFilter( "TrackMate files", "xml", "gz", "tmb" );
 			fileChooser.setFileFilter( filter );
 
 			final int returnVal = fileChooser.showSaveDialog( parent );
@@ -173,7 +179,7 @@ public class IOUtils
 				@Override
 				public boolean accept( final File dir, final String name )
 				{
-					return name.endsWith( ".xml" );
+					return name.endsWith( ".xml" ) || name.endsWith( ".xml.gz" ) || name.endsWith( ".tmb" );
 				}
 			};
 			dialog.setFilenameFilter( filter );
@@ -184,7 +190,7 @@ public class IOUtils
 				logger.log( "Load data aborted.\n" );
 				return null;
 			}
-			if ( !selectedFile.endsWith( ".xml" ) )
+			if ( !selectedFile.endsWith( ".xml" ) && !selectedFile.endsWith( ".xml.gz" ) && !selectedFile.endsWith( ".tmb" ) )
 				selectedFile += ".xml";
 			file = new File( dialog.getDirectory(), selectedFile );
 		}
@@ -204,7 +210,7 @@ public class IOUtils
 			};
 			fileChooser.setName( title );
 			fileChooser.setSelectedFile( file );
-			final FileNameExtensionFilter filter = new FileNameExtensionFilter( "XML files", "xml" );
+			final FileNameExtensionFilter filter = new FileNameExtensionFilter( "TrackMate files", "xml", "gz", "tmb" );
 			fileChooser.setFileFilter( filter );
 
 			final int returnVal = fileChooser.showOpenDialog( parent );
@@ -290,6 +296,36 @@ public class IOUtils
 		return file;
 	}
 
+	/**
+	 * Opens a buffered input stream on the specified file. If the file is
+	 * compressed with gzip, the stream returned decompresses it, so that
+	 * compressed and plain xml files can be read the same way.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @return a new input stream.
+	 * @throws IOException
+	 *             if the file cannot be opened.
+	 */
+	public static InputStream openInputStream( final File file ) throws IOException
+	{
+		final BufferedInputStream is = new BufferedInputStream( new FileInputStream( file ), 1 << 16 );
+		try
+		{
+			is.mark( 2 );
+			final int magic = is.read() | ( is.read() << 8 );
+			is.reset();
+			if ( magic == GZIPInputStream.GZIP_MAGIC )
+				return new GZIPInputStream( is, 1 << 16 );
+			return is;
+		}
+		catch ( final IOException e )
+		{
+			is.close();
+			throw e;
+		}
+	}
+
 	/**
 	 * Read and return an integer attribute from a JDom {@link Element}, and
 	 * substitute a default value of 0 if the attribute is not found or of the
@@ -365,6 +401,273 @@ public class IOUtils
 		return val;
 	}
 
+	/**
+	 * Powers of ten that are exactly representable as doubles.
+	 */
+	private static final double[] POWERS_OF_TEN = {
+			1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+			1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20,
+			1e21, 1e22 };
+
+	/**
+	 * Largest mantissa that is exactly representable as a double.
+	 */
+	private static final long MAX_EXACT_MANTISSA = 1l << 53;
+
+	/**
+	 * Parses a double value with the same result as
+	 * {@link Double#parseDouble(String)}, but faster for the values commonly
+	 * found in TrackMate files.
+	 * <p>
+	 * Plain decimal numbers with at most 19 significant digits, such as
+	 * <code>12.5</code>, <code>-0.003</code>, <code>1.0E-4</code> or the
+	 * output of {@link Double#toString(double)}, are converted directly:
+	 * <ul>
+	 * <li>with a single exact multiplication or division when the mantissa
+	 * and the power of ten are both exact doubles;</li>
+	 * <li>otherwise with the Eisel-Lemire algorithm, which multiplies the
+	 * mantissa by a 128-bit approximation of the power of ten, and gives up
+	 * when the result cannot be rounded correctly.</li>
+	 * </ul>
+	 * All other strings, including <code>NaN</code>, <code>Infinity</code>,
+	 * hexadecimal notation, values with more digits, subnormal values and
+	 * the rare cases where the Eisel-Lemire algorithm gives up, are passed to
+	 * {@link Double#parseDouble(String)}.
+	 *
+	 * @param str
+	 *            the string to parse.
+	 * @return the parsed value.
+	 * @throws NumberFormatException
+	 *             if the string is not a valid double representation.
+	 */
+	public static final double parseDouble( final String str )
+	{
+		final int length = str.length();
+		int i = 0;
+		boolean negative = false;
+		if ( length > 0 && ( str.charAt( 0 ) == '-' || str.charAt( 0 ) == '+' ) )
+		{
+			negative = str.charAt( 0 ) == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int nDigits = 0;
+		int nSignificant = 0;
+		int exponent = 0;
+		boolean dot = false;
+		for ( ; i < length; i++ )
+		{
+			final char c = str.charAt( i );
+			if ( c >= '0' && c <= '9' )
+			{
+				nDigits++;
+				if ( mantissa == 0 && c == '0' )
+				{
+					// Leading zeros are not significant.
+					if ( dot )
+						exponent--;
+					continue;
+				}
+				if ( ++nSignificant > 19 )
+					return Double.parseDouble( str );
+				mantissa = 10 * mantissa + ( c - '0' );
+				if ( dot )
+					exponent--;
+			}
+			else if ( c == '.' && !dot )
+			{
+				dot = true;
+			}
+			else
+			{
+				break;
+			}
+		}
+		if ( nDigits == 0 )
+			return Double.parseDouble( str );
+
+		if ( i < length )
+		{
+			// Only a decimal exponent may follow.
+			final char e = str.charAt( i++ );
+			if ( ( e != 'e' && e != 'E' ) || i == length )
+				return Double.parseDouble( str );
+			boolean negativeExponent = false;
+			if ( str.charAt( i ) == '-' || str.charAt( i ) == '+' )
+			{
+				negativeExponent = str.charAt( i ) == '-';
+				if ( ++i == length )
+					return Double.parseDouble( str );
+			}
+			int exp = 0;
+			for ( ; i < length; i++ )
+			{
+				final char c = str.charAt( i );
+				if ( c < '0' || c > '9' || exp > 1000 )
+					return Double.parseDouble( str );
+				exp = 10 * exp + ( c - '0' );
+			}
+			exponent += negativeExponent ? -exp : exp;
+		}
+
+		if ( mantissa == 0 )
+			return negative ? -0. : 0.;
+
+		// Mantissas with 19 digits may overflow into the sign bit.
+		if ( mantissa > 0 && mantissa <= MAX_EXACT_MANTISSA )
+		{
+			if ( exponent >= 0 && exponent < POWERS_OF_TEN.length )
+			{
+				final double value = mantissa * POWERS_OF_TEN[ exponent ];
+				return negative ? -value : value;
+			}
+			if ( exponent < 0 && -exponent < POWERS_OF_TEN.length )
+			{
+				final double value = mantissa / POWERS_OF_TEN[ -exponent ];
+				return negative ? -value : value;
+			}
+		}
+
+		final long bits = eiselLemire( mantissa, exponent );
+		if ( bits < 0 )
+			return Double.parseDouble( str );
+		final double value = Double.longBitsToDouble( bits );
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Converts <code>mantissa &times; 10<sup>exponent</sup></code> to the
+	 * bits of the nearest double, with the Eisel-Lemire algorithm.
+	 *
+	 * @param mantissa
+	 *            the decimal mantissa, strictly positive, read as an unsigned
+	 *            value.
+	 * @param exponent
+	 *            the decimal exponent.
+	 * @return the bits of the positive double, or <code>-1</code> if the
+	 *         result cannot be determined this way.
+	 */
+	private static long eiselLemire( final long mantissa, final int exponent )
+	{
+		if ( exponent < PowersOfFive.MIN_EXPONENT || exponent > PowersOfFive.MAX_EXPONENT )
+			return -1l;
+
+		// Normalize the mantissa.
+		final int clz = Long.numberOfLeadingZeros( mantissa );
+		final long man = mantissa << clz;
+		// 217706 / 2^16 approximates log2(10).
+		long exp2 = ( ( 217706l * exponent ) >> 16 ) + 64 + 1023 - clz;
+
+		// Multiply by the 128-bit approximation of the power of ten.
+		final int index = 2 * ( exponent - PowersOfFive.MIN_EXPONENT );
+		final long powHi = PowersOfFive.TABLE[ index ];
+		final long powLo = PowersOfFive.TABLE[ index + 1 ];
+		long xHi = unsignedMultiplyHigh( man, powHi );
+		long xLo = man * powHi;
+
+		// Not enough precision with the high half: use the low half too.
+		if ( ( xHi & 0x1FF ) == 0x1FF && Long.compareUnsigned( xLo + man, man ) < 0 )
+		{
+			final long yHi = unsignedMultiplyHigh( man, powLo );
+			final long yLo = man * powLo;
+			long mergedHi = xHi;
+			final long mergedLo = xLo + yHi;
+			if ( Long.compareUnsigned( mergedLo, xLo ) < 0 )
+				mergedHi++;
+			if ( ( mergedHi & 0x1FF ) == 0x1FF && mergedLo == -1l && Long.compareUnsigned( yLo + man, man ) < 0 )
+				return -1l;
+			xHi = mergedHi;
+			xLo = mergedLo;
+		}
+
+		// Keep 54 bits.
+		final long msb = xHi >>> 63;
+		long bits = xHi >>> ( msb + 9 );
+		exp2 -= 1 ^ msb;
+
+		// Exactly halfway between two doubles: cannot decide.
+		if ( xLo == 0 && ( xHi & 0x1FF ) == 0 && ( bits & 3 ) == 1 )
+			return -1l;
+
+		// Round to 53 bits.
+		bits += bits & 1;
+		bits >>>= 1;
+		if ( ( bits >>> 53 ) > 0 )
+		{
+			bits >>>= 1;
+			exp2++;
+		}
+
+		// Subnormal values and overflows are left to the JDK.
+		if ( exp2 <= 0 || exp2 >= 0x7FF )
+			return -1l;
+		return ( exp2 << 52 ) | ( bits & 0x000FFFFFFFFFFFFFl );
+	}
+
+	/**
+	 * Returns the high 64 bits of the unsigned 128-bit product of two longs.
+	 */
+	private static long unsignedMultiplyHigh( final long x, final long y )
+	{
+		final long x0 = x & 0xFFFFFFFFl;
+		final long x1 = x >>> 32;
+		final long y0 = y & 0xFFFFFFFFl;
+		final long y1 = y >>> 32;
+		final long t = x1 * y0 + ( ( x0 * y0 ) >>> 32 );
+		final long w1 = x0 * y1 + ( t & 0xFFFFFFFFl );
+		return x1 * y1 + ( t >>> 32 ) + ( w1 >>> 32 );
+	}
+
+	/**
+	 * The 128-bit approximations of the powers of five used by the
+	 * Eisel-Lemire algorithm, computed on first use. The power of ten
+	 * <code>10<sup>q</sup></code> has the same normalized mantissa as
+	 * <code>5<sup>q</sup></code>.
+	 */
+	private static final class PowersOfFive
+	{
+
+		private static final int MIN_EXPONENT = -342;
+
+		private static final int MAX_EXPONENT = 308;
+
+		/**
+		 * High and low 64 bits of the normalized mantissa of each power,
+		 * from {@link #MIN_EXPONENT} to {@link #MAX_EXPONENT}.
+		 */
+		private static final long[] TABLE = createTable();
+
+		private static long[] createTable()
+		{
+			final long[] table = new long[ 2 * ( MAX_EXPONENT - MIN_EXPONENT + 1 ) ];
+			final BigInteger five = BigInteger.valueOf( 5 );
+			for ( int q = MIN_EXPONENT; q <= MAX_EXPONENT; q++ )
+			{
+				BigInteger c;
+				if ( q >= 0 )
+				{
+					// Truncated to its 128 most significant bits.
+					c = five.pow( q );
+				}
+				else
+				{
+					// 2^b / 5^-q, rounded up.
+					final BigInteger power5 = five.pow( -q );
+					final int z = power5.subtract( BigInteger.ONE ).bitLength();
+					final int b = ( q >= -27 ) ? z + 127 : 2 * z + 128;
+					c = BigInteger.ONE.shiftLeft( b ).divide( power5 ).add( BigInteger.ONE );
+				}
+				final int shift = c.bitLength() - 128;
+				c = ( shift >= 0 ) ? c.shiftRight( shift ) : c.shiftLeft( -shift );
+				final int index = 2 * ( q - MIN_EXPONENT );
+				table[ index ] = c.shiftRight( 64 ).longValue();
+				table[ index + 1 ] = c.longValue();
+			}
+			return table;
+		}
+	}
+
 	public static final boolean readBooleanAttribute( final Element element, final String name, final Logger logger )
 	{
 		return readBooleanAttribute( element, name, logger, false );
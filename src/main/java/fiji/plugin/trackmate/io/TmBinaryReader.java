@@ -0,0 +1,523 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmBinaryWriter.DOUBLE_COLUMN;
+import static fiji.plugin.trackmate.io.TmBinaryWriter.FORMAT_VERSION;
+import static fiji.plugin.trackmate.io.TmBinaryWriter.INT_COLUMN;
+import static fiji.plugin.trackmate.io.TmBinaryWriter.MAGIC;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * Reads TrackMate binary files written by {@link TmBinaryWriter}.
+ * <p>
+ * The settings, the log, the GUI state and the display settings are read from
+ * the XML document stored in the file, exactly as {@link TmXmlReader} does.
+ * The model is read from the feature columns that follow, through a
+ * memory-mapped view of the file.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TmBinaryReader extends TmXmlReader
+{
+
+	/**
+	 * Initialize this reader to read the file given in argument.
+	 *
+	 * @param file
+	 *            the TrackMate binary file to read.
+	 */
+	public TmBinaryReader( final File file )
+	{
+		super( file, false );
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified file starts like a TrackMate
+	 * binary file.
+	 *
+	 * @param file
+	 *            the file to test.
+	 * @return <code>true</code> if the file can be read with a
+	 *         {@link TmBinaryReader}.
+	 */
+	public static boolean isBinaryFile( final File file )
+	{
+		try (DataInputStream is = new DataInputStream( new FileInputStream( file ) ))
+		{
+			return is.readInt() == MAGIC;
+		}
+		catch ( final IOException e )
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Returns a stream over the XML document stored at the beginning of the
+	 * binary file.
+	 */
+	@Override
+	protected InputStream openDocument() throws IOException
+	{
+		try (DataInputStream is = new DataInputStream( new FileInputStream( file ) ))
+		{
+			checkHeader( is.readInt(), is.readInt() );
+			final byte[] xml = new byte[ is.readInt() ];
+			is.readFully( xml );
+			return new ByteArrayInputStream( xml );
+		}
+	}
+
+	/**
+	 * Returns the model saved in the file, or <code>null</code> if a saved
+	 * model cannot be found in the file.
+	 *
+	 * @return a new {@link Model}.
+	 */
+	@Override
+	public Model getModel()
+	{
+		try (FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+		{
+			final MappedInput in = new MappedInput( channel );
+			checkHeader( in.getInt(), in.getInt() );
+			in.skip( in.getInt() );
+			if ( in.getByte() == 0 )
+				return null;
+
+			final Model model = createModel();
+			model.setPhysicalUnits( in.getString(), in.getString() );
+
+			// Feature declarations
+			final FeatureModel fm = model.getFeatureModel();
+			readFeatureDeclarations( in, fm, 0 );
+			readFeatureDeclarations( in, fm, 1 );
+			readFeatureDeclarations( in, fm, 2 );
+
+			// Spots
+			final Spot[] spots = readSpots( in, model );
+
+			// Tracks
+			if ( !readTracks( in, model, spots ) )
+				ok = false;
+
+			return model;
+		}
+		catch ( final IOException | RuntimeException e )
+		{
+			logger.error( "Problem reading the model in " + file.getName()
+					+ ".\nError message is:\n" + e.getMessage() + '\n' );
+			ok = false;
+			return null;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static void checkHeader( final int magic, final int version ) throws IOException
+	{
+		if ( magic != MAGIC )
+			throw new IOException( "Not a TrackMate binary file." );
+		if ( version > FORMAT_VERSION )
+			throw new IOException( "Unsupported TrackMate binary file version: " + version + "." );
+	}
+
+	/**
+	 * Reads the declarations of the spot (target 0), edge (1) or track (2)
+	 * features.
+	 */
+	private static void readFeatureDeclarations( final MappedInput in, final FeatureModel fm, final int target ) throws IOException
+	{
+		final int n = in.getInt();
+		final Collection< String > features = new ArrayList<>( n );
+		final Map< String, String > featureNames = new HashMap<>( n );
+		final Map< String, String > featureShortNames = new HashMap<>( n );
+		final Map< String, Dimension > featureDimensions = new HashMap<>( n );
+		final Map< String, Boolean > isIntFeature = new HashMap<>( n );
+		for ( int i = 0; i < n; i++ )
+		{
+			final String feature = in.getString();
+			features.add( feature );
+			featureNames.put( feature, in.getString() );
+			featureShortNames.put( feature, in.getString() );
+			featureDimensions.put( feature, Dimension.valueOf( in.getString() ) );
+			isIntFeature.put( feature, Boolean.valueOf( in.getByte() != 0 ) );
+		}
+
+		switch ( target )
+		{
+		case 0:
+			fm.declareSpotFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+			break;
+		case 1:
+			fm.declareEdgeFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+			break;
+		default:
+			fm.declareTrackFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+			break;
+		}
+	}
+
+	private static Spot[] readSpots( final MappedInput in, final Model model ) throws IOException
+	{
+		final int nFrames = in.getInt();
+		final int[] frames = in.getInts( nFrames );
+		final int[] frameCounts = in.getInts( nFrames );
+		final int nSpots = in.getInt();
+
+		// IDs and names.
+		final int[] ids = in.getInts( nSpots );
+		final Spot[] spots = new Spot[ nSpots ];
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			final Spot spot = new Spot( ids[ i ] );
+			final String name = in.getString();
+			spot.setName( ( null == name || name.isEmpty() ) ? "ID" + ids[ i ] : name );
+			spots[ i ] = spot;
+		}
+
+		// Features.
+		final int nFeatures = in.getInt();
+		for ( int f = 0; f < nFeatures; f++ )
+		{
+			final Column column = new Column( in, nSpots );
+			for ( int i = 0; i < nSpots; i++ )
+				if ( column.isPresent( i ) )
+					spots[ i ].putFeature( column.feature, column.get( i ) );
+		}
+
+		// ROIs.
+		final int nRois = in.getInt();
+		for ( int r = 0; r < nRois; r++ )
+		{
+			final int index = in.getInt();
+			final int nPoints = in.getInt();
+			final double[] x = in.getDoubles( nPoints );
+			final double[] y = in.getDoubles( nPoints );
+			spots[ index ].setRoi( new SpotRoi( x, y ) );
+		}
+
+		// Spot collection.
+		final Map< Integer, Set< Spot > > content = new HashMap<>( nFrames );
+		int index = 0;
+		for ( int f = 0; f < nFrames; f++ )
+		{
+			final Set< Spot > spotSet = new HashSet<>( frameCounts[ f ] );
+			for ( int i = 0; i < frameCounts[ f ]; i++ )
+				spotSet.add( spots[ index++ ] );
+			content.put( Integer.valueOf( frames[ f ] ), spotSet );
+		}
+		model.setSpots( SpotCollection.fromMap( content ), false );
+		return spots;
+	}
+
+	private boolean readTracks( final MappedInput in, final Model model, final Spot[] spots ) throws IOException
+	{
+		final FeatureModel fm = model.getFeatureModel();
+
+		// Tracks.
+		final int nTracks = in.getInt();
+		final int[] trackIDs = in.getInts( nTracks );
+		final int[] nEdgesPerTrack = in.getInts( nTracks );
+		final byte[] visible = in.getBytes( nTracks );
+		final String[] names = new String[ nTracks ];
+		for ( int t = 0; t < nTracks; t++ )
+			names[ t ] = in.getString();
+		final Column[] trackColumns = new Column[ in.getInt() ];
+		for ( int c = 0; c < trackColumns.length; c++ )
+			trackColumns[ c ] = new Column( in, nTracks );
+
+		// Edges.
+		final int nEdges = in.getInt();
+		final int[] sources = in.getInts( nEdges );
+		final int[] targets = in.getInts( nEdges );
+		final Column[] edgeColumns = new Column[ in.getInt() ];
+		Column costColumn = null;
+		for ( int c = 0; c < edgeColumns.length; c++ )
+		{
+			edgeColumns[ c ] = new Column( in, nEdges );
+			if ( edgeColumns[ c ].feature.equals( EdgeTargetAnalyzer.EDGE_COST ) )
+				costColumn = edgeColumns[ c ];
+		}
+		// Source and target IDs are stored as topology, not as columns.
+		final boolean putSourceID = fm.getEdgeFeatures().contains( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+		final boolean putTargetID = fm.getEdgeFeatures().contains( EdgeTargetAnalyzer.SPOT_TARGET_ID );
+
+		// Build the graph, track by track.
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		final Map< Integer, Set< Spot > > connectedVertexSet = new HashMap<>( nTracks );
+		final Map< Integer, Set< DefaultWeightedEdge > > connectedEdgeSet = new HashMap<>( nTracks );
+		final Map< Integer, String > savedTrackNames = new HashMap<>( nTracks );
+		final Map< Integer, Boolean > visibility = new HashMap<>( nTracks );
+		int e = 0;
+		for ( int t = 0; t < nTracks; t++ )
+		{
+			final Integer trackID = Integer.valueOf( trackIDs[ t ] );
+			final Set< DefaultWeightedEdge > edges = new HashSet<>( nEdgesPerTrack[ t ] );
+			final Set< Spot > trackSpots = new HashSet<>( nEdgesPerTrack[ t ] );
+			for ( int i = 0; i < nEdgesPerTrack[ t ]; i++, e++ )
+			{
+				final Spot source = spots[ sources[ e ] ];
+				final Spot target = spots[ targets[ e ] ];
+				if ( source.equals( target ) )
+				{
+					logger.error( "Bad link for track " + trackID + ". Source = Target with ID: " + source.ID() + "\n" );
+					return false;
+				}
+				graph.addVertex( source );
+				graph.addVertex( target );
+				final DefaultWeightedEdge edge = graph.addEdge( source, target );
+				if ( edge == null )
+				{
+					logger.error( "Bad edge found for track " + trackID + "\n" );
+					return false;
+				}
+				graph.setEdgeWeight( edge, ( null != costColumn && costColumn.isPresent( e ) ) ? costColumn.get( e ) : 0. );
+
+				if ( putSourceID )
+					fm.putEdgeFeature( edge, EdgeTargetAnalyzer.SPOT_SOURCE_ID, Double.valueOf( source.ID() ) );
+				if ( putTargetID )
+					fm.putEdgeFeature( edge, EdgeTargetAnalyzer.SPOT_TARGET_ID, Double.valueOf( target.ID() ) );
+				for ( final Column column : edgeColumns )
+					if ( column.isPresent( e ) )
+						fm.putEdgeFeature( edge, column.feature, Double.valueOf( column.get( e ) ) );
+
+				edges.add( edge );
+				trackSpots.add( source );
+				trackSpots.add( target );
+			}
+			connectedVertexSet.put( trackID, trackSpots );
+			connectedEdgeSet.put( trackID, edges );
+			savedTrackNames.put( trackID, names[ t ] );
+			visibility.put( trackID, Boolean.valueOf( visible[ t ] != 0 ) );
+		}
+		model.getTrackModel().from( graph, connectedVertexSet, connectedEdgeSet, visibility, savedTrackNames );
+
+		// Track features, the track ID included.
+		for ( int t = 0; t < nTracks; t++ )
+		{
+			final Integer trackID = Integer.valueOf( trackIDs[ t ] );
+			fm.putTrackFeature( trackID, TrackIndexAnalyzer.TRACK_ID, Double.valueOf( trackIDs[ t ] ) );
+			for ( final Column column : trackColumns )
+				if ( column.isPresent( t ) )
+					fm.putTrackFeature( trackID, column.feature, Double.valueOf( column.get( t ) ) );
+		}
+		return true;
+	}
+
+	/**
+	 * A feature column read from the file.
+	 */
+	private static final class Column
+	{
+
+		private final String feature;
+
+		private final long[] present;
+
+		private final double[] doubles;
+
+		private final int[] ints;
+
+		private Column( final MappedInput in, final int n ) throws IOException
+		{
+			this.feature = in.getString();
+			final byte type = in.getByte();
+			final boolean dense = in.getByte() != 0;
+			this.present = dense ? null : in.getLongs( ( n + 63 ) >>> 6 );
+			if ( type == INT_COLUMN )
+			{
+				this.ints = in.getInts( n );
+				this.doubles = null;
+			}
+			else if ( type == DOUBLE_COLUMN )
+			{
+				this.ints = null;
+				this.doubles = in.getDoubles( n );
+			}
+			else
+			{
+				throw new IOException( "Unknown column type for feature " + feature + ": " + type + "." );
+			}
+		}
+
+		private boolean isPresent( final int i )
+		{
+			return null == present || ( present[ i >>> 6 ] & ( 1l << i ) ) != 0;
+		}
+
+		private double get( final int i )
+		{
+			return null == ints ? doubles[ i ] : ints[ i ];
+		}
+	}
+
+	/**
+	 * Big-endian input from a file channel, through memory-mapped windows of
+	 * the file.
+	 */
+	private static final class MappedInput
+	{
+
+		/** Size of the mapped windows. Larger reads are mapped in one go. */
+		private static final int WINDOW_SIZE = 1 << 26;
+
+		private final FileChannel channel;
+
+		private final long size;
+
+		private ByteBuffer window;
+
+		private long windowStart;
+
+		private long position;
+
+		private MappedInput( final FileChannel channel ) throws IOException
+		{
+			this.channel = channel;
+			this.size = channel.size();
+		}
+
+		/**
+		 * Returns the buffer positioned on the next <code>n</code> bytes, and
+		 * moves past them.
+		 */
+		private ByteBuffer next( final int n ) throws IOException
+		{
+			if ( position + n > size )
+				throw new EOFException( "Unexpected end of file." );
+			if ( null == window || position + n > windowStart + window.limit() )
+			{
+				final long length = Math.min( Math.max( n, WINDOW_SIZE ), size - position );
+				window = channel.map( MapMode.READ_ONLY, position, length );
+				windowStart = position;
+			}
+			window.position( ( int ) ( position - windowStart ) );
+			position += n;
+			return window;
+		}
+
+		private void skip( final long n )
+		{
+			position += n;
+		}
+
+		private byte getByte() throws IOException
+		{
+			return next( 1 ).get();
+		}
+
+		private int getInt() throws IOException
+		{
+			return next( 4 ).getInt();
+		}
+
+		private String getString() throws IOException
+		{
+			final int length = getInt();
+			if ( length < 0 )
+				return null;
+			return new String( getBytes( length ), StandardCharsets.UTF_8 );
+		}
+
+		private byte[] getBytes( final int n ) throws IOException
+		{
+			final byte[] vals = new byte[ n ];
+			for ( int offset = 0; offset < n; )
+			{
+				final int chunk = Math.min( WINDOW_SIZE, n - offset );
+				next( chunk ).get( vals, offset, chunk );
+				offset += chunk;
+			}
+			return vals;
+		}
+
+		private int[] getInts( final int n ) throws IOException
+		{
+			final int[] vals = new int[ n ];
+			for ( int offset = 0; offset < n; )
+			{
+				final int chunk = Math.min( WINDOW_SIZE / 4, n - offset );
+				next( 4 * chunk ).asIntBuffer().get( vals, offset, chunk );
+				offset += chunk;
+			}
+			return vals;
+		}
+
+		private long[] getLongs( final int n ) throws IOException
+		{
+			final long[] vals = new long[ n ];
+			for ( int offset = 0; offset < n; )
+			{
+				final int chunk = Math.min( WINDOW_SIZE / 8, n - offset );
+				next( 8 * chunk ).asLongBuffer().get( vals, offset, chunk );
+				offset += chunk;
+			}
+			return vals;
+		}
+
+		private double[] getDoubles( final int n ) throws IOException
+		{
+			final double[] vals = new double[ n ];
+			for ( int offset = 0; offset < n; )
+			{
+				final int chunk = Math.min( WINDOW_SIZE / 8, n - offset );
+				next( 8 * chunk ).asDoubleBuffer().get( vals, offset, chunk );
+				offset += chunk;
+			}
+			return vals;
+		}
+	}
+}
@@ -0,0 +1,531 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * Writes TrackMate data to a compact binary file, that can be read back with
+ * {@link TmBinaryReader}.
+ * <p>
+ * The settings, the log, the GUI state and the display settings are stored as
+ * they would be in a TrackMate XML file, in a small XML document at the
+ * beginning of the file. The model follows, stored column by column: one
+ * column of typed values per spot, edge and track feature, so that the
+ * numerical values do not have to be formatted and parsed as text, and can
+ * be read back from a memory-mapped file.
+ * <p>
+ * The model read back from a binary file is identical to the one read from a
+ * XML file saved from the same model.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TmBinaryWriter extends TmXmlWriter
+{
+
+	/*
+	 * FORMAT CONSTANTS
+	 */
+
+	/** The first 4 bytes of a TrackMate binary file: "TMBI". */
+	static final int MAGIC = 0x544D4249;
+
+	static final int FORMAT_VERSION = 1;
+
+	/** A column of <code>double</code> values. */
+	static final byte DOUBLE_COLUMN = 0;
+
+	/** A column of <code>int</code> values. */
+	static final byte INT_COLUMN = 1;
+
+	/*
+	 * FIELDS
+	 */
+
+	private final File file;
+
+	private Model model;
+
+	/*
+	 * CONSTRUCTORS
+	 */
+
+	/**
+	 * Creates a new binary file writer for TrackMate.
+	 *
+	 * @param file
+	 *            the file to write to, will be overwritten.
+	 */
+	public TmBinaryWriter( final File file )
+	{
+		this( file, new Logger.StringBuilderLogger() );
+	}
+
+	/**
+	 * Creates a new binary file writer for TrackMate.
+	 *
+	 * @param file
+	 *            the file to write to, will be overwritten.
+	 * @param logger
+	 *            the logger to report progress to.
+	 */
+	public TmBinaryWriter( final File file, final Logger logger )
+	{
+		super( file, logger, false );
+		this.file = file;
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * Sets the {@link Model} to write to the file. Only one model can be
+	 * stored in a binary file. It is read when the file is written, and must
+	 * not be modified before {@link #writeToFile()} returns.
+	 *
+	 * @param model
+	 *            the {@link Model} to write.
+	 */
+	@Override
+	public void appendModel( final Model model )
+	{
+		this.model = model;
+	}
+
+	@Override
+	public void writeToFile() throws FileNotFoundException, IOException
+	{
+		logger.log( "  Writing to file.\n" );
+		try (final BinaryOutput out = new BinaryOutput( file ))
+		{
+			out.putInt( MAGIC );
+			out.putInt( FORMAT_VERSION );
+
+			// Everything but the model, as XML.
+			final byte[] xml = super.toString().getBytes( StandardCharsets.UTF_8 );
+			out.putInt( xml.length );
+			out.putBytes( xml );
+
+			// The model.
+			out.putByte( ( byte ) ( model == null ? 0 : 1 ) );
+			if ( model != null )
+				writeModel( out, model, logger );
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private static void writeModel( final BinaryOutput out, final Model model, final Logger logger ) throws IOException
+	{
+		out.putString( model.getSpaceUnits() );
+		out.putString( model.getTimeUnits() );
+
+		// Feature declarations.
+		final FeatureModel fm = model.getFeatureModel();
+		writeFeatureDeclarations( out, fm.getSpotFeatures(), fm.getSpotFeatureNames(),
+				fm.getSpotFeatureShortNames(), fm.getSpotFeatureDimensions(), fm.getSpotFeatureIsInt() );
+		writeFeatureDeclarations( out, fm.getEdgeFeatures(), fm.getEdgeFeatureNames(),
+				fm.getEdgeFeatureShortNames(), fm.getEdgeFeatureDimensions(), fm.getEdgeFeatureIsInt() );
+		writeFeatureDeclarations( out, fm.getTrackFeatures(), fm.getTrackFeatureNames(),
+				fm.getTrackFeatureShortNames(), fm.getTrackFeatureDimensions(), fm.getTrackFeatureIsInt() );
+		logger.log( "  Added spot, edge and track feature declarations.\n" );
+
+		final Spot[] spots = writeSpots( out, model );
+		logger.log( "  Added " + spots.length + " spots.\n" );
+
+		writeTracks( out, model, spots );
+		logger.log( "  Added tracks.\n" );
+	}
+
+	private static void writeFeatureDeclarations(
+			final BinaryOutput out,
+			final Collection< String > features,
+			final Map< String, String > featureNames,
+			final Map< String, String > featureShortNames,
+			final Map< String, Dimension > featureDimensions,
+			final Map< String, Boolean > featureIsInt ) throws IOException
+	{
+		out.putInt( features.size() );
+		for ( final String feature : features )
+		{
+			out.putString( feature );
+			out.putString( featureNames.get( feature ) );
+			out.putString( featureShortNames.get( feature ) );
+			out.putString( featureDimensions.get( feature ).name() );
+			out.putByte( ( byte ) ( featureIsInt.get( feature ).booleanValue() ? 1 : 0 ) );
+		}
+	}
+
+	/**
+	 * Writes the spots and returns them in the order they were written.
+	 */
+	private static Spot[] writeSpots( final BinaryOutput out, final Model model ) throws IOException
+	{
+		final SpotCollection sc = model.getSpots();
+
+		// Frames and spots, in the order we write them.
+		final Set< Integer > frames = sc.keySet();
+		final int[] frameIDs = new int[ frames.size() ];
+		final int[] frameCounts = new int[ frames.size() ];
+		final Spot[] spots = new Spot[ sc.getNSpots( false ) ];
+		int f = 0;
+		int s = 0;
+		for ( final Integer frame : frames )
+		{
+			frameIDs[ f ] = frame.intValue();
+			for ( final Iterator< Spot > it = sc.iterator( frame, false ); it.hasNext(); )
+			{
+				spots[ s++ ] = it.next();
+				frameCounts[ f ]++;
+			}
+			f++;
+		}
+
+		out.putInt( frameIDs.length );
+		out.putInts( frameIDs );
+		out.putInts( frameCounts );
+		out.putInt( spots.length );
+
+		// IDs and names. Default names are not stored.
+		final int[] ids = new int[ spots.length ];
+		for ( int i = 0; i < spots.length; i++ )
+			ids[ i ] = spots[ i ].ID();
+		out.putInts( ids );
+		for ( final Spot spot : spots )
+		{
+			final String name = spot.getName();
+			out.putString( ( null == name || name.equals( "ID" + spot.ID() ) ) ? "" : name );
+		}
+
+		// Feature columns, for all the features set in at least one spot.
+		final Map< String, Boolean > isInt = model.getFeatureModel().getSpotFeatureIsInt();
+		final List< String > features = new ArrayList<>();
+		for ( int k = 0; k < Spot.FEATURE_INDEX.size(); k++ )
+		{
+			final String feature = Spot.FEATURE_INDEX.keyOf( k );
+			for ( final Spot spot : spots )
+			{
+				if ( null != spot.getFeature( feature ) )
+				{
+					features.add( feature );
+					break;
+				}
+			}
+		}
+		out.putInt( features.size() );
+		for ( final String feature : features )
+		{
+			final boolean integer = isInt.getOrDefault( feature, Boolean.FALSE ).booleanValue();
+			writeColumn( out, feature, integer, spots.length, i -> spots[ i ].getFeature( feature ) );
+		}
+
+		// ROIs.
+		int nRois = 0;
+		for ( final Spot spot : spots )
+			if ( null != spot.getRoi() )
+				nRois++;
+		out.putInt( nRois );
+		for ( int i = 0; i < spots.length; i++ )
+		{
+			final SpotRoi roi = spots[ i ].getRoi();
+			if ( null == roi )
+				continue;
+			out.putInt( i );
+			out.putInt( roi.x.length );
+			out.putDoubles( roi.x );
+			out.putDoubles( roi.y );
+		}
+		return spots;
+	}
+
+	private static void writeTracks( final BinaryOutput out, final Model model, final Spot[] spots ) throws IOException
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Index of spots in the order they were written.
+		final Map< Spot, Integer > spotIndex = new HashMap<>( spots.length * 2 );
+		for ( int i = 0; i < spots.length; i++ )
+			spotIndex.put( spots[ i ], Integer.valueOf( i ) );
+
+		// Tracks. Like in XML files, tracks without edges are not saved.
+		final List< Integer > trackIDs = new ArrayList<>();
+		for ( final Integer trackID : trackModel.trackIDs( false ) )
+			if ( !trackModel.trackEdges( trackID ).isEmpty() )
+				trackIDs.add( trackID );
+
+		final int nTracks = trackIDs.size();
+		final int[] ids = new int[ nTracks ];
+		final int[] nEdgesPerTrack = new int[ nTracks ];
+		final byte[] visible = new byte[ nTracks ];
+		final List< DefaultWeightedEdge > edges = new ArrayList<>();
+		for ( int t = 0; t < nTracks; t++ )
+		{
+			final Integer trackID = trackIDs.get( t );
+			ids[ t ] = trackID.intValue();
+			visible[ t ] = ( byte ) ( trackModel.isVisible( trackID ) ? 1 : 0 );
+			final Set< DefaultWeightedEdge > track = trackModel.trackEdges( trackID );
+			nEdgesPerTrack[ t ] = track.size();
+			edges.addAll( track );
+		}
+		out.putInt( nTracks );
+		out.putInts( ids );
+		out.putInts( nEdgesPerTrack );
+		out.putBytes( visible );
+		for ( final Integer trackID : trackIDs )
+			out.putString( trackModel.name( trackID ) );
+
+		// Track features. The track ID is stored above.
+		final List< String > trackFeatures = new ArrayList<>( fm.getTrackFeatures() );
+		trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
+		out.putInt( trackFeatures.size() );
+		for ( final String feature : trackFeatures )
+		{
+			writeColumn( out, feature, fm.getTrackFeatureIsInt().get( feature ).booleanValue(), nTracks,
+					t -> fm.getTrackFeature( trackIDs.get( t ), feature ) );
+		}
+
+		// Edges, as indices of their source and target spots, forward in time.
+		final int nEdges = edges.size();
+		final int[] sources = new int[ nEdges ];
+		final int[] targets = new int[ nEdges ];
+		for ( int e = 0; e < nEdges; e++ )
+		{
+			final DefaultWeightedEdge edge = edges.get( e );
+			final Spot source = trackModel.getEdgeSource( edge );
+			final Spot target = trackModel.getEdgeTarget( edge );
+			final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+			final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
+			final boolean forward = targetFrame >= sourceFrame;
+			sources[ e ] = spotIndex.get( forward ? source : target ).intValue();
+			targets[ e ] = spotIndex.get( forward ? target : source ).intValue();
+		}
+		out.putInt( nEdges );
+		out.putInts( sources );
+		out.putInts( targets );
+
+		// Edge features. Source and target IDs are stored above.
+		final List< String > edgeFeatures = new ArrayList<>( fm.getEdgeFeatures() );
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
+		out.putInt( edgeFeatures.size() );
+		for ( final String feature : edgeFeatures )
+		{
+			writeColumn( out, feature, fm.getEdgeFeatureIsInt().get( feature ).booleanValue(), nEdges,
+					e -> fm.getEdgeFeature( edges.get( e ), feature ) );
+		}
+	}
+
+	/**
+	 * Writes a feature column. Missing values are flagged in a bit set, which
+	 * is omitted if all the values are present.
+	 */
+	private static void writeColumn( final BinaryOutput out, final String feature, final boolean isInt, final int n, final IntFunction< Double > values ) throws IOException
+	{
+		final long[] present = new long[ ( n + 63 ) >>> 6 ];
+		final double[] column = new double[ n ];
+		boolean dense = true;
+		for ( int i = 0; i < n; i++ )
+		{
+			final Double val = values.apply( i );
+			if ( null == val )
+			{
+				dense = false;
+				continue;
+			}
+			present[ i >>> 6 ] |= 1l << i;
+			column[ i ] = val.doubleValue();
+		}
+
+		out.putString( feature );
+		out.putByte( isInt ? INT_COLUMN : DOUBLE_COLUMN );
+		out.putByte( ( byte ) ( dense ? 1 : 0 ) );
+		if ( !dense )
+			out.putLongs( present );
+
+		if ( isInt )
+		{
+			final int[] ints = new int[ n ];
+			for ( int i = 0; i < n; i++ )
+				ints[ i ] = ( int ) column[ i ];
+			out.putInts( ints );
+		}
+		else
+		{
+			out.putDoubles( column );
+		}
+	}
+
+	/**
+	 * Buffered big-endian output to a file channel.
+	 */
+	private static final class BinaryOutput implements Closeable
+	{
+
+		private final FileChannel channel;
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect( 1 << 20 );
+
+		public BinaryOutput( final File file ) throws IOException
+		{
+			this.channel = FileChannel.open( file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+		}
+
+		private void ensure( final int nBytes ) throws IOException
+		{
+			if ( buffer.remaining() < nBytes )
+				flush();
+		}
+
+		private void flush() throws IOException
+		{
+			buffer.flip();
+			while ( buffer.hasRemaining() )
+				channel.write( buffer );
+			buffer.clear();
+		}
+
+		public void putByte( final byte val ) throws IOException
+		{
+			ensure( 1 );
+			buffer.put( val );
+		}
+
+		public void putInt( final int val ) throws IOException
+		{
+			ensure( 4 );
+			buffer.putInt( val );
+		}
+
+		public void putBytes( final byte[] vals ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < vals.length )
+			{
+				ensure( 1 );
+				final int n = Math.min( buffer.remaining(), vals.length - offset );
+				buffer.put( vals, offset, n );
+				offset += n;
+			}
+		}
+
+		public void putInts( final int[] vals ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < vals.length )
+			{
+				ensure( 4 );
+				final int n = Math.min( buffer.remaining() / 4, vals.length - offset );
+				buffer.asIntBuffer().put( vals, offset, n );
+				buffer.position( buffer.position() + 4 * n );
+				offset += n;
+			}
+		}
+
+		public void putLongs( final long[] vals ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < vals.length )
+			{
+				ensure( 8 );
+				final int n = Math.min( buffer.remaining() / 8, vals.length - offset );
+				buffer.asLongBuffer().put( vals, offset, n );
+				buffer.position( buffer.position() + 8 * n );
+				offset += n;
+			}
+		}
+
+		public void putDoubles( final double[] vals ) throws IOException
+		{
+			int offset = 0;
+			while ( offset < vals.length )
+			{
+				ensure( 8 );
+				final int n = Math.min( buffer.remaining() / 8, vals.length - offset );
+				buffer.asDoubleBuffer().put( vals, offset, n );
+				buffer.position( buffer.position() + 8 * n );
+				offset += n;
+			}
+		}
+
+		/**
+		 * Writes a string as its UTF-8 length and bytes. A <code>null</code>
+		 * string has a length of -1.
+		 */
+		public void putString( final String str ) throws IOException
+		{
+			if ( null == str )
+			{
+				putInt( -1 );
+				return;
+			}
+			final byte[] bytes = str.getBytes( StandardCharsets.UTF_8 );
+			putInt( bytes.length );
+			putBytes( bytes );
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				flush();
+			}
+			finally
+			{
+				channel.close();
+			}
+		}
+	}
+}
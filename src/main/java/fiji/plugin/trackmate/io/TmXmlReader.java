@@ -23,6 +23,7 @@ package fiji.plugin.trackmate.io;
 
 import static fiji.plugin.trackmate.detection.DetectorKeys.XML_ATTRIBUTE_DETECTOR_NAME;
 import static fiji.plugin.trackmate.io.IOUtils.readBooleanAttribute;
+import static fiji.plugin.trackmate.io.IOUtils.parseDouble;
 import static fiji.plugin.trackmate.io.IOUtils.readDoubleAttribute;
 import static fiji.plugin.trackmate.io.IOUtils.readIntAttribute;
 import static fiji.plugin.trackmate.io.TmXmlKeys.ANALYSER_ELEMENT_KEY;
@@ -99,6 +100,7 @@ import static fiji.plugin.trackmate.tracking.TrackerKeys.XML_ATTRIBUTE_TRACKER_N
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -107,7 +109,10 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jdom2.Attribute;
 import org.jdom2.DataConversionException;
@@ -117,6 +122,9 @@ import org.jdom2.JDOMException;
 import org.jdom2.input.SAXBuilder;
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.jgrapht.graph.SimpleWeightedGraph;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.FeatureModel;
@@ -146,6 +154,7 @@ import fiji.plugin.trackmate.providers.TrackAnalyzerProvider;
 import fiji.plugin.trackmate.providers.TrackerProvider;
 import fiji.plugin.trackmate.providers.ViewProvider;
 import fiji.plugin.trackmate.tracking.SpotTrackerFactory;
+import fiji.plugin.trackmate.util.TMExecutors;
 import fiji.plugin.trackmate.visualization.TrackMateModelView;
 import fiji.plugin.trackmate.visualization.ViewFactory;
 import fiji.plugin.trackmate.visualization.trackscheme.TrackScheme;
@@ -183,6 +192,12 @@ public class TmXmlReader
 	 */
 	protected boolean ok = true;
 
+	/**
+	 * If <code>true</code>, the model element is not loaded in the document,
+	 * and the model is read with a {@link TmXmlStreamReader}.
+	 */
+	private final boolean streamModel;
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -191,13 +206,36 @@ public class TmXmlReader
 	 * Initialize this reader to read the file given in argument.
 	 */
 	public TmXmlReader( final File file )
+	{
+		this( file, false );
+	}
+
+	/**
+	 * Initialize this reader to read the file given in argument.
+	 * <p>
+	 * If <code>streamModel</code> is <code>true</code>, the model element is
+	 * not loaded in memory with the rest of the document. The model is read
+	 * directly from the file by a {@link TmXmlStreamReader} when
+	 * {@link #getModel()} is called, which saves the memory of the document
+	 * tree for large models.
+	 *
+	 * @param file
+	 *            the file to read.
+	 * @param streamModel
+	 *            whether to stream the model rather than reading it from the
+	 *            document tree.
+	 */
+	public TmXmlReader( final File file, final boolean streamModel )
 	{
 		this.file = file;
+		this.streamModel = streamModel;
 		final SAXBuilder sb = new SAXBuilder();
+		if ( streamModel )
+			sb.setXMLFilter( new SkipModelFilter() );
 		Element r = null;
-		try
+		try (InputStream is = openDocument())
 		{
-			document = sb.build( file );
+			document = sb.build( is, file.toURI().toString() );
 			r = document.getRootElement();
 		}
 		catch ( final JDOMException e )
@@ -352,6 +390,18 @@ public class TmXmlReader
 	 */
 	public Model getModel()
 	{
+		if ( streamModel )
+		{
+			final TmXmlStreamReader reader = new TmXmlStreamReader( file );
+			final Model model = reader.readModel( createModel() );
+			if ( !reader.isReadingOk() )
+			{
+				logger.error( reader.getErrorMessage() );
+				ok = false;
+			}
+			return model;
+		}
+
 		final Element modelElement = root.getChild( MODEL_ELEMENT_KEY );
 		if ( null == modelElement )
 			return null;
@@ -398,6 +448,20 @@ public class TmXmlReader
 		return model;
 	}
 
+	/**
+	 * Hook for subclassers:<br>
+	 * Opens the stream the XML document is read from. This method is called
+	 * by the constructor, after the {@link #file} field is set.
+	 *
+	 * @return a new input stream.
+	 * @throws IOException
+	 *             if the stream cannot be opened.
+	 */
+	protected InputStream openDocument() throws IOException
+	{
+		return IOUtils.openInputStream( file );
+	}
+
 	/**
 	 * Hook for subclassers:<br>
 	 * Creates the instance of {@link Model} that will be built upon loading
@@ -595,7 +659,7 @@ public class TmXmlReader
 		{
 			logger.error( "Cannot find the track collection in file.\n" );
 			ok = false;
-			return null;
+			return featureMap;
 		}
 
 		// Load tracks
@@ -893,6 +957,13 @@ public class TmXmlReader
 	{
 		// Root element for collection
 		final Element spotCollection = modelElement.getChild( SPOT_COLLECTION_ELEMENT_KEY );
+		if ( null == spotCollection )
+		{
+			logger.error( "Could not find the spot collection in file.\n" );
+			ok = false;
+			cache = new ConcurrentHashMap<>();
+			return SpotCollection.fromMap( new HashMap<>() );
+		}
 
 		// Retrieve children elements for each frame
 		final List< Element > frameContent = spotCollection.getChildren( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
@@ -912,23 +983,53 @@ public class TmXmlReader
 		// Instantiate cache
 		cache = new ConcurrentHashMap<>( nspots );
 
-		// Load collection and build cache
-		int currentFrame = 0;
-		final Map< Integer, Set< Spot > > content = new HashMap<>( frameContent.size() );
-		for ( final Element currentFrameContent : frameContent )
+		/*
+		 * Frames are independent: parse them concurrently, each with its own
+		 * logger, and merge the results in the order of the file.
+		 */
+		final List< Callable< Set< Spot > > > tasks = new ArrayList<>( frameContent.size() );
+		final StringBuilderLogger[] frameLoggers = new StringBuilderLogger[ frameContent.size() ];
+		final AtomicBoolean featuresOk = new AtomicBoolean( true );
+		for ( int i = 0; i < frameContent.size(); i++ )
 		{
+			final Element currentFrameContent = frameContent.get( i );
+			final StringBuilderLogger frameLogger = new StringBuilderLogger();
+			frameLoggers[ i ] = frameLogger;
+			tasks.add( () -> {
+				final List< Element > spotContent = currentFrameContent.getChildren( SPOT_ELEMENT_KEY );
+				final Set< Spot > spotSet = new HashSet<>( spotContent.size() );
+				for ( final Element spotElement : spotContent )
+					spotSet.add( createSpotFrom( spotElement, frameLogger, featuresOk ) );
+				return spotSet;
+			} );
+		}
 
-			currentFrame = readIntAttribute( currentFrameContent, FRAME_ATTRIBUTE_NAME, logger );
-			final List< Element > spotContent = currentFrameContent.getChildren( SPOT_ELEMENT_KEY );
-			final Set< Spot > spotSet = new HashSet<>( spotContent.size() );
-			for ( final Element spotElement : spotContent )
-			{
-				final Spot spot = createSpotFrom( spotElement );
-				spotSet.add( spot );
+		final List< Set< Spot > > spotSets;
+		try
+		{
+			spotSets = TMExecutors.invokeAll( tasks, TMExecutors.getParallelism() );
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			logger.error( "Problem reading the spots:\n" + e.getMessage() + '\n' );
+			ok = false;
+			return SpotCollection.fromMap( new HashMap<>() );
+		}
+
+		final Map< Integer, Set< Spot > > content = new HashMap<>( frameContent.size() );
+		for ( int i = 0; i < frameContent.size(); i++ )
+		{
+			final int currentFrame = readIntAttribute( frameContent.get( i ), FRAME_ATTRIBUTE_NAME, logger );
+			final String errors = frameLoggers[ i ].toString();
+			if ( !errors.isEmpty() )
+				logger.error( errors );
+			final Set< Spot > spotSet = spotSets.get( i );
+			for ( final Spot spot : spotSet )
 				cache.put( spot.ID(), spot );
-			}
 			content.put( currentFrame, spotSet );
 		}
+		if ( !featuresOk.get() )
+			ok = false;
 		final SpotCollection allSpots = SpotCollection.fromMap( content );
 		return allSpots;
 	}
@@ -944,6 +1045,8 @@ public class TmXmlReader
 	{
 
 		final Element allTracksElement = modelElement.getChild( TRACK_COLLECTION_ELEMENT_KEY );
+		if ( null == allTracksElement )
+			return true; // Reported with the track features.
 		final List< Element > trackElements = allTracksElement.getChildren( TRACK_ELEMENT_KEY );
 
 		// What we have to flesh out from the file
@@ -1058,10 +1161,12 @@ public class TmXmlReader
 		final Set< Integer > savedFilteredTrackIDs = readFilteredTrackIDs( modelElement );
 		final Map< Integer, Boolean > visibility = new HashMap<>( connectedEdgeSet.size() );
 		final Set< Integer > ids = new HashSet<>( connectedEdgeSet.keySet() );
-		for ( final Integer id : savedFilteredTrackIDs )
-			visibility.put( id, Boolean.TRUE );
-
-		ids.removeAll( savedFilteredTrackIDs );
+		if ( null != savedFilteredTrackIDs )
+		{
+			for ( final Integer id : savedFilteredTrackIDs )
+				visibility.put( id, Boolean.TRUE );
+			ids.removeAll( savedFilteredTrackIDs );
+		}
 		for ( final Integer id : ids )
 			visibility.put( id, Boolean.FALSE );
 
@@ -1131,22 +1236,18 @@ public class TmXmlReader
 		return filteredTrackIndices;
 	}
 
-	private Spot createSpotFrom( final Element spotEl )
+	private static Spot createSpotFrom( final Element spotEl, final Logger logger, final AtomicBoolean featuresOk )
 	{
 		// Read id.
 		final int ID = readIntAttribute( spotEl, SPOT_ID_ATTRIBUTE_NAME, logger );
 		final Spot spot = new Spot( ID );
 
-		final List< Attribute > atts = spotEl.getAttributes();
-		removeAttributeFromName( atts, SPOT_ID_ATTRIBUTE_NAME );
-
 		// Read name.
 		String name = spotEl.getAttributeValue( SPOT_NAME_ATTRIBUTE_NAME );
 		if ( null == name || name.equals( "" ) )
 			name = "ID" + ID;
 
 		spot.setName( name );
-		removeAttributeFromName( atts, SPOT_NAME_ATTRIBUTE_NAME );
 
 		/*
 		 * Try to read ROI if any.
@@ -1161,24 +1262,34 @@ public class TmXmlReader
 			int index = 0;
 			for ( int i = 0; i < roiNPoints; i++ )
 			{
-				final double x = Double.parseDouble( vals[ index++ ] );
+				final double x = parseDouble( vals[ index++ ] );
 				xrois[ i ] = x;
-				final double y = Double.parseDouble( vals[ index++ ] );
+				final double y = parseDouble( vals[ index++ ] );
 				yrois[ i ] = y;
 			}
 			spot.setRoi( new SpotRoi( xrois, yrois ) );
 		}
-		removeAttributeFromName( atts, ROI_N_POINTS_ATTRIBUTE_NAME );
 
 		/*
 		 * Read all other attributes -> features.
 		 */
-		for ( final Attribute att : atts )
+		for ( final Attribute att : spotEl.getAttributes() )
 		{
-			if ( att.getName().equals( SPOT_NAME_ATTRIBUTE_NAME ) || att.getName().equals( SPOT_ID_ATTRIBUTE_NAME ) )
+			final String feature = att.getName();
+			if ( feature.equals( SPOT_NAME_ATTRIBUTE_NAME )
+					|| feature.equals( SPOT_ID_ATTRIBUTE_NAME )
+					|| feature.equals( ROI_N_POINTS_ATTRIBUTE_NAME ) )
 				continue;
 
-			spot.putFeature( att.getName(), Double.valueOf( att.getValue() ) );
+			try
+			{
+				spot.putFeature( feature, Double.valueOf( parseDouble( att.getValue() ) ) );
+			}
+			catch ( final NumberFormatException e )
+			{
+				logger.error( "Spot " + ID + ": Cannot read the feature " + feature + " value. Skipping.\n" );
+				featuresOk.set( false );
+			}
 		}
 		return spot;
 	}
@@ -1504,4 +1615,53 @@ public class TmXmlReader
 		featureDimensions.put( feature, featureDimension );
 		isIntFeature.put( feature, Boolean.valueOf( isInt ) );
 	}
+
+	/**
+	 * A SAX filter that drops the model element and its content, so that it
+	 * does not end up in the document.
+	 */
+	private static final class SkipModelFilter extends XMLFilterImpl
+	{
+
+		private int depth = 0;
+
+		/**
+		 * Depth of the element we skip, or -1 if we are not skipping.
+		 */
+		private int skipDepth = -1;
+
+		@Override
+		public void startElement( final String uri, final String localName, final String qName, final Attributes atts ) throws SAXException
+		{
+			depth++;
+			if ( skipDepth < 0 && depth == 2 && MODEL_ELEMENT_KEY.equals( localName.isEmpty() ? qName : localName ) )
+				skipDepth = depth;
+			if ( skipDepth < 0 )
+				super.startElement( uri, localName, qName, atts );
+		}
+
+		@Override
+		public void endElement( final String uri, final String localName, final String qName ) throws SAXException
+		{
+			if ( skipDepth < 0 )
+				super.endElement( uri, localName, qName );
+			else if ( depth == skipDepth )
+				skipDepth = -1;
+			depth--;
+		}
+
+		@Override
+		public void characters( final char[] ch, final int start, final int length ) throws SAXException
+		{
+			if ( skipDepth < 0 )
+				super.characters( ch, start, length );
+		}
+
+		@Override
+		public void ignorableWhitespace( final char[] ch, final int start, final int length ) throws SAXException
+		{
+			if ( skipDepth < 0 )
+				super.ignorableWhitespace( ch, start, length );
+		}
+	}
 }
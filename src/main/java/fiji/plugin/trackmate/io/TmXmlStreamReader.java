@@ -0,0 +1,977 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmXmlKeys.EDGE_FEATURES_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_ATTRIBUTE;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_DECLARATIONS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_DIMENSION_ATTRIBUTE;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_ISINT_ATTRIBUTE;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_NAME_ATTRIBUTE;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_SHORT_NAME_ATTRIBUTE;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FRAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.MODEL_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.ROI_N_POINTS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPATIAL_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FEATURES_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FRAME_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ID_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_NAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TIME_UNITS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_EDGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_FEATURES_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Logger.StringBuilderLogger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * Reads the model saved in a TrackMate XML file, without building the
+ * document tree in memory.
+ * <p>
+ * Where {@link TmXmlReader} parses the whole file into a JDOM document before
+ * walking it, this reader scans the file once with a StAX
+ * {@link XMLStreamReader}, and creates the spots, the track graph and the
+ * feature values as their elements are met. The memory needed to read a file
+ * is therefore that of the model itself, and the model is identical to the one
+ * returned by {@link TmXmlReader#getModel()}.
+ * <p>
+ * The model content is read the fastest in the order in which
+ * {@link TmXmlWriter} writes it: feature declarations, then spots, then
+ * tracks, then filtered tracks. If the tracks come before the spots or the
+ * feature declarations, the attributes of their edges are kept until the end
+ * of the model element, and the tracks are built then. Only the model element
+ * is read; the settings, the log and the GUI state are ignored.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TmXmlStreamReader
+{
+
+	private final File file;
+
+	private final StringBuilderLogger logger = new StringBuilderLogger();
+
+	private boolean ok = true;
+
+	/*
+	 * MODEL CONTENT, as it is read.
+	 */
+
+	private Map< Integer, Spot > cache;
+
+	private Map< Integer, Set< Spot > > content;
+
+	private SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph;
+
+	private Map< Integer, Set< Spot > > connectedVertexSet;
+
+	private Map< Integer, Set< DefaultWeightedEdge > > connectedEdgeSet;
+
+	private Map< Integer, String > savedTrackNames;
+
+	private Map< Integer, Map< String, Double > > trackFeatures;
+
+	private List< Integer > filteredTrackIDs;
+
+	/**
+	 * The edges of the tracks read before the spots or the feature
+	 * declarations, per track ID in file order.
+	 */
+	private Map< Integer, List< EdgeAttributes > > pendingTracks;
+
+	/**
+	 * Whether the tracks could be read without error. If not, they are not
+	 * added to the model.
+	 */
+	private boolean tracksOk;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Initialize this reader to read the file given in argument.
+	 *
+	 * @param file
+	 *            the TrackMate XML file to read.
+	 */
+	public TmXmlStreamReader( final File file )
+	{
+		this.file = file;
+	}
+
+	/*
+	 * PUBLIC METHODS
+	 */
+
+	/**
+	 * Returns the model saved in the file, or <code>null</code> if a saved
+	 * model cannot be found in the xml file.
+	 *
+	 * @return a new {@link Model}.
+	 */
+	public Model getModel()
+	{
+		return readModel( new Model() );
+	}
+
+	/**
+	 * Reads the model saved in the file into the specified model, which is
+	 * expected to be empty.
+	 *
+	 * @param model
+	 *            the model to fill.
+	 * @return the specified model, or <code>null</code> if a saved model
+	 *         cannot be found in the xml file.
+	 */
+	public Model readModel( final Model model )
+	{
+		ok = true;
+		try (final InputStream is = IOUtils.openInputStream( file ))
+		{
+			final XMLStreamReader reader = createXMLStreamReader( is );
+			try
+			{
+				// Root element.
+				if ( !nextChild( reader ) )
+				{
+					logger.error( "Problem parsing " + file.getName() + ", it is empty.\n" );
+					ok = false;
+					return null;
+				}
+
+				// Find the model element among its children.
+				while ( nextChild( reader ) )
+				{
+					if ( MODEL_ELEMENT_KEY.equals( reader.getLocalName() ) )
+					{
+						readModelElement( reader, model );
+						return model;
+					}
+					skipElement( reader );
+				}
+				return null;
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch ( final XMLStreamException e )
+		{
+			ok = false;
+			logger.error( "Problem parsing " + file.getName() + ", it is not a valid TrackMate XML file.\nError message is:\n"
+					+ e.getLocalizedMessage() + '\n' );
+		}
+		catch ( final IOException e )
+		{
+			ok = false;
+			logger.error( "Problem reading " + file.getName()
+					+ ".\nError message is:\n" + e.getLocalizedMessage() + '\n' );
+		}
+		return null;
+	}
+
+	/**
+	 * Returns an explanatory message about the last unsuccessful read attempt.
+	 *
+	 * @return an error message.
+	 * @see #isReadingOk()
+	 */
+	public String getErrorMessage()
+	{
+		return logger.toString();
+	}
+
+	/**
+	 * Returns <code>true</code> if the last reading method call happened
+	 * without any warning or error, <code>false</code> otherwise.
+	 *
+	 * @return <code>true</code> if reading was ok.
+	 * @see #getErrorMessage()
+	 */
+	public boolean isReadingOk()
+	{
+		return ok;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void readModelElement( final XMLStreamReader reader, final Model model ) throws XMLStreamException
+	{
+		// Physical units
+		final String spaceUnits = reader.getAttributeValue( null, SPATIAL_UNITS_ATTRIBUTE_NAME );
+		final String timeUnits = reader.getAttributeValue( null, TIME_UNITS_ATTRIBUTE_NAME );
+		model.setPhysicalUnits( spaceUnits, timeUnits );
+
+		cache = null;
+		content = null;
+		graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		connectedVertexSet = new HashMap<>();
+		connectedEdgeSet = new HashMap<>();
+		savedTrackNames = new HashMap<>();
+		trackFeatures = new HashMap<>();
+		filteredTrackIDs = null;
+		pendingTracks = new LinkedHashMap<>();
+		tracksOk = true;
+		boolean foundDeclarations = false;
+		boolean foundTracks = false;
+
+		while ( nextChild( reader ) )
+		{
+			switch ( reader.getLocalName() )
+			{
+			case FEATURE_DECLARATIONS_ELEMENT_KEY:
+				readFeatureDeclarations( reader, model.getFeatureModel() );
+				foundDeclarations = true;
+				break;
+			case SPOT_COLLECTION_ELEMENT_KEY:
+				readSpots( reader );
+				break;
+			case TRACK_COLLECTION_ELEMENT_KEY:
+				readTracks( reader, model.getFeatureModel(), null == cache || !foundDeclarations );
+				foundTracks = true;
+				break;
+			case FILTERED_TRACK_ELEMENT_KEY:
+				readFilteredTrackIDs( reader );
+				break;
+			default:
+				skipElement( reader );
+				break;
+			}
+		}
+
+		if ( !foundDeclarations )
+		{
+			logger.error( "Could not find feature declarations in file.\n" );
+			ok = false;
+		}
+
+		// Spots
+		if ( null == content )
+		{
+			logger.error( "Could not find the spot collection in file.\n" );
+			ok = false;
+			content = new HashMap<>();
+		}
+		model.setSpots( SpotCollection.fromMap( content ), false );
+
+		// Tracks
+		if ( !foundTracks )
+		{
+			logger.error( "Cannot find the track collection in file.\n" );
+			ok = false;
+		}
+		if ( null == cache )
+			cache = new HashMap<>();
+		addPendingTracks( model.getFeatureModel() );
+
+		final Set< Integer > visibleTrackIDs = new HashSet<>();
+		if ( null == filteredTrackIDs )
+		{
+			logger.error( "Could not find the filtered track IDs in file.\n" );
+			ok = false;
+		}
+		else
+		{
+			// Check that all the filtered track IDs exist.
+			for ( final Integer id : filteredTrackIDs )
+			{
+				if ( !connectedEdgeSet.containsKey( id ) )
+				{
+					logger.error( "Invalid filtered track index: " + id + ". Track ID does not exist.\n" );
+					ok = false;
+				}
+				else
+				{
+					visibleTrackIDs.add( id );
+				}
+			}
+		}
+		if ( tracksOk )
+		{
+			final Map< Integer, Boolean > visibility = new HashMap<>( connectedEdgeSet.size() );
+			for ( final Integer id : connectedEdgeSet.keySet() )
+				visibility.put( id, Boolean.valueOf( visibleTrackIDs.contains( id ) ) );
+			model.getTrackModel().from( graph, connectedVertexSet, connectedEdgeSet, visibility, savedTrackNames );
+		}
+		else
+		{
+			ok = false;
+		}
+
+		// Track features
+		final FeatureModel fm = model.getFeatureModel();
+		for ( final Integer trackID : trackFeatures.keySet() )
+		{
+			final Map< String, Double > savedFeatures = trackFeatures.get( trackID );
+			for ( final String feature : savedFeatures.keySet() )
+				fm.putTrackFeature( trackID, feature, savedFeatures.get( feature ) );
+		}
+
+		// Release what we read.
+		cache = null;
+		content = null;
+		graph = null;
+		connectedVertexSet = null;
+		connectedEdgeSet = null;
+		savedTrackNames = null;
+		trackFeatures = null;
+		filteredTrackIDs = null;
+		pendingTracks = null;
+	}
+
+	private void readFeatureDeclarations( final XMLStreamReader reader, final FeatureModel fm ) throws XMLStreamException
+	{
+		boolean foundSpots = false;
+		boolean foundEdges = false;
+		boolean foundTracks = false;
+		while ( nextChild( reader ) )
+		{
+			final String el = reader.getLocalName();
+			if ( !SPOT_FEATURES_ELEMENT_KEY.equals( el ) && !EDGE_FEATURES_ELEMENT_KEY.equals( el ) && !TRACK_FEATURES_ELEMENT_KEY.equals( el ) )
+			{
+				skipElement( reader );
+				continue;
+			}
+
+			final Collection< String > features = new ArrayList<>();
+			final Map< String, String > featureNames = new HashMap<>();
+			final Map< String, String > featureShortNames = new HashMap<>();
+			final Map< String, Dimension > featureDimensions = new HashMap<>();
+			final Map< String, Boolean > isIntFeature = new HashMap<>();
+			while ( nextChild( reader ) )
+			{
+				if ( FEATURE_ELEMENT_KEY.equals( reader.getLocalName() ) )
+					readSingleFeatureDeclaration( reader, features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+				skipElement( reader );
+			}
+
+			switch ( el )
+			{
+			case SPOT_FEATURES_ELEMENT_KEY:
+				fm.declareSpotFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+				foundSpots = true;
+				break;
+			case EDGE_FEATURES_ELEMENT_KEY:
+				fm.declareEdgeFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+				foundEdges = true;
+				break;
+			default:
+				fm.declareTrackFeatures( features, featureNames, featureShortNames, featureDimensions, isIntFeature );
+				foundTracks = true;
+				break;
+			}
+		}
+
+		if ( !foundSpots )
+		{
+			logger.error( "Could not find spot feature declarations in file.\n" );
+			ok = false;
+		}
+		if ( !foundEdges )
+		{
+			logger.error( "Could not find edge feature declarations in file.\n" );
+			ok = false;
+		}
+		if ( !foundTracks )
+		{
+			logger.error( "Could not find track feature declarations in file.\n" );
+			ok = false;
+		}
+	}
+
+	private void readSingleFeatureDeclaration(
+			final XMLStreamReader reader,
+			final Collection< String > features,
+			final Map< String, String > featureNames,
+			final Map< String, String > featureShortNames,
+			final Map< String, Dimension > featureDimensions,
+			final Map< String, Boolean > isIntFeature )
+	{
+		final String feature = reader.getAttributeValue( null, FEATURE_ATTRIBUTE );
+		if ( null == feature )
+		{
+			logger.error( "Could not find feature declaration for element " + reader.getLocalName() + ".\n" );
+			ok = false;
+			return;
+		}
+		final String featureName = reader.getAttributeValue( null, FEATURE_NAME_ATTRIBUTE );
+		if ( null == featureName )
+		{
+			logger.error( "Could not find name for feature " + feature + ".\n" );
+			ok = false;
+			return;
+		}
+		final String featureShortName = reader.getAttributeValue( null, FEATURE_SHORT_NAME_ATTRIBUTE );
+		if ( null == featureShortName )
+		{
+			logger.error( "Could not find short name for feature " + feature + ".\n" );
+			ok = false;
+			return;
+		}
+		final String dimension = reader.getAttributeValue( null, FEATURE_DIMENSION_ATTRIBUTE );
+		if ( null == dimension )
+		{
+			logger.error( "Could not find dimension for feature " + feature + ".\n" );
+			ok = false;
+			return;
+		}
+		final Dimension featureDimension = Dimension.valueOf( dimension );
+		boolean isInt = false;
+		final String isIntStr = reader.getAttributeValue( null, FEATURE_ISINT_ATTRIBUTE );
+		if ( null == isIntStr || !isBoolean( isIntStr ) )
+		{
+			logger.error( "Could not read the isInt attribute for feature " + feature + ".\n" );
+			ok = false;
+		}
+		else
+		{
+			isInt = parseBoolean( isIntStr );
+		}
+
+		features.add( feature );
+		featureNames.put( feature, featureName );
+		featureShortNames.put( feature, featureShortName );
+		featureDimensions.put( feature, featureDimension );
+		isIntFeature.put( feature, Boolean.valueOf( isInt ) );
+	}
+
+	private void readSpots( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		// Size the cache from the total number of spots, if we have it.
+		final int nspots = readInt( reader, SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, false );
+		cache = new HashMap<>( Math.max( 16, ( int ) ( nspots / 0.75f ) + 1 ) );
+		content = new HashMap<>();
+
+		while ( nextChild( reader ) )
+		{
+			if ( !SPOT_FRAME_COLLECTION_ELEMENT_KEY.equals( reader.getLocalName() ) )
+			{
+				skipElement( reader );
+				continue;
+			}
+
+			final int frame = readInt( reader, FRAME_ATTRIBUTE_NAME, true );
+			final List< Spot > spots = new ArrayList<>();
+			while ( nextChild( reader ) )
+			{
+				if ( !SPOT_ELEMENT_KEY.equals( reader.getLocalName() ) )
+				{
+					skipElement( reader );
+					continue;
+				}
+				final Spot spot = createSpot( reader );
+				spots.add( spot );
+				cache.put( Integer.valueOf( spot.ID() ), spot );
+			}
+			content.put( Integer.valueOf( frame ), new HashSet<>( spots ) );
+		}
+	}
+
+	/**
+	 * Creates a spot from the current spot element, and moves past its end.
+	 */
+	private Spot createSpot( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		final int ID = readInt( reader, SPOT_ID_ATTRIBUTE_NAME, true );
+		final Spot spot = new Spot( ID );
+
+		String name = null;
+		int roiNPoints = 0;
+		final int nAttributes = reader.getAttributeCount();
+		for ( int i = 0; i < nAttributes; i++ )
+		{
+			final String att = reader.getAttributeLocalName( i );
+			final String value = reader.getAttributeValue( i );
+			if ( SPOT_ID_ATTRIBUTE_NAME.equals( att ) )
+				continue;
+
+			if ( SPOT_NAME_ATTRIBUTE_NAME.equals( att ) )
+			{
+				name = value;
+			}
+			else if ( ROI_N_POINTS_ATTRIBUTE_NAME.equals( att ) )
+			{
+				try
+				{
+					roiNPoints = Integer.parseInt( value.trim() );
+				}
+				catch ( final NumberFormatException e )
+				{
+					roiNPoints = 0;
+				}
+			}
+			else
+			{
+				try
+				{
+					spot.putFeature( att, IOUtils.parseDouble( value ) );
+				}
+				catch ( final NumberFormatException e )
+				{
+					logger.error( "Spot " + ID + ": Cannot read the feature " + att + " value. Skipping.\n" );
+					ok = false;
+				}
+			}
+		}
+
+		if ( null == name || name.equals( "" ) )
+			name = "ID" + ID;
+		spot.setName( name );
+
+		// The text content is the ROI, if any.
+		final String text = reader.getElementText();
+		if ( roiNPoints > 2 )
+		{
+			final double[] xrois = new double[ roiNPoints ];
+			final double[] yrois = new double[ roiNPoints ];
+			final String[] vals = text.trim().split( "\\s+" );
+			int index = 0;
+			for ( int i = 0; i < roiNPoints; i++ )
+			{
+				xrois[ i ] = IOUtils.parseDouble( vals[ index++ ] );
+				yrois[ i ] = IOUtils.parseDouble( vals[ index++ ] );
+			}
+			spot.setRoi( new SpotRoi( xrois, yrois ) );
+		}
+		return spot;
+	}
+
+	/**
+	 * Reads the tracks of the track collection element. If
+	 * <code>defer</code> is <code>true</code>, the spots or the edge feature
+	 * declarations are not known yet, and the edges are only kept to be added
+	 * by {@link #addPendingTracks(FeatureModel)}.
+	 */
+	private void readTracks( final XMLStreamReader reader, final FeatureModel fm, final boolean defer ) throws XMLStreamException
+	{
+		final Map< String, Boolean > edgeFeatureIsInt = fm.getEdgeFeatureIsInt();
+
+		while ( nextChild( reader ) )
+		{
+			if ( !TRACK_ELEMENT_KEY.equals( reader.getLocalName() ) )
+			{
+				skipElement( reader );
+				continue;
+			}
+
+			// Track ID, name and features.
+			final int trackID = readInt( reader, TrackIndexAnalyzer.TRACK_ID, true );
+			String trackName = reader.getAttributeValue( null, TRACK_NAME_ATTRIBUTE_NAME );
+			if ( null == trackName )
+				trackName = "Unnamed";
+
+			final Map< String, Double > features = new LinkedHashMap<>();
+			final int nAttributes = reader.getAttributeCount();
+			for ( int i = 0; i < nAttributes; i++ )
+			{
+				final String att = reader.getAttributeLocalName( i );
+				if ( att.equals( TRACK_NAME_ATTRIBUTE_NAME ) )
+					continue;
+
+				final double val = parseDouble( reader.getAttributeValue( i ) );
+				if ( Double.isNaN( val ) && !isNaN( reader.getAttributeValue( i ) ) )
+				{
+					logger.error( "Track " + trackID + ": Cannot read the feature " + att + " value. Skipping.\n" );
+					ok = false;
+					continue;
+				}
+				features.put( att, Double.valueOf( val ) );
+			}
+			trackFeatures.put( Integer.valueOf( trackID ), features );
+			savedTrackNames.put( Integer.valueOf( trackID ), trackName );
+
+			// Edges.
+			final List< EdgeAttributes > pending = new ArrayList<>();
+			final Set< DefaultWeightedEdge > edges = new HashSet<>();
+			final Set< Spot > spots = new HashSet<>();
+			while ( nextChild( reader ) )
+			{
+				if ( !TRACK_EDGE_ELEMENT_KEY.equals( reader.getLocalName() ) || !tracksOk )
+				{
+					skipElement( reader );
+					continue;
+				}
+
+				final EdgeAttributes edge = new EdgeAttributes( reader );
+				if ( defer )
+					pending.add( edge );
+				else
+					addEdge( edge, trackID, fm, edgeFeatureIsInt, edges, spots );
+				skipElement( reader );
+			}
+
+			if ( defer )
+			{
+				pendingTracks.put( Integer.valueOf( trackID ), pending );
+			}
+			else
+			{
+				connectedVertexSet.put( Integer.valueOf( trackID ), spots );
+				connectedEdgeSet.put( Integer.valueOf( trackID ), edges );
+			}
+		}
+	}
+
+	/**
+	 * Adds the tracks whose edges were kept by
+	 * {@link #readTracks(XMLStreamReader, FeatureModel, boolean)}, once the
+	 * spots and the feature declarations are read.
+	 */
+	private void addPendingTracks( final FeatureModel fm )
+	{
+		final Map< String, Boolean > edgeFeatureIsInt = fm.getEdgeFeatureIsInt();
+		for ( final Integer trackID : pendingTracks.keySet() )
+		{
+			final Set< DefaultWeightedEdge > edges = new HashSet<>();
+			final Set< Spot > spots = new HashSet<>();
+			for ( final EdgeAttributes edge : pendingTracks.get( trackID ) )
+			{
+				if ( !tracksOk )
+					break;
+				addEdge( edge, trackID.intValue(), fm, edgeFeatureIsInt, edges, spots );
+			}
+			connectedVertexSet.put( trackID, spots );
+			connectedEdgeSet.put( trackID, edges );
+		}
+		pendingTracks.clear();
+	}
+
+	/**
+	 * Adds an edge to the graph and to the specified track sets. Marks the
+	 * tracks as not ok if the edge cannot be created.
+	 */
+	private void addEdge(
+			final EdgeAttributes attributes,
+			final int trackID,
+			final FeatureModel fm,
+			final Map< String, Boolean > edgeFeatureIsInt,
+			final Set< DefaultWeightedEdge > edges,
+			final Set< Spot > spots )
+	{
+		final DefaultWeightedEdge edge = readEdge( attributes, trackID, fm, edgeFeatureIsInt );
+		if ( null == edge )
+		{
+			tracksOk = false;
+			return;
+		}
+		edges.add( edge );
+		spots.add( graph.getEdgeSource( edge ) );
+		spots.add( graph.getEdgeTarget( edge ) );
+	}
+
+	/**
+	 * Adds the edge of an edge element to the graph, with its features.
+	 * Returns <code>null</code> if the edge cannot be created.
+	 */
+	private DefaultWeightedEdge readEdge( final EdgeAttributes attributes, final int trackID, final FeatureModel fm, final Map< String, Boolean > edgeFeatureIsInt )
+	{
+		final int sourceID = readInt( attributes.get( EdgeTargetAnalyzer.SPOT_SOURCE_ID ), EdgeTargetAnalyzer.SPOT_SOURCE_ID, TRACK_EDGE_ELEMENT_KEY, true );
+		final int targetID = readInt( attributes.get( EdgeTargetAnalyzer.SPOT_TARGET_ID ), EdgeTargetAnalyzer.SPOT_TARGET_ID, TRACK_EDGE_ELEMENT_KEY, true );
+		final Spot sourceSpot = cache.get( Integer.valueOf( sourceID ) );
+		final Spot targetSpot = cache.get( Integer.valueOf( targetID ) );
+
+		double weight = 0;
+		final String cost = attributes.get( EdgeTargetAnalyzer.EDGE_COST );
+		if ( null != cost )
+			weight = readDouble( cost, EdgeTargetAnalyzer.EDGE_COST, TRACK_EDGE_ELEMENT_KEY );
+
+		if ( null == sourceSpot )
+		{
+			logger.error( "Unknown spot ID: " + sourceID + "\n" );
+			return null;
+		}
+		if ( null == targetSpot )
+		{
+			logger.error( "Unknown spot ID: " + targetID + "\n" );
+			return null;
+		}
+		if ( sourceSpot.equals( targetSpot ) )
+		{
+			logger.error( "Bad link for track " + trackID + ". Source = Target with ID: " + sourceID + "\n" );
+			return null;
+		}
+
+		graph.addVertex( sourceSpot );
+		graph.addVertex( targetSpot );
+		final DefaultWeightedEdge edge = graph.addEdge( sourceSpot, targetSpot );
+		if ( edge == null )
+		{
+			logger.error( "Bad edge found for track " + trackID + "\n" );
+			return null;
+		}
+		graph.setEdgeWeight( edge, weight );
+
+		// Edge features, for the declared ones.
+		for ( int i = 0; i < attributes.names.length; i++ )
+		{
+			final String feature = attributes.names[ i ];
+			final Boolean isInt = edgeFeatureIsInt.get( feature );
+			if ( null == isInt )
+				continue;
+
+			final double val = isInt.booleanValue()
+					? readInt( attributes.values[ i ], feature, TRACK_EDGE_ELEMENT_KEY, true )
+					: readDouble( attributes.values[ i ], feature, TRACK_EDGE_ELEMENT_KEY );
+			fm.putEdgeFeature( edge, feature, Double.valueOf( val ) );
+		}
+		return edge;
+	}
+
+	private void readFilteredTrackIDs( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		// Checked against the tracks at the end of the model element.
+		filteredTrackIDs = new ArrayList<>();
+		while ( nextChild( reader ) )
+		{
+			if ( TRACK_ID_ELEMENT_KEY.equals( reader.getLocalName() ) )
+				filteredTrackIDs.add( Integer.valueOf( readInt( reader, TrackIndexAnalyzer.TRACK_ID, true ) ) );
+			skipElement( reader );
+		}
+	}
+
+	/*
+	 * STAX UTILITIES
+	 */
+
+	private static XMLStreamReader createXMLStreamReader( final InputStream is ) throws XMLStreamException
+	{
+		final XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty( XMLInputFactory.SUPPORT_DTD, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE );
+		factory.setProperty( XMLInputFactory.IS_COALESCING, Boolean.TRUE );
+		return factory.createXMLStreamReader( is );
+	}
+
+	/**
+	 * Moves to the start of the next child element of the current element.
+	 * Returns <code>false</code> and stays on the end of the current element
+	 * if there is none.
+	 */
+	private static boolean nextChild( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		while ( reader.hasNext() )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				return true;
+			if ( event == XMLStreamConstants.END_ELEMENT )
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Moves to the end of the current element, skipping its content. Does
+	 * nothing if the reader is already on an end element.
+	 */
+	private static void skipElement( final XMLStreamReader reader ) throws XMLStreamException
+	{
+		if ( reader.getEventType() != XMLStreamConstants.START_ELEMENT )
+			return;
+
+		int depth = 1;
+		while ( depth > 0 && reader.hasNext() )
+		{
+			final int event = reader.next();
+			if ( event == XMLStreamConstants.START_ELEMENT )
+				depth++;
+			else if ( event == XMLStreamConstants.END_ELEMENT )
+				depth--;
+		}
+	}
+
+	/**
+	 * Reads an integer attribute of the current element, with the same
+	 * leniency as JDOM. Returns 0 if it is missing or cannot be read, and
+	 * logs an error if <code>required</code>.
+	 */
+	private int readInt( final XMLStreamReader reader, final String name, final boolean required )
+	{
+		return readInt( reader.getAttributeValue( null, name ), name, reader.getLocalName(), required );
+	}
+
+	private int readInt( final String str, final String name, final String element, final boolean required )
+	{
+		if ( null == str )
+		{
+			if ( required )
+				logger.error( "Could not find attribute " + name + " for element " + element + ", substituting default value: 0.\n" );
+			return 0;
+		}
+		try
+		{
+			return Integer.parseInt( str.trim() );
+		}
+		catch ( final NumberFormatException e )
+		{
+			if ( required )
+				logger.error( "Cannot read the attribute " + name + " of the element " + element + ", substituting default value: 0.\n" );
+			return 0;
+		}
+	}
+
+	/**
+	 * Reads a double attribute of the current element, with the same leniency
+	 * as JDOM. Returns 0 if it cannot be read.
+	 */
+	private double readDouble( final String str, final String name, final String element )
+	{
+		final double val = parseDouble( str );
+		if ( Double.isNaN( val ) && !isNaN( str ) )
+		{
+			logger.error( "Cannot read the attribute " + name + " of the element " + element + ", substituting default value.\n" );
+			return 0.;
+		}
+		return val;
+	}
+
+	/**
+	 * Parses a double value as JDOM does. Returns {@link Double#NaN} if it
+	 * cannot be parsed.
+	 */
+	private static double parseDouble( final String str )
+	{
+		if ( null == str )
+			return Double.NaN;
+		final String v = str.trim();
+		try
+		{
+			return Double.parseDouble( v );
+		}
+		catch ( final NumberFormatException e )
+		{
+			if ( "INF".equals( v ) )
+				return Double.POSITIVE_INFINITY;
+			if ( "-INF".equals( v ) )
+				return Double.NEGATIVE_INFINITY;
+			return Double.NaN;
+		}
+	}
+
+	private static boolean isNaN( final String str )
+	{
+		return null != str && "NaN".equals( str.trim() );
+	}
+
+	private static boolean isBoolean( final String str )
+	{
+		switch ( str.trim().toLowerCase() )
+		{
+		case "true":
+		case "on":
+		case "yes":
+		case "1":
+		case "false":
+		case "off":
+		case "no":
+		case "0":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private static boolean parseBoolean( final String str )
+	{
+		switch ( str.trim().toLowerCase() )
+		{
+		case "true":
+		case "on":
+		case "yes":
+		case "1":
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * The attributes of an edge element.
+	 */
+	private static final class EdgeAttributes
+	{
+
+		private final String[] names;
+
+		private final String[] values;
+
+		public EdgeAttributes( final XMLStreamReader reader )
+		{
+			final int n = reader.getAttributeCount();
+			this.names = new String[ n ];
+			this.values = new String[ n ];
+			for ( int i = 0; i < n; i++ )
+			{
+				names[ i ] = reader.getAttributeLocalName( i );
+				values[ i ] = reader.getAttributeValue( i );
+			}
+		}
+
+		public String get( final String name )
+		{
+			for ( int i = 0; i < names.length; i++ )
+				if ( names[ i ].equals( name ) )
+					return values[ i ];
+			return null;
+		}
+	}
+}
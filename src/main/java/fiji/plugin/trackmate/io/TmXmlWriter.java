@@ -93,23 +93,28 @@ import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ID_ELEMENT_KEY;
 import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
 import static fiji.plugin.trackmate.tracking.TrackerKeys.XML_ATTRIBUTE_TRACKER_NAME;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 
 import org.jdom2.Attribute;
-import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.output.Format;
-import org.jdom2.output.XMLOutputter;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
 import fiji.plugin.trackmate.Dimension;
@@ -120,6 +125,7 @@ import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
 import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
@@ -136,12 +142,23 @@ public class TmXmlWriter
 	 * FIELD
 	 */
 
+	private static final String INDENT = "  ";
+
 	protected final Element root;
 
 	protected final Logger logger;
 
 	private final File file;
 
+	private final boolean compress;
+
+	/**
+	 * The models to write, stored against the empty element that marks their
+	 * position in the document. They are only serialized when the document is
+	 * written.
+	 */
+	private final Map< Element, Model > models = new HashMap<>();
+
 	/*
 	 * CONSTRUCTORS
 	 */
@@ -158,17 +175,35 @@ public class TmXmlWriter
 	}
 
 	/**
-	 * Creates a new XML file writer for TrackMate.
+	 * Creates a new XML file writer for TrackMate. The file is compressed with
+	 * gzip if its name ends with <code>.gz</code>.
 	 *
 	 * @param file
 	 *            the xml file to write to, will be overwritten.
 	 */
 	public TmXmlWriter( final File file, final Logger logger )
+	{
+		this( file, logger, file.getName().toLowerCase().endsWith( ".gz" ) );
+	}
+
+	/**
+	 * Creates a new XML file writer for TrackMate.
+	 *
+	 * @param file
+	 *            the xml file to write to, will be overwritten.
+	 * @param logger
+	 *            the logger to report progress to.
+	 * @param compress
+	 *            if <code>true</code>, the file is compressed with gzip.
+	 *            {@link TmXmlReader} recognizes such files transparently.
+	 */
+	public TmXmlWriter( final File file, final Logger logger, final boolean compress )
 	{
 		this.root = new Element( ROOT_ELEMENT_KEY );
 		root.setAttribute( PLUGIN_VERSION_ATTRIBUTE_NAME, fiji.plugin.trackmate.TrackMate.PLUGIN_NAME_VERSION );
 		this.logger = logger;
 		this.file = file;
+		this.compress = compress;
 	}
 
 	/*
@@ -184,35 +219,45 @@ public class TmXmlWriter
 	 */
 	public void writeToFile() throws FileNotFoundException, IOException
 	{
-		try (FileOutputStream fos = new FileOutputStream( file ))
+		logger.log( "  Writing to file.\n" );
+		try (OutputStream os = compress
+				? new GZIPOutputStream( new FileOutputStream( file ), 1 << 16 )
+				: new BufferedOutputStream( new FileOutputStream( file ), 1 << 16 ))
+		{
+			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter( os, "UTF-8" );
+			write( writer, logger );
+			writer.close();
+		}
+		catch ( final XMLStreamException e )
 		{
-			logger.log( "  Writing to file.\n" );
-			final Document document = new Document( root );
-			final XMLOutputter outputter = new XMLOutputter( Format.getPrettyFormat() );
-			outputter.output( document, fos );
+			throw new IOException( e );
 		}
 	}
 
 	@Override
 	public String toString()
 	{
-		final Document document = new Document( root );
-		final XMLOutputter outputter = new XMLOutputter( Format.getPrettyFormat() );
-		final StringWriter writer = new StringWriter();
+		final StringWriter str = new StringWriter();
 		try
 		{
-			outputter.output( document, writer );
+			final XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter( str );
+			write( writer, Logger.VOID_LOGGER );
+			writer.close();
 		}
-		catch ( final IOException e )
+		catch ( final XMLStreamException e )
 		{
 			e.printStackTrace();
 		}
-		return writer.toString();
+		return str.toString();
 	}
 
 	/**
 	 * Appends the content of a {@link Model} to the file generated by this
 	 * writer.
+	 * <p>
+	 * The model content is not copied in the document, but streamed to the
+	 * file when it is written. The model must therefore not be modified before
+	 * {@link #writeToFile()} returns.
 	 *
 	 * @param model
 	 *            the {@link Model} to write.
@@ -220,21 +265,7 @@ public class TmXmlWriter
 	public void appendModel( final Model model )
 	{
 		final Element modelElement = new Element( MODEL_ELEMENT_KEY );
-		modelElement.setAttribute( SPATIAL_UNITS_ATTRIBUTE_NAME, model.getSpaceUnits() );
-		modelElement.setAttribute( TIME_UNITS_ATTRIBUTE_NAME, model.getTimeUnits() );
-
-		final Element featureDeclarationElement = echoFeaturesDeclaration( model );
-		modelElement.addContent( featureDeclarationElement );
-
-		final Element spotElement = echoSpots( model );
-		modelElement.addContent( spotElement );
-
-		final Element trackElement = echoTracks( model );
-		modelElement.addContent( trackElement );
-
-		final Element filteredTrackElement = echoFilteredTracks( model );
-		modelElement.addContent( filteredTrackElement );
-
+		models.put( modelElement, model );
 		root.addContent( modelElement );
 	}
 
@@ -379,128 +410,6 @@ public class TmXmlWriter
 		return el;
 	}
 
-	private Element echoTracks( final Model model )
-	{
-
-		/*
-		 * Some numerical features are REQUIRED to be able to save to XML.
-		 * Namely: the track ID feature for track and the edge spot source and
-		 * spot target for edges. Whether the model provides them as features or
-		 * not, we get them from the model and put them in the XML.
-		 */
-
-		final Element allTracksElement = new Element( TRACK_COLLECTION_ELEMENT_KEY );
-
-		// Prepare track features for writing: we separate ints from doubles
-		final List< String > trackFeatures = new ArrayList<>( model.getFeatureModel().getTrackFeatures() );
-		// TrackID is treated separately.
-		trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
-
-		// Same thing for edge features
-		final List< String > edgeFeatures = new ArrayList<>( model.getFeatureModel().getEdgeFeatures() );
-		// We will treat edge source and target separately.
-		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
-		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
-
-		final Set< Integer > trackIDs = model.getTrackModel().trackIDs( false );
-		for ( final int trackID : trackIDs )
-		{
-
-			final Element trackElement = new Element( TRACK_ELEMENT_KEY );
-
-			// Track name.
-			trackElement.setAttribute( TRACK_NAME_ATTRIBUTE_NAME, model.getTrackModel().name( trackID ) );
-			// Track ID.
-			trackElement.setAttribute( TrackIndexAnalyzer.TRACK_ID, Integer.toString( trackID ) );
-
-			for ( final String feature : trackFeatures )
-			{
-				final Double val = model.getFeatureModel().getTrackFeature( trackID, feature );
-				if ( null == val )
-					continue;
-
-				final String str;
-				if ( model.getFeatureModel().getTrackFeatureIsInt().get( feature ).booleanValue() )
-					str = Integer.toString( val.intValue() );
-				else
-					str = val.toString();
-				trackElement.setAttribute( feature, str );
-			}
-
-			// Echo edges
-			final Set< DefaultWeightedEdge > track = model.getTrackModel().trackEdges( trackID );
-			if ( track.isEmpty() )
-			{
-				/*
-				 * Special case: the track has only one spot in it, therefore no
-				 * edge. It just should not be, since the model never returns a
-				 * track with less than one edge. So we skip writing it.
-				 */
-				continue;
-			}
-
-			for ( final DefaultWeightedEdge edge : track )
-			{
-				final Element edgeElement = new Element( TRACK_EDGE_ELEMENT_KEY );
-
-				/*
-				 * Make sure the edge has the right orientation: forward in
-				 * time.
-				 */
-				final int sourceFrame = model.getTrackModel().getEdgeSource( edge ).getFeature( Spot.FRAME ).intValue();
-				final int targetFrame = model.getTrackModel().getEdgeTarget( edge ).getFeature( Spot.FRAME ).intValue();
-				final int sourceID;
-				final int targetID;
-				if ( targetFrame >= sourceFrame )
-				{
-					sourceID = model.getTrackModel().getEdgeSource( edge ).ID();
-					targetID = model.getTrackModel().getEdgeTarget( edge ).ID();
-				}
-				else
-				{
-					sourceID = model.getTrackModel().getEdgeTarget( edge ).ID();
-					targetID = model.getTrackModel().getEdgeSource( edge ).ID();
-				}
-				edgeElement.setAttribute( EdgeTargetAnalyzer.SPOT_SOURCE_ID, Integer.toString( sourceID ) );
-				edgeElement.setAttribute( EdgeTargetAnalyzer.SPOT_TARGET_ID, Integer.toString( targetID ) );
-
-				for ( final String feature : edgeFeatures )
-				{
-					final Double val = model.getFeatureModel().getEdgeFeature( edge, feature );
-					if ( null == val )
-						continue;
-
-					final String str;
-					if ( model.getFeatureModel().getEdgeFeatureIsInt().get( feature ).booleanValue() )
-						str = Integer.toString( val.intValue() );
-					else
-						str = val.toString();
-
-					edgeElement.setAttribute( feature, str );
-				}
-
-				trackElement.addContent( edgeElement );
-			}
-			allTracksElement.addContent( trackElement );
-		}
-		logger.log( "  Added tracks.\n" );
-		return allTracksElement;
-	}
-
-	private Element echoFilteredTracks( final Model model )
-	{
-		final Element filteredTracksElement = new Element( FILTERED_TRACK_ELEMENT_KEY );
-		final Set< Integer > filteredTrackKeys = model.getTrackModel().trackIDs( true );
-		for ( final int trackID : filteredTrackKeys )
-		{
-			final Element trackIDElement = new Element( TRACK_ID_ELEMENT_KEY );
-			trackIDElement.setAttribute( TrackIndexAnalyzer.TRACK_ID, "" + trackID );
-			filteredTracksElement.addContent( trackIDElement );
-		}
-		logger.log( "  Added filtered tracks.\n" );
-		return filteredTracksElement;
-	}
-
 	protected Element echoImageInfo( final Settings settings )
 	{
 		final Element imEl = new Element( IMAGE_ELEMENT_KEY );
@@ -521,98 +430,6 @@ public class TmXmlWriter
 		return imEl;
 	}
 
-	private Element echoSpots( final Model model )
-	{
-		final SpotCollection spots = model.getSpots();
-
-		final Element spotCollectionElement = new Element( SPOT_COLLECTION_ELEMENT_KEY );
-		// Store total number of spots
-		spotCollectionElement.setAttribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, "" + spots.getNSpots( false ) );
-
-		for ( final int frame : spots.keySet() )
-		{
-
-			final Element frameSpotsElement = new Element( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
-			frameSpotsElement.setAttribute( FRAME_ATTRIBUTE_NAME, "" + frame );
-
-			for ( final Iterator< Spot > it = spots.iterator( frame, false ); it.hasNext(); )
-			{
-				final Element spotElement = marshalSpot( it.next(), model.getFeatureModel() );
-				frameSpotsElement.addContent( spotElement );
-			}
-			spotCollectionElement.addContent( frameSpotsElement );
-		}
-		logger.log( "  Added " + spots.getNSpots( false ) + " spots.\n" );
-		return spotCollectionElement;
-	}
-
-	private Element echoFeaturesDeclaration( final Model model )
-	{
-
-		final FeatureModel fm = model.getFeatureModel();
-		final Element featuresElement = new Element( FEATURE_DECLARATIONS_ELEMENT_KEY );
-
-		// Spots
-		final Element spotFeaturesElement = new Element( SPOT_FEATURES_ELEMENT_KEY );
-		Collection< String > features = fm.getSpotFeatures();
-		Map< String, String > featureNames = fm.getSpotFeatureNames();
-		Map< String, String > featureShortNames = fm.getSpotFeatureShortNames();
-		Map< String, Dimension > featureDimensions = fm.getSpotFeatureDimensions();
-		Map< String, Boolean > featureIsInt = fm.getSpotFeatureIsInt();
-		for ( final String feature : features )
-		{
-			final Element fel = new Element( FEATURE_ELEMENT_KEY );
-			fel.setAttribute( FEATURE_ATTRIBUTE, feature );
-			fel.setAttribute( FEATURE_NAME_ATTRIBUTE, featureNames.get( feature ) );
-			fel.setAttribute( FEATURE_SHORT_NAME_ATTRIBUTE, featureShortNames.get( feature ) );
-			fel.setAttribute( FEATURE_DIMENSION_ATTRIBUTE, featureDimensions.get( feature ).name() );
-			fel.setAttribute( FEATURE_ISINT_ATTRIBUTE, featureIsInt.get( feature ).toString() );
-			spotFeaturesElement.addContent( fel );
-		}
-		featuresElement.addContent( spotFeaturesElement );
-
-		// Edges
-		final Element edgeFeaturesElement = new Element( EDGE_FEATURES_ELEMENT_KEY );
-		features = fm.getEdgeFeatures();
-		featureNames = fm.getEdgeFeatureNames();
-		featureShortNames = fm.getEdgeFeatureShortNames();
-		featureDimensions = fm.getEdgeFeatureDimensions();
-		featureIsInt = fm.getEdgeFeatureIsInt();
-		for ( final String feature : features )
-		{
-			final Element fel = new Element( FEATURE_ELEMENT_KEY );
-			fel.setAttribute( FEATURE_ATTRIBUTE, feature );
-			fel.setAttribute( FEATURE_NAME_ATTRIBUTE, featureNames.get( feature ) );
-			fel.setAttribute( FEATURE_SHORT_NAME_ATTRIBUTE, featureShortNames.get( feature ) );
-			fel.setAttribute( FEATURE_DIMENSION_ATTRIBUTE, featureDimensions.get( feature ).name() );
-			fel.setAttribute( FEATURE_ISINT_ATTRIBUTE, featureIsInt.get( feature ).toString() );
-			edgeFeaturesElement.addContent( fel );
-		}
-		featuresElement.addContent( edgeFeaturesElement );
-
-		// Tracks
-		final Element trackFeaturesElement = new Element( TRACK_FEATURES_ELEMENT_KEY );
-		features = fm.getTrackFeatures();
-		featureNames = fm.getTrackFeatureNames();
-		featureShortNames = fm.getTrackFeatureShortNames();
-		featureDimensions = fm.getTrackFeatureDimensions();
-		featureIsInt = fm.getTrackFeatureIsInt();
-		for ( final String feature : features )
-		{
-			final Element fel = new Element( FEATURE_ELEMENT_KEY );
-			fel.setAttribute( FEATURE_ATTRIBUTE, feature );
-			fel.setAttribute( FEATURE_NAME_ATTRIBUTE, featureNames.get( feature ) );
-			fel.setAttribute( FEATURE_SHORT_NAME_ATTRIBUTE, featureShortNames.get( feature ) );
-			fel.setAttribute( FEATURE_DIMENSION_ATTRIBUTE, featureDimensions.get( feature ).name() );
-			fel.setAttribute( FEATURE_ISINT_ATTRIBUTE, featureIsInt.get( feature ).toString() );
-			trackFeaturesElement.addContent( fel );
-		}
-		featuresElement.addContent( trackFeaturesElement );
-
-		logger.log( "  Added spot, edge and track feature declarations.\n" );
-		return featuresElement;
-	}
-
 	protected Element echoInitialSpotFilter( final Settings settings )
 	{
 		final Element itElement = new Element( INITIAL_SPOT_FILTER_ELEMENT_KEY );
@@ -696,17 +513,179 @@ public class TmXmlWriter
 	}
 
 	/*
-	 * STATIC METHODS
+	 * STREAMING METHODS
+	 */
+
+	/**
+	 * Writes the document to the specified writer. The elements of the
+	 * document are echoed as they are, the models are serialized as they are
+	 * iterated.
 	 */
+	private void write( final XMLStreamWriter writer, final Logger logger ) throws XMLStreamException
+	{
+		writer.writeStartDocument( "UTF-8", "1.0" );
+		writeElement( writer, root, 0, logger );
+		writer.writeCharacters( "\n" );
+		writer.writeEndDocument();
+		writer.flush();
+	}
+
+	private void writeElement( final XMLStreamWriter writer, final Element element, final int depth, final Logger logger ) throws XMLStreamException
+	{
+		final Model model = models.get( element );
+		if ( null != model )
+		{
+			writeModel( writer, model, depth, logger );
+			return;
+		}
+
+		newLine( writer, depth );
+		final List< Element > children = element.getChildren();
+		final String text = element.getTextTrim();
+		if ( children.isEmpty() && text.isEmpty() )
+		{
+			writer.writeEmptyElement( element.getName() );
+			writeAttributes( writer, element );
+			return;
+		}
+
+		writer.writeStartElement( element.getName() );
+		writeAttributes( writer, element );
+		if ( !text.isEmpty() )
+			writer.writeCharacters( text );
+		for ( final Element child : children )
+			writeElement( writer, child, depth + 1, logger );
+		if ( !children.isEmpty() )
+			newLine( writer, depth );
+		writer.writeEndElement();
+	}
+
+	private static void writeAttributes( final XMLStreamWriter writer, final Element element ) throws XMLStreamException
+	{
+		for ( final Attribute attribute : element.getAttributes() )
+			writer.writeAttribute( attribute.getName(), attribute.getValue() );
+	}
+
+	private static void newLine( final XMLStreamWriter writer, final int depth ) throws XMLStreamException
+	{
+		writer.writeCharacters( "\n" );
+		for ( int i = 0; i < depth; i++ )
+			writer.writeCharacters( INDENT );
+	}
+
+	private static void writeModel( final XMLStreamWriter writer, final Model model, final int depth, final Logger logger ) throws XMLStreamException
+	{
+		newLine( writer, depth );
+		writer.writeStartElement( MODEL_ELEMENT_KEY );
+		writer.writeAttribute( SPATIAL_UNITS_ATTRIBUTE_NAME, model.getSpaceUnits() );
+		writer.writeAttribute( TIME_UNITS_ATTRIBUTE_NAME, model.getTimeUnits() );
+
+		writeFeaturesDeclaration( writer, model, depth + 1, logger );
+		writeSpots( writer, model, depth + 1, logger );
+		writeTracks( writer, model, depth + 1, logger );
+		writeFilteredTracks( writer, model, depth + 1, logger );
+
+		newLine( writer, depth );
+		writer.writeEndElement();
+	}
+
+	private static void writeFeaturesDeclaration( final XMLStreamWriter writer, final Model model, final int depth, final Logger logger ) throws XMLStreamException
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		newLine( writer, depth );
+		writer.writeStartElement( FEATURE_DECLARATIONS_ELEMENT_KEY );
+
+		// Spots
+		writeFeatureDeclarations( writer, SPOT_FEATURES_ELEMENT_KEY, fm.getSpotFeatures(), fm.getSpotFeatureNames(),
+				fm.getSpotFeatureShortNames(), fm.getSpotFeatureDimensions(), fm.getSpotFeatureIsInt(), depth + 1 );
+
+		// Edges
+		writeFeatureDeclarations( writer, EDGE_FEATURES_ELEMENT_KEY, fm.getEdgeFeatures(), fm.getEdgeFeatureNames(),
+				fm.getEdgeFeatureShortNames(), fm.getEdgeFeatureDimensions(), fm.getEdgeFeatureIsInt(), depth + 1 );
+
+		// Tracks
+		writeFeatureDeclarations( writer, TRACK_FEATURES_ELEMENT_KEY, fm.getTrackFeatures(), fm.getTrackFeatureNames(),
+				fm.getTrackFeatureShortNames(), fm.getTrackFeatureDimensions(), fm.getTrackFeatureIsInt(), depth + 1 );
+
+		newLine( writer, depth );
+		writer.writeEndElement();
+		logger.log( "  Added spot, edge and track feature declarations.\n" );
+	}
+
+	private static void writeFeatureDeclarations(
+			final XMLStreamWriter writer,
+			final String elementKey,
+			final Collection< String > features,
+			final Map< String, String > featureNames,
+			final Map< String, String > featureShortNames,
+			final Map< String, Dimension > featureDimensions,
+			final Map< String, Boolean > featureIsInt,
+			final int depth ) throws XMLStreamException
+	{
+		newLine( writer, depth );
+		if ( features.isEmpty() )
+		{
+			writer.writeEmptyElement( elementKey );
+			return;
+		}
+
+		writer.writeStartElement( elementKey );
+		for ( final String feature : features )
+		{
+			newLine( writer, depth + 1 );
+			writer.writeEmptyElement( FEATURE_ELEMENT_KEY );
+			writer.writeAttribute( FEATURE_ATTRIBUTE, feature );
+			writer.writeAttribute( FEATURE_NAME_ATTRIBUTE, featureNames.get( feature ) );
+			writer.writeAttribute( FEATURE_SHORT_NAME_ATTRIBUTE, featureShortNames.get( feature ) );
+			writer.writeAttribute( FEATURE_DIMENSION_ATTRIBUTE, featureDimensions.get( feature ).name() );
+			writer.writeAttribute( FEATURE_ISINT_ATTRIBUTE, featureIsInt.get( feature ).toString() );
+		}
+		newLine( writer, depth );
+		writer.writeEndElement();
+	}
+
+	private static void writeSpots( final XMLStreamWriter writer, final Model model, final int depth, final Logger logger ) throws XMLStreamException
+	{
+		final SpotCollection spots = model.getSpots();
+		final Map< String, Boolean > isInt = model.getFeatureModel().getSpotFeatureIsInt();
+
+		newLine( writer, depth );
+		writer.writeStartElement( SPOT_COLLECTION_ELEMENT_KEY );
+		// Store total number of spots
+		writer.writeAttribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME, "" + spots.getNSpots( false ) );
+
+		for ( final int frame : spots.keySet() )
+		{
+			newLine( writer, depth + 1 );
+			writer.writeStartElement( SPOT_FRAME_COLLECTION_ELEMENT_KEY );
+			writer.writeAttribute( FRAME_ATTRIBUTE_NAME, "" + frame );
+
+			boolean empty = true;
+			for ( final Iterator< Spot > it = spots.iterator( frame, false ); it.hasNext(); )
+			{
+				newLine( writer, depth + 2 );
+				writeSpot( writer, it.next(), isInt );
+				empty = false;
+			}
+			if ( !empty )
+				newLine( writer, depth + 1 );
+			writer.writeEndElement();
+		}
+		newLine( writer, depth );
+		writer.writeEndElement();
+		logger.log( "  Added " + spots.getNSpots( false ) + " spots.\n" );
+	}
 
-	private static final Element marshalSpot( final Spot spot, final FeatureModel fm )
+	private static void writeSpot( final XMLStreamWriter writer, final Spot spot, final Map< String, Boolean > isInt ) throws XMLStreamException
 	{
-		final Collection< Attribute > attributes = new ArrayList<>();
-		final Attribute IDattribute = new Attribute( SPOT_ID_ATTRIBUTE_NAME, "" + spot.ID() );
-		attributes.add( IDattribute );
-		final Attribute nameAttribute = new Attribute( SPOT_NAME_ATTRIBUTE_NAME, spot.getName() );
-		attributes.add( nameAttribute );
+		final SpotRoi roi = spot.getRoi();
+		if ( roi == null )
+			writer.writeEmptyElement( SPOT_ELEMENT_KEY );
+		else
+			writer.writeStartElement( SPOT_ELEMENT_KEY );
 
+		writer.writeAttribute( SPOT_ID_ATTRIBUTE_NAME, "" + spot.ID() );
+		writer.writeAttribute( SPOT_NAME_ATTRIBUTE_NAME, spot.getName() );
 		for ( final String feature : spot.getFeatures().keySet() )
 		{
 			final Double val = spot.getFeature( feature );
@@ -714,32 +693,167 @@ public class TmXmlWriter
 				continue;
 
 			final String str;
-			if ( fm.getSpotFeatureIsInt().getOrDefault( feature, Boolean.FALSE ).booleanValue() )
+			if ( isInt.getOrDefault( feature, Boolean.FALSE ).booleanValue() )
 				str = Integer.toString( val.intValue() );
 			else
 				str = val.toString();
 
-			attributes.add( new Attribute( feature, str ) );
+			writer.writeAttribute( feature, str );
 		}
-		final Element spotElement = new Element( SPOT_ELEMENT_KEY );
 
-		final SpotRoi roi = spot.getRoi();
 		if ( roi != null )
 		{
 			final int nPoints = roi.x.length;
-			attributes.add( new Attribute( ROI_N_POINTS_ATTRIBUTE_NAME, Integer.toString( nPoints ) ) );
+			writer.writeAttribute( ROI_N_POINTS_ATTRIBUTE_NAME, Integer.toString( nPoints ) );
 			final StringBuilder str = new StringBuilder();
 			for ( int i = 0; i < nPoints; i++ )
 			{
 				str.append( Double.toString( roi.x[ i ] ) );
 				str.append( ' ' );
 				str.append( Double.toString( roi.y[ i ] ) );
-				str.append( ' ' );
+				if ( i < nPoints - 1 )
+					str.append( ' ' );
 			}
-			spotElement.setText( str.toString() );
+			writer.writeCharacters( str.toString() );
+			writer.writeEndElement();
 		}
+	}
+
+	private static void writeTracks( final XMLStreamWriter writer, final Model model, final int depth, final Logger logger ) throws XMLStreamException
+	{
+
+		/*
+		 * Some numerical features are REQUIRED to be able to save to XML.
+		 * Namely: the track ID feature for track and the edge spot source and
+		 * spot target for edges. Whether the model provides them as features or
+		 * not, we get them from the model and put them in the XML.
+		 */
+
+		final FeatureModel fm = model.getFeatureModel();
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Prepare track features for writing: we separate ints from doubles
+		final List< String > trackFeatures = new ArrayList<>( fm.getTrackFeatures() );
+		// TrackID is treated separately.
+		trackFeatures.remove( TrackIndexAnalyzer.TRACK_ID );
 
-		spotElement.setAttributes( attributes );
-		return spotElement;
+		// Same thing for edge features
+		final List< String > edgeFeatures = new ArrayList<>( fm.getEdgeFeatures() );
+		// We will treat edge source and target separately.
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+		edgeFeatures.remove( EdgeTargetAnalyzer.SPOT_TARGET_ID );
+
+		newLine( writer, depth );
+		writer.writeStartElement( TRACK_COLLECTION_ELEMENT_KEY );
+
+		final Set< Integer > trackIDs = trackModel.trackIDs( false );
+		for ( final int trackID : trackIDs )
+		{
+			final Set< DefaultWeightedEdge > track = trackModel.trackEdges( trackID );
+			if ( track.isEmpty() )
+			{
+				/*
+				 * Special case: the track has only one spot in it, therefore no
+				 * edge. It just should not be, since the model never returns a
+				 * track with less than one edge. So we skip writing it.
+				 */
+				continue;
+			}
+
+			newLine( writer, depth + 1 );
+			writer.writeStartElement( TRACK_ELEMENT_KEY );
+
+			// Track name.
+			writer.writeAttribute( TRACK_NAME_ATTRIBUTE_NAME, trackModel.name( trackID ) );
+			// Track ID.
+			writer.writeAttribute( TrackIndexAnalyzer.TRACK_ID, Integer.toString( trackID ) );
+
+			for ( final String feature : trackFeatures )
+			{
+				final Double val = fm.getTrackFeature( trackID, feature );
+				if ( null == val )
+					continue;
+
+				final String str;
+				if ( fm.getTrackFeatureIsInt().get( feature ).booleanValue() )
+					str = Integer.toString( val.intValue() );
+				else
+					str = val.toString();
+				writer.writeAttribute( feature, str );
+			}
+
+			// Echo edges
+			for ( final DefaultWeightedEdge edge : track )
+			{
+				newLine( writer, depth + 2 );
+				writer.writeEmptyElement( TRACK_EDGE_ELEMENT_KEY );
+
+				/*
+				 * Make sure the edge has the right orientation: forward in
+				 * time.
+				 */
+				final Spot source = trackModel.getEdgeSource( edge );
+				final Spot target = trackModel.getEdgeTarget( edge );
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
+				final int sourceID;
+				final int targetID;
+				if ( targetFrame >= sourceFrame )
+				{
+					sourceID = source.ID();
+					targetID = target.ID();
+				}
+				else
+				{
+					sourceID = target.ID();
+					targetID = source.ID();
+				}
+				writer.writeAttribute( EdgeTargetAnalyzer.SPOT_SOURCE_ID, Integer.toString( sourceID ) );
+				writer.writeAttribute( EdgeTargetAnalyzer.SPOT_TARGET_ID, Integer.toString( targetID ) );
+
+				for ( final String feature : edgeFeatures )
+				{
+					final Double val = fm.getEdgeFeature( edge, feature );
+					if ( null == val )
+						continue;
+
+					final String str;
+					if ( fm.getEdgeFeatureIsInt().get( feature ).booleanValue() )
+						str = Integer.toString( val.intValue() );
+					else
+						str = val.toString();
+
+					writer.writeAttribute( feature, str );
+				}
+			}
+			newLine( writer, depth + 1 );
+			writer.writeEndElement();
+		}
+		newLine( writer, depth );
+		writer.writeEndElement();
+		logger.log( "  Added tracks.\n" );
+	}
+
+	private static void writeFilteredTracks( final XMLStreamWriter writer, final Model model, final int depth, final Logger logger ) throws XMLStreamException
+	{
+		final Set< Integer > filteredTrackKeys = model.getTrackModel().trackIDs( true );
+		newLine( writer, depth );
+		if ( filteredTrackKeys.isEmpty() )
+		{
+			writer.writeEmptyElement( FILTERED_TRACK_ELEMENT_KEY );
+		}
+		else
+		{
+			writer.writeStartElement( FILTERED_TRACK_ELEMENT_KEY );
+			for ( final int trackID : filteredTrackKeys )
+			{
+				newLine( writer, depth + 1 );
+				writer.writeEmptyElement( TRACK_ID_ELEMENT_KEY );
+				writer.writeAttribute( TrackIndexAnalyzer.TRACK_ID, "" + trackID );
+			}
+			newLine( writer, depth );
+			writer.writeEndElement();
+		}
+		logger.log( "  Added filtered tracks.\n" );
 	}
 }
@@ -199,7 +199,7 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 
 		double meanSpotRadius = 0d;
 		for ( final Spot spot : orphanSpots )
-			meanSpotRadius += spot.getFeature( Spot.RADIUS ).doubleValue();
+			meanSpotRadius += spot.getRadius();
 
 		meanSpotRadius /= orphanSpots.size();
 		final double positionMeasurementStd = meanSpotRadius / 10d;
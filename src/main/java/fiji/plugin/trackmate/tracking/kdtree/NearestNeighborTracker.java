@@ -32,9 +32,6 @@ import java.util.Map;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -45,6 +42,7 @@ import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.util.TMExecutors;
 import fiji.plugin.trackmate.util.TMUtils;
 import net.imglib2.KDTree;
 import net.imglib2.RealPoint;
@@ -108,14 +106,13 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 		final double maxDistSquare = maxLinkingDistance * maxLinkingDistance;
 		final TreeSet< Integer > frames = new TreeSet<>( spots.keySet() );
 
-		// Prepare executors.
+		// Prepare tasks, one per frame pair.
 		final AtomicInteger progress = new AtomicInteger( 0 );
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-		final List< Future< Void > > futures = new ArrayList<>( frames.size() );
+		final List< Callable< Void > > tasks = new ArrayList<>( frames.size() );
 		for ( int i = frames.first(); i < frames.last(); i++ )
 		{
 			final int frame = i;
-			final Future< Void > future = executors.submit( new Callable< Void >()
+			tasks.add( new Callable< Void >()
 			{
 
 				@Override
@@ -190,7 +187,6 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 					return null;
 				}
 			} );
-			futures.add( future );
 		}
 
 		logger.setStatus( "Tracking..." );
@@ -198,10 +194,7 @@ public class NearestNeighborTracker extends MultiThreadedBenchmarkAlgorithm impl
 
 		try
 		{
-			for ( final Future< Void > future : futures )
-				future.get();
-
-			executors.shutdown();
+			TMExecutors.invokeAll( tasks, numThreads );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
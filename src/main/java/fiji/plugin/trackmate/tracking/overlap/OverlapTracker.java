@@ -25,16 +25,11 @@ import static fiji.plugin.trackmate.tracking.overlap.OverlapTrackerFactory.BASE_
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
@@ -46,7 +41,9 @@ import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.tracking.SpotTracker;
+import fiji.plugin.trackmate.util.TMExecutors;
 import math.geom2d.AffineTransform2D;
+import math.geom2d.Box2D;
 import math.geom2d.Point2D;
 import math.geom2d.conic.Circle2D;
 import math.geom2d.polygon.Polygon2D;
@@ -188,63 +185,59 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		final AtomicBoolean ok = new AtomicBoolean( true );
 
 		// Prepare frame pairs in order, not necessarily separated by 1.
-		final Iterator< Integer > frameIterator = spots.keySet().iterator();
-
-		// First frame.
-		final int sourceFrame = frameIterator.next();
-		Map< Spot, Polygon2D > sourceGeometries = createGeometry( spots.iterable( sourceFrame, true ), method, enlargeFactor );
+		final Integer[] frames = spots.keySet().toArray( new Integer[ 0 ] );
 
+		/*
+		 * Frames are processed in blocks of numThreads frames on the shared
+		 * executor. The geometries of a block are built concurrently, then
+		 * all its frame pairs are linked concurrently, in chunks of targets.
+		 * Only the geometries of one block are kept in memory, with the last
+		 * geometry of the previous block as the first source.
+		 */
+		final int nThreads = Math.max( 1, numThreads );
+		FrameGeometry sourceGeometry = null;
 		logger.setStatus( "Frame to frame linking..." );
-		int progress = 0;
-		while ( frameIterator.hasNext() )
+		try
 		{
-			if ( !ok.get() || isCanceled() )
-				break;
-
-			final int targetFrame = frameIterator.next();
-			final Map< Spot, Polygon2D > targetGeometries = createGeometry( spots.iterable( targetFrame, true ), method, enlargeFactor );
-
-			if ( sourceGeometries.isEmpty() || targetGeometries.isEmpty() )
-				continue;
-
-			final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-			final List< Future< IoULink > > futures = new ArrayList<>();
-
-			// Submit work.
-			for ( final Spot target : targetGeometries.keySet() )
-			{
-				final Polygon2D targetPoly = targetGeometries.get( target );
-				futures.add( executors.submit( new FindBestSourceTask( target, targetPoly, sourceGeometries, minIoU ) ) );
-			}
-
-			// Get results.
-			for ( final Future< IoULink > future : futures )
+			for ( int first = 0; first < frames.length; first += nThreads )
 			{
 				if ( !ok.get() || isCanceled() )
 					break;
 
-				try
+				final int last = Math.min( frames.length, first + nThreads );
+				final List< Callable< FrameGeometry > > geometryTasks = new ArrayList<>( last - first );
+				for ( int i = first; i < last; i++ )
+					geometryTasks.add( geometryTask( frames[ i ] ) );
+
+				final List< FindBestSourceTask > linkTasks = new ArrayList<>();
+				for ( final FrameGeometry targetGeometry : TMExecutors.invokeAll( geometryTasks, nThreads ) )
 				{
-					final IoULink link = future.get();
-					if ( link.source == null )
+					// Frames without visible spots are skipped.
+					if ( targetGeometry.size() == 0 )
 						continue;
 
-					graph.addVertex( link.source );
-					graph.addVertex( link.target );
-					final DefaultWeightedEdge edge = graph.addEdge( link.source, link.target );
-					graph.setEdgeWeight( edge, 1. - link.iou );
-
+					if ( sourceGeometry != null )
+					{
+						final int chunkSize = Math.max( 1, targetGeometry.size() / ( 4 * nThreads ) );
+						for ( int from = 0; from < targetGeometry.size(); from += chunkSize )
+							linkTasks.add( new FindBestSourceTask( targetGeometry, from, Math.min( targetGeometry.size(), from + chunkSize ), sourceGeometry, method, minIoU ) );
+					}
+					sourceGeometry = targetGeometry;
 				}
-				catch ( InterruptedException | ExecutionException e )
+
+				for ( final List< IoULink > links : TMExecutors.invokeAll( linkTasks, nThreads ) )
 				{
-					errorMessage = e.getMessage();
-					ok.set( false );
+					if ( isCanceled() )
+						break;
+					addLinks( links );
 				}
+				logger.setProgress( ( double ) last / frames.length );
 			}
-			executors.shutdown();
-
-			sourceGeometries = targetGeometries;
-			logger.setProgress( ( double ) progress++ / spots.keySet().size() );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = e.getMessage();
+			ok.set( false );
 		}
 
 		logger.setProgress( 1d );
@@ -274,7 +267,26 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		return ok;
 	}
 
-	private static Map< Spot, Polygon2D > createGeometry( final Iterable< Spot > spots, final IoUCalculation method, final double scale )
+	/**
+	 * Adds to the graph the links found for a chunk of targets.
+	 */
+	private void addLinks( final List< IoULink > links )
+	{
+		for ( final IoULink link : links )
+		{
+			graph.addVertex( link.source );
+			graph.addVertex( link.target );
+			final DefaultWeightedEdge edge = graph.addEdge( link.source, link.target );
+			graph.setEdgeWeight( edge, 1. - link.iou );
+		}
+	}
+
+	private Callable< FrameGeometry > geometryTask( final int frame )
+	{
+		return () -> createGeometry( spots.iterable( frame, true ), method, enlargeFactor );
+	}
+
+	private static FrameGeometry createGeometry( final Iterable< Spot > spots, final IoUCalculation method, final double scale )
 	{
 		final Map< Spot, Polygon2D > geometries = new HashMap<>();
 		switch ( method )
@@ -292,7 +304,7 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		default:
 			throw new IllegalArgumentException( "Do not know how to compute IoU for method " + method );
 		}
-		return Collections.unmodifiableMap( geometries );
+		return new FrameGeometry( geometries );
 	}
 
 	private static SimplePolygon2D toPolygon( final Spot spot, final double scale )
@@ -303,7 +315,7 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		final SimplePolygon2D poly;
 		if ( roi == null )
 		{
-			final double radius = spot.getFeature( Spot.RADIUS ).doubleValue();
+			final double radius = spot.getRadius();
 			poly = new SimplePolygon2D( new Circle2D( xc, yc, radius ).asPolyline( 32 ) );
 		}
 		else
@@ -322,7 +334,7 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		final SpotRoi roi = spot.getRoi();
 		if ( roi == null )
 		{
-			final double radius = spot.getFeature( Spot.RADIUS ).doubleValue() * scale;
+			final double radius = spot.getRadius() * scale;
 			return new Rectangle2D( xc - radius, yc - radius, 2 * radius, 2 * radius );
 		}
 		else
@@ -335,48 +347,256 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		}
 	}
 
-	private static final class FindBestSourceTask implements Callable< IoULink >
+	/**
+	 * The geometries of the spots of one frame, with their bounding box and
+	 * area, and a uniform grid over their bounding boxes to find the
+	 * geometries that may overlap a query box.
+	 */
+	private static final class FrameGeometry
 	{
 
-		private final Spot target;
+		/**
+		 * Target mean number of spots per grid cell.
+		 */
+		private static final int SPOTS_PER_CELL = 2;
 
-		private final Polygon2D targetPoly;
+		/**
+		 * Maximal number of grid cells along X or Y.
+		 */
+		private static final int MAX_CELLS = 1024;
 
-		private final Map< Spot, Polygon2D > sourceGeometries;
+		private final Spot[] spots;
 
-		private final double minIoU;
+		private final Polygon2D[] polygons;
+
+		/**
+		 * Min X, min Y, max X and max Y of each geometry.
+		 */
+		private final double[] boxes;
+
+		private final double[] areas;
 
+		private final double minx;
 
-		public FindBestSourceTask( final Spot target, final Polygon2D targetPoly, final Map< Spot, Polygon2D > sourceGeometries, final double minIoU )
+		private final double miny;
+
+		private final double cellSize;
+
+		private final int nx;
+
+		private final int ny;
+
+		/**
+		 * Start of the items of each cell in {@link #cellItems}, in CSR
+		 * layout.
+		 */
+		private final int[] cellStart;
+
+		private final int[] cellItems;
+
+		public FrameGeometry( final Map< Spot, Polygon2D > geometries )
 		{
-			this.target = target;
-			this.targetPoly = targetPoly;
-			this.sourceGeometries = sourceGeometries;
+			final int n = geometries.size();
+			this.spots = new Spot[ n ];
+			this.polygons = new Polygon2D[ n ];
+			this.boxes = new double[ 4 * n ];
+			this.areas = new double[ n ];
+
+			// Keep the iteration order of the map, to break ties in IoU.
+			double lminx = Double.POSITIVE_INFINITY;
+			double lminy = Double.POSITIVE_INFINITY;
+			double lmaxx = Double.NEGATIVE_INFINITY;
+			double lmaxy = Double.NEGATIVE_INFINITY;
+			int i = 0;
+			for ( final Map.Entry< Spot, Polygon2D > entry : geometries.entrySet() )
+			{
+				spots[ i ] = entry.getKey();
+				final Polygon2D polygon = entry.getValue();
+				polygons[ i ] = polygon;
+				areas[ i ] = Math.abs( polygon.area() );
+				final Box2D box = polygon.boundingBox();
+				boxes[ 4 * i ] = box.getMinX();
+				boxes[ 4 * i + 1 ] = box.getMinY();
+				boxes[ 4 * i + 2 ] = box.getMaxX();
+				boxes[ 4 * i + 3 ] = box.getMaxY();
+				lminx = Math.min( lminx, box.getMinX() );
+				lminy = Math.min( lminy, box.getMinY() );
+				lmaxx = Math.max( lmaxx, box.getMaxX() );
+				lmaxy = Math.max( lmaxy, box.getMaxY() );
+				i++;
+			}
+			this.minx = lminx;
+			this.miny = lminy;
+
+			// Square cells, about SPOTS_PER_CELL spots per cell.
+			final double width = n == 0 ? 0. : lmaxx - lminx;
+			final double height = n == 0 ? 0. : lmaxy - lminy;
+			final double cs = Math.sqrt( width * height * SPOTS_PER_CELL / Math.max( 1, n ) );
+			this.cellSize = ( cs > 0. && !Double.isInfinite( cs ) ) ? cs : Math.max( 1., Math.max( width, height ) );
+			this.nx = ( int ) Math.min( MAX_CELLS, Math.max( 1., Math.ceil( width / cellSize ) ) );
+			this.ny = ( int ) Math.min( MAX_CELLS, Math.max( 1., Math.ceil( height / cellSize ) ) );
+
+			// Count, prefix sum, fill. Each box goes in all the cells it spans.
+			final int[] counts = new int[ nx * ny + 1 ];
+			for ( int j = 0; j < n; j++ )
+				for ( int cy = cellY( boxes[ 4 * j + 1 ] ); cy <= cellY( boxes[ 4 * j + 3 ] ); cy++ )
+					for ( int cx = cellX( boxes[ 4 * j ] ); cx <= cellX( boxes[ 4 * j + 2 ] ); cx++ )
+						counts[ cy * nx + cx + 1 ]++;
+			for ( int c = 1; c < counts.length; c++ )
+				counts[ c ] += counts[ c - 1 ];
+			this.cellStart = counts;
+
+			this.cellItems = new int[ counts[ counts.length - 1 ] ];
+			final int[] fill = Arrays.copyOf( counts, counts.length - 1 );
+			for ( int j = 0; j < n; j++ )
+				for ( int cy = cellY( boxes[ 4 * j + 1 ] ); cy <= cellY( boxes[ 4 * j + 3 ] ); cy++ )
+					for ( int cx = cellX( boxes[ 4 * j ] ); cx <= cellX( boxes[ 4 * j + 2 ] ); cx++ )
+						cellItems[ fill[ cy * nx + cx ]++ ] = j;
+		}
+
+		public int size()
+		{
+			return spots.length;
+		}
+
+		/**
+		 * Returns the index of the geometries whose bounding box overlaps the
+		 * specified one, sorted in increasing order.
+		 */
+		public int[] candidates( final double bminx, final double bminy, final double bmaxx, final double bmaxy )
+		{
+			int[] candidates = new int[ 8 ];
+			int n = 0;
+			final int qx0 = cellX( bminx );
+			final int qx1 = cellX( bmaxx );
+			final int qy0 = cellY( bminy );
+			final int qy1 = cellY( bmaxy );
+			for ( int cy = qy0; cy <= qy1; cy++ )
+			{
+				for ( int cx = qx0; cx <= qx1; cx++ )
+				{
+					final int c = cy * nx + cx;
+					for ( int k = cellStart[ c ]; k < cellStart[ c + 1 ]; k++ )
+					{
+						final int j = cellItems[ k ];
+						/*
+						 * A box is stored in all the cells it spans. Report it
+						 * only from the first of them in the query range.
+						 */
+						if ( cx != Math.max( cellX( boxes[ 4 * j ] ), qx0 ) || cy != Math.max( cellY( boxes[ 4 * j + 1 ] ), qy0 ) )
+							continue;
+						if ( boxes[ 4 * j ] > bmaxx || boxes[ 4 * j + 2 ] < bminx || boxes[ 4 * j + 1 ] > bmaxy || boxes[ 4 * j + 3 ] < bminy )
+							continue;
+
+						if ( n == candidates.length )
+							candidates = Arrays.copyOf( candidates, 2 * n );
+						candidates[ n++ ] = j;
+					}
+				}
+			}
+			candidates = Arrays.copyOf( candidates, n );
+			Arrays.sort( candidates );
+			return candidates;
+		}
+
+		private int cellX( final double x )
+		{
+			return Math.max( 0, Math.min( nx - 1, ( int ) ( ( x - minx ) / cellSize ) ) );
+		}
+
+		private int cellY( final double y )
+		{
+			return Math.max( 0, Math.min( ny - 1, ( int ) ( ( y - miny ) / cellSize ) ) );
+		}
+	}
+
+	private static final class FindBestSourceTask implements Callable< List< IoULink > >
+	{
+
+		private final FrameGeometry targets;
+
+		private final int from;
+
+		private final int to;
+
+		private final FrameGeometry sources;
+
+		private final IoUCalculation method;
+
+		private final double minIoU;
+
+		public FindBestSourceTask( final FrameGeometry targets, final int from, final int to, final FrameGeometry sources, final IoUCalculation method, final double minIoU )
+		{
+			this.targets = targets;
+			this.from = from;
+			this.to = to;
+			this.sources = sources;
+			this.method = method;
 			this.minIoU = minIoU;
 		}
 
 		@Override
-		public IoULink call() throws Exception
+		public List< IoULink > call() throws Exception
 		{
-			final double targetArea = Math.abs( targetPoly.area() );
+			final List< IoULink > links = new ArrayList<>();
+			for ( int t = from; t < to; t++ )
+			{
+				final IoULink link = findBestSource( t );
+				if ( link.source != null )
+					links.add( link );
+			}
+			return links;
+		}
+
+		private IoULink findBestSource( final int t )
+		{
+			final double tminx = targets.boxes[ 4 * t ];
+			final double tminy = targets.boxes[ 4 * t + 1 ];
+			final double tmaxx = targets.boxes[ 4 * t + 2 ];
+			final double tmaxy = targets.boxes[ 4 * t + 3 ];
+			final double targetArea = targets.areas[ t ];
+			final Polygon2D targetPoly = targets.polygons[ t ];
+
 			double maxIoU = minIoU;
 			Spot bestSpot = null;
-			for ( final Spot spot : sourceGeometries.keySet() )
+			for ( final int s : sources.candidates( tminx, tminy, tmaxx, tmaxy ) )
 			{
-				final Polygon2D sourcePoly = sourceGeometries.get( spot );
-				final double intersection = Math.abs( Polygons2D.intersection( targetPoly, sourcePoly ).area() );
-				if ( intersection == 0. )
+				final double sourceArea = sources.areas[ s ];
+				final double boxIntersection = ( Math.min( tmaxx, sources.boxes[ 4 * s + 2 ] ) - Math.max( tminx, sources.boxes[ 4 * s ] ) )
+						* ( Math.min( tmaxy, sources.boxes[ 4 * s + 3 ] ) - Math.max( tminy, sources.boxes[ 4 * s + 1 ] ) );
+
+				final double intersection;
+				if ( method == IoUCalculation.FAST )
+				{
+					// Geometries are the bounding boxes.
+					intersection = boxIntersection;
+				}
+				else
+				{
+					/*
+					 * The IoU grows with the intersection, which is bounded
+					 * by the intersection of the bounding boxes and by the
+					 * areas. Skip the polygon intersection if this bound
+					 * cannot beat the best IoU so far.
+					 */
+					final double maxIntersection = Math.min( boxIntersection, Math.min( sourceArea, targetArea ) );
+					if ( maxIntersection / ( sourceArea + targetArea - maxIntersection ) <= maxIoU )
+						continue;
+
+					intersection = Math.abs( Polygons2D.intersection( targetPoly, sources.polygons[ s ] ).area() );
+				}
+				if ( intersection <= 0. )
 					continue;
 
-				final double union = Math.abs( sourcePoly.area() ) + targetArea - intersection;
+				final double union = sourceArea + targetArea - intersection;
 				final double iou = intersection / union;
 				if ( iou > maxIoU )
 				{
 					maxIoU = iou;
-					bestSpot = spot;
+					bestSpot = sources.spots[ s ];
 				}
 			}
-			return new IoULink( bestSpot, target, maxIoU );
+			return new IoULink( bestSpot, targets.spots[ t ], maxIoU );
 		}
 	}
 
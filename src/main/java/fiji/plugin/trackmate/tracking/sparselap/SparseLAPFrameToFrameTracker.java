@@ -34,9 +34,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -51,8 +48,10 @@ import fiji.plugin.trackmate.tracking.SpotTracker;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
-import fiji.plugin.trackmate.tracking.sparselap.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.sparselap.costmatrix.KDTreeLinkingCostMatrixCreator;
 import fiji.plugin.trackmate.tracking.sparselap.linker.JaqamanLinker;
+import fiji.plugin.trackmate.tracking.sparselap.linker.LAPJV;
+import fiji.plugin.trackmate.util.TMExecutors;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
 public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorithm implements SpotTracker, Cancelable
@@ -71,6 +70,8 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 
 	private String cancelReason;
 
+	private Map< Integer, LAPJV.Workspace > workspaces;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -176,11 +177,16 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		// Prepare workers.
 		final AtomicInteger progress = new AtomicInteger( 0 );
 		final AtomicBoolean ok = new AtomicBoolean( true );
-		final ExecutorService executors = Executors.newFixedThreadPool( numThreads );
-		final List< Future< Void > > futures = new ArrayList<>( framePairs.size() );
+		/*
+		 * If there are less frame pairs than threads, give the remaining
+		 * threads to the cost matrix creation of each pair.
+		 */
+		final int nSimultaneousPairs = Math.max( 1, Math.min( numThreads, framePairs.size() ) );
+		final int threadsPerPair = Math.max( 1, numThreads / nSimultaneousPairs );
+		final List< Callable< Void > > tasks = new ArrayList<>( framePairs.size() );
 		for ( final int[] framePair : framePairs )
 		{
-			final Future< Void > future = executors.submit( new Callable< Void >()
+			tasks.add( new Callable< Void >()
 			{
 
 				@Override
@@ -210,8 +216,9 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 					 * Run the linker.
 					 */
 
-					final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
-					final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator );
+					final KDTreeLinkingCostMatrixCreator< Spot, Spot > creator = new KDTreeLinkingCostMatrixCreator<>( sources, targets, costFunction, maxDist, costThreshold, alternativeCostFactor, 1d );
+					creator.setNumThreads( threadsPerPair );
+					final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator, Logger.VOID_LOGGER, getWorkspace( lFrame0 ) );
 					if ( !linker.checkInput() || !linker.process() )
 					{
 						errorMessage = "At frame " + lFrame0 + " to " + lFrame1 + ": " + linker.getErrorMessage();
@@ -242,16 +249,12 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 					return null;
 				}
 			} );
-			futures.add( future );
 		}
 
 		logger.setStatus( "Frame to frame linking..." );
 		try
 		{
-			for ( final Future< ? > future : futures )
-				future.get();
-
-			executors.shutdown();
+			TMExecutors.invokeAll( tasks, nSimultaneousPairs );
 		}
 		catch ( InterruptedException | ExecutionException e )
 		{
@@ -289,6 +292,43 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		this.logger = logger;
 	}
 
+	/**
+	 * Sets the map of LAP solver workspaces to use, one per frame pair, keyed
+	 * by the first frame of the pair. Missing workspaces are created and added
+	 * to the map when tracking.
+	 * <p>
+	 * Passing the same map to successive trackers operating on the same spots,
+	 * for instance when trying several values of the tracking parameters, lets
+	 * each frame pair start from the assignment found by the previous tracker.
+	 * The results are unchanged, but the solver has much less work to do when
+	 * the parameter changes are small.
+	 *
+	 * @param workspaces
+	 *            the workspace map. Can be <code>null</code>, in which case
+	 *            each frame pair is solved from scratch.
+	 */
+	public void setWorkspaces( final Map< Integer, LAPJV.Workspace > workspaces )
+	{
+		this.workspaces = workspaces;
+	}
+
+	private LAPJV.Workspace getWorkspace( final int frame )
+	{
+		if ( null == workspaces )
+			return null;
+
+		synchronized ( workspaces )
+		{
+			LAPJV.Workspace workspace = workspaces.get( Integer.valueOf( frame ) );
+			if ( null == workspace )
+			{
+				workspace = new LAPJV.Workspace();
+				workspaces.put( Integer.valueOf( frame ), workspace );
+			}
+			return workspace;
+		}
+	}
+
 	protected boolean checkSettingsValidity( final Map< String, Object > settings, final StringBuilder str )
 	{
 		if ( null == settings )
@@ -74,6 +74,8 @@ import net.imglib2.algorithm.Benchmark;
  * <p>
  * The class itself uses a sparse version of the cost matrix and a solver that
  * can exploit it. Therefore it is optimized for memory usage rather than speed.
+ * The matrix is however split into independent blocks, typically groups of
+ * segments far from each other, that are solved concurrently.
  */
 public class SparseLAPSegmentTracker implements SpotTracker, Benchmark
 {
@@ -149,6 +151,8 @@ public class SparseLAPSegmentTracker implements SpotTracker, Benchmark
 		costMatrixCreator.setNumThreads( numThreads );
 		final SlaveLogger jlLogger = new SlaveLogger( logger, 0, 0.9 );
 		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( costMatrixCreator, jlLogger );
+		linker.setBlockDecomposition( true );
+		linker.setNumThreads( numThreads );
 		if ( !linker.checkInput() || !linker.process() )
 		{
 			errorMessage = linker.getErrorMessage();
@@ -24,30 +24,47 @@ package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+import fiji.plugin.trackmate.util.TMExecutors;
+import net.imglib2.algorithm.MultiThreaded;
 
 /**
  * A {@link CostMatrixCreator} that can generate a cost matrix from a list of
  * sources, a list of targets and a {@link CostFunction} that can generate a
  * cost for any combination.
+ * <p>
+ * Costs are computed for each source against all the targets. When several
+ * threads are allowed, the sources are split in chunks processed
+ * concurrently, each accumulating its candidate links in its own buffers,
+ * merged at the end. Subclasses can restrict the targets examined for each
+ * source by overriding
+ * {@link #computeCosts(List, List, List, ResizableDoubleArray)}.
  * 
  * @author Jean-Yves Tinevez - 2014
  * 
  * @param <K>
  * @param <J>
  */
-public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J extends Comparable< J >> implements CostMatrixCreator< K, J >
+public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J extends Comparable< J >> implements CostMatrixCreator< K, J >, MultiThreaded
 {
 
 	private static final String BASE_ERROR_MSG = "[JaqamanLinkingCostMatrixCreator] ";
 
+	/**
+	 * Below this number of sources per thread, it is not worth splitting the
+	 * cost computation across threads.
+	 */
+	private static final int MIN_SOURCES_PER_THREAD = 256;
+
 	private final Iterable< K > sources;
 
-	private final Iterable< J > targets;
+	protected final Iterable< J > targets;
 
-	private final CostFunction< K, J > costFunction;
+	protected final CostFunction< K, J > costFunction;
 
 	private SparseCostMatrix scm;
 
@@ -55,7 +72,7 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 
 	private String errorMessage;
 
-	private final double costThreshold;
+	protected final double costThreshold;
 
 	private List< K > sourceList;
 
@@ -67,6 +84,8 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 
 	private final double percentile;
 
+	private int numThreads = 1;
+
 	public JaqamanLinkingCostMatrixCreator( final Iterable< K > sources, final Iterable< J > targets, final CostFunction< K, J > costFunction, final double costThreshold, final double alternativeCostFactor, final double percentile )
 	{
 		this.sources = sources;
@@ -98,23 +117,23 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 	{
 		final long start = System.currentTimeMillis();
 
+		final List< K > allSources = new ArrayList<>();
+		for ( final K source : sources )
+			allSources.add( source );
+
 		final List< K > accSources = new ArrayList< >();
 		final List< J > accTargets = new ArrayList< >();
 		final ResizableDoubleArray costs = new ResizableDoubleArray();
 
-		for ( final K source : sources )
+		final int nChunks = Math.max( 1, Math.min( numThreads, allSources.size() / MIN_SOURCES_PER_THREAD ) );
+		if ( nChunks == 1 )
 		{
-			for ( final J target : targets )
-			{
-
-				final double cost = costFunction.linkingCost( source, target );
-				if ( cost < costThreshold )
-				{
-					accSources.add( source );
-					accTargets.add( target );
-					costs.add( cost );
-				}
-			}
+			computeCosts( allSources, accSources, accTargets, costs );
+		}
+		else
+		{
+			if ( !computeCostsInParallel( allSources, nChunks, accSources, accTargets, costs ) )
+				return false;
 		}
 		costs.trimToSize();
 
@@ -155,6 +174,89 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		return true;
 	}
 
+	/**
+	 * Computes the costs of linking the specified sources to the targets, and
+	 * accumulates the links whose cost is below the threshold in the specified
+	 * lists. This method is called concurrently on disjoint chunks of the
+	 * sources, each with its own accumulators.
+	 *
+	 * @param sourceChunk
+	 *            the sources to compute costs for.
+	 * @param accSources
+	 *            the list in which to accumulate the sources of accepted
+	 *            links.
+	 * @param accTargets
+	 *            the list in which to accumulate the targets of accepted
+	 *            links.
+	 * @param costs
+	 *            the array in which to accumulate the costs of accepted links.
+	 */
+	protected void computeCosts( final List< K > sourceChunk, final List< K > accSources, final List< J > accTargets, final ResizableDoubleArray costs )
+	{
+		for ( final K source : sourceChunk )
+		{
+			for ( final J target : targets )
+			{
+
+				final double cost = costFunction.linkingCost( source, target );
+				if ( cost < costThreshold )
+				{
+					accSources.add( source );
+					accTargets.add( target );
+					costs.add( cost );
+				}
+			}
+		}
+	}
+
+	private boolean computeCostsInParallel( final List< K > allSources, final int nChunks, final List< K > accSources, final List< J > accTargets, final ResizableDoubleArray costs )
+	{
+		final List< Callable< Void > > tasks = new ArrayList<>( nChunks );
+		final List< List< K > > chunkSources = new ArrayList<>( nChunks );
+		final List< List< J > > chunkTargets = new ArrayList<>( nChunks );
+		final List< ResizableDoubleArray > chunkCosts = new ArrayList<>( nChunks );
+		final int chunkSize = ( allSources.size() + nChunks - 1 ) / nChunks;
+		for ( int i = 0; i < nChunks; i++ )
+		{
+			final List< K > chunk = allSources.subList( i * chunkSize, Math.min( allSources.size(), ( i + 1 ) * chunkSize ) );
+			final List< K > lAccSources = new ArrayList<>();
+			final List< J > lAccTargets = new ArrayList<>();
+			final ResizableDoubleArray lCosts = new ResizableDoubleArray();
+			chunkSources.add( lAccSources );
+			chunkTargets.add( lAccTargets );
+			chunkCosts.add( lCosts );
+			tasks.add( new Callable< Void >()
+			{
+				@Override
+				public Void call() throws Exception
+				{
+					computeCosts( chunk, lAccSources, lAccTargets, lCosts );
+					return null;
+				}
+			} );
+		}
+
+		try
+		{
+			TMExecutors.invokeAll( tasks, nChunks );
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MSG + "Problem computing costs: " + e.getMessage();
+			e.printStackTrace();
+			return false;
+		}
+
+		// Merge in chunk order, so that the result is deterministic.
+		for ( int i = 0; i < nChunks; i++ )
+		{
+			accSources.addAll( chunkSources.get( i ) );
+			accTargets.addAll( chunkTargets.get( i ) );
+			costs.addAll( chunkCosts.get( i ) );
+		}
+		return true;
+	}
+
 	@Override
 	public String getErrorMessage()
 	{
@@ -206,4 +308,22 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		return alternativeCost;
 	}
 
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 }
@@ -41,16 +41,19 @@ import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+import fiji.plugin.trackmate.util.TMExecutors;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
+import net.imglib2.KDTree;
 import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -68,6 +71,12 @@ import org.jgrapht.graph.DefaultWeightedEdge;
  * non-infinite costs.
  * <li>Costs are based on square distance +/- feature penalties.
  * </ul>
+ * <p>
+ * Candidate targets are searched in per-frame KD-trees of segment starts and
+ * middle points, restricted to the frames allowed by the frame gap settings
+ * and to the max distances. The segment ends and middle points are processed
+ * in chunks by several threads, each accumulating candidates in its own
+ * buffers.
  * 
  * @author Jean-Yves Tinevez - 2014
  * 
@@ -77,6 +86,12 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 
 	private static final String BASE_ERROR_MESSAGE = "[JaqamanSegmentCostMatrixCreator] ";
 
+	/**
+	 * Below this number of sources per thread, it is not worth splitting the
+	 * candidate search across threads.
+	 */
+	private static final int MIN_SOURCES_PER_THREAD = 256;
+
 	private final Map< String, Object > settings;
 
 	private String errorMessage;
@@ -202,8 +217,6 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 			allMiddles = Collections.emptyList();
 		}
 
-		final Object lock = new Object();
-
 		/*
 		 * Sources and targets.
 		 */
@@ -212,150 +225,68 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		// Corresponding costs.
 		final ResizableDoubleArray linkCosts = new ResizableDoubleArray();
 
+		/*
+		 * Index segment starts and middles frame by frame in KD-trees, so
+		 * that we only examine candidates within the max distance, in the
+		 * frames of interest.
+		 */
+		final FrameIndex startIndex = new FrameIndex( segmentStarts );
+		final FrameIndex middleIndex = new FrameIndex( allMiddles );
+
 		/*
 		 * A. We iterate over all segment ends, targeting 1st the segment starts
 		 * (gap-closing) then the segment middles (merging).
 		 */
 
-		final ExecutorService executorGCM = Executors.newFixedThreadPool( numThreads );
-		for ( final Spot source : segmentEnds )
+		final boolean ok1 = processInChunks( segmentEnds, sources, targets, linkCosts, new CandidateFinder()
 		{
-			executorGCM.submit( new Runnable()
+			@Override
+			public void find( final Spot source, final FrameSearch searches, final List< Spot > accSources, final List< Spot > accTargets, final ResizableDoubleArray accCosts )
 			{
-				@Override
-				public void run()
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+
+				/*
+				 * Iterate over segment starts - GAP-CLOSING.
+				 */
+
+				if ( allowGapClosing )
 				{
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+					// Frame interval must be within user specification.
+					for ( int tdiff = 1; tdiff <= maxFrameInterval; tdiff++ )
+						searches.collect( startIndex, source, sourceFrame + tdiff, gcMaxDistance, gcCostFunction, gcCostThreshold, accSources, accTargets, accCosts );
+				}
+
+				/*
+				 * Iterate over middle points - MERGING.
+				 */
 
-					/*
-					 * Iterate over segment starts - GAP-CLOSING.
-					 */
-
-					if ( allowGapClosing )
-					{
-						for ( final Spot target : segmentStarts )
-						{
-							// Check frame interval, must be within user
-							// specification.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff < 1 || tdiff > maxFrameInterval )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = gcCostFunction.linkingCost( source, target );
-							if ( cost > gcCostThreshold )
-							{
-								continue;
-							}
-
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
-
-					/*
-					 * Iterate over middle points - MERGING.
-					 */
-
-					if ( allowMerging )
-					{
-						for ( final Spot target : allMiddles )
-						{
-							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = mCostFunction.linkingCost( source, target );
-							if ( cost > mCostThreshold )
-							{
-								continue;
-							}
-
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
+				if ( allowMerging )
+				{
+					// Frame interval must be 1.
+					searches.collect( middleIndex, source, sourceFrame + 1, mMaxDistance, mCostFunction, mCostThreshold, accSources, accTargets, accCosts );
 				}
-			} );
-		}
-		executorGCM.shutdown();
-		try
-		{
-			executorGCM.awaitTermination( 1, TimeUnit.DAYS );
-		}
-		catch ( final InterruptedException e )
-		{
-			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			}
+		} );
+		if ( !ok1 )
 			return false;
-		}
 
 		/*
 		 * Iterate over middle points targeting segment starts - SPLITTING
 		 */
 		if ( allowSplitting )
 		{
-			final ExecutorService executorS = Executors.newFixedThreadPool( numThreads );
-			for ( final Spot source : allMiddles )
+			final boolean ok2 = processInChunks( allMiddles, sources, targets, linkCosts, new CandidateFinder()
 			{
-				executorS.submit( new Runnable()
+				@Override
+				public void find( final Spot source, final FrameSearch searches, final List< Spot > accSources, final List< Spot > accTargets, final ResizableDoubleArray accCosts )
 				{
-					@Override
-					public void run()
-					{
-						final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-						for ( final Spot target : segmentStarts )
-						{
-							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = sCostFunction.linkingCost( source, target );
-							if ( cost > sCostThreshold )
-							{
-								continue;
-							}
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
+					// Frame interval must be 1.
+					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+					searches.collect( startIndex, source, sourceFrame + 1, sMaxDistance, sCostFunction, sCostThreshold, accSources, accTargets, accCosts );
 				}
-						);
-			}
-			executorS.shutdown();
-			try
-			{
-				executorS.awaitTermination( 1, TimeUnit.DAYS );
-			}
-			catch ( final InterruptedException e )
-			{
-				errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
-			}
+			} );
+			if ( !ok2 )
+				return false;
 		}
 		linkCosts.trimToSize();
 
@@ -398,6 +329,54 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return true;
 	}
 
+	/**
+	 * Finds the candidate links of the specified sources, splitting them in
+	 * chunks processed concurrently. Each chunk accumulates its candidates in
+	 * its own buffers, that are merged in the specified lists at the end, in
+	 * chunk order.
+	 */
+	private boolean processInChunks( final List< Spot > sourceList, final List< Spot > accSources, final List< Spot > accTargets, final ResizableDoubleArray accCosts, final CandidateFinder finder )
+	{
+		if ( sourceList.isEmpty() )
+			return true;
+
+		final int nChunks = Math.max( 1, Math.min( numThreads, sourceList.size() / MIN_SOURCES_PER_THREAD ) );
+		final int chunkSize = ( sourceList.size() + nChunks - 1 ) / nChunks;
+		final List< Callable< Candidates > > tasks = new ArrayList<>( nChunks );
+		for ( int i = 0; i < nChunks; i++ )
+		{
+			final List< Spot > chunk = sourceList.subList( i * chunkSize, Math.min( sourceList.size(), ( i + 1 ) * chunkSize ) );
+			tasks.add( new Callable< Candidates >()
+			{
+				@Override
+				public Candidates call() throws Exception
+				{
+					final Candidates candidates = new Candidates();
+					final FrameSearch searches = new FrameSearch();
+					for ( final Spot source : chunk )
+						finder.find( source, searches, candidates.sources, candidates.targets, candidates.costs );
+					return candidates;
+				}
+			} );
+		}
+
+		try
+		{
+			for ( final Candidates candidates : TMExecutors.invokeAll( tasks, nChunks ) )
+			{
+				accSources.addAll( candidates.sources );
+				accTargets.addAll( candidates.targets );
+				accCosts.addAll( candidates.costs );
+			}
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			return false;
+		}
+		return true;
+	}
+
 	protected CostFunction< Spot, Spot > getCostFunctionFor( final Map< String, Double > featurePenalties )
 	{
 		// Link Nick Perry original non sparse LAP framework.
@@ -501,6 +480,88 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		this.numThreads = Runtime.getRuntime().availableProcessors();
 	}
 
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Finds the candidate links for one source, and accumulates them.
+	 */
+	private static interface CandidateFinder
+	{
+		public void find( Spot source, FrameSearch searches, List< Spot > accSources, List< Spot > accTargets, ResizableDoubleArray accCosts );
+	}
+
+	/**
+	 * Candidate links accumulated by one chunk.
+	 */
+	private static final class Candidates
+	{
+		private final List< Spot > sources = new ArrayList<>();
+
+		private final List< Spot > targets = new ArrayList<>();
+
+		private final ResizableDoubleArray costs = new ResizableDoubleArray();
+	}
+
+	/**
+	 * Stores a collection of spots in one KD-tree per frame.
+	 */
+	private static final class FrameIndex
+	{
+		private final Map< Integer, KDTree< Spot > > trees = new HashMap<>();
+
+		private FrameIndex( final List< Spot > spots )
+		{
+			final Map< Integer, List< Spot > > byFrame = new HashMap<>();
+			for ( final Spot spot : spots )
+				byFrame.computeIfAbsent( Integer.valueOf( spot.getFeature( Spot.FRAME ).intValue() ), k -> new ArrayList<>() ).add( spot );
+
+			for ( final Integer frame : byFrame.keySet() )
+			{
+				final List< Spot > frameSpots = byFrame.get( frame );
+				trees.put( frame, new KDTree<>( frameSpots, frameSpots ) );
+			}
+		}
+	}
+
+	/**
+	 * Radius searches over the trees of {@link FrameIndex}es. Searches are
+	 * stateful and not thread-safe, so each chunk uses its own instance.
+	 */
+	private static final class FrameSearch
+	{
+		private final Map< KDTree< Spot >, RadiusNeighborSearchOnKDTree< Spot > > searches = new HashMap<>();
+
+		/**
+		 * Accumulates the spots of the specified frame in the specified index
+		 * that are within the max distance of the source, and whose linking
+		 * cost is not above the threshold.
+		 */
+		private void collect( final FrameIndex index, final Spot source, final int targetFrame, final double maxDistance, final CostFunction< Spot, Spot > costFunction, final double costThreshold, final List< Spot > accSources, final List< Spot > accTargets, final ResizableDoubleArray accCosts )
+		{
+			final KDTree< Spot > tree = index.trees.get( Integer.valueOf( targetFrame ) );
+			if ( null == tree )
+				return;
+
+			final RadiusNeighborSearchOnKDTree< Spot > search = searches.computeIfAbsent( tree, t -> new RadiusNeighborSearchOnKDTree<>( t ) );
+			search.search( source, maxDistance, false );
+			final int nNeighbors = search.numNeighbors();
+			for ( int i = 0; i < nNeighbors; i++ )
+			{
+				final Spot target = search.getSampler( i ).get();
+				// Check max distance
+				final double cost = costFunction.linkingCost( source, target );
+				if ( cost > costThreshold )
+					continue;
+
+				accSources.add( source );
+				accTargets.add( target );
+				accCosts.add( cost );
+			}
+		}
+	}
+
 	@Override
 	public void setNumThreads( final int numThreads )
 	{
@@ -0,0 +1,100 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import net.imglib2.KDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+
+/**
+ * A {@link JaqamanLinkingCostMatrixCreator} that only evaluates the cost
+ * function for the targets that are within a maximal distance of each source.
+ * <p>
+ * The targets are stored in a KD-tree, queried with a radius search for each
+ * source. This brings the number of cost evaluations from the product of the
+ * number of sources and targets down to the number of neighbor pairs. It
+ * yields exactly the same cost matrix as the base class as long as the cost
+ * function never returns a cost below the threshold for pairs further apart
+ * than the maximal distance, which is the case for instance for the squared
+ * distance cost function with a threshold equal to the square of the maximal
+ * distance.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <K>
+ *            the type of the sources.
+ * @param <J>
+ *            the type of the targets.
+ */
+public class KDTreeLinkingCostMatrixCreator< K extends RealLocalizable & Comparable< K >, J extends RealLocalizable & Comparable< J > > extends JaqamanLinkingCostMatrixCreator< K, J >
+{
+
+	private final double maxDistance;
+
+	private KDTree< J > tree;
+
+	public KDTreeLinkingCostMatrixCreator( final Iterable< K > sources, final Iterable< J > targets, final CostFunction< K, J > costFunction, final double maxDistance, final double costThreshold, final double alternativeCostFactor, final double percentile )
+	{
+		super( sources, targets, costFunction, costThreshold, alternativeCostFactor, percentile );
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final List< J > targetList = new ArrayList<>();
+		for ( final J target : targets )
+			targetList.add( target );
+		tree = new KDTree<>( targetList, targetList );
+
+		final boolean ok = super.process();
+		tree = null;
+		return ok;
+	}
+
+	@Override
+	protected void computeCosts( final List< K > sourceChunk, final List< K > accSources, final List< J > accTargets, final ResizableDoubleArray costs )
+	{
+		// Searches are stateful: one per chunk.
+		final RadiusNeighborSearchOnKDTree< J > search = new RadiusNeighborSearchOnKDTree<>( tree );
+		for ( final K source : sourceChunk )
+		{
+			search.search( source, maxDistance, false );
+			final int nNeighbors = search.numNeighbors();
+			for ( int i = 0; i < nNeighbors; i++ )
+			{
+				final J target = search.getSampler( i ).get();
+				final double cost = costFunction.linkingCost( source, target );
+				if ( cost < costThreshold )
+				{
+					accSources.add( source );
+					accTargets.add( target );
+					costs.add( cost );
+				}
+			}
+		}
+	}
+}
@@ -105,6 +105,19 @@ public class ResizableDoubleArray
 		size++;
 	}
 
+	/**
+	 * Appends all the elements of the specified array at the end of this one.
+	 *
+	 * @param other
+	 *            the array to append.
+	 */
+	public void addAll( final ResizableDoubleArray other )
+	{
+		ensureCapacity( size + other.size );
+		System.arraycopy( other.data, 0, data, size, other.size );
+		size += other.size;
+	}
+
 	@Override
 	public String toString()
 	{
@@ -0,0 +1,385 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import fiji.plugin.trackmate.util.TMExecutors;
+import net.imglib2.algorithm.Benchmark;
+import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.algorithm.OutputAlgorithm;
+import net.imglib2.util.Util;
+
+/**
+ * Solves a sparse linear assignment problem by splitting it into independent
+ * blocks, solved separately with {@link LAPJV}.
+ * <p>
+ * Rows and columns of a {@link SparseCostMatrix} form a bipartite graph, where
+ * each non-infinite cost is an edge. Rows and columns that belong to different
+ * connected components of this graph cannot influence each other's
+ * assignment, so the optimal assignment of the full matrix is the union of the
+ * optimal assignments of each component. For the segment linking problem of
+ * large movies, where distant cell clusters make as many independent
+ * components, solving the blocks is much faster than solving the full matrix,
+ * even on a single thread. The blocks are also solved concurrently on the
+ * work-stealing executor shared by TrackMate.
+ * <p>
+ * Each block must have at least as many columns as rows. This is always the
+ * case for the square cost matrices built by {@link JaqamanLinker}, since they
+ * admit a complete assignment.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class BlockLAPJV implements OutputAlgorithm< int[] >, Benchmark, MultiThreaded
+{
+
+	private static final String BASE_ERROR_MESSAGE = "[BlockLAPJV] ";
+
+	/**
+	 * Blocks smaller than this number of costs are grouped in a single task.
+	 */
+	private static final int MIN_CARDINALITY_PER_TASK = 4096;
+
+	private final SparseCostMatrix cm;
+
+	private int[] output;
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	private int numThreads = 1;
+
+	private int nBlocks;
+
+	/**
+	 * Instantiates a new block solver for the specified sparse cost matrix.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 */
+	public BlockLAPJV( final SparseCostMatrix cm )
+	{
+		this.cm = cm;
+	}
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( cm.nRows > cm.nCols )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver converges only if the cost matrix has more rows than column. Found " + cm.nRows + " rows and " + cm.nCols + " columns.";
+			return false;
+		}
+		final double minCost = Util.min( cm.cc );
+		if ( minCost <= 0 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "This solver only accept strictly positive costs. Found " + minCost + ".";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		/*
+		 * Connected components. Rows are nodes 0..nRows-1 and columns are
+		 * nodes nRows..nRows+nCols-1.
+		 */
+
+		final int[] parent = new int[ cm.nRows + cm.nCols ];
+		for ( int n = 0; n < parent.length; n++ )
+			parent[ n ] = n;
+
+		for ( int i = 0; i < cm.nRows; i++ )
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+				union( parent, i, cm.nRows + cm.kk[ k ] );
+
+		final int[] label = new int[ parent.length ];
+		Arrays.fill( label, -1 );
+		nBlocks = 0;
+		final int[] blockOf = new int[ parent.length ];
+		for ( int n = 0; n < parent.length; n++ )
+		{
+			final int root = find( parent, n );
+			if ( label[ root ] < 0 )
+				label[ root ] = nBlocks++;
+			blockOf[ n ] = label[ root ];
+		}
+
+		/*
+		 * Group rows and columns per block, in ascending order, and compute
+		 * the local index of each column in its block.
+		 */
+
+		final int[] rowOffsets = new int[ nBlocks + 1 ];
+		final int[] colOffsets = new int[ nBlocks + 1 ];
+		final int[] cardinalities = new int[ nBlocks ];
+		for ( int i = 0; i < cm.nRows; i++ )
+		{
+			rowOffsets[ blockOf[ i ] + 1 ]++;
+			cardinalities[ blockOf[ i ] ] += cm.number[ i ];
+		}
+		for ( int j = 0; j < cm.nCols; j++ )
+			colOffsets[ blockOf[ cm.nRows + j ] + 1 ]++;
+		for ( int b = 0; b < nBlocks; b++ )
+		{
+			rowOffsets[ b + 1 ] += rowOffsets[ b ];
+			colOffsets[ b + 1 ] += colOffsets[ b ];
+		}
+
+		final int[] rows = new int[ cm.nRows ];
+		final int[] rowFill = Arrays.copyOf( rowOffsets, nBlocks );
+		for ( int i = 0; i < cm.nRows; i++ )
+			rows[ rowFill[ blockOf[ i ] ]++ ] = i;
+
+		final int[] cols = new int[ cm.nCols ];
+		final int[] localCol = new int[ cm.nCols ];
+		final int[] colFill = Arrays.copyOf( colOffsets, nBlocks );
+		for ( int j = 0; j < cm.nCols; j++ )
+		{
+			final int b = blockOf[ cm.nRows + j ];
+			localCol[ j ] = colFill[ b ] - colOffsets[ b ];
+			cols[ colFill[ b ]++ ] = j;
+		}
+
+		for ( int b = 0; b < nBlocks; b++ )
+		{
+			final int nr = rowOffsets[ b + 1 ] - rowOffsets[ b ];
+			final int nc = colOffsets[ b + 1 ] - colOffsets[ b ];
+			if ( nr > nc )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + "The cost matrix has no complete assignment: found an independent block with " + nr + " rows and " + nc + " columns.";
+				return false;
+			}
+		}
+
+		/*
+		 * Group small blocks in tasks, largest blocks first.
+		 */
+
+		final Integer[] order = new Integer[ nBlocks ];
+		for ( int b = 0; b < nBlocks; b++ )
+			order[ b ] = Integer.valueOf( b );
+		Arrays.sort( order, new Comparator< Integer >()
+		{
+			@Override
+			public int compare( final Integer o1, final Integer o2 )
+			{
+				return Integer.compare( cardinalities[ o2.intValue() ], cardinalities[ o1.intValue() ] );
+			}
+		} );
+
+		final List< int[] > tasks = new ArrayList<>();
+		int taskStart = 0;
+		int taskCardinality = 0;
+		for ( int t = 0; t < nBlocks; t++ )
+		{
+			taskCardinality += cardinalities[ order[ t ].intValue() ];
+			if ( taskCardinality >= MIN_CARDINALITY_PER_TASK || t == nBlocks - 1 )
+			{
+				final int[] task = new int[ t + 1 - taskStart ];
+				for ( int k = 0; k < task.length; k++ )
+					task[ k ] = order[ taskStart + k ].intValue();
+				tasks.add( task );
+				taskStart = t + 1;
+				taskCardinality = 0;
+			}
+		}
+
+		/*
+		 * Solve.
+		 */
+
+		final int[] assignment = new int[ cm.nRows ];
+		final List< Callable< String > > callables = new ArrayList<>( tasks.size() );
+		for ( final int[] task : tasks )
+		{
+			callables.add( new Callable< String >()
+			{
+				@Override
+				public String call() throws Exception
+				{
+					final LAPJV.Workspace workspace = new LAPJV.Workspace();
+					for ( final int b : task )
+					{
+						final String error = solveBlock( rows, rowOffsets[ b ], rowOffsets[ b + 1 ], cols, colOffsets[ b ], colOffsets[ b + 1 ], localCol, cardinalities[ b ], workspace, assignment );
+						if ( null != error )
+							return error;
+					}
+					return null;
+				}
+			} );
+		}
+
+		try
+		{
+			for ( final String error : TMExecutors.invokeAll( callables, numThreads ) )
+			{
+				if ( null != error )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + error;
+					return false;
+				}
+			}
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			e.printStackTrace();
+			return false;
+		}
+
+		this.output = assignment;
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Extracts and solves one block, and writes its assignment in the
+	 * specified global assignment array.
+	 *
+	 * @return an error message, or <code>null</code> if the block was solved.
+	 */
+	private String solveBlock( final int[] rows, final int rowStart, final int rowEnd, final int[] cols, final int colStart, final int colEnd, final int[] localCol, final int cardinality, final LAPJV.Workspace workspace, final int[] assignment )
+	{
+		final int nr = rowEnd - rowStart;
+		final int nc = colEnd - colStart;
+
+		// Trivial block.
+		if ( nr == 1 && nc == 1 )
+		{
+			assignment[ rows[ rowStart ] ] = cols[ colStart ];
+			return null;
+		}
+
+		// Local indices are increasing with global ones, so columns stay
+		// sorted within each row.
+		final double[] lcc = new double[ cardinality ];
+		final int[] lkk = new int[ cardinality ];
+		final int[] lnumber = new int[ nr ];
+		int index = 0;
+		for ( int r = 0; r < nr; r++ )
+		{
+			final int i = rows[ rowStart + r ];
+			lnumber[ r ] = cm.number[ i ];
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			{
+				lcc[ index ] = cm.cc[ k ];
+				lkk[ index ] = localCol[ cm.kk[ k ] ];
+				index++;
+			}
+		}
+
+		// Only reuse the workspace memory, blocks are unrelated.
+		workspace.clear();
+		final LAPJV solver = new LAPJV( new SparseCostMatrix( lcc, lkk, lnumber, nc ), workspace );
+		if ( !solver.process() )
+			return solver.getErrorMessage();
+
+		final int[] local = solver.getResult();
+		for ( int r = 0; r < nr; r++ )
+			assignment[ rows[ rowStart + r ] ] = cols[ colStart + local[ r ] ];
+		return null;
+	}
+
+	private static int find( final int[] parent, int n )
+	{
+		while ( parent[ n ] != n )
+		{
+			parent[ n ] = parent[ parent[ n ] ];
+			n = parent[ n ];
+		}
+		return n;
+	}
+
+	private static void union( final int[] parent, final int a, final int b )
+	{
+		final int ra = find( parent, a );
+		final int rb = find( parent, b );
+		if ( ra != rb )
+			parent[ Math.max( ra, rb ) ] = Math.min( ra, rb );
+	}
+
+	/**
+	 * Returns the number of independent blocks found in the cost matrix by the
+	 * last call to {@link #process()}.
+	 *
+	 * @return the number of blocks.
+	 */
+	public int getNBlocks()
+	{
+		return nBlocks;
+	}
+
+	/**
+	 * Returns the row assignments. The row <code>i</code> is associated to the
+	 * column <code>x[i]</code> in the cost matrix.
+	 *
+	 * @return the row assignments as an <code>int[]</code> array. This array is
+	 *         re-instantiated upon calling {@link #process()}.
+	 */
+	@Override
+	public int[] getResult()
+	{
+		return output;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+}
@@ -29,6 +29,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.imglib2.algorithm.BenchmarkAlgorithm;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.util.Util;
 import fiji.plugin.trackmate.Logger;
@@ -45,7 +46,7 @@ import fiji.plugin.trackmate.tracking.sparselap.costmatrix.CostMatrixCreator;
  * @param <J>
  *            the type of the target objects to link.
  */
-public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J > > extends BenchmarkAlgorithm implements OutputAlgorithm< Map< K, J > >
+public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J > > extends BenchmarkAlgorithm implements OutputAlgorithm< Map< K, J > >, MultiThreaded
 {
 	private Map< K, J > assignments;
 
@@ -55,6 +56,12 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 
 	private final Logger logger;
 
+	private final LAPJV.Workspace workspace;
+
+	private boolean blockDecomposition = false;
+
+	private int numThreads = 1;
+
 	/**
 	 * Creates a new linker for the specified cost matrix creator. See Jaqaman
 	 * <i>et al.</i>, Nature Methods, <b>2008</b>, Figure 1b.
@@ -63,11 +70,31 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 	 *            the class in charge of creating linking costs.
 	 * @param logger
 	 *            a logger that will receive progress messages.
+	 * @param workspace
+	 *            the workspace of the LAP solver. If it holds the solution of
+	 *            a previous linking problem of the same size, the solver
+	 *            starts from it. Can be <code>null</code>, in which case the
+	 *            problem is solved from scratch.
 	 */
-	public JaqamanLinker( final CostMatrixCreator< K, J > costMatrixCreator, final Logger logger )
+	public JaqamanLinker( final CostMatrixCreator< K, J > costMatrixCreator, final Logger logger, final LAPJV.Workspace workspace )
 	{
 		this.costMatrixCreator = costMatrixCreator;
 		this.logger = logger;
+		this.workspace = workspace;
+	}
+
+	/**
+	 * Creates a new linker for the specified cost matrix creator. See Jaqaman
+	 * <i>et al.</i>, Nature Methods, <b>2008</b>, Figure 1b.
+	 * 
+	 * @param costMatrixCreator
+	 *            the class in charge of creating linking costs.
+	 * @param logger
+	 *            a logger that will receive progress messages.
+	 */
+	public JaqamanLinker( final CostMatrixCreator< K, J > costMatrixCreator, final Logger logger )
+	{
+		this( costMatrixCreator, logger, null );
 	}
 
 	public JaqamanLinker( final CostMatrixCreator< K, J > costMatrixCreator )
@@ -198,7 +225,17 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		 * Solve the full cost matrix.
 		 */
 		logger.setStatus( "Solving the cost matrix..." );
-		final LAPJV solver = new LAPJV( full );
+		final OutputAlgorithm< int[] > solver;
+		if ( blockDecomposition )
+		{
+			final BlockLAPJV blockSolver = new BlockLAPJV( full );
+			blockSolver.setNumThreads( numThreads );
+			solver = blockSolver;
+		}
+		else
+		{
+			solver = ( null == workspace ) ? new LAPJV( full ) : new LAPJV( full, workspace );
+		}
 		if ( !solver.checkInput() || !solver.process() )
 		{
 			errorMessage = solver.getErrorMessage();
@@ -230,6 +267,40 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		return true;
 	}
 
+	/**
+	 * Sets whether the LAP is split in independent blocks, solved separately
+	 * and concurrently by a {@link BlockLAPJV} solver. This is much faster for
+	 * large problems made of many independent groups of objects, like the
+	 * segment linking problem of large movies. The workspace, if any, is
+	 * ignored in this mode.
+	 * 
+	 * @param blockDecomposition
+	 *            whether to solve the LAP block by block.
+	 * @see #setNumThreads(int)
+	 */
+	public void setBlockDecomposition( final boolean blockDecomposition )
+	{
+		this.blockDecomposition = blockDecomposition;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
 	public String resultToString()
 	{
 		if ( null == assignments ) { return "Not solved yet. Process the algorithm prior to calling this method."; }
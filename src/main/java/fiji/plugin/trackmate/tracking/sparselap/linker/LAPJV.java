@@ -75,6 +75,10 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 
 	private final SparseCostMatrix cm;
 
+	private final Workspace ws;
+
+	private boolean warmStarted;
+
 	/**
 	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
 	 * cost matrix.
@@ -83,8 +87,32 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	 *            the cost matrix of the linear assignment problem to solve.
 	 */
 	public LAPJV( final SparseCostMatrix cm )
+	{
+		this( cm, new Workspace() );
+	}
+
+	/**
+	 * Instantiates a new Jonker-Volgenant algorithm for the specified sparse
+	 * cost matrix, that will solve it using the specified workspace.
+	 * <p>
+	 * The workspace arrays are reused if they are large enough. If the
+	 * workspace holds the solution of a previous problem of the same square
+	 * size, or was seeded with {@link Workspace#seed(double[], int[])}, this
+	 * solution is used as a starting point for the new problem. The result is
+	 * the same as with a cold start, but when the two problems are similar
+	 * (for instance, the same frame pair tracked with slightly different
+	 * parameters) most of the rows are assigned right away.
+	 *
+	 * @param cm
+	 *            the cost matrix of the linear assignment problem to solve.
+	 * @param workspace
+	 *            the workspace to use. Must not be shared by solvers running
+	 *            concurrently.
+	 */
+	public LAPJV( final SparseCostMatrix cm, final Workspace workspace )
 	{
 		this.cm = cm;
+		this.ws = workspace;
 	}
 
 	@Override
@@ -92,21 +120,53 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 	{
 		final long start = System.currentTimeMillis();
 
-		final int[] x = new int[ cm.nRows ];
-		final int[] y = new int[ cm.nCols ];
-		final double[] v = new double[ cm.nCols ];
+		ws.ensureCapacity( cm.nRows, cm.nCols );
+		final int[] x = ws.x;
 
-		final int[] col = new int[ cm.nCols ];
-		for ( int j = 0; j < col.length; j++ )
+		warmStarted = ws.canWarmStart( cm.nRows, cm.nCols );
+		ws.clear();
+		int f = warmStarted ? warmStart() : coldStart();
+		if ( f > 0 )
 		{
-			col[ j ] = j;
+			f = augmentingRowReduction( f );
+			augmentation( f );
+		}
+
+		/*
+		 * Terminate and prepare outputs.
+		 */
+
+		this.output = new int[ cm.nRows ];
+		for ( int i = 0; i < cm.nRows; i++ )
+		{
+			output[ i ] = x[ i ] - 1;
 		}
+		ws.solved( cm.nRows, cm.nCols );
+
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+		return true;
+	}
+
+	/**
+	 * Column reduction and reduction transfer, starting from scratch.
+	 *
+	 * @return the number of free rows, stored in the workspace free-array.
+	 */
+	private int coldStart()
+	{
+		final int[] x = ws.x;
+		final int[] y = ws.y;
+		final double[] v = ws.v;
+		final int[] free = ws.free;
+		Arrays.fill( x, 0, cm.nRows, 0 );
+		Arrays.fill( y, 0, cm.nCols, 0 );
 
 		/*
 		 * Column reduction
 		 */
 
-		Arrays.fill( v, Double.MAX_VALUE );
+		Arrays.fill( v, 0, cm.nCols, Double.MAX_VALUE );
 		for ( int i = 0; i < cm.nRows; i++ )
 		{
 			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
@@ -142,7 +202,6 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		 */
 
 		int f = 0;
-		final int[] free = new int[ cm.nRows ];
 		for ( int i = 0; i < cm.nRows; i++ )
 		{
 			if ( x[ i ] == 0 )
@@ -175,12 +234,83 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 				v[ j1 ] -= min;
 			}
 		}
+		return f;
+	}
 
-		if ( f == 0 ) { return true; }
+	/**
+	 * Initialization from the column duals and row assignments stored in the
+	 * workspace.
+	 * <p>
+	 * The duals are kept as they are, so they only need to be finite. A
+	 * previous assignment <code>i → j</code> is kept if column <code>j</code>
+	 * is still free and still has the minimal reduced cost
+	 * <code>c(i,j) - v(j)</code> over row <code>i</code>. This is the
+	 * complementary slackness condition the next phases rely upon. All the
+	 * other rows are made free.
+	 *
+	 * @return the number of free rows, stored in the workspace free-array.
+	 */
+	private int warmStart()
+	{
+		final int[] x = ws.x;
+		final int[] y = ws.y;
+		final double[] v = ws.v;
+		final int[] free = ws.free;
+		Arrays.fill( y, 0, cm.nCols, 0 );
 
-		/*
-		 * Augmenting row reduction.
-		 */
+		int f = 0;
+		for ( int i = 0; i < cm.nRows; i++ )
+		{
+			final int j1 = x[ i ] - 1;
+			x[ i ] = 0;
+			if ( j1 < 0 || y[ j1 ] != 0 )
+			{
+				free[ f++ ] = i;
+				continue;
+			}
+
+			double min = Double.MAX_VALUE;
+			double h1 = Double.MAX_VALUE;
+			for ( int k = cm.start[ i ]; k < cm.start[ i ] + cm.number[ i ]; k++ )
+			{
+				final int j = cm.kk[ k ];
+				final double h = cm.cc[ k ] - v[ j ];
+				if ( h < min )
+				{
+					min = h;
+				}
+				if ( j == j1 )
+				{
+					h1 = h;
+				}
+			}
+
+			if ( h1 <= min )
+			{
+				x[ i ] = j1 + 1;
+				y[ j1 ] = i + 1;
+			}
+			else
+			{
+				free[ f++ ] = i;
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Augmenting row reduction.
+	 *
+	 * @param f
+	 *            the number of free rows.
+	 * @return the number of rows still free after the reduction.
+	 */
+	private int augmentingRowReduction( int f )
+	{
+		final int[] x = ws.x;
+		final int[] y = ws.y;
+		final double[] v = ws.v;
+		final int[] free = ws.free;
 
 		for ( int count = 0; count < 2; count++ )
 		{
@@ -241,20 +371,36 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 				y[ j0 ] = i + 1;
 			}
 		}
+		return f;
+	}
 
-		/*
-		 * Augmentation.
-		 */
+	/**
+	 * Augmentation along shortest paths for the remaining free rows.
+	 *
+	 * @param f0
+	 *            the number of free rows.
+	 */
+	private void augmentation( final int f0 )
+	{
+		final int[] x = ws.x;
+		final int[] y = ws.y;
+		final double[] v = ws.v;
+		final int[] free = ws.free;
+		final int[] col = ws.col;
+		final double[] d = ws.d;
+		final int[] pred = ws.pred;
+
+		for ( int j = 0; j < cm.nCols; j++ )
+		{
+			col[ j ] = j;
+		}
 
-		final int f0 = f;
-		final double[] d = new double[ cm.nCols ];
-		final int[] pred = new int[ cm.nCols ];
-		for ( f = 0; f < f0; f++ )
+		for ( int f = 0; f < f0; f++ )
 		{
 			final int i1 = free[ f ];
 			int low = 0, up = 0;
 			// initialize d- and pred-array
-			Arrays.fill( d, Double.MAX_VALUE );
+			Arrays.fill( d, 0, cm.nCols, Double.MAX_VALUE );
 			for ( int k = cm.start[ i1 ]; k < cm.start[ i1 ] + cm.number[ i1 ]; k++ )
 			{
 				final int j = cm.kk[ k ];
@@ -357,22 +503,7 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 			}
 			while ( i1 != i );
 		}
-
-		/*
-		 * Terminate and prepare outputs.
-		 */
-
-		this.output = new int[ x.length ];
-		for ( int i = 0; i < x.length; i++ )
-		{
-			output[ i ] = x[ i ] - 1;
-		}
-
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
-		return true;
 	}
-
 	/*
 	 * ALGORITHM METHODS
 	 */
@@ -419,6 +550,17 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 		return output;
 	}
 
+	/**
+	 * Returns whether the last call to {@link #process()} started from the
+	 * solution stored in the workspace rather than from scratch.
+	 *
+	 * @return <code>true</code> if the solver was warm-started.
+	 */
+	public boolean isWarmStarted()
+	{
+		return warmStarted;
+	}
+
 	public String resultToString()
 	{
 		return resultToString( Collections.emptyList(), Collections.emptyList() );
@@ -544,4 +686,124 @@ public class LAPJV implements OutputAlgorithm< int[] >, Benchmark
 
 		return str.toString();
 	}
+
+	/**
+	 * Reusable memory and starting point for {@link LAPJV} solvers.
+	 * <p>
+	 * A workspace grows its arrays to the largest problem it has been used
+	 * for, and keeps the column duals and the row assignments found by the
+	 * last solver that used it. They are used to warm-start the next solver,
+	 * provided its cost matrix is square and has the same size.
+	 * <p>
+	 * A workspace is not thread-safe, and must not be shared by solvers
+	 * running concurrently.
+	 */
+	public static class Workspace
+	{
+
+		private int[] x = new int[ 0 ];
+
+		private int[] free = new int[ 0 ];
+
+		private int[] y = new int[ 0 ];
+
+		private double[] v = new double[ 0 ];
+
+		private int[] col = new int[ 0 ];
+
+		private double[] d = new double[ 0 ];
+
+		private int[] pred = new int[ 0 ];
+
+		/**
+		 * Size of the problem whose solution is stored in <code>x</code> and
+		 * <code>v</code>, or -1 if there is none.
+		 */
+		private int nRows = -1;
+
+		private int nCols = -1;
+
+		/**
+		 * Seeds this workspace with the column duals and the row assignments
+		 * of a previous solution. The next solver using this workspace will
+		 * start from them if its cost matrix has <code>assignment.length</code>
+		 * rows and <code>v.length</code> columns, and these two numbers are
+		 * equal.
+		 *
+		 * @param v
+		 *            the column duals. They must all be finite.
+		 * @param assignment
+		 *            the row assignments, as returned by
+		 *            {@link LAPJV#getResult()}. Rows assigned to a column out
+		 *            of bounds are considered free.
+		 */
+		public void seed( final double[] v, final int[] assignment )
+		{
+			for ( final double vj : v )
+			{
+				if ( Double.isNaN( vj ) || Double.isInfinite( vj ) )
+					throw new IllegalArgumentException( BASE_ERROR_MESSAGE + "Column duals must be finite. Found " + vj + "." );
+			}
+
+			ensureCapacity( assignment.length, v.length );
+			System.arraycopy( v, 0, this.v, 0, v.length );
+			for ( int i = 0; i < assignment.length; i++ )
+			{
+				final int j = assignment[ i ];
+				x[ i ] = ( j >= 0 && j < v.length ) ? j + 1 : 0;
+			}
+			solved( assignment.length, v.length );
+		}
+
+		/**
+		 * Forgets the solution stored in this workspace, so that the next
+		 * solver starts from scratch. The arrays are kept for reuse.
+		 */
+		public void clear()
+		{
+			nRows = -1;
+			nCols = -1;
+		}
+
+		/**
+		 * Returns a copy of the column duals stored in this workspace.
+		 *
+		 * @return a new <code>double[]</code> array, or <code>null</code> if
+		 *         this workspace does not hold a solution.
+		 */
+		public double[] getDuals()
+		{
+			if ( nCols < 0 )
+				return null;
+			return Arrays.copyOf( v, nCols );
+		}
+
+		private void ensureCapacity( final int nRows, final int nCols )
+		{
+			if ( x.length < nRows )
+			{
+				x = Arrays.copyOf( x, nRows );
+				free = new int[ nRows ];
+			}
+			if ( v.length < nCols )
+			{
+				v = Arrays.copyOf( v, nCols );
+				y = new int[ nCols ];
+				col = new int[ nCols ];
+				d = new double[ nCols ];
+				pred = new int[ nCols ];
+			}
+		}
+
+		private boolean canWarmStart( final int nRows, final int nCols )
+		{
+			return nRows == nCols && this.nRows == nRows && this.nCols == nCols;
+		}
+
+		private void solved( final int nRows, final int nCols )
+		{
+			this.nRows = nRows;
+			this.nCols = nCols;
+		}
+	}
 }
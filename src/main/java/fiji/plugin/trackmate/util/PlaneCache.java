@@ -0,0 +1,458 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.basictypeaccess.array.FloatArray;
+import net.imglib2.img.basictypeaccess.array.IntArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.img.cell.LazyCellImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+/**
+ * A read-only, lazily loaded view over the planes of an {@link ImagePlus},
+ * with a memory-bounded cache.
+ * <p>
+ * The view is an {@link ImgPlus} backed by a {@link LazyCellImg} whose cells
+ * are the individual planes of the image, with the same axes and calibration
+ * that {@link TMUtils#rawWraps(ImagePlus)} would give. Planes are read from
+ * the image stack the first time they are accessed, and kept in a
+ * least-recently-used cache whose total size does not exceed a specified
+ * number of bytes. This makes it possible to process time-lapses backed by a
+ * virtual stack that do not fit in memory, reading each plane only once as
+ * long as the frames processed simultaneously fit in the cache.
+ * <p>
+ * Planes of a frame can be read ahead of their use with
+ * {@link #prefetch(int)}. Prefetching runs on a single I/O thread, separate
+ * from the executor used for computations, so that reading planes never
+ * competes with processing for workers.
+ * <p>
+ * Modifying the pixels of the view is not supported: changes are lost when a
+ * plane is evicted from the cache.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class PlaneCache
+{
+
+	private final ImagePlus imp;
+
+	private final long maxBytes;
+
+	private final long planeBytes;
+
+	private final int nChannels;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final int[] cellDimensions;
+
+	/** Index of the channel, Z and time axes in the view, -1 if absent. */
+	private final int[] axisIndices;
+
+	/** The cached planes, from least to most recently used. */
+	private final LinkedHashMap< Long, Cell< ? > > cache = new LinkedHashMap<>( 16, 0.75f, true );
+
+	/** The planes being read, so that each plane is read only once. */
+	private final Map< Long, CompletableFuture< Cell< ? > > > loading = new ConcurrentHashMap<>();
+
+	private long cachedBytes = 0;
+
+	private final AtomicLong reads = new AtomicLong( 0 );
+
+	private final AtomicLong hits = new AtomicLong( 0 );
+
+	private ExecutorService prefetcher;
+
+	/** The frames to read ahead, until they are evicted. */
+	private final Set< Integer > prefetched = ConcurrentHashMap.newKeySet();
+
+	/** Creates the cell data from the pixel array of a plane. */
+	private Function< Object, ? > wrapper;
+
+	@SuppressWarnings( "rawtypes" )
+	private final ImgPlus img;
+
+	/**
+	 * Creates a new plane cache over the specified image.
+	 *
+	 * @param imp
+	 *            the image to wrap. It must be 8-bit, 16-bit, 32-bit or RGB.
+	 * @param maxBytes
+	 *            the maximal number of bytes of pixel data to keep in the
+	 *            cache. At least one plane is kept whatever this value.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	public PlaneCache( final ImagePlus imp, final long maxBytes )
+	{
+		this.imp = imp;
+		this.maxBytes = maxBytes;
+		this.nChannels = imp.getNChannels();
+		this.nSlices = imp.getNSlices();
+		this.nFrames = imp.getNFrames();
+		this.planeBytes = ( long ) imp.getWidth() * imp.getHeight() * imp.getBytesPerPixel();
+
+		/*
+		 * Same axes and calibration as the ImageJ adapters: X, Y, then C, Z
+		 * and T if they are not singletons.
+		 */
+		final List< AxisType > axes = new ArrayList<>( 5 );
+		final List< Double > calibration = new ArrayList<>( 5 );
+		axes.add( Axes.X );
+		calibration.add( imp.getCalibration().pixelWidth );
+		axes.add( Axes.Y );
+		calibration.add( imp.getCalibration().pixelHeight );
+		this.axisIndices = new int[] { -1, -1, -1 };
+		final int[] sizes = new int[] { nChannels, nSlices, nFrames };
+		final AxisType[] types = new AxisType[] { Axes.CHANNEL, Axes.Z, Axes.TIME };
+		final double[] scales = new double[] { 1., imp.getCalibration().pixelDepth,
+				imp.getCalibration().frameInterval > 0. ? imp.getCalibration().frameInterval : 1. };
+		for ( int i = 0; i < 3; i++ )
+		{
+			if ( sizes[ i ] < 2 )
+				continue;
+			axisIndices[ i ] = axes.size();
+			axes.add( types[ i ] );
+			calibration.add( scales[ i ] );
+		}
+
+		final int n = axes.size();
+		final long[] dimensions = new long[ n ];
+		this.cellDimensions = new int[ n ];
+		dimensions[ 0 ] = imp.getWidth();
+		dimensions[ 1 ] = imp.getHeight();
+		cellDimensions[ 0 ] = imp.getWidth();
+		cellDimensions[ 1 ] = imp.getHeight();
+		for ( int i = 0; i < 3; i++ )
+		{
+			if ( axisIndices[ i ] < 0 )
+				continue;
+			dimensions[ axisIndices[ i ] ] = sizes[ i ];
+			cellDimensions[ axisIndices[ i ] ] = 1;
+		}
+		final CellGrid grid = new CellGrid( dimensions, cellDimensions );
+
+		final LazyCellImg lazy;
+		switch ( imp.getType() )
+		{
+		case ImagePlus.GRAY8:
+		case ImagePlus.COLOR_256:
+			lazy = lazy( grid, new UnsignedByteType(), p -> new ByteArray( ( byte[] ) p ) );
+			break;
+		case ImagePlus.GRAY16:
+			lazy = lazy( grid, new UnsignedShortType(), p -> new ShortArray( ( short[] ) p ) );
+			break;
+		case ImagePlus.GRAY32:
+			lazy = lazy( grid, new FloatType(), p -> new FloatArray( ( float[] ) p ) );
+			break;
+		case ImagePlus.COLOR_RGB:
+			lazy = lazy( grid, new ARGBType(), p -> new IntArray( ( int[] ) p ) );
+			break;
+		default:
+			throw new IllegalArgumentException( "Unsupported image type: " + imp.getType() );
+		}
+
+		final double[] cal = new double[ n ];
+		for ( int d = 0; d < n; d++ )
+			cal[ d ] = calibration.get( d );
+		this.img = new ImgPlus( lazy, imp.getTitle(), axes.toArray( new AxisType[ n ] ), cal );
+	}
+
+	/**
+	 * Returns the lazily loaded view over the image.
+	 *
+	 * @return a new {@link ImgPlus}.
+	 */
+	@SuppressWarnings( "rawtypes" )
+	public ImgPlus getImgPlus()
+	{
+		return img;
+	}
+
+	/**
+	 * Returns the maximal number of bytes of pixel data kept in the cache.
+	 *
+	 * @return the cache capacity, in bytes.
+	 */
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	/**
+	 * Returns the number of bytes of pixel data of a single frame, over all
+	 * channels and Z slices.
+	 *
+	 * @return the size of a frame, in bytes.
+	 */
+	public long getFrameBytes()
+	{
+		return planeBytes * nChannels * nSlices;
+	}
+
+	/**
+	 * Returns the number of planes read from the image so far.
+	 *
+	 * @return the number of plane reads.
+	 */
+	public long getReadCount()
+	{
+		return reads.get();
+	}
+
+	/**
+	 * Returns the number of plane accesses served by the cache so far.
+	 *
+	 * @return the number of cache hits.
+	 */
+	public long getHitCount()
+	{
+		return hits.get();
+	}
+
+	/**
+	 * Reads the planes of the specified frame in the background, if they are
+	 * not in the cache already. Nothing is done if the frame does not exist,
+	 * or if it would fill more than half of the cache, in which case reading
+	 * it ahead would evict the planes being processed.
+	 *
+	 * @param frame
+	 *            the frame to read, 0-based.
+	 */
+	public void prefetch( final int frame )
+	{
+		if ( frame < 0 || frame >= nFrames || 2 * getFrameBytes() > maxBytes )
+			return;
+
+		final ExecutorService executor;
+		synchronized ( this )
+		{
+			if ( null == prefetcher )
+				prefetcher = Executors.newSingleThreadExecutor( r -> {
+					final Thread thread = new Thread( r, "TrackMate-plane-prefetcher" );
+					thread.setDaemon( true );
+					return thread;
+				} );
+			executor = prefetcher;
+		}
+		prefetched.add( Integer.valueOf( frame ) );
+		executor.execute( () -> {
+			final long first = ( long ) frame * nChannels * nSlices;
+			for ( long index = first; index < first + nChannels * nSlices; index++ )
+			{
+				// Stop if the frame was processed and evicted meanwhile.
+				if ( !prefetched.contains( Integer.valueOf( frame ) ) )
+					return;
+				getCell( index, false );
+			}
+		} );
+	}
+
+	/**
+	 * Removes the planes of the specified frame from the cache. Calling this
+	 * method when a frame is done with keeps the planes read ahead by
+	 * {@link #prefetch(int)} from being evicted in its favor.
+	 *
+	 * @param frame
+	 *            the frame to evict, 0-based.
+	 */
+	public void evict( final int frame )
+	{
+		prefetched.remove( Integer.valueOf( frame ) );
+		final long first = ( long ) frame * nChannels * nSlices;
+		synchronized ( cache )
+		{
+			for ( long index = first; index < first + nChannels * nSlices; index++ )
+				if ( null != cache.remove( Long.valueOf( index ) ) )
+					cachedBytes -= planeBytes;
+		}
+	}
+
+	/**
+	 * Empties the cache and stops the prefetching thread. The view stays
+	 * usable and reads planes again as they are accessed.
+	 */
+	public void clear()
+	{
+		synchronized ( this )
+		{
+			// Cancel the frames first, so that the interrupted task stops.
+			prefetched.clear();
+			if ( null != prefetcher )
+				prefetcher.shutdownNow();
+			prefetcher = null;
+		}
+		synchronized ( cache )
+		{
+			cache.clear();
+			cachedBytes = 0;
+		}
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private < T extends NativeType< T >, A > LazyCellImg< T, A > lazy( final CellGrid grid, final T type, final Function< Object, A > wrapper )
+	{
+		final LazyCellImg.Get< Cell< A > > get = index -> {
+			@SuppressWarnings( "unchecked" )
+			final Cell< A > cell = ( Cell< A > ) getCell( index, true );
+			return cell;
+		};
+		this.wrapper = wrapper;
+		return new LazyCellImg<>( grid, type, get );
+	}
+
+	/**
+	 * Returns the plane with the specified flat index, reading it if it is
+	 * not in the cache. The index runs over channels first, then Z slices,
+	 * then frames.
+	 */
+	private Cell< ? > getCell( final long index, final boolean countHit )
+	{
+		synchronized ( cache )
+		{
+			final Cell< ? > cell = cache.get( Long.valueOf( index ) );
+			if ( null != cell )
+			{
+				if ( countHit )
+					hits.incrementAndGet();
+				return cell;
+			}
+		}
+
+		final CompletableFuture< Cell< ? > > future = new CompletableFuture<>();
+		final CompletableFuture< Cell< ? > > pending = loading.putIfAbsent( Long.valueOf( index ), future );
+		if ( null != pending )
+			return pending.join();
+
+		try
+		{
+			// The plane may have been stored since we last looked.
+			Cell< ? > cell;
+			synchronized ( cache )
+			{
+				cell = cache.get( Long.valueOf( index ) );
+			}
+			if ( null == cell )
+			{
+				cell = read( index );
+				// Drop planes read ahead for a frame evicted or cleared meanwhile.
+				if ( countHit || prefetched.contains( Integer.valueOf( frameOf( index ) ) ) )
+					store( index, cell );
+			}
+			future.complete( cell );
+			return cell;
+		}
+		catch ( final RuntimeException e )
+		{
+			future.completeExceptionally( e );
+			throw e;
+		}
+		finally
+		{
+			loading.remove( Long.valueOf( index ) );
+		}
+	}
+
+	private int frameOf( final long index )
+	{
+		return ( int ) ( index / ( ( long ) nChannels * nSlices ) );
+	}
+
+	private Cell< ? > read( final long index )
+	{
+		final int c = ( int ) ( index % nChannels );
+		final int z = ( int ) ( ( index / nChannels ) % nSlices );
+		final int t = frameOf( index );
+
+		final ImageStack stack = imp.getStack();
+		final int stackIndex = imp.getStackIndex( c + 1, z + 1, t + 1 );
+		final Object pixels;
+		if ( stack.isVirtual() )
+		{
+			// Virtual stacks are not required to support concurrent reads.
+			synchronized ( stack )
+			{
+				pixels = stack.getPixels( stackIndex );
+			}
+		}
+		else
+		{
+			pixels = stack.getPixels( stackIndex );
+		}
+		reads.incrementAndGet();
+
+		final long[] min = new long[ cellDimensions.length ];
+		final int[] pos = new int[] { c, z, t };
+		for ( int i = 0; i < 3; i++ )
+			if ( axisIndices[ i ] >= 0 )
+				min[ axisIndices[ i ] ] = pos[ i ];
+		return new Cell<>( cellDimensions.clone(), min, wrapper.apply( pixels ) );
+	}
+
+	private void store( final long index, final Cell< ? > cell )
+	{
+		synchronized ( cache )
+		{
+			if ( null != cache.put( Long.valueOf( index ), cell ) )
+				return;
+			cachedBytes += planeBytes;
+
+			// Evict the least recently used planes, keeping at least this one.
+			final Iterator< Cell< ? > > it = cache.values().iterator();
+			while ( cachedBytes > maxBytes && cache.size() > 1 )
+			{
+				it.next();
+				it.remove();
+				cachedBytes -= planeBytes;
+			}
+		}
+	}
+}
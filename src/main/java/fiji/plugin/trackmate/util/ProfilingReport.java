@@ -0,0 +1,385 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Collects the time spent in the steps of a TrackMate pipeline.
+ * <p>
+ * Each pipeline stage (detection, spot features, tracking...) is recorded as a
+ * {@link Entry} with its wall time, the CPU time and the bytes allocated
+ * during the stage, the number of items (spots, edges or tracks) it processed
+ * and the resulting thread utilization. The components that run within a
+ * stage, such as each feature analyzer, are recorded as entries with only
+ * their own time and item count.
+ * <p>
+ * CPU time and allocated bytes are the ones of the thread that runs the stage
+ * and of the workers of the shared executor ({@link TMExecutors}), including
+ * the workers that terminated during the stage. The other threads of the JVM,
+ * such as the event dispatch thread or threads created by other plugins, are
+ * not accounted for. The values are not available on all JVMs, in which case
+ * they are reported as -1.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class ProfilingReport
+{
+
+	private final List< Entry > entries = new ArrayList<>();
+
+	/**
+	 * Starts measuring a pipeline stage. The stage is recorded when
+	 * {@link Measurement#stop(long, String)} is called.
+	 *
+	 * @param stage
+	 *            the name of the stage.
+	 * @param component
+	 *            the name of the component that runs the stage, for instance
+	 *            the detector or the tracker. Can be <code>null</code>.
+	 * @param numThreads
+	 *            the number of threads the stage is allowed to use.
+	 * @return a new measurement.
+	 */
+	public Measurement start( final String stage, final String component, final int numThreads )
+	{
+		synchronized ( entries )
+		{
+			return new Measurement( stage, component, numThreads, entries.size() );
+		}
+	}
+
+	/**
+	 * Records the time spent by a component within a stage.
+	 *
+	 * @param stage
+	 *            the name of the stage.
+	 * @param component
+	 *            the name of the component.
+	 * @param wallTime
+	 *            the time spent, in nanoseconds.
+	 * @param items
+	 *            the number of items processed.
+	 * @param itemName
+	 *            the name of the items processed, in plural form.
+	 */
+	public void add( final String stage, final String component, final long wallTime, final long items, final String itemName )
+	{
+		synchronized ( entries )
+		{
+			entries.add( new Entry( stage, component, false, wallTime, -1l, -1l, items, itemName, Double.NaN ) );
+		}
+	}
+
+	/**
+	 * Returns the entries recorded so far, in the order of the pipeline.
+	 *
+	 * @return an unmodifiable copy of the entries.
+	 */
+	public List< Entry > getEntries()
+	{
+		synchronized ( entries )
+		{
+			return Collections.unmodifiableList( new ArrayList<>( entries ) );
+		}
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public void clear()
+	{
+		synchronized ( entries )
+		{
+			entries.clear();
+		}
+	}
+
+	public boolean isEmpty()
+	{
+		synchronized ( entries )
+		{
+			return entries.isEmpty();
+		}
+	}
+
+	/**
+	 * Returns the report as a text table, one line per entry.
+	 */
+	@Override
+	public String toString()
+	{
+		final StringBuilder str = new StringBuilder();
+		str.append( "Profiling report:\n" );
+		for ( final Entry entry : getEntries() )
+		{
+			final String name = ( null == entry.component ) ? entry.stage : entry.stage + " - " + entry.component;
+			str.append( String.format( entry.isStage ? "  %-45s" : "      %-41s", name ) );
+			str.append( String.format( " %10.1f ms", entry.wallTime / 1e6 ) );
+			if ( entry.items >= 0 )
+				str.append( String.format( ", %d %s", entry.items, entry.itemName ) );
+			if ( entry.cpuTime >= 0 )
+				str.append( String.format( ", CPU %.1f ms", entry.cpuTime / 1e6 ) );
+			if ( entry.allocatedBytes >= 0 )
+				str.append( String.format( ", allocated %.1f MB", entry.allocatedBytes / 1e6 ) );
+			if ( !Double.isNaN( entry.threadUtilization ) )
+				str.append( String.format( ", thread utilization %.0f%%", 100. * entry.threadUtilization ) );
+			str.append( '\n' );
+		}
+		return str.toString();
+	}
+
+	/**
+	 * A stage being measured.
+	 */
+	public final class Measurement
+	{
+
+		private final String stage;
+
+		private final String component;
+
+		private final int numThreads;
+
+		private final int index;
+
+		private final Thread thread;
+
+		private final long startTime;
+
+		private final long startCpuTime;
+
+		private final long startAllocatedBytes;
+
+		private Measurement( final String stage, final String component, final int numThreads, final int index )
+		{
+			this.stage = stage;
+			this.component = component;
+			this.numThreads = numThreads;
+			this.index = index;
+			this.thread = Thread.currentThread();
+			this.startCpuTime = cpuTime( thread );
+			this.startAllocatedBytes = allocatedBytes( thread );
+			this.startTime = System.nanoTime();
+		}
+
+		/**
+		 * Stops the measurement and records the stage, before the components
+		 * recorded since it was started.
+		 *
+		 * @param items
+		 *            the number of items processed by the stage, or -1 if
+		 *            unknown.
+		 * @param itemName
+		 *            the name of the items processed, in plural form.
+		 * @return the entry recorded.
+		 */
+		public Entry stop( final long items, final String itemName )
+		{
+			final long wallTime = System.nanoTime() - startTime;
+			final long endCpuTime = cpuTime( thread );
+			final long endAllocatedBytes = allocatedBytes( thread );
+			final long cpuTime = ( startCpuTime < 0 || endCpuTime < 0 ) ? -1l : endCpuTime - startCpuTime;
+			final long allocatedBytes = ( startAllocatedBytes < 0 || endAllocatedBytes < 0 ) ? -1l : endAllocatedBytes - startAllocatedBytes;
+			final double threadUtilization = ( cpuTime < 0 || wallTime == 0 )
+					? Double.NaN
+					: Math.min( 1., cpuTime / ( ( double ) wallTime * Math.max( 1, numThreads ) ) );
+			final Entry entry = new Entry( stage, component, true, wallTime, cpuTime, allocatedBytes, items, itemName, threadUtilization );
+			synchronized ( entries )
+			{
+				entries.add( Math.min( index, entries.size() ), entry );
+			}
+			return entry;
+		}
+	}
+
+	/**
+	 * The measures of a stage or of a component.
+	 */
+	public static final class Entry
+	{
+
+		private final String stage;
+
+		private final String component;
+
+		private final boolean isStage;
+
+		private final long wallTime;
+
+		private final long cpuTime;
+
+		private final long allocatedBytes;
+
+		private final long items;
+
+		private final String itemName;
+
+		private final double threadUtilization;
+
+		private Entry( final String stage, final String component, final boolean isStage, final long wallTime, final long cpuTime, final long allocatedBytes, final long items, final String itemName, final double threadUtilization )
+		{
+			this.stage = stage;
+			this.component = component;
+			this.isStage = isStage;
+			this.wallTime = wallTime;
+			this.cpuTime = cpuTime;
+			this.allocatedBytes = allocatedBytes;
+			this.items = items;
+			this.itemName = itemName;
+			this.threadUtilization = threadUtilization;
+		}
+
+		public String getStage()
+		{
+			return stage;
+		}
+
+		/**
+		 * Returns the component measured, or <code>null</code> if not
+		 * specified.
+		 */
+		public String getComponent()
+		{
+			return component;
+		}
+
+		/**
+		 * Returns <code>true</code> if this entry measures a whole stage, and
+		 * <code>false</code> if it measures a component within a stage.
+		 */
+		public boolean isStage()
+		{
+			return isStage;
+		}
+
+		/**
+		 * Returns the wall time, in nanoseconds.
+		 */
+		public long getWallTime()
+		{
+			return wallTime;
+		}
+
+		/**
+		 * Returns the CPU time of the thread that ran the stage and of the
+		 * shared workers, in nanoseconds, or -1 if not measured.
+		 */
+		public long getCpuTime()
+		{
+			return cpuTime;
+		}
+
+		/**
+		 * Returns the bytes allocated by the thread that ran the stage and by
+		 * the shared workers, or -1 if not measured.
+		 */
+		public long getAllocatedBytes()
+		{
+			return allocatedBytes;
+		}
+
+		/**
+		 * Returns the number of items processed, or -1 if unknown.
+		 */
+		public long getItems()
+		{
+			return items;
+		}
+
+		public String getItemName()
+		{
+			return itemName;
+		}
+
+		/**
+		 * Returns the CPU time divided by the wall time and the number of
+		 * threads allowed, from 0 to 1, or {@link Double#NaN} if not measured.
+		 */
+		public double getThreadUtilization()
+		{
+			return threadUtilization;
+		}
+	}
+
+	/*
+	 * STATIC UTILITIES
+	 */
+
+	/**
+	 * Returns the CPU time of the specified thread plus the one of the
+	 * workers of the shared executor, or -1 if not available.
+	 */
+	private static long cpuTime( final Thread thread )
+	{
+		final long workers = TMExecutors.getWorkersCpuTime();
+		if ( TMExecutors.isWorker( thread ) )
+			return workers;
+		final long own = threadCpuTime( thread.getId() );
+		return ( own < 0 || workers < 0 ) ? -1l : own + workers;
+	}
+
+	/**
+	 * Returns the bytes allocated by the specified thread plus the ones of the
+	 * workers of the shared executor, or -1 if not available.
+	 */
+	private static long allocatedBytes( final Thread thread )
+	{
+		final long workers = TMExecutors.getWorkersAllocatedBytes();
+		if ( TMExecutors.isWorker( thread ) )
+			return workers;
+		final long own = threadAllocatedBytes( thread.getId() );
+		return ( own < 0 || workers < 0 ) ? -1l : own + workers;
+	}
+
+	/**
+	 * Returns the CPU time of the thread with the specified ID, in
+	 * nanoseconds, or -1 if not available.
+	 */
+	static long threadCpuTime( final long id )
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( !bean.isThreadCpuTimeSupported() || !bean.isThreadCpuTimeEnabled() )
+			return -1l;
+		return bean.getThreadCpuTime( id );
+	}
+
+	/**
+	 * Returns the bytes allocated by the thread with the specified ID, or -1
+	 * if not available.
+	 */
+	static long threadAllocatedBytes( final long id )
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( !( bean instanceof com.sun.management.ThreadMXBean ) )
+			return -1l;
+
+		final com.sun.management.ThreadMXBean sunBean = ( com.sun.management.ThreadMXBean ) bean;
+		if ( !sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled() )
+			return -1l;
+		return sunBean.getThreadAllocatedBytes( id );
+	}
+}
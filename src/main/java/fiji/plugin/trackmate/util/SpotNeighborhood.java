@@ -27,6 +27,7 @@ import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.Positionable;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealLocalizable;
 import net.imglib2.RealPositionable;
 import net.imglib2.algorithm.neighborhood.Neighborhood;
 import net.imglib2.algorithm.region.localneighborhood.AbstractNeighborhood;
@@ -54,19 +55,36 @@ public class SpotNeighborhood< T extends RealType< T >> implements Neighborhood<
 	 */
 
 	public SpotNeighborhood( final Spot spot, final ImgPlus< T > img )
+	{
+		this( spot, spot.getFeature( Spot.RADIUS ).doubleValue(), img );
+	}
+
+	/**
+	 * Creates a neighborhood centered on the specified position, with the
+	 * specified radius. Useful to iterate around a spot with another radius
+	 * than its own, without creating a new spot.
+	 *
+	 * @param center
+	 *            the center of the neighborhood, in physical units.
+	 * @param radius
+	 *            the radius of the neighborhood, in physical units.
+	 * @param img
+	 *            the image to iterate over.
+	 */
+	public SpotNeighborhood( final RealLocalizable center, final double radius, final ImgPlus< T > img )
 	{
 		this.calibration = TMUtils.getSpatialCalibration( img );
 		// Center
 		this.center = new long[ img.numDimensions() ];
-		for ( int d = 0; d < center.length; d++ )
+		for ( int d = 0; d < this.center.length; d++ )
 		{
-			center[ d ] = Math.round( spot.getFeature( Spot.POSITION_FEATURES[ d ] ).doubleValue() / calibration[ d ] );
+			this.center[ d ] = Math.round( center.getDoublePosition( d ) / calibration[ d ] );
 		}
 		// Span
 		final long[] span = new long[ img.numDimensions() ];
 		for ( int d = 0; d < span.length; d++ )
 		{
-			span[ d ] = Math.round( spot.getFeature( Spot.RADIUS ) / calibration[ d ] );
+			span[ d ] = Math.round( radius / calibration[ d ] );
 		}
 
 		// Neighborhood
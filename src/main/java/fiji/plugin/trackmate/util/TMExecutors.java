@@ -0,0 +1,324 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The executor shared by all the multithreaded computations of TrackMate.
+ * <p>
+ * Instead of creating and tearing down a thread pool at each call, detection,
+ * feature computation, filtering and tracking submit their tasks to a single
+ * work-stealing {@link ForkJoinPool}, with one worker per available
+ * processor. Since all these computations share the same
+ * workers, nested parallelism (for instance a multithreaded detector called
+ * from several frames processed concurrently) never uses more threads than
+ * the pool size: a task that waits for its subtasks executes them or steals
+ * other work instead of blocking a thread.
+ * <p>
+ * Each call to {@link #invokeAll(List, int)} still caps the number of its
+ * tasks running concurrently to the <code>numThreads</code> of the caller,
+ * so that the existing thread settings of the algorithms are honored. The
+ * size of the shared executor is fixed: it is never resized nor shut down,
+ * since its users may hold it and submit tasks to it at any time.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class TMExecutors
+{
+
+	private static ForkJoinPool pool;
+
+	/**
+	 * The workers alive, and the CPU time and the bytes allocated by the
+	 * workers that terminated, guarded by the set.
+	 */
+	private static final Set< Worker > workers = new HashSet<>();
+
+	private static long retiredCpuTime = 0l;
+
+	private static long retiredAllocatedBytes = 0l;
+
+	private TMExecutors()
+	{}
+
+	/**
+	 * Returns the shared executor, creating it if needed.
+	 *
+	 * @return the shared {@link ForkJoinPool}.
+	 */
+	public static synchronized ForkJoinPool getExecutor()
+	{
+		if ( null == pool )
+			pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors(), new WorkerFactory(), null, false );
+		return pool;
+	}
+
+	/**
+	 * Returns the maximal number of worker threads of the shared executor.
+	 *
+	 * @return the number of worker threads.
+	 */
+	public static int getParallelism()
+	{
+		return getExecutor().getParallelism();
+	}
+
+	/**
+	 * Returns the CPU time used by all the workers of the shared executor
+	 * since it was created, including the workers that terminated.
+	 *
+	 * @return the CPU time in nanoseconds, or -1 if it cannot be measured on
+	 *         this JVM.
+	 */
+	public static long getWorkersCpuTime()
+	{
+		synchronized ( workers )
+		{
+			long total = retiredCpuTime;
+			for ( final Worker worker : workers )
+			{
+				final long time = ProfilingReport.threadCpuTime( worker.getId() );
+				if ( time < 0 )
+					return -1l;
+				total += time;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Returns the bytes allocated by all the workers of the shared executor
+	 * since it was created, including the workers that terminated.
+	 *
+	 * @return the allocated bytes, or -1 if they cannot be measured on this
+	 *         JVM.
+	 */
+	public static long getWorkersAllocatedBytes()
+	{
+		synchronized ( workers )
+		{
+			long total = retiredAllocatedBytes;
+			for ( final Worker worker : workers )
+			{
+				final long bytes = ProfilingReport.threadAllocatedBytes( worker.getId() );
+				if ( bytes < 0 )
+					return -1l;
+				total += bytes;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the specified thread is a worker of the
+	 * shared executor.
+	 *
+	 * @param thread
+	 *            the thread.
+	 * @return whether the thread is a worker of the shared executor.
+	 */
+	public static boolean isWorker( final Thread thread )
+	{
+		return thread instanceof Worker;
+	}
+
+	/**
+	 * Executes the specified tasks on the shared executor, with at most
+	 * <code>numThreads</code> of them running concurrently, and returns their
+	 * results when they are all done.
+	 * <p>
+	 * If <code>numThreads</code> is 1 or less, or if there is only one task,
+	 * the tasks are executed in the calling thread. Otherwise the calling
+	 * thread participates to the execution. If a task throws an exception,
+	 * the remaining tasks are not started and the exception is rethrown.
+	 *
+	 * @param tasks
+	 *            the tasks to execute.
+	 * @param numThreads
+	 *            the maximal number of tasks to execute concurrently.
+	 * @param <T>
+	 *            the type of the task results.
+	 * @return the results, in the order of the tasks.
+	 * @throws ExecutionException
+	 *             if a task threw an exception. Its cause is the exception
+	 *             thrown.
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted while waiting.
+	 */
+	public static < T > List< T > invokeAll( final List< ? extends Callable< T > > tasks, final int numThreads ) throws InterruptedException, ExecutionException
+	{
+		final int nTasks = tasks.size();
+		@SuppressWarnings( "unchecked" )
+		final T[] results = ( T[] ) new Object[ nTasks ];
+		final int nLanes = Math.min( nTasks, numThreads );
+		final AtomicInteger next = new AtomicInteger( 0 );
+		final AtomicBoolean failed = new AtomicBoolean( false );
+		final Callable< Void > lane = () -> {
+			int i;
+			while ( !failed.get() && ( i = next.getAndIncrement() ) < nTasks )
+			{
+				try
+				{
+					results[ i ] = tasks.get( i ).call();
+				}
+				catch ( final Exception e )
+				{
+					failed.set( true );
+					throw e;
+				}
+			}
+			return null;
+		};
+
+		if ( nLanes <= 1 )
+		{
+			try
+			{
+				lane.call();
+			}
+			catch ( final Exception e )
+			{
+				throw new ExecutionException( e );
+			}
+			return Arrays.asList( results );
+		}
+
+		/*
+		 * Fork the lanes in the current worker queue if we are already running
+		 * in the shared executor, so that waiting for them executes them.
+		 */
+		final ForkJoinPool executor = getExecutor();
+		final Thread current = Thread.currentThread();
+		final boolean inPool = ( current instanceof ForkJoinWorkerThread ) && ( ( ForkJoinWorkerThread ) current ).getPool() == executor;
+		final List< ForkJoinTask< Void > > forked = new ArrayList<>( nLanes - 1 );
+		for ( int l = 0; l < nLanes - 1; l++ )
+		{
+			final ForkJoinTask< Void > task = ForkJoinTask.adapt( lane );
+			if ( inPool )
+				task.fork();
+			else
+				executor.execute( task );
+			forked.add( task );
+		}
+
+		ExecutionException error = null;
+		try
+		{
+			lane.call();
+		}
+		catch ( final Exception e )
+		{
+			error = new ExecutionException( e );
+		}
+		for ( final ForkJoinTask< Void > task : forked )
+		{
+			try
+			{
+				task.get();
+			}
+			catch ( final ExecutionException e )
+			{
+				if ( null == error )
+					error = e;
+			}
+		}
+		if ( null != error )
+			throw error;
+		return Arrays.asList( results );
+	}
+
+	/**
+	 * Creates named daemon workers, that use the context class loader of the
+	 * thread that created the executor, so that plugins discovery works from
+	 * within tasks.
+	 */
+	private static final class WorkerFactory implements ForkJoinWorkerThreadFactory
+	{
+
+		private final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		private final AtomicInteger count = new AtomicInteger( 0 );
+
+		@Override
+		public ForkJoinWorkerThread newThread( final ForkJoinPool p )
+		{
+			final ForkJoinWorkerThread thread = new Worker( p );
+			thread.setName( "TrackMate-worker-" + count.incrementAndGet() );
+			thread.setContextClassLoader( classLoader );
+			thread.setDaemon( true );
+			return thread;
+		}
+	}
+
+	/**
+	 * A worker that adds its CPU time and allocated bytes to the totals of
+	 * the executor when it terminates, so that they are not lost when the
+	 * pool retires idle workers.
+	 */
+	private static final class Worker extends ForkJoinWorkerThread
+	{
+
+		private Worker( final ForkJoinPool pool )
+		{
+			super( pool );
+		}
+
+		@Override
+		protected void onStart()
+		{
+			super.onStart();
+			synchronized ( workers )
+			{
+				workers.add( this );
+			}
+		}
+
+		@Override
+		protected void onTermination( final Throwable exception )
+		{
+			synchronized ( workers )
+			{
+				final long time = ProfilingReport.threadCpuTime( getId() );
+				if ( time > 0 )
+					retiredCpuTime += time;
+				final long bytes = ProfilingReport.threadAllocatedBytes( getId() );
+				if ( bytes > 0 )
+					retiredAllocatedBytes += bytes;
+				workers.remove( this );
+			}
+			super.onTermination( exception );
+		}
+	}
+}
@@ -794,6 +794,71 @@ public class TMUtils
 		return Arrays.stream( intensities ).sum();
 	}
 
+	/**
+	 * Returns the <code>k</code>th smallest value among the <code>n</code>
+	 * first elements of the specified array, that is: the value that would be
+	 * at index <code>k</code> if these elements were sorted. Runs in linear
+	 * expected time, but the <code>n</code> first elements of the array are
+	 * reordered.
+	 *
+	 * @param data
+	 *            the array to select from. Its <code>n</code> first elements
+	 *            are reordered.
+	 * @param n
+	 *            the number of elements to consider.
+	 * @param k
+	 *            the rank of the value to return, from 0 to <code>n-1</code>.
+	 * @return the <code>k</code>th smallest value.
+	 */
+	public static final double select( final double[] data, final int n, final int k )
+	{
+		if ( k < 0 || k >= n )
+			throw new IllegalArgumentException( "Rank " + k + " out of range for " + n + " elements." );
+
+		int left = 0;
+		int right = n - 1;
+		while ( right > left )
+		{
+			// Median of three as pivot.
+			final int mid = ( left + right ) >>> 1;
+			if ( data[ mid ] < data[ left ] )
+				swap( data, mid, left );
+			if ( data[ right ] < data[ left ] )
+				swap( data, right, left );
+			if ( data[ right ] < data[ mid ] )
+				swap( data, right, mid );
+			final double pivot = data[ mid ];
+
+			// Hoare partition.
+			int i = left;
+			int j = right;
+			while ( i <= j )
+			{
+				while ( data[ i ] < pivot )
+					i++;
+				while ( data[ j ] > pivot )
+					j--;
+				if ( i <= j )
+					swap( data, i++, j-- );
+			}
+
+			if ( k <= j )
+				right = j;
+			else if ( k >= i )
+				left = i;
+			else
+				return data[ k ];
+		}
+		return data[ k ];
+	}
+
+	private static final void swap( final double[] data, final int i, final int j )
+	{
+		final double tmp = data[ i ];
+		data[ i ] = data[ j ];
+		data[ j ] = tmp;
+	}
+
 	private TMUtils()
 	{}
 }
@@ -0,0 +1,570 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntConsumer;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+
+/**
+ * Spatio-temporal index of the edges of a model, used to draw tracks.
+ * <p>
+ * Edges are grouped by the frame of their source spot. For each frame, the
+ * segment coordinates, in pixel units, are cached in a flat array and the
+ * segments are bucketed in a uniform grid, so that only the edges of a few
+ * frames and close to a clip need to be visited at each repaint.
+ * <p>
+ * The index is kept in sync with the model through the
+ * {@link #modelChanged(ModelChangeEvent)} method. Only the frames touched by
+ * an edit are rebuilt, the next time the index is {@link #update() updated}.
+ * Removed edges are not pruned eagerly: they stay in the index until their
+ * frame is rebuilt, and must be skipped by callers, for instance by checking
+ * that they still have a track ID.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class EdgeIndex
+{
+
+	/**
+	 * Target mean number of edges per grid cell.
+	 */
+	private static final int EDGES_PER_CELL = 4;
+
+	/**
+	 * Maximal number of grid cells along X or Y.
+	 */
+	private static final int MAX_CELLS = 1024;
+
+	/**
+	 * Edges whose bounding box spans more grid cells than this are not
+	 * bucketed, and are visited by all queries on their frame.
+	 */
+	private static final int MAX_CELLS_PER_EDGE = 64;
+
+	private static final Frame EMPTY = new Frame( new DefaultWeightedEdge[ 0 ], new double[ 0 ] );
+
+	private final Model model;
+
+	private final double[] calibration;
+
+	private Frame[] frames = new Frame[ 0 ];
+
+	/**
+	 * Edges added to the model since the last update, per source frame.
+	 */
+	private List< List< DefaultWeightedEdge > > pending = new ArrayList<>();
+
+	/**
+	 * Frames that must be rebuilt at the next update.
+	 */
+	private final BitSet dirty = new BitSet();
+
+	/**
+	 * If <code>true</code>, the whole index must be rebuilt at the next
+	 * update.
+	 */
+	private boolean stale = true;
+
+	private int colorStamp = 0;
+
+	EdgeIndex( final Model model, final double[] calibration )
+	{
+		this.model = model;
+		this.calibration = calibration;
+	}
+
+	/**
+	 * Records the changes described by the specified event. The index itself
+	 * is updated at the next call to {@link #update()}.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	void modelChanged( final ModelChangeEvent event )
+	{
+		// Features may have changed, and so may the edge colors.
+		colorStamp++;
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.SPOTS_FILTERED:
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+		case ModelChangeEvent.FEATURES_COMPUTED:
+			return;
+
+		case ModelChangeEvent.MODEL_MODIFIED:
+			if ( stale )
+				return;
+
+			final TrackModel trackModel = model.getTrackModel();
+			for ( final Spot spot : event.getSpots() )
+			{
+				final Integer flag = event.getSpotFlag( spot );
+				if ( null == flag )
+					continue;
+
+				if ( flag == ModelChangeEvent.FLAG_SPOT_FRAME_CHANGED )
+				{
+					// We do not know where its edges are stored.
+					invalidate();
+					return;
+				}
+				if ( flag == ModelChangeEvent.FLAG_SPOT_MODIFIED )
+					spotMoved( spot );
+			}
+
+			for ( final DefaultWeightedEdge edge : event.getEdges() )
+			{
+				final Integer flag = event.getEdgeFlag( edge );
+				if ( null == flag || flag != ModelChangeEvent.FLAG_EDGE_ADDED )
+					continue;
+				if ( !trackModel.edgeSet().contains( edge ) )
+					continue;
+
+				addPending( frameOf( trackModel.getEdgeSource( edge ) ), edge );
+			}
+			return;
+
+		default:
+			invalidate();
+			return;
+		}
+	}
+
+	/**
+	 * Records that the specified spot was moved, without a model change event
+	 * being fired. The edges of the spot are updated at the next call to
+	 * {@link #update()}.
+	 *
+	 * @param spot
+	 *            the spot that was moved, in the same frame.
+	 */
+	void spotMoved( final Spot spot )
+	{
+		if ( stale )
+			return;
+
+		// Edges are stored in the frame of their source.
+		final TrackModel trackModel = model.getTrackModel();
+		dirty.set( frameOf( spot ) );
+		for ( final DefaultWeightedEdge edge : trackModel.edgesOf( spot ) )
+			dirty.set( frameOf( trackModel.getEdgeSource( edge ) ) );
+	}
+
+	/**
+	 * Discards the cached edge colors.
+	 */
+	void invalidateColors()
+	{
+		colorStamp++;
+	}
+
+	/**
+	 * Discards the whole index. It will be rebuilt at the next update.
+	 */
+	void invalidate()
+	{
+		stale = true;
+		dirty.clear();
+		pending = new ArrayList<>();
+	}
+
+	/**
+	 * Brings the index up to date with the model.
+	 */
+	void update()
+	{
+		if ( stale )
+		{
+			rebuild();
+			return;
+		}
+
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< DefaultWeightedEdge > edgeSet = trackModel.edgeSet();
+		for ( int t = dirty.nextSetBit( 0 ); t >= 0; t = dirty.nextSetBit( 0 ) )
+		{
+			dirty.clear( t );
+			final Frame old = frame( t );
+			final List< DefaultWeightedEdge > added = t < pending.size() ? pending.set( t, null ) : null;
+			final List< DefaultWeightedEdge > edges = new ArrayList<>( old.size() + ( null == added ? 0 : added.size() ) );
+			for ( final DefaultWeightedEdge edge : old.edges )
+				collect( edge, t, edgeSet, trackModel, edges );
+			if ( null != added )
+				for ( final DefaultWeightedEdge edge : added )
+					collect( edge, t, edgeSet, trackModel, edges );
+
+			setFrame( t, build( edges ) );
+		}
+		pending.clear();
+	}
+
+	/**
+	 * Returns the number of frames in the index. Frames after this one hold
+	 * no edge.
+	 *
+	 * @return the number of frames.
+	 */
+	int nFrames()
+	{
+		return frames.length;
+	}
+
+	/**
+	 * Returns the edges whose source is in the specified frame.
+	 *
+	 * @param t
+	 *            the frame.
+	 * @return the frame edges. Never <code>null</code>.
+	 */
+	Frame frame( final int t )
+	{
+		if ( t < 0 || t >= frames.length || null == frames[ t ] )
+			return EMPTY;
+		return frames[ t ];
+	}
+
+	/**
+	 * Returns the color of the specified edge, computing it with the
+	 * specified generator if it is not cached yet.
+	 *
+	 * @param frame
+	 *            the frame the edge belongs to.
+	 * @param i
+	 *            the index of the edge in the frame.
+	 * @param colorGenerator
+	 *            the color generator.
+	 * @return the edge color.
+	 */
+	Color color( final Frame frame, final int i, final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator )
+	{
+		if ( frame.colorStamp != colorStamp )
+		{
+			Arrays.fill( frame.colors, null );
+			frame.colorStamp = colorStamp;
+		}
+		Color color = frame.colors[ i ];
+		if ( null == color )
+		{
+			color = colorGenerator.color( frame.edges[ i ] );
+			frame.colors[ i ] = color;
+		}
+		return color;
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void rebuild()
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final List< List< DefaultWeightedEdge > > lists = new ArrayList<>();
+		for ( final DefaultWeightedEdge edge : trackModel.edgeSet() )
+		{
+			final int t = frameOf( trackModel.getEdgeSource( edge ) );
+			while ( lists.size() <= t )
+				lists.add( new ArrayList<>() );
+			lists.get( t ).add( edge );
+		}
+
+		frames = new Frame[ lists.size() ];
+		for ( int t = 0; t < frames.length; t++ )
+			frames[ t ] = build( lists.get( t ) );
+
+		stale = false;
+		dirty.clear();
+		pending = new ArrayList<>();
+	}
+
+	private void collect( final DefaultWeightedEdge edge, final int t, final Set< DefaultWeightedEdge > edgeSet, final TrackModel trackModel, final List< DefaultWeightedEdge > edges )
+	{
+		if ( !edgeSet.contains( edge ) )
+			return;
+
+		final int st = frameOf( trackModel.getEdgeSource( edge ) );
+		if ( st == t )
+			edges.add( edge );
+		else
+			addPending( st, edge );
+	}
+
+	private void addPending( final int t, final DefaultWeightedEdge edge )
+	{
+		while ( pending.size() <= t )
+			pending.add( null );
+		List< DefaultWeightedEdge > list = pending.get( t );
+		if ( null == list )
+		{
+			list = new ArrayList<>();
+			pending.set( t, list );
+		}
+		list.add( edge );
+		dirty.set( t );
+	}
+
+	private void setFrame( final int t, final Frame frame )
+	{
+		if ( t >= frames.length )
+			frames = Arrays.copyOf( frames, t + 1 );
+		frames[ t ] = frame;
+	}
+
+	private Frame build( final List< DefaultWeightedEdge > edges )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final int n = edges.size();
+		final double[] coords = new double[ 6 * n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final DefaultWeightedEdge edge = edges.get( i );
+			final Spot source = trackModel.getEdgeSource( edge );
+			final Spot target = trackModel.getEdgeTarget( edge );
+			// In pixel units.
+			coords[ 6 * i ] = source.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5f;
+			coords[ 6 * i + 1 ] = source.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5f;
+			coords[ 6 * i + 2 ] = target.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5f;
+			coords[ 6 * i + 3 ] = target.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5f;
+			// In physical units.
+			coords[ 6 * i + 4 ] = source.getFeature( Spot.POSITION_Z );
+			coords[ 6 * i + 5 ] = target.getFeature( Spot.POSITION_Z );
+		}
+		return new Frame( edges.toArray( new DefaultWeightedEdge[ n ] ), coords );
+	}
+
+	private static final int frameOf( final Spot spot )
+	{
+		return Math.max( 0, spot.getFeature( Spot.FRAME ).intValue() );
+	}
+
+	/**
+	 * The edges of one frame, with their segment coordinates and a uniform
+	 * grid over them.
+	 */
+	static final class Frame
+	{
+
+		/**
+		 * The edges of this frame.
+		 */
+		final DefaultWeightedEdge[] edges;
+
+		/**
+		 * For each edge, in this order: X and Y of the source and X and Y of
+		 * the target in pixel units, then Z of the source and Z of the target
+		 * in physical units.
+		 */
+		final double[] coords;
+
+		private final Color[] colors;
+
+		private int colorStamp = -1;
+
+		private final double minx;
+
+		private final double miny;
+
+		private final double maxx;
+
+		private final double maxy;
+
+		private final double cellSize;
+
+		private final int nx;
+
+		private final int ny;
+
+		/**
+		 * Start of the items of each cell in {@link #cellItems}, in CSR
+		 * layout.
+		 */
+		private final int[] cellStart;
+
+		private final int[] cellItems;
+
+		/**
+		 * Edges that span too many cells to be bucketed.
+		 */
+		private final int[] large;
+
+		private Frame( final DefaultWeightedEdge[] edges, final double[] coords )
+		{
+			this.edges = edges;
+			this.coords = coords;
+			this.colors = new Color[ edges.length ];
+			final int n = edges.length;
+
+			double lminx = Double.POSITIVE_INFINITY;
+			double lminy = Double.POSITIVE_INFINITY;
+			double lmaxx = Double.NEGATIVE_INFINITY;
+			double lmaxy = Double.NEGATIVE_INFINITY;
+			for ( int i = 0; i < n; i++ )
+			{
+				lminx = Math.min( lminx, Math.min( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				lminy = Math.min( lminy, Math.min( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+				lmaxx = Math.max( lmaxx, Math.max( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				lmaxy = Math.max( lmaxy, Math.max( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+			}
+			this.minx = lminx;
+			this.miny = lminy;
+			this.maxx = lmaxx;
+			this.maxy = lmaxy;
+
+			// Square cells, about EDGES_PER_CELL edges per cell.
+			final double width = Math.max( 1., lmaxx - lminx );
+			final double height = Math.max( 1., lmaxy - lminy );
+			final int nCells = Math.max( 1, n / EDGES_PER_CELL );
+			this.cellSize = Math.max( 1., Math.sqrt( width * height / nCells ) );
+			this.nx = n == 0 ? 1 : Math.min( MAX_CELLS, ( int ) ( width / cellSize ) + 1 );
+			this.ny = n == 0 ? 1 : Math.min( MAX_CELLS, ( int ) ( height / cellSize ) + 1 );
+
+			// Count.
+			final int[] counts = new int[ nx * ny + 1 ];
+			int nLarge = 0;
+			for ( int i = 0; i < n; i++ )
+			{
+				final int cx0 = cellX( Math.min( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				final int cx1 = cellX( Math.max( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				final int cy0 = cellY( Math.min( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+				final int cy1 = cellY( Math.max( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+				if ( ( cx1 - cx0 + 1 ) * ( cy1 - cy0 + 1 ) > MAX_CELLS_PER_EDGE )
+				{
+					nLarge++;
+					continue;
+				}
+				for ( int cy = cy0; cy <= cy1; cy++ )
+					for ( int cx = cx0; cx <= cx1; cx++ )
+						counts[ cy * nx + cx + 1 ]++;
+			}
+
+			// Prefix sum.
+			for ( int c = 1; c < counts.length; c++ )
+				counts[ c ] += counts[ c - 1 ];
+			this.cellStart = counts;
+
+			// Fill.
+			final int[] fill = Arrays.copyOf( counts, counts.length - 1 );
+			this.cellItems = new int[ counts[ counts.length - 1 ] ];
+			this.large = new int[ nLarge ];
+			nLarge = 0;
+			for ( int i = 0; i < n; i++ )
+			{
+				final int cx0 = cellX( Math.min( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				final int cx1 = cellX( Math.max( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+				final int cy0 = cellY( Math.min( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+				final int cy1 = cellY( Math.max( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+				if ( ( cx1 - cx0 + 1 ) * ( cy1 - cy0 + 1 ) > MAX_CELLS_PER_EDGE )
+				{
+					large[ nLarge++ ] = i;
+					continue;
+				}
+				for ( int cy = cy0; cy <= cy1; cy++ )
+					for ( int cx = cx0; cx <= cx1; cx++ )
+						cellItems[ fill[ cy * nx + cx ]++ ] = i;
+			}
+		}
+
+		/**
+		 * Returns the number of edges in this frame.
+		 *
+		 * @return the number of edges.
+		 */
+		int size()
+		{
+			return edges.length;
+		}
+
+		/**
+		 * Visits the index of the edges whose bounding box may intersect the
+		 * specified rectangle, in pixel units. Each edge is visited at most
+		 * once. Some edges outside of the rectangle may be visited.
+		 *
+		 * @param rminx
+		 *            the min X of the rectangle.
+		 * @param rminy
+		 *            the min Y of the rectangle.
+		 * @param rmaxx
+		 *            the max X of the rectangle.
+		 * @param rmaxy
+		 *            the max Y of the rectangle.
+		 * @param visitor
+		 *            receives the index of the edges in this frame.
+		 */
+		void forEach( final double rminx, final double rminy, final double rmaxx, final double rmaxy, final IntConsumer visitor )
+		{
+			if ( edges.length == 0 || rmaxx < minx || rminx > maxx || rmaxy < miny || rminy > maxy )
+				return;
+
+			for ( final int i : large )
+				visitor.accept( i );
+
+			final int qx0 = cellX( rminx );
+			final int qx1 = cellX( rmaxx );
+			final int qy0 = cellY( rminy );
+			final int qy1 = cellY( rmaxy );
+			for ( int cy = qy0; cy <= qy1; cy++ )
+			{
+				for ( int cx = qx0; cx <= qx1; cx++ )
+				{
+					final int c = cy * nx + cx;
+					for ( int k = cellStart[ c ]; k < cellStart[ c + 1 ]; k++ )
+					{
+						final int i = cellItems[ k ];
+						/*
+						 * An edge is stored in all the cells its bounding box
+						 * spans. Visit it only from the first of them that is
+						 * in the query range.
+						 */
+						final int ex0 = cellX( Math.min( coords[ 6 * i ], coords[ 6 * i + 2 ] ) );
+						final int ey0 = cellY( Math.min( coords[ 6 * i + 1 ], coords[ 6 * i + 3 ] ) );
+						if ( cx == Math.max( ex0, qx0 ) && cy == Math.max( ey0, qy0 ) )
+							visitor.accept( i );
+					}
+				}
+			}
+		}
+
+		private int cellX( final double x )
+		{
+			return Math.max( 0, Math.min( nx - 1, ( int ) ( ( x - minx ) / cellSize ) ) );
+		}
+
+		private int cellY( final double y )
+		{
+			return Math.max( 0, Math.min( ny - 1, ( int ) ( ( y - miny ) / cellSize ) ) );
+		}
+	}
+}
@@ -113,6 +113,8 @@ public class HyperStackDisplayer extends AbstractTrackMateModelView
 	@Override
 	public void modelChanged( final ModelChangeEvent event )
 	{
+		spotOverlay.modelChanged( event );
+		trackOverlay.modelChanged( event );
 		switch ( event.getEventID() )
 		{
 		case ModelChangeEvent.MODEL_MODIFIED:
@@ -125,6 +127,20 @@ public class HyperStackDisplayer extends AbstractTrackMateModelView
 		}
 	}
 
+	/**
+	 * Notifies this view that the specified spot was moved without a model
+	 * change event being fired, so that its overlays paint it at its new
+	 * location. This does not repaint the image.
+	 *
+	 * @param spot
+	 *            the spot that was moved, in the same frame.
+	 */
+	public void spotMoved( final Spot spot )
+	{
+		spotOverlay.spotMoved( spot );
+		trackOverlay.spotMoved( spot );
+	}
+
 	@Override
 	public void selectionChanged( final SelectionChangeEvent event )
 	{
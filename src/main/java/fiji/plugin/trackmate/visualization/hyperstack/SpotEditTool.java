@@ -388,6 +388,7 @@ public class SpotEditTool extends AbstractTool implements MouseMotionListener, M
 		quickEditedSpot.putFeature( Spot.POSITION_X, x );
 		quickEditedSpot.putFeature( Spot.POSITION_Y, y );
 		quickEditedSpot.putFeature( Spot.POSITION_Z, z );
+		displayer.spotMoved( quickEditedSpot );
 		displayer.imp.updateAndDraw();
 	}
 
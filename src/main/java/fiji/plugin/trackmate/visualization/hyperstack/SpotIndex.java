@@ -0,0 +1,330 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotRoi;
+
+/**
+ * Spatial index of the visible spots of a model, one frame at a time, used to
+ * draw spots.
+ * <p>
+ * The index of a frame is built the first time it is requested, and stores
+ * the spot centers in pixel units, bucketed in a uniform grid. Only the most
+ * recently used frames are kept.
+ * <p>
+ * The index is kept in sync with the model through the
+ * {@link #modelChanged(ModelChangeEvent)} method, which discards the frames
+ * touched by an edit.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @author Jean-Yves Tinevez
+ */
+final class SpotIndex
+{
+
+	/**
+	 * Target mean number of spots per grid cell.
+	 */
+	private static final int SPOTS_PER_CELL = 4;
+
+	/**
+	 * Maximal number of grid cells along X or Y.
+	 */
+	private static final int MAX_CELLS = 1024;
+
+	/**
+	 * How many frames to keep in the index.
+	 */
+	private static final int MAX_FRAMES = 16;
+
+	private final Model model;
+
+	private final double[] calibration;
+
+	private final Map< Integer, Frame > frames = new LinkedHashMap< Integer, Frame >( 2 * MAX_FRAMES, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< Integer, Frame > eldest )
+		{
+			return size() > MAX_FRAMES;
+		}
+	};
+
+	SpotIndex( final Model model, final double[] calibration )
+	{
+		this.model = model;
+		this.calibration = calibration;
+	}
+
+	/**
+	 * Discards the frames touched by the changes described in the specified
+	 * event.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.TRACKS_COMPUTED:
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			return;
+
+		case ModelChangeEvent.MODEL_MODIFIED:
+			for ( final Spot spot : event.getSpots() )
+			{
+				final Integer flag = event.getSpotFlag( spot );
+				if ( null != flag && flag == ModelChangeEvent.FLAG_SPOT_FRAME_CHANGED )
+				{
+					// We do not know the frame it comes from.
+					frames.clear();
+					return;
+				}
+				spotMoved( spot );
+			}
+			return;
+
+		default:
+			frames.clear();
+			return;
+		}
+	}
+
+	/**
+	 * Discards the frame of the specified spot, that was moved without a
+	 * model change event being fired.
+	 *
+	 * @param spot
+	 *            the spot that was moved, in the same frame.
+	 */
+	void spotMoved( final Spot spot )
+	{
+		frames.remove( spot.getFeature( Spot.FRAME ).intValue() );
+	}
+
+	/**
+	 * Returns the visible spots of the specified frame, building their index
+	 * if needed.
+	 *
+	 * @param t
+	 *            the frame.
+	 * @return the frame spots. Never <code>null</code>.
+	 */
+	Frame frame( final int t )
+	{
+		Frame frame = frames.get( t );
+		if ( null == frame )
+		{
+			final List< Spot > spots = new ArrayList<>( model.getSpots().getNSpots( t, true ) );
+			for ( final Spot spot : model.getSpots().iterable( t, true ) )
+				spots.add( spot );
+			frame = new Frame( spots.toArray( new Spot[ spots.size() ] ), calibration );
+			frames.put( t, frame );
+		}
+		return frame;
+	}
+
+	/**
+	 * The visible spots of one frame, with their center and a uniform grid
+	 * over them.
+	 */
+	static final class Frame
+	{
+
+		/**
+		 * The spots of this frame.
+		 */
+		final Spot[] spots;
+
+		/**
+		 * X and Y of the spot centers, in pixel units.
+		 */
+		final double[] xy;
+
+		/**
+		 * The largest extent of a spot around its center, in physical
+		 * units. This is the max of the spot radius and of the distance of
+		 * its ROI vertices to its center along X and Y.
+		 */
+		final double maxExtent;
+
+		private final double minx;
+
+		private final double miny;
+
+		private final double maxx;
+
+		private final double maxy;
+
+		private final double cellSize;
+
+		private final int nx;
+
+		private final int ny;
+
+		/**
+		 * Start of the items of each cell in {@link #cellItems}, in CSR
+		 * layout.
+		 */
+		private final int[] cellStart;
+
+		private final int[] cellItems;
+
+		private Frame( final Spot[] spots, final double[] calibration )
+		{
+			this.spots = spots;
+			final int n = spots.length;
+			this.xy = new double[ 2 * n ];
+
+			double lminx = Double.POSITIVE_INFINITY;
+			double lminy = Double.POSITIVE_INFINITY;
+			double lmaxx = Double.NEGATIVE_INFINITY;
+			double lmaxy = Double.NEGATIVE_INFINITY;
+			double lmaxExtent = 0.;
+			for ( int i = 0; i < n; i++ )
+			{
+				final Spot spot = spots[ i ];
+				// In pixel units.
+				final double xp = spot.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5f;
+				final double yp = spot.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5f;
+				xy[ 2 * i ] = xp;
+				xy[ 2 * i + 1 ] = yp;
+				lminx = Math.min( lminx, xp );
+				lminy = Math.min( lminy, yp );
+				lmaxx = Math.max( lmaxx, xp );
+				lmaxy = Math.max( lmaxy, yp );
+
+				final Double radius = spot.getFeature( Spot.RADIUS );
+				if ( null != radius )
+					lmaxExtent = Math.max( lmaxExtent, radius.doubleValue() );
+				final SpotRoi roi = spot.getRoi();
+				if ( null != roi )
+				{
+					for ( final double dx : roi.x )
+						lmaxExtent = Math.max( lmaxExtent, Math.abs( dx ) );
+					for ( final double dy : roi.y )
+						lmaxExtent = Math.max( lmaxExtent, Math.abs( dy ) );
+				}
+			}
+			this.minx = lminx;
+			this.miny = lminy;
+			this.maxx = lmaxx;
+			this.maxy = lmaxy;
+			this.maxExtent = lmaxExtent;
+
+			// Square cells, about SPOTS_PER_CELL spots per cell.
+			final double width = Math.max( 1., lmaxx - lminx );
+			final double height = Math.max( 1., lmaxy - lminy );
+			final int nCells = Math.max( 1, n / SPOTS_PER_CELL );
+			this.cellSize = Math.max( 1., Math.sqrt( width * height / nCells ) );
+			this.nx = n == 0 ? 1 : Math.min( MAX_CELLS, ( int ) ( width / cellSize ) + 1 );
+			this.ny = n == 0 ? 1 : Math.min( MAX_CELLS, ( int ) ( height / cellSize ) + 1 );
+
+			// Count, prefix sum, fill.
+			final int[] cells = new int[ n ];
+			final int[] counts = new int[ nx * ny + 1 ];
+			for ( int i = 0; i < n; i++ )
+			{
+				cells[ i ] = cellY( xy[ 2 * i + 1 ] ) * nx + cellX( xy[ 2 * i ] );
+				counts[ cells[ i ] + 1 ]++;
+			}
+			for ( int c = 1; c < counts.length; c++ )
+				counts[ c ] += counts[ c - 1 ];
+			this.cellStart = counts;
+
+			this.cellItems = new int[ n ];
+			final int[] fill = new int[ nx * ny ];
+			System.arraycopy( counts, 0, fill, 0, fill.length );
+			for ( int i = 0; i < n; i++ )
+				cellItems[ fill[ cells[ i ] ]++ ] = i;
+		}
+
+		/**
+		 * Returns the number of spots in this frame.
+		 *
+		 * @return the number of spots.
+		 */
+		int size()
+		{
+			return spots.length;
+		}
+
+		/**
+		 * Visits the index of the spots whose center is in the specified
+		 * rectangle, in pixel units. Some spots outside of the rectangle, but
+		 * close to it, may be visited.
+		 *
+		 * @param rminx
+		 *            the min X of the rectangle.
+		 * @param rminy
+		 *            the min Y of the rectangle.
+		 * @param rmaxx
+		 *            the max X of the rectangle.
+		 * @param rmaxy
+		 *            the max Y of the rectangle.
+		 * @param visitor
+		 *            receives the index of the spots in this frame.
+		 */
+		void forEach( final double rminx, final double rminy, final double rmaxx, final double rmaxy, final IntConsumer visitor )
+		{
+			if ( spots.length == 0 || rmaxx < minx || rminx > maxx || rmaxy < miny || rminy > maxy )
+				return;
+
+			final int qx0 = cellX( rminx );
+			final int qx1 = cellX( rmaxx );
+			final int qy0 = cellY( rminy );
+			final int qy1 = cellY( rmaxy );
+			for ( int cy = qy0; cy <= qy1; cy++ )
+			{
+				for ( int cx = qx0; cx <= qx1; cx++ )
+				{
+					final int c = cy * nx + cx;
+					for ( int k = cellStart[ c ]; k < cellStart[ c + 1 ]; k++ )
+						visitor.accept( cellItems[ k ] );
+				}
+			}
+		}
+
+		private int cellX( final double x )
+		{
+			return Math.max( 0, Math.min( nx - 1, ( int ) ( ( x - minx ) / cellSize ) ) );
+		}
+
+		private int cellY( final double y )
+		{
+			return Math.max( 0, Math.min( ny - 1, ( int ) ( ( y - miny ) / cellSize ) ) );
+		}
+	}
+}
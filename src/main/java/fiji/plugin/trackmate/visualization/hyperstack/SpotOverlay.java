@@ -36,11 +36,14 @@ import java.awt.geom.Path2D;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
 import fiji.plugin.trackmate.Spot;
-import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
@@ -61,6 +64,17 @@ public class SpotOverlay extends Roi
 
 	private static final long serialVersionUID = 1L;
 
+	/**
+	 * ROIs smaller than this radius on screen, in pixels, are painted as
+	 * points.
+	 */
+	private static final double MIN_POLYGON_RADIUS = 1.5;
+
+	/**
+	 * Max number of polygons kept in the cache.
+	 */
+	private static final int MAX_CACHED_POLYGONS = 100_000;
+
 	protected Spot editingSpot;
 
 	protected final double[] calibration;
@@ -73,6 +87,40 @@ public class SpotOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * Index of the spots to paint, per frame and location.
+	 */
+	private final SpotIndex index;
+
+	/**
+	 * The spot color generator, created lazily from the display settings.
+	 */
+	private FeatureColorGenerator< Spot > colorGenerator;
+
+	/**
+	 * Spot ROIs in screen coordinates, valid for the magnification and
+	 * corner below.
+	 */
+	private final Map< Spot, CachedPolygon > polygons = new HashMap<>();
+
+	private double polygonMagnification = Double.NaN;
+
+	private int polygonXCorner;
+
+	private int polygonYCorner;
+
+	/**
+	 * Model change events not yet applied to the index. They are applied at
+	 * the next paint, so that listeners do not wait on this overlay while the
+	 * model is locked.
+	 */
+	private final Queue< ModelChangeEvent > events = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Spots moved without a model change event, not yet applied to the index.
+	 */
+	private final Queue< Spot > moved = new ConcurrentLinkedQueue<>();
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -84,19 +132,56 @@ public class SpotOverlay extends Roi
 		this.imp = imp;
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.displaySettings = displaySettings;
+		this.index = new SpotIndex( model, calibration );
+		displaySettings.listeners().add( () -> invalidate() );
 	}
 
 	/*
 	 * METHODS
 	 */
 
+	/**
+	 * Notifies this overlay that the model changed, so that the spots it
+	 * caches can be updated.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		events.add( event );
+	}
+
+	/**
+	 * Notifies this overlay that the specified spot was moved without a model
+	 * change event being fired, for instance while it is being edited, so
+	 * that the spots it caches can be updated.
+	 *
+	 * @param spot
+	 *            the spot that was moved, in the same frame.
+	 */
+	public void spotMoved( final Spot spot )
+	{
+		moved.add( spot );
+	}
+
 	@Override
-	public void drawOverlay( final Graphics g )
+	public synchronized void drawOverlay( final Graphics g )
 	{
 		final int xcorner = ic.offScreenX( 0 );
 		final int ycorner = ic.offScreenY( 0 );
 		final double magnification = getMagnification();
-		final SpotCollection spots = model.getSpots();
+
+		synchronized ( model )
+		{
+			for ( ModelChangeEvent event = events.poll(); null != event; event = events.poll() )
+			{
+				index.modelChanged( event );
+				invalidate();
+			}
+			for ( Spot spot = moved.poll(); null != spot; spot = moved.poll() )
+				index.spotMoved( spot );
+		}
 
 		if ( !displaySettings.isSpotVisible() )
 			return;
@@ -128,7 +213,8 @@ public class SpotOverlay extends Roi
 		final int frame = imp.getFrame() - 1;
 
 		// Deal with normal spots.
-		final FeatureColorGenerator< Spot > colorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
+		if ( null == colorGenerator )
+			colorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
 
 		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
 
@@ -157,22 +243,36 @@ public class SpotOverlay extends Roi
 		else
 		{
 			// Other track displays.
-			for ( final Iterator< Spot > iterator = spots.iterator( frame, true ); iterator.hasNext(); )
+			final SpotIndex.Frame spots;
+			synchronized ( model )
 			{
-				final Spot spot = iterator.next();
+				spots = index.frame( frame );
+			}
 
+			// Painted clip in window coordinates, enlarged by the spot size.
+			final double margin = spots.maxExtent * Math.max( 1., displaySettings.getSpotDisplayRadius() )
+					/ Math.min( calibration[ 0 ], calibration[ 1 ] ) + 2.;
+			final double minx = xcorner - margin;
+			final double miny = ycorner - margin;
+			final double maxx = xcorner + ic.getWidth() / magnification + margin;
+			final double maxy = ycorner + ic.getHeight() / magnification + margin;
+			spots.forEach( minx, miny, maxx, maxy, i -> {
+				final double xp = spots.xy[ 2 * i ];
+				final double yp = spots.xy[ 2 * i + 1 ];
+				if ( xp < minx || xp > maxx || yp < miny || yp > maxy )
+					return;
+
+				final Spot spot = spots.spots[ i ];
 				if ( editingSpot == spot || ( spotSelection != null && spotSelection.contains( spot ) ) )
-					continue;
-
-				final Color color = colorGenerator.color( spot );
-				g2d.setColor( color );
+					return;
 
 				final double z = spot.getFeature( Spot.POSITION_Z ).doubleValue();
 				if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
-					continue;
+					return;
 
+				g2d.setColor( colorGenerator.color( spot ) );
 				drawSpot( g2d, spot, zslice, xcorner, ycorner, lMag, filled );
-			}
+			} );
 
 			// Deal with spot selection
 			if ( null != spotSelection )
@@ -286,15 +386,19 @@ public class SpotOverlay extends Roi
 		}
 		else
 		{
-			final double[] polygonX = roi.toPolygonX( calibration[ 0 ], xcorner - 0.5, x, magnification );
-			final double[] polygonY = roi.toPolygonY( calibration[ 1 ], ycorner - 0.5, y, magnification );
-			// The 0.5 is here so that we plot vertices at pixel centers.
-			final Path2D polygon = new Path2D.Double();
-			polygon.moveTo( polygonX[ 0 ], polygonY[ 0 ] );
-			for ( int i = 1; i < polygonX.length; ++i )
-				polygon.lineTo( polygonX[ i ], polygonY[ i ] );
-			polygon.closePath();
-			final int textPos = ( int ) ( Arrays.stream( polygonX ).max().getAsDouble() - xs );
+			// Too small to see the shape: paint a point.
+			final double apparentRadius = spot.getFeature( Spot.RADIUS ) / calibration[ 0 ] * magnification;
+			if ( apparentRadius < MIN_POLYGON_RADIUS )
+			{
+				if ( displaySettings.isSpotShowName() )
+					drawSpotName( g2d, spot, xs, ys, ( int ) apparentRadius );
+				g2d.fillRect( ( int ) Math.round( xs ) - 1, ( int ) Math.round( ys ) - 1, 2, 2 );
+				return;
+			}
+
+			final CachedPolygon cached = getPolygon( spot, roi, x, y, xcorner, ycorner, magnification );
+			final Path2D polygon = cached.polygon;
+			final int textPos = ( int ) ( cached.maxX - xs );
 
 			if ( filled )
 			{
@@ -313,6 +417,47 @@ public class SpotOverlay extends Roi
 		}
 	}
 
+	/**
+	 * Returns the ROI of the specified spot in screen coordinates, from the
+	 * cache if it was computed for the same view.
+	 */
+	private CachedPolygon getPolygon( final Spot spot, final SpotRoi roi, final double x, final double y, final int xcorner, final int ycorner, final double magnification )
+	{
+		if ( magnification != polygonMagnification || xcorner != polygonXCorner || ycorner != polygonYCorner
+				|| polygons.size() >= MAX_CACHED_POLYGONS )
+		{
+			polygons.clear();
+			polygonMagnification = magnification;
+			polygonXCorner = xcorner;
+			polygonYCorner = ycorner;
+		}
+
+		CachedPolygon cached = polygons.get( spot );
+		if ( null == cached || cached.roi != roi || cached.x != x || cached.y != y )
+		{
+			final double[] polygonX = roi.toPolygonX( calibration[ 0 ], xcorner - 0.5, x, magnification );
+			final double[] polygonY = roi.toPolygonY( calibration[ 1 ], ycorner - 0.5, y, magnification );
+			// The 0.5 is here so that we plot vertices at pixel centers.
+			final Path2D polygon = new Path2D.Double( Path2D.WIND_NON_ZERO, polygonX.length + 1 );
+			polygon.moveTo( polygonX[ 0 ], polygonY[ 0 ] );
+			for ( int i = 1; i < polygonX.length; ++i )
+				polygon.lineTo( polygonX[ i ], polygonY[ i ] );
+			polygon.closePath();
+			cached = new CachedPolygon( roi, x, y, polygon, Arrays.stream( polygonX ).max().getAsDouble() );
+			polygons.put( spot, cached );
+		}
+		return cached;
+	}
+
+	/**
+	 * Discards the cached colors and shapes.
+	 */
+	private synchronized void invalidate()
+	{
+		colorGenerator = null;
+		polygons.clear();
+	}
+
 	private final void drawSpotName( final Graphics2D g2d, final Spot spot, final double xs, final double ys, final int textPos )
 	{
 		final String str = spot.toString();
@@ -325,4 +470,27 @@ public class SpotOverlay extends Roi
 		final int ytext = ( int ) ys + yindent;
 		g2d.drawString( spot.toString(), xtext, ytext );
 	}
+
+	private static final class CachedPolygon
+	{
+
+		private final SpotRoi roi;
+
+		private final double x;
+
+		private final double y;
+
+		private final Path2D polygon;
+
+		private final double maxX;
+
+		private CachedPolygon( final SpotRoi roi, final double x, final double y, final Path2D polygon, final double maxX )
+		{
+			this.roi = roi;
+			this.x = x;
+			this.y = y;
+			this.polygon = polygon;
+			this.maxX = maxX;
+		}
+	}
 }
@@ -32,12 +32,16 @@ import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
 import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
 import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackDisplayMode;
@@ -63,6 +67,28 @@ public class TrackOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * Index of the edges to paint, per frame and location.
+	 */
+	private final EdgeIndex index;
+
+	/**
+	 * The track color generator, created lazily from the display settings.
+	 */
+	private FeatureColorGenerator< DefaultWeightedEdge > colorGenerator;
+
+	/**
+	 * Model change events not yet applied to the index. They are applied at
+	 * the next paint, so that listeners do not wait on this overlay while the
+	 * model is locked.
+	 */
+	private final Queue< ModelChangeEvent > events = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Spots moved without a model change event, not yet applied to the index.
+	 */
+	private final Queue< Spot > moved = new ConcurrentLinkedQueue<>();
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -74,6 +100,8 @@ public class TrackOverlay extends Roi
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.imp = imp;
 		this.displaySettings = displaySettings;
+		this.index = new EdgeIndex( model, calibration );
+		displaySettings.listeners().add( () -> invalidateColors() );
 	}
 
 	/*
@@ -85,6 +113,31 @@ public class TrackOverlay extends Roi
 		this.highlight = edges;
 	}
 
+	/**
+	 * Notifies this overlay that the model changed, so that the edges it
+	 * caches can be updated.
+	 *
+	 * @param event
+	 *            the model change event.
+	 */
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		events.add( event );
+	}
+
+	/**
+	 * Notifies this overlay that the specified spot was moved without a model
+	 * change event being fired, for instance while it is being edited, so
+	 * that the edges it caches can be updated.
+	 *
+	 * @param spot
+	 *            the spot that was moved, in the same frame.
+	 */
+	public void spotMoved( final Spot spot )
+	{
+		moved.add( spot );
+	}
+
 	@Override
 	public final synchronized void drawOverlay( final Graphics g )
 	{
@@ -100,6 +153,17 @@ public class TrackOverlay extends Roi
 		final double maxx = minx + ic.getWidth() / magnification;
 		final double maxy = miny + ic.getHeight() / magnification;
 
+		synchronized ( model )
+		{
+			for ( ModelChangeEvent event = events.poll(); null != event; event = events.poll() )
+			{
+				index.modelChanged( event );
+				colorGenerator = null;
+			}
+			for ( Spot spot = moved.poll(); null != spot; spot = moved.poll() )
+				index.spotMoved( spot );
+		}
+
 		if ( !displaySettings.isTrackVisible() || model.getTrackModel().nTracks( true ) == 0 )
 			return;
 
@@ -127,7 +191,8 @@ public class TrackOverlay extends Roi
 				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
 
 		// Color generator.
-		final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
+		if ( null == colorGenerator )
+			colorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
 
 		// Determine bounds for limited view modes
 		final int minT;
@@ -179,63 +244,54 @@ public class TrackOverlay extends Roi
 			break;
 		}
 		case FULL:
-		{
-			for ( final Integer trackID : filteredTrackKeys )
-			{
-				final Set< DefaultWeightedEdge > track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
-				for ( final DefaultWeightedEdge edge : track )
-				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
-
-					final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
-					final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
-					if ( doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
-						continue;
-
-					g2d.setColor( colorGenerator.color( edge ) );
-					drawEdge( g2d, source, target, xcorner, ycorner, magnification );
-				}
-			}
-			break;
-		}
 		case LOCAL:
 		case LOCAL_BACKWARD:
 		case LOCAL_FORWARD:
 		{
-
-			for ( final Integer trackID : filteredTrackKeys )
+			synchronized ( model )
+			{
+				index.update();
+			}
+			final TrackModel trackModel = model.getTrackModel();
+			final boolean full = trackDisplayMode == TrackDisplayMode.FULL;
+			final int fromT = full ? 0 : Math.max( 0, minT );
+			final int toT = full ? index.nFrames() : Math.min( index.nFrames(), maxT );
+			for ( int t = fromT; t < toT; t++ )
 			{
-				final Set< DefaultWeightedEdge > track;
-				synchronized ( model )
+				final EdgeIndex.Frame frame = index.frame( t );
+				if ( frame.size() == 0 )
+					continue;
+
+				if ( !full )
 				{
-					track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
+					final float transparency = ( float ) ( 1 - Math.abs( ( double ) t - currentFrame ) / trackDisplayDepth );
+					g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, transparency ) );
 				}
-				for ( final DefaultWeightedEdge edge : track )
-				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-					if ( sourceFrame < minT || sourceFrame >= maxT )
-						continue;
-
-					final float transparency = ( float ) ( 1 - Math.abs( ( double ) sourceFrame - currentFrame ) / trackDisplayDepth );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
-
-					final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
-					final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
+
+				final double[] coords = frame.coords;
+				frame.forEach( minx, miny, maxx, maxy, i -> {
+					final double x0p = coords[ 6 * i ];
+					final double y0p = coords[ 6 * i + 1 ];
+					final double x1p = coords[ 6 * i + 2 ];
+					final double y1p = coords[ 6 * i + 3 ];
+					if ( !isOnClip( x0p, y0p, x1p, y1p, minx, miny, maxx, maxy ) )
+						return;
+
+					final double zs = coords[ 6 * i + 4 ];
+					final double zt = coords[ 6 * i + 5 ];
 					if ( doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
-						continue;
+						return;
 
-					g2d.setColor( colorGenerator.color( edge ) );
-					drawEdge( g2d, source, target, xcorner, ycorner, magnification, transparency );
-				}
+					// Removed edges and edges of hidden tracks.
+					final Integer trackID = trackModel.trackIDOf( frame.edges[ i ] );
+					if ( null == trackID || !filteredTrackKeys.contains( trackID ) )
+						return;
+
+					g2d.setColor( index.color( frame, i, colorGenerator ) );
+					drawSegment( g2d, x0p, y0p, x1p, y1p, xcorner, ycorner, magnification );
+				} );
 			}
 			break;
-
 		}
 		}
 
@@ -274,7 +330,11 @@ public class TrackOverlay extends Roi
 		final double y0p = y0i / calibration[ 1 ] + 0.5f;
 		final double x1p = x1i / calibration[ 0 ] + 0.5f;
 		final double y1p = y1i / calibration[ 1 ] + 0.5f;
+		return isOnClip( x0p, y0p, x1p, y1p, minx, miny, maxx, maxy );
+	}
 
+	private static final boolean isOnClip( final double x0p, final double y0p, final double x1p, final double y1p, final double minx, final double miny, final double maxx, final double maxy )
+	{
 		// Is any spot inside the clip?
 		if ( ( x0p > minx && x0p < maxx && y0p > miny && y0p < maxy )
 				|| ( x1p > minx && x1p < maxx && y1p > miny && y1p < maxy ) )
@@ -316,30 +376,8 @@ public class TrackOverlay extends Roi
 
 	protected void drawEdge( final Graphics2D g2d, final Spot source, final Spot target, final int xcorner, final int ycorner, final double magnification, final float transparency )
 	{
-		// Find x & y in physical coordinates
-		final double x0i = source.getFeature( Spot.POSITION_X );
-		final double y0i = source.getFeature( Spot.POSITION_Y );
-		final double x1i = target.getFeature( Spot.POSITION_X );
-		final double y1i = target.getFeature( Spot.POSITION_Y );
-		// In pixel units
-		final double x0p = x0i / calibration[ 0 ] + 0.5f;
-		final double y0p = y0i / calibration[ 1 ] + 0.5f;
-		final double x1p = x1i / calibration[ 0 ] + 0.5f;
-		final double y1p = y1i / calibration[ 1 ] + 0.5f;
-		// Scale to image zoom
-		final double x0s = ( x0p - xcorner ) * magnification;
-		final double y0s = ( y0p - ycorner ) * magnification;
-		final double x1s = ( x1p - xcorner ) * magnification;
-		final double y1s = ( y1p - ycorner ) * magnification;
-		// Round
-		final int x0 = ( int ) Math.round( x0s );
-		final int y0 = ( int ) Math.round( y0s );
-		final int x1 = ( int ) Math.round( x1s );
-		final int y1 = ( int ) Math.round( y1s );
-
 		g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, transparency ) );
-		g2d.drawLine( x0, y0, x1, y1 );
-
+		drawEdge( g2d, source, target, xcorner, ycorner, magnification );
 	}
 
 	protected void drawEdge( final Graphics2D g2d, final Spot source, final Spot target, final int xcorner, final int ycorner, final double magnification )
@@ -354,6 +392,21 @@ public class TrackOverlay extends Roi
 		final double y0p = y0i / calibration[ 1 ] + 0.5f;
 		final double x1p = x1i / calibration[ 0 ] + 0.5f;
 		final double y1p = y1i / calibration[ 1 ] + 0.5f;
+		drawSegment( g2d, x0p, y0p, x1p, y1p, xcorner, ycorner, magnification );
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private synchronized void invalidateColors()
+	{
+		index.invalidateColors();
+		colorGenerator = null;
+	}
+
+	private static final void drawSegment( final Graphics2D g2d, final double x0p, final double y0p, final double x1p, final double y1p, final int xcorner, final int ycorner, final double magnification )
+	{
 		// Scale to image zoom
 		final double x0s = ( x0p - xcorner ) * magnification;
 		final double y0s = ( y0p - ycorner ) * magnification;
@@ -0,0 +1,122 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+public class EdgeFeatureTableTest
+{
+
+	private static final int N_EDGES = 10000;
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final EdgeFeatureTable table = new EdgeFeatureTable();
+		final List< DefaultWeightedEdge > edges = new ArrayList<>();
+		for ( int i = 0; i < N_EDGES; i++ )
+		{
+			final DefaultWeightedEdge edge = new DefaultWeightedEdge();
+			edges.add( edge );
+			table.put( edge, "A", i );
+			if ( i % 2 == 0 )
+				table.put( edge, "B", -i );
+		}
+
+		for ( int i = 0; i < N_EDGES; i++ )
+		{
+			final DefaultWeightedEdge edge = edges.get( i );
+			assertEquals( i, table.get( edge, "A" ), 0. );
+			if ( i % 2 == 0 )
+				assertEquals( -i, table.get( edge, "B" ), 0. );
+			else
+				assertNull( table.get( edge, "B" ) );
+			assertNull( table.get( edge, "C" ) );
+		}
+		assertNull( table.get( new DefaultWeightedEdge(), "A" ) );
+
+		final DefaultWeightedEdge edge = edges.get( 10 );
+		table.remove( edge, "A" );
+		assertNull( table.get( edge, "A" ) );
+		assertEquals( -10., table.get( edge, "B" ), 0. );
+
+		// Special values are stored, and are not mistaken for missing values.
+		table.put( edge, "A", Double.NaN );
+		assertTrue( Double.isNaN( table.get( edge, "A" ) ) );
+		table.put( edge, "A", Double.longBitsToDouble( 0x7ff0000000000001L ) );
+		assertTrue( Double.isNaN( table.get( edge, "A" ) ) );
+		table.put( edge, "A", Double.NEGATIVE_INFINITY );
+		assertEquals( Double.NEGATIVE_INFINITY, table.get( edge, "A" ), 0. );
+	}
+
+	@Test
+	public void testConcurrentAccess() throws Exception
+	{
+		final EdgeFeatureTable table = new EdgeFeatureTable();
+		final int nThreads = 4;
+		final List< List< DefaultWeightedEdge > > edges = new ArrayList<>();
+		for ( int t = 0; t < nThreads; t++ )
+		{
+			final List< DefaultWeightedEdge > list = new ArrayList<>();
+			for ( int i = 0; i < N_EDGES; i++ )
+				list.add( new DefaultWeightedEdge() );
+			edges.add( list );
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool( nThreads );
+		final List< Future< Boolean > > futures = new ArrayList<>();
+		for ( int t = 0; t < nThreads; t++ )
+		{
+			final List< DefaultWeightedEdge > list = edges.get( t );
+			futures.add( executor.submit( () -> {
+				for ( int i = 0; i < list.size(); i++ )
+				{
+					table.put( list.get( i ), "F", i );
+					final Double val = table.get( list.get( i ), "F" );
+					if ( null == val || val.doubleValue() != i )
+						return false;
+				}
+				return true;
+			} ) );
+		}
+		for ( final Future< Boolean > future : futures )
+			assertTrue( future.get() );
+		executor.shutdown();
+		executor.awaitTermination( 1, TimeUnit.MINUTES );
+
+		for ( final List< DefaultWeightedEdge > list : edges )
+			for ( int i = 0; i < list.size(); i++ )
+				assertEquals( i, table.get( list.get( i ), "F" ), 0. );
+	}
+}
@@ -30,10 +30,13 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -214,6 +217,87 @@ public class SpotCollectionTest
 		assertEquals( 3 * 5, sc.getNSpots( true ) );
 	}
 
+	@Test
+	public void testIncrementalFilters()
+	{
+		// Quality above 10 and below 20: 10 spots per frame.
+		sc.filter( Arrays.asList( new FeatureFilter( Spot.QUALITY, 10d, true ), new FeatureFilter( Spot.QUALITY, 20d, false ) ) );
+		assertEquals( 11 * N_FRAMES, sc.getNSpots( true ) );
+
+		// Move the thresholds one after the other, up and down.
+		final Random ran = new Random( 1l );
+		for ( int i = 0; i < 20; i++ )
+		{
+			final double lower = ran.nextInt( N_SPOTS + 10 ) - 5;
+			final double upper = ran.nextInt( N_SPOTS + 10 ) - 5;
+			final List< FeatureFilter > filters = Arrays.asList(
+					new FeatureFilter( Spot.QUALITY, lower, true ),
+					new FeatureFilter( Spot.QUALITY, upper, false ) );
+			sc.filter( filters );
+			for ( final Spot spot : sc.iterable( false ) )
+			{
+				final double q = spot.getFeature( Spot.QUALITY ).doubleValue();
+				assertEquals( q >= lower && q <= upper, isVisible( spot ) );
+			}
+		}
+	}
+
+	@Test
+	public void testFilterAfterFeatureChange()
+	{
+		final FeatureFilter filter = new FeatureFilter( Spot.QUALITY, 50d, true );
+		sc.filter( filter );
+		assertEquals( 50 * N_FRAMES, sc.getNSpots( true ) );
+
+		// Changing feature values must be picked up by the next filtering.
+		for ( final Spot spot : sc.iterable( false ) )
+			spot.putFeature( Spot.QUALITY, 100d - spot.getFeature( Spot.QUALITY ).doubleValue() );
+		sc.filter( new FeatureFilter( Spot.QUALITY, 60d, true ) );
+		for ( final Spot spot : sc.iterable( false ) )
+			assertEquals( spot.getFeature( Spot.QUALITY ) >= 60d, isVisible( spot ) );
+
+		// Spots that lack the feature are filtered out.
+		final Spot spot = sc.iterator( 1, true ).next();
+		spot.removeFeature( Spot.QUALITY );
+		sc.filter( new FeatureFilter( Spot.QUALITY, 60d, true ) );
+		assertFalse( isVisible( spot ) );
+
+		// As are spots added in between.
+		final Spot added = new Spot( 0d, 0d, 0d, 1d, 0d );
+		sc.add( added, 1 );
+		sc.filter( new FeatureFilter( Spot.QUALITY, 60d, true ) );
+		assertFalse( isVisible( added ) );
+	}
+
+	@Test
+	public void testFilterSameAsCompareTo()
+	{
+		// Signed zeros and NaN, in random order and mixed with other values.
+		final double[] qualities = new double[] { -0., 0., Double.NaN, -1., 1., -Double.MIN_VALUE, Double.MIN_VALUE };
+		final Random ran = new Random( 1l );
+		final SpotCollection collection = new SpotCollection();
+		for ( int i = 0; i < 200; i++ )
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+			spot.putFeature( Spot.QUALITY, qualities[ ran.nextInt( qualities.length ) ] );
+			collection.add( spot, 0 );
+		}
+
+		// Filter from scratch, then by moving the threshold.
+		for ( final boolean isAbove : new boolean[] { true, false } )
+		{
+			for ( final double threshold : new double[] { 0., -0., 0., -1., -0., Double.MIN_VALUE, -0. } )
+			{
+				collection.filter( new FeatureFilter( Spot.QUALITY, threshold, isAbove ) );
+				for ( final Spot spot : collection.iterable( false ) )
+				{
+					final int c = spot.getFeature( Spot.QUALITY ).compareTo( threshold );
+					assertEquals( isAbove ? c >= 0 : c <= 0, isVisible( spot ) );
+				}
+			}
+		}
+	}
+
 	@Test
 	public void testGetClosestSpot()
 	{
@@ -472,6 +556,100 @@ public class SpotCollectionTest
 		assertArrayEquals( frames.toArray( new Integer[] {} ), sc.keySet().toArray( new Integer[] {} ) );
 	}
 
+	@Test
+	public void testSearch()
+	{
+		final List< Spot > all = new ArrayList<>();
+		for ( final Spot spot : sc.iterable( false ) )
+			all.add( spot );
+		for ( final Spot spot : all )
+			assertTrue( spot == sc.search( spot.ID() ) );
+		assertNull( sc.search( -1 ) );
+
+		// Add and remove.
+		final Spot added = new Spot( 1d, 1d, 1d, 1d, -1d );
+		assertNull( sc.search( added.ID() ) );
+		sc.add( added, frames.get( 0 ) );
+		assertTrue( added == sc.search( added.ID() ) );
+		sc.remove( added, frames.get( 0 ) );
+		assertNull( sc.search( added.ID() ) );
+
+		// Replace a frame content.
+		final Spot replaced = sc.iterable( frames.get( 1 ), false ).iterator().next();
+		sc.put( frames.get( 1 ), Arrays.asList( added ) );
+		assertNull( sc.search( replaced.ID() ) );
+		assertTrue( added == sc.search( added.ID() ) );
+
+		// Remove a frame through the key set.
+		final Spot inRemovedFrame = sc.iterable( frames.get( 2 ), false ).iterator().next();
+		sc.keySet().remove( frames.get( 2 ) );
+		assertNull( sc.search( inRemovedFrame.ID() ) );
+
+		// Crop.
+		sc.filter( new FeatureFilter( Spot.QUALITY, 20d, false ) );
+		sc.crop();
+		for ( final Spot spot : all )
+		{
+			if ( sc.search( spot.ID() ) != null )
+				assertTrue( spot.getFeature( Spot.QUALITY ) <= 20d );
+		}
+
+		// Bulk.
+		Spot kept = null;
+		for ( final Spot spot : sc.iterable( frames.get( 3 ), false ) )
+			if ( spot.getFeature( Spot.QUALITY ) == 0d )
+				kept = spot;
+		final int[] IDs = new int[] { kept.ID(), -1, added.ID() };
+		final Spot[] found = sc.searchAll( IDs );
+		assertTrue( kept == found[ 0 ] );
+		assertNull( found[ 1 ] );
+		assertTrue( added == found[ 2 ] );
+		final Map< Integer, Spot > map = sc.searchAll( Arrays.asList( IDs[ 0 ], IDs[ 1 ], IDs[ 2 ] ) );
+		assertEquals( 2, map.size() );
+		assertTrue( kept == map.get( kept.ID() ) );
+
+		sc.clear();
+		assertNull( sc.search( added.ID() ) );
+	}
+
+	@Test
+	public void testSearchSpotsAddedOutside()
+	{
+		// Frame sets shared with the map the collection is created from.
+		final Map< Integer, Set< Spot > > source = new HashMap<>();
+		for ( final Integer frame : frames )
+		{
+			final Set< Spot > spots = new HashSet<>();
+			for ( final Spot spot : sc.iterable( frame, false ) )
+				spots.add( spot );
+			source.put( frame, spots );
+		}
+		final SpotCollection shared = SpotCollection.fromMap( source );
+		final Spot first = shared.iterable( frames.get( 0 ), false ).iterator().next();
+		assertTrue( first == shared.search( first.ID() ) );
+
+		// Added after the index was built.
+		final Spot added = new Spot( 1d, 1d, 1d, 1d, -1d );
+		source.get( frames.get( 0 ) ).add( added );
+		assertTrue( added == shared.search( added.ID() ) );
+
+		// Swapped, without changing the number of spots.
+		final Spot gone = shared.iterable( frames.get( 1 ), false ).iterator().next();
+		final Spot swapped = new Spot( 2d, 2d, 2d, 1d, -1d );
+		source.get( frames.get( 1 ) ).remove( gone );
+		source.get( frames.get( 1 ) ).add( swapped );
+		final Spot[] found = shared.searchAll( new int[] { swapped.ID(), gone.ID(), added.ID() } );
+		assertTrue( swapped == found[ 0 ] );
+		assertNull( found[ 1 ] );
+		assertTrue( added == found[ 2 ] );
+
+		final Spot other = new Spot( 3d, 3d, 3d, 1d, -1d );
+		source.get( frames.get( 2 ) ).add( other );
+		final Map< Integer, Spot > map = shared.searchAll( Arrays.asList( other.ID(), -1 ) );
+		assertEquals( 1, map.size() );
+		assertTrue( other == map.get( other.ID() ) );
+	}
+
 	private static final boolean isVisible( final Spot spot )
 	{
 		return spot.getFeature( SpotCollection.VISIBILITY ).compareTo( SpotCollection.ZERO ) > 0;
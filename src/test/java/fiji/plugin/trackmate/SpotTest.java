@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SpotTest
+{
+
+	@Test
+	public void testPrivilegedFeatures()
+	{
+		final Spot spot = new Spot( 1., 2., 3., 4., 5. );
+		assertEquals( 1., spot.getDoublePosition( 0 ), 0. );
+		assertEquals( 2., spot.getDoublePosition( 1 ), 0. );
+		assertEquals( 3., spot.getDoublePosition( 2 ), 0. );
+		assertEquals( 4., spot.getRadius(), 0. );
+		assertEquals( 5., spot.getQuality(), 0. );
+		assertTrue( Double.isNaN( spot.getPositionT() ) );
+		assertNull( spot.getFeature( Spot.POSITION_T ) );
+
+		spot.putFeature( Spot.POSITION_T, 6. );
+		assertEquals( 6., spot.getPositionT(), 0. );
+		assertEquals( Double.valueOf( 6. ), spot.getFeature( Spot.POSITION_T ) );
+	}
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final Spot spot = new Spot( 0., 0., 0., 1., 1. );
+		final String feature = "SPOT_TEST_FEATURE";
+		assertNull( spot.getFeature( feature ) );
+		assertTrue( Double.isNaN( spot.getDoubleFeature( feature ) ) );
+
+		spot.putFeature( feature, Double.valueOf( 12. ) );
+		assertEquals( Double.valueOf( 12. ), spot.getFeature( feature ) );
+		assertEquals( 12., spot.getDoubleFeature( feature ), 0. );
+
+		// Genuine NaN values must be distinguished from missing values.
+		spot.putFeature( feature, Double.NaN );
+		assertTrue( Double.isNaN( spot.getFeature( feature ) ) );
+
+		assertTrue( spot.removeFeature( feature ) );
+		assertNull( spot.getFeature( feature ) );
+		assertFalse( spot.removeFeature( feature ) );
+
+		spot.putFeature( feature, 3. );
+		spot.putFeature( feature, ( Double ) null );
+		assertNull( spot.getFeature( feature ) );
+	}
+
+	@Test
+	public void testFeatureMapView()
+	{
+		final Spot spot = new Spot( 1., 2., 3., 4., 5. );
+		final Map< String, Double > features = spot.getFeatures();
+		assertEquals( 5, features.size() );
+		assertTrue( features.containsKey( Spot.POSITION_X ) );
+		assertFalse( features.containsKey( Spot.POSITION_T ) );
+
+		features.put( Spot.POSITION_T, 7. );
+		assertEquals( 7., spot.getPositionT(), 0. );
+		assertEquals( 6, features.size() );
+
+		features.remove( Spot.QUALITY );
+		assertNull( spot.getFeature( Spot.QUALITY ) );
+		assertFalse( features.keySet().contains( Spot.QUALITY ) );
+
+		features.keySet().remove( Spot.RADIUS );
+		assertNull( spot.getFeature( Spot.RADIUS ) );
+		assertEquals( 4, features.size() );
+	}
+
+	@Test
+	public void testDistanceAndDiff()
+	{
+		final Spot s1 = new Spot( 0., 0., 0., 1., 2. );
+		final Spot s2 = new Spot( 3., 4., 0., 1., 6. );
+		assertEquals( 25., s1.squareDistanceTo( s2 ), 0. );
+		assertEquals( -4., s1.diffTo( s2, Spot.QUALITY ), 0. );
+		assertEquals( 1., s1.normalizeDiffTo( s2, Spot.QUALITY ), 0. );
+	}
+}
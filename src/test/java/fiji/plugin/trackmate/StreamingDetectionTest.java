@@ -0,0 +1,466 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.ImageIcon;
+
+import org.jdom2.Element;
+import org.junit.Test;
+import org.scijava.Cancelable;
+
+import fiji.plugin.trackmate.detection.DetectionListener;
+import fiji.plugin.trackmate.detection.SpotDetector;
+import fiji.plugin.trackmate.detection.SpotDetectorFactory;
+import fiji.plugin.trackmate.gui.components.ConfigurationPanel;
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imagej.ImgPlus;
+import net.imglib2.Interval;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class StreamingDetectionTest
+{
+
+	private static final int N_FRAMES = 3;
+
+	/**
+	 * The qualities of the spots detected in each frame. With the default
+	 * initial filter value of 0, -0 and -1 must be filtered out.
+	 */
+	private static final double[] QUALITIES = new double[] { -0., 0., Double.NaN, -1., 1., 0.5 };
+
+	private static final long TIMEOUT = 10;
+
+	@Test
+	public void testSameFilterAsInitialFiltering()
+	{
+		final TrackMate normal = trackmate( frame -> spots( frame ) );
+		assertTrue( normal.getErrorMessage(), normal.execDetection() );
+		assertTrue( normal.execInitialSpotFiltering() );
+
+		final Recorder recorder = new Recorder();
+		final TrackMate streaming = trackmate( frame -> spots( frame ) );
+		streaming.setStreamingDetection( true, true );
+		streaming.addDetectionListener( recorder );
+		assertTrue( streaming.getErrorMessage(), streaming.execDetection() );
+
+		for ( int frame = 0; frame < N_FRAMES; frame++ )
+		{
+			final List< Double > expected = qualities( normal.getModel().getSpots().iterable( frame, false ) );
+			assertEquals( Arrays.asList( 0., 0.5, 1., Double.NaN ), expected );
+			assertEquals( expected, qualities( streaming.getModel().getSpots().iterable( frame, false ) ) );
+			assertEquals( expected, qualities( recorder.spots.get( frame ) ) );
+		}
+	}
+
+	@Test
+	public void testOrderedDelivery()
+	{
+		// Frame 0 completes after the last frame is detected.
+		final CountDownLatch lastDetected = new CountDownLatch( 1 );
+		final Recorder recorder = new Recorder();
+		final TrackMate trackmate = trackmate( frame -> {
+			if ( frame == 0 )
+				await( lastDetected );
+			if ( frame == N_FRAMES - 1 )
+				lastDetected.countDown();
+			return spots( frame );
+		} );
+		trackmate.setStreamingDetection( true, true );
+		trackmate.addDetectionListener( recorder );
+
+		assertTrue( trackmate.getErrorMessage(), trackmate.execDetection() );
+		assertEquals( Arrays.asList( 0, 1, 2 ), recorder.frames );
+	}
+
+	@Test
+	public void testUnorderedDelivery()
+	{
+		// Frame 0 completes after the last frame is published.
+		final CountDownLatch lastPublished = new CountDownLatch( 1 );
+		final Recorder recorder = new Recorder()
+		{
+			@Override
+			public synchronized void frameDetected( final int frame, final List< Spot > spots )
+			{
+				super.frameDetected( frame, spots );
+				if ( frame == N_FRAMES - 1 )
+					lastPublished.countDown();
+			}
+		};
+		final TrackMate trackmate = trackmate( frame -> {
+			if ( frame == 0 )
+				await( lastPublished );
+			return spots( frame );
+		} );
+		trackmate.setStreamingDetection( true, false );
+		trackmate.addDetectionListener( recorder );
+
+		assertTrue( trackmate.getErrorMessage(), trackmate.execDetection() );
+		assertEquals( Arrays.asList( 1, 2, 0 ), recorder.frames );
+	}
+
+	@Test
+	public void testFailedFrameReleasesNextFrames()
+	{
+		/*
+		 * Frame 0 fails after frame 2 is detected. Frame 3 is only detected
+		 * once frame 2 is published, which must happen during the detection,
+		 * not when the publisher is flushed.
+		 */
+		final CountDownLatch frame2Detected = new CountDownLatch( 1 );
+		final CountDownLatch frame2Published = new CountDownLatch( 1 );
+		final Recorder recorder = new Recorder()
+		{
+			@Override
+			public synchronized void frameDetected( final int frame, final List< Spot > spots )
+			{
+				super.frameDetected( frame, spots );
+				if ( frame == 2 )
+					frame2Published.countDown();
+			}
+		};
+		final TrackMate trackmate = trackmate( 4, frame -> {
+			if ( frame == 0 )
+			{
+				await( frame2Detected );
+				return null;
+			}
+			if ( frame == 2 )
+				frame2Detected.countDown();
+			if ( frame == 3 )
+				await( frame2Published );
+			return spots( frame );
+		} );
+		trackmate.setStreamingDetection( true, true );
+		trackmate.addDetectionListener( recorder );
+
+		assertFalse( trackmate.execDetection() );
+		assertEquals( Arrays.asList( 1, 2, 3 ), recorder.frames );
+	}
+
+	@Test
+	public void testFlushOnCancel()
+	{
+		/*
+		 * Frame 0 waits for the cancel and then throws, so it is never
+		 * published. The last frame cancels the detection once detected.
+		 */
+		final Recorder recorder = new Recorder();
+		final TrackMate[] holder = new TrackMate[ 1 ];
+		final TrackMate trackmate = trackmate( frame -> {
+			if ( frame == 0 )
+			{
+				await( StubDetector.current().canceled );
+				throw new IllegalStateException( "Canceled" );
+			}
+			if ( frame == N_FRAMES - 1 )
+				holder[ 0 ].cancel( "Test" );
+			return spots( frame );
+		} );
+		holder[ 0 ] = trackmate;
+		trackmate.setStreamingDetection( true, true );
+		trackmate.addDetectionListener( recorder );
+
+		assertFalse( trackmate.execDetection() );
+		assertTrue( trackmate.isCanceled() );
+		assertEquals( Arrays.asList( 1, 2 ), recorder.frames );
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	/**
+	 * Returns a TrackMate instance detecting with the specified behavior on 2
+	 * threads, on an image of {@value #N_FRAMES} frames.
+	 */
+	private static TrackMate trackmate( final FrameDetection detection )
+	{
+		return trackmate( N_FRAMES, detection );
+	}
+
+	/**
+	 * Returns a TrackMate instance detecting with the specified behavior on 2
+	 * threads, on an image of the specified number of frames.
+	 */
+	private static TrackMate trackmate( final int nFrames, final FrameDetection detection )
+	{
+		final ImagePlus imp = NewImage.createByteImage( "test", 16, 16, nFrames, NewImage.FILL_BLACK );
+		imp.setDimensions( 1, 1, nFrames );
+		final Settings settings = new Settings( imp );
+		settings.detectorFactory = new StubDetectorFactory( detection );
+		settings.detectorSettings = Collections.emptyMap();
+		final Model model = new Model();
+		model.setLogger( Logger.VOID_LOGGER );
+		final TrackMate trackmate = new TrackMate( model, settings );
+		trackmate.setNumThreads( 2 );
+		return trackmate;
+	}
+
+	private static List< Spot > spots( final int frame )
+	{
+		final List< Spot > spots = new ArrayList<>( QUALITIES.length );
+		for ( final double quality : QUALITIES )
+			spots.add( new Spot( frame, 0., 0., 1., quality ) );
+		return spots;
+	}
+
+	/**
+	 * Returns the qualities of the specified spots, sorted.
+	 */
+	private static List< Double > qualities( final Iterable< Spot > spots )
+	{
+		final List< Double > qualities = new ArrayList<>();
+		for ( final Spot spot : spots )
+			qualities.add( spot.getFeature( Spot.QUALITY ) );
+		Collections.sort( qualities );
+		return qualities;
+	}
+
+	private static void await( final CountDownLatch latch )
+	{
+		try
+		{
+			if ( !latch.await( TIMEOUT, TimeUnit.SECONDS ) )
+				throw new IllegalStateException( "Timed out." );
+		}
+		catch ( final InterruptedException e )
+		{
+			throw new IllegalStateException( e );
+		}
+	}
+
+	/**
+	 * Records the frames published to a detection listener, in order.
+	 */
+	private static class Recorder implements DetectionListener
+	{
+
+		private final List< Integer > frames = new ArrayList<>();
+
+		private final Map< Integer, List< Spot > > spots = new HashMap<>();
+
+		@Override
+		public synchronized void frameDetected( final int frame, final List< Spot > spotsThisFrame )
+		{
+			frames.add( frame );
+			spots.put( frame, new ArrayList<>( spotsThisFrame ) );
+		}
+	}
+
+	/**
+	 * What the detector does on one frame: returns the spots found, or
+	 * <code>null</code> if the detection fails.
+	 */
+	private static interface FrameDetection
+	{
+		public List< Spot > detect( int frame );
+	}
+
+	private static final class StubDetector implements SpotDetector< UnsignedByteType >, Cancelable
+	{
+
+		private static final ThreadLocal< StubDetector > CURRENT = new ThreadLocal<>();
+
+		private final FrameDetection detection;
+
+		private final int frame;
+
+		private final CountDownLatch canceled = new CountDownLatch( 1 );
+
+		private List< Spot > result;
+
+		private String cancelReason;
+
+		private StubDetector( final FrameDetection detection, final int frame )
+		{
+			this.detection = detection;
+			this.frame = frame;
+		}
+
+		private static StubDetector current()
+		{
+			return CURRENT.get();
+		}
+
+		@Override
+		public boolean checkInput()
+		{
+			return true;
+		}
+
+		@Override
+		public boolean process()
+		{
+			CURRENT.set( this );
+			try
+			{
+				result = detection.detect( frame );
+			}
+			finally
+			{
+				CURRENT.remove();
+			}
+			return null != result;
+		}
+
+		@Override
+		public List< Spot > getResult()
+		{
+			return result;
+		}
+
+		@Override
+		public String getErrorMessage()
+		{
+			return "Detection failed in frame " + frame + ".";
+		}
+
+		@Override
+		public long getProcessingTime()
+		{
+			return 0;
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return null != cancelReason;
+		}
+
+		@Override
+		public void cancel( final String reason )
+		{
+			cancelReason = reason;
+			canceled.countDown();
+		}
+
+		@Override
+		public String getCancelReason()
+		{
+			return cancelReason;
+		}
+	}
+
+	private static final class StubDetectorFactory implements SpotDetectorFactory< UnsignedByteType >
+	{
+
+		private final FrameDetection detection;
+
+		private StubDetectorFactory( final FrameDetection detection )
+		{
+			this.detection = detection;
+		}
+
+		@Override
+		public SpotDetector< UnsignedByteType > getDetector( final Interval interval, final int frame )
+		{
+			return new StubDetector( detection, frame );
+		}
+
+		@Override
+		public boolean setTarget( final ImgPlus< UnsignedByteType > img, final Map< String, Object > settings )
+		{
+			return true;
+		}
+
+		@Override
+		public String getErrorMessage()
+		{
+			return null;
+		}
+
+		@Override
+		public boolean marshall( final Map< String, Object > settings, final Element element )
+		{
+			return true;
+		}
+
+		@Override
+		public boolean unmarshall( final Element element, final Map< String, Object > settings )
+		{
+			return true;
+		}
+
+		@Override
+		public ConfigurationPanel getDetectorConfigurationPanel( final Settings settings, final Model model )
+		{
+			return null;
+		}
+
+		@Override
+		public Map< String, Object > getDefaultSettings()
+		{
+			return Collections.emptyMap();
+		}
+
+		@Override
+		public boolean checkSettings( final Map< String, Object > settings )
+		{
+			return true;
+		}
+
+		@Override
+		public StubDetectorFactory copy()
+		{
+			return new StubDetectorFactory( detection );
+		}
+
+		@Override
+		public String getInfoText()
+		{
+			return null;
+		}
+
+		@Override
+		public ImageIcon getIcon()
+		{
+			return null;
+		}
+
+		@Override
+		public String getKey()
+		{
+			return "STUB_DETECTOR";
+		}
+
+		@Override
+		public String getName()
+		{
+			return "Stub detector";
+		}
+	}
+}
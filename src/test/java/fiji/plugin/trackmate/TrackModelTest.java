@@ -30,7 +30,10 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
+import org.jgrapht.Graphs;
+import org.jgrapht.alg.connectivity.ConnectivityInspector;
 import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
 import org.junit.Test;
 
 public class TrackModelTest
@@ -274,4 +277,125 @@ public class TrackModelTest
 		assertTrue( model.isVisible( id ) );
 	}
 
+
+	@Test
+	public void testRandomEdits()
+	{
+		final Random ran = new Random( 1l );
+		final TrackModel model = new TrackModel();
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 200; i++ )
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+			model.addSpot( spot );
+			spots.add( spot );
+		}
+
+		for ( int i = 0; i < 2000; i++ )
+		{
+			final Spot source = spots.get( ran.nextInt( spots.size() ) );
+			final Spot target = spots.get( ran.nextInt( spots.size() ) );
+			switch ( ran.nextInt( 4 ) )
+			{
+			case 0:
+			case 1:
+				if ( source != target && !model.containsEdge( source, target ) && !model.containsEdge( target, source ) )
+					model.addEdge( source, target, 1 );
+				break;
+			case 2:
+				final Set< DefaultWeightedEdge > edges = model.edgesOf( source );
+				if ( !edges.isEmpty() )
+					model.removeEdge( edges.iterator().next() );
+				break;
+			case 3:
+				model.removeSpot( source );
+				spots.remove( source );
+				final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+				model.addSpot( spot );
+				spots.add( spot );
+				break;
+			}
+			assertConsistent( model );
+		}
+	}
+
+	@Test
+	public void testBulkBuildMatchesIncremental()
+	{
+		final Random ran = new Random( 2l );
+		final TrackModel model = new TrackModel();
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 500; i++ )
+		{
+			final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+			model.addSpot( spot );
+			spots.add( spot );
+		}
+		for ( int i = 0; i < 400; i++ )
+		{
+			final Spot source = spots.get( ran.nextInt( spots.size() ) );
+			final Spot target = spots.get( ran.nextInt( spots.size() ) );
+			if ( source != target && !model.containsEdge( source, target ) && !model.containsEdge( target, source ) )
+				model.addEdge( source, target, 1 );
+		}
+
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		Graphs.addGraph( graph, model.graph );
+		final TrackModel rebuilt = new TrackModel();
+		rebuilt.setGraph( graph );
+		assertConsistent( rebuilt );
+		assertEquals( partition( model ), partition( rebuilt ) );
+
+		// Track IDs are given in the order of the spots, lonely spots included.
+		final Set< Integer > seen = new HashSet<>();
+		int previous = -1;
+		for ( final Spot spot : graph.vertexSet() )
+		{
+			final Integer id = rebuilt.trackIDOf( spot );
+			if ( null != id && seen.add( id ) )
+			{
+				assertTrue( id > previous );
+				previous = id;
+			}
+		}
+	}
+
+	/**
+	 * Checks that the tracks of the model are the connected components of its
+	 * graph, and that the ID maps agree with the track sets.
+	 */
+	private static void assertConsistent( final TrackModel model )
+	{
+		final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		Graphs.addGraph( graph, model.graph );
+		final Set< Set< Spot > > expected = new HashSet<>();
+		for ( final Set< Spot > component : new ConnectivityInspector<>( graph ).connectedSets() )
+			if ( component.size() > 1 )
+				expected.add( component );
+		assertEquals( expected, partition( model ) );
+
+		for ( final Integer id : model.trackIDs( false ) )
+		{
+			for ( final Spot spot : model.trackSpots( id ) )
+				assertEquals( id, model.trackIDOf( spot ) );
+			for ( final DefaultWeightedEdge edge : model.trackEdges( id ) )
+			{
+				assertEquals( id, model.trackIDOf( edge ) );
+				assertTrue( model.trackSpots( id ).contains( model.getEdgeSource( edge ) ) );
+			}
+			assertTrue( null != model.name( id ) );
+		}
+		for ( final Spot spot : model.vertexSet() )
+			if ( model.edgesOf( spot ).isEmpty() )
+				assertEquals( null, model.trackIDOf( spot ) );
+		assertEquals( model.edgeSet().size(), model.trackIDs( false ).stream().mapToInt( id -> model.trackEdges( id ).size() ).sum() );
+	}
+
+	private static Set< Set< Spot > > partition( final TrackModel model )
+	{
+		final Set< Set< Spot > > partition = new HashSet<>();
+		for ( final Integer id : model.trackIDs( false ) )
+			partition.add( new HashSet<>( model.trackSpots( id ) ) );
+		return partition;
+	}
 }
@@ -0,0 +1,218 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+
+public class EdgeCollectionDatasetTest
+{
+
+	private static final int N_FRAMES = 6;
+
+	private static final int N_SPOTS_PER_FRAME = 30;
+
+	@Test
+	public void testEdgeMap()
+	{
+		final Random ran = new Random( 1l );
+		final Model model = createModel( ran );
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Some edges of the model, in random order.
+		final List< DefaultWeightedEdge > edges = new ArrayList<>();
+		for ( final DefaultWeightedEdge edge : trackModel.edgeSet() )
+			if ( ran.nextInt( 4 ) > 0 )
+				edges.add( edge );
+		Collections.shuffle( edges, ran );
+
+		// The model must have all the cases we test.
+		boolean backward = false;
+		boolean sameFrame = false;
+		for ( final DefaultWeightedEdge edge : edges )
+		{
+			final int ts = frame( trackModel.getEdgeSource( edge ) );
+			final int tt = frame( trackModel.getEdgeTarget( edge ) );
+			backward |= ts > tt;
+			sameFrame |= ts == tt;
+		}
+		assertTrue( backward );
+		assertTrue( sameFrame );
+
+		final int[][] edgeMap = EdgeCollectionDataset.createEdgeMap( edges, trackModel );
+		final int[][] expected = createEdgeMapAllPairs( edges, trackModel );
+		assertTrue( Arrays.stream( expected ).anyMatch( successors -> successors == null ) );
+		assertEquals( edges.size(), edgeMap.length );
+		for ( int i = 0; i < edges.size(); i++ )
+		{
+			if ( expected[ i ] == null )
+			{
+				assertNull( "Edge " + i + " has no successor.", edgeMap[ i ] );
+				continue;
+			}
+			final int[] actual = edgeMap[ i ].clone();
+			Arrays.sort( actual );
+			assertArrayEquals( "Successors of edge " + i, expected[ i ], actual );
+		}
+	}
+
+	@Test
+	public void testFeatureValues()
+	{
+		final Model model = new Model();
+		final Spot a = new Spot( 1., 2., 0., 1., -1. );
+		final Spot b = new Spot( 3., 4., 0., 1., -1. );
+		final Spot c = new Spot( 5., 6., 0., 1., -1. );
+		final Spot d = new Spot( 7., 8., 0., 1., -1. );
+		final DefaultWeightedEdge ab;
+		final DefaultWeightedEdge bc;
+		final DefaultWeightedEdge cd;
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( a, 0 );
+			model.addSpotTo( b, 1 );
+			model.addSpotTo( c, 2 );
+			model.addSpotTo( d, 3 );
+			ab = model.addEdge( a, b, 1. );
+			bc = model.addEdge( b, c, 2. );
+			cd = model.addEdge( c, d, 3. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final FeatureModel fm = model.getFeatureModel();
+		fm.putEdgeFeature( ab, EdgeTargetAnalyzer.EDGE_COST, 1. );
+		fm.putEdgeFeature( bc, EdgeTargetAnalyzer.EDGE_COST, 2. );
+		fm.putEdgeFeature( cd, EdgeTargetAnalyzer.EDGE_COST, 3. );
+		fm.putEdgeFeature( ab, EdgeTargetAnalyzer.SPOT_SOURCE_ID, 10. );
+		fm.putEdgeFeature( bc, EdgeTargetAnalyzer.SPOT_SOURCE_ID, Double.NaN );
+		fm.removeEdgeFeature( cd, EdgeTargetAnalyzer.SPOT_SOURCE_ID );
+
+		final EdgeCollectionDataset dataset = new EdgeCollectionDataset( model, null, DisplaySettings.defaultStyle().copy(),
+				EdgeTargetAnalyzer.EDGE_COST, Arrays.asList( EdgeTargetAnalyzer.SPOT_SOURCE_ID ), Arrays.asList( ab, bc, cd ), false );
+
+		assertEquals( 3, dataset.getItemCount( 0 ) );
+		assertEquals( 3., dataset.getXValue( 0, 2 ), 0. );
+		assertEquals( Double.valueOf( 2. ), dataset.getX( 0, 1 ) );
+
+		// Set value.
+		assertEquals( Double.valueOf( 10. ), dataset.getY( 0, 0 ) );
+		assertEquals( 10., dataset.getYValue( 0, 0 ), 0. );
+
+		// NaN value.
+		assertEquals( Double.valueOf( Double.NaN ), dataset.getY( 0, 1 ) );
+		assertTrue( Double.isNaN( dataset.getYValue( 0, 1 ) ) );
+
+		// Missing value.
+		assertNull( dataset.getY( 0, 2 ) );
+		assertTrue( Double.isNaN( dataset.getYValue( 0, 2 ) ) );
+
+		// Items are queried with the series keys.
+		final String key = dataset.getSeriesKey( 0 );
+		final List< Double > values = new ArrayList<>();
+		dataset.forEach( item -> values.add( item.get( key ) ) );
+		assertEquals( Arrays.asList( 10., Double.NaN, null ), values );
+		dataset.close();
+	}
+
+	/**
+	 * Links spots with random source and target, possibly in the same frame
+	 * or with the source after the target.
+	 */
+	private static Model createModel( final Random ran )
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			final List< List< Spot > > frames = new ArrayList<>();
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final List< Spot > frame = new ArrayList<>();
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+					frame.add( model.addSpotTo( new Spot( ran.nextDouble(), ran.nextDouble(), 0., 1., -1. ), t ) );
+				frames.add( frame );
+			}
+
+			for ( int k = 0; k < N_FRAMES * N_SPOTS_PER_FRAME; k++ )
+			{
+				final int ts = ran.nextInt( N_FRAMES );
+				final int tt = Math.max( 0, Math.min( N_FRAMES - 1, ts + ran.nextInt( 5 ) - 2 ) );
+				final Spot source = frames.get( ts ).get( ran.nextInt( N_SPOTS_PER_FRAME ) );
+				final Spot target = frames.get( tt ).get( ran.nextInt( N_SPOTS_PER_FRAME ) );
+				if ( source != target && !model.getTrackModel().containsEdge( source, target ) )
+					model.addEdge( source, target, 1. );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	/**
+	 * Checks all the pairs of edges for a successor, starting at the target
+	 * of the first edge.
+	 */
+	private static int[][] createEdgeMapAllPairs( final List< DefaultWeightedEdge > edges, final TrackModel trackModel )
+	{
+		final int[][] edgeMap = new int[ edges.size() ][];
+		for ( int i = 0; i < edges.size(); i++ )
+		{
+			final Spot target = trackModel.getEdgeTarget( edges.get( i ) );
+			final List< Integer > successors = new ArrayList<>();
+			for ( int k = 0; k < edges.size(); k++ )
+				if ( trackModel.getEdgeSource( edges.get( k ) ) == target )
+					successors.add( Integer.valueOf( k ) );
+			if ( !successors.isEmpty() )
+				edgeMap[ i ] = successors.stream().mapToInt( Integer::intValue ).toArray();
+		}
+		return edgeMap;
+	}
+
+	private static int frame( final Spot spot )
+	{
+		return spot.getFeature( Spot.FRAME ).intValue();
+	}
+}
@@ -0,0 +1,316 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.track.TrackAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackBranchingAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackLocationAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackSpotQualityFeatureAnalyzer;
+
+public class ModelFeatureUpdaterTest
+{
+
+	private static final int N_TRACKS = 10;
+
+	private static final int DEPTH = 20;
+
+	private Model model;
+
+	private Settings settings;
+
+	private CountingLocationAnalyzer locationAnalyzer;
+
+	private Random ran;
+
+	@Before
+	public void setUp()
+	{
+		ran = new Random( 1l );
+		locationAnalyzer = new CountingLocationAnalyzer();
+		settings = new Settings();
+		settings.addTrackAnalyzer( locationAnalyzer );
+		settings.addTrackAnalyzer( new TrackSpotQualityFeatureAnalyzer() );
+		settings.addTrackAnalyzer( new TrackBranchingAnalyzer() );
+		settings.addTrackAnalyzer( new TrackIndexAnalyzer() );
+
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < DEPTH; t++ )
+				{
+					final Spot spot = newSpot();
+					model.addSpotTo( spot, t );
+					if ( null != previous )
+						model.addEdge( previous, spot, 1. );
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings, false );
+		calculator.process();
+	}
+
+	@Test
+	public void testGrowthIsIncremental()
+	{
+		new ModelFeatureUpdater( model, settings );
+		final Integer trackID = model.getTrackModel().trackIDs( false ).iterator().next();
+		final Spot last = lastSpot( trackID );
+
+		// First change: aggregates are built from the whole track.
+		locationAnalyzer.nSpotsAccumulated = 0;
+		Spot previous = last;
+		previous = extend( previous );
+		assertEquals( DEPTH + 1, locationAnalyzer.nSpotsAccumulated );
+
+		// Next changes: only the new spot is accumulated.
+		locationAnalyzer.nSpotsAccumulated = 0;
+		previous = extend( previous );
+		assertEquals( 1, locationAnalyzer.nSpotsAccumulated );
+		assertFeaturesUpToDate();
+	}
+
+	@Test
+	public void testMergeIsIncremental()
+	{
+		new ModelFeatureUpdater( model, settings );
+		final List< Integer > trackIDs = new ArrayList<>( model.getTrackModel().trackIDs( false ) );
+
+		// Build the aggregates of the two tracks.
+		final Spot last1 = extend( lastSpot( trackIDs.get( 0 ) ) );
+		final Spot last2 = extend( lastSpot( trackIDs.get( 1 ) ) );
+
+		// Merge them with a new spot.
+		locationAnalyzer.nSpotsAccumulated = 0;
+		final Spot spot = newSpot();
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( spot, DEPTH + 1 );
+			model.addEdge( last1, spot, 1. );
+			model.addEdge( last2, spot, 1. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( 1, locationAnalyzer.nSpotsAccumulated );
+		assertFeaturesUpToDate();
+	}
+
+	@Test
+	public void testBatch()
+	{
+		final ModelFeatureUpdater updater = new ModelFeatureUpdater( model, settings );
+		final Integer trackID = model.getTrackModel().trackIDs( false ).iterator().next();
+		Spot previous = extend( lastSpot( trackID ) );
+
+		locationAnalyzer.nSpotsAccumulated = 0;
+		updater.beginBatch();
+		for ( int i = 0; i < 5; i++ )
+			previous = extend( previous );
+		assertEquals( 0, locationAnalyzer.nSpotsAccumulated );
+		updater.endBatch();
+		assertEquals( 5, locationAnalyzer.nSpotsAccumulated );
+		assertFeaturesUpToDate();
+	}
+
+	@Test
+	public void testRandomEdits()
+	{
+		final ModelFeatureUpdater updater = new ModelFeatureUpdater( model, settings );
+		for ( int i = 0; i < 200; i++ )
+		{
+			final boolean batch = ran.nextInt( 5 ) == 0;
+			if ( batch )
+				updater.beginBatch();
+
+			final int nEdits = batch ? 1 + ran.nextInt( 4 ) : 1;
+			for ( int j = 0; j < nEdits; j++ )
+				randomEdit();
+
+			if ( batch )
+				updater.endBatch();
+
+			assertFeaturesUpToDate();
+		}
+	}
+
+	/*
+	 * HELPERS
+	 */
+
+	private void randomEdit()
+	{
+		final List< Spot > spots = new ArrayList<>();
+		model.getSpots().iterable( false ).forEach( spots::add );
+		final Spot target = spots.get( ran.nextInt( spots.size() ) );
+		final int frame = target.getFeature( Spot.FRAME ).intValue();
+
+		model.beginUpdate();
+		try
+		{
+			switch ( ran.nextInt( 6 ) )
+			{
+			case 0:
+			case 1:
+			{
+				// Extend.
+				final Spot spot = newSpot();
+				model.addSpotTo( spot, frame + 1 );
+				model.addEdge( target, spot, 1. );
+				break;
+			}
+			case 2:
+			{
+				// Link to a spot in another frame, possibly merging tracks.
+				final Spot other = spots.get( ran.nextInt( spots.size() ) );
+				if ( other.getFeature( Spot.FRAME ).intValue() != frame && !model.getTrackModel().containsEdge( target, other ) )
+					model.addEdge( target, other, 1. );
+				break;
+			}
+			case 3:
+				model.removeSpot( target );
+				break;
+			case 4:
+			{
+				final Set< DefaultWeightedEdge > edges = model.getTrackModel().edgesOf( target );
+				if ( !edges.isEmpty() )
+					model.removeEdge( edges.iterator().next() );
+				break;
+			}
+			case 5:
+				target.putFeature( Spot.POSITION_X, 100. * ran.nextDouble() );
+				model.updateFeatures( target );
+				break;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private Spot extend( final Spot previous )
+	{
+		final Spot spot = newSpot();
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( spot, previous.getFeature( Spot.FRAME ).intValue() + 1 );
+			model.addEdge( previous, spot, 1. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return spot;
+	}
+
+	private Spot lastSpot( final Integer trackID )
+	{
+		Spot last = null;
+		for ( final Spot spot : model.getTrackModel().trackSpots( trackID ) )
+			if ( null == last || spot.diffTo( last, Spot.FRAME ) > 0 )
+				last = spot;
+		return last;
+	}
+
+	private Spot newSpot()
+	{
+		return new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 10. * ran.nextDouble(), 1., 10. * ran.nextDouble() );
+	}
+
+	/**
+	 * Checks that the track features are equal to the ones computed from
+	 * scratch.
+	 */
+	private void assertFeaturesUpToDate()
+	{
+		final FeatureModel fm = model.getFeatureModel();
+		final Set< Integer > trackIDs = model.getTrackModel().trackIDs( false );
+		final Map< Integer, Map< String, Double > > updated = new HashMap<>();
+		for ( final Integer trackID : trackIDs )
+		{
+			final Map< String, Double > features = new HashMap<>();
+			for ( final TrackAnalyzer analyzer : settings.getTrackAnalyzers() )
+				for ( final String feature : analyzer.getFeatures() )
+					features.put( feature, fm.getTrackFeature( trackID, feature ) );
+			updated.put( trackID, features );
+		}
+
+		final TrackFeatureCalculator calculator = new TrackFeatureCalculator( model, settings, false );
+		calculator.process();
+
+		for ( final Integer trackID : trackIDs )
+		{
+			for ( final Map.Entry< String, Double > entry : updated.get( trackID ).entrySet() )
+			{
+				final double expected = fm.getTrackFeature( trackID, entry.getKey() );
+				assertEquals( "Unexpected value for feature " + entry.getKey() + " of track " + trackID + ".",
+						expected, entry.getValue(), 1e-9 * Math.max( 1., Math.abs( expected ) ) );
+			}
+		}
+	}
+
+	/**
+	 * Counts the spots it accumulates.
+	 */
+	private static final class CountingLocationAnalyzer extends TrackLocationAnalyzer
+	{
+
+		private int nSpotsAccumulated = 0;
+
+		@Override
+		public void accumulate( final Spot spot, final double[] aggregate )
+		{
+			nSpotsAccumulated++;
+			super.accumulate( spot, aggregate );
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+
+public class SpotCollectionDatasetTest
+{
+
+	private static final int N_FRAMES = 6;
+
+	private static final int N_SPOTS_PER_FRAME = 30;
+
+	@Test
+	public void testEdgeMap()
+	{
+		final Random ran = new Random( 1l );
+		final Model model = createModel( ran );
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Some spots of the model, in random order.
+		final List< Spot > spots = new ArrayList<>();
+		for ( final Spot spot : model.getSpots().iterable( false ) )
+			if ( ran.nextInt( 4 ) > 0 )
+				spots.add( spot );
+		Collections.shuffle( spots, ran );
+
+		// The model must have all the cases we test.
+		boolean backward = false;
+		boolean sameFrame = false;
+		for ( final DefaultWeightedEdge edge : trackModel.edgeSet() )
+		{
+			final int ts = frame( trackModel.getEdgeSource( edge ) );
+			final int tt = frame( trackModel.getEdgeTarget( edge ) );
+			backward |= ts > tt;
+			sameFrame |= ts == tt;
+		}
+		assertTrue( backward );
+		assertTrue( sameFrame );
+		assertTrue( spots.stream().anyMatch( s -> trackModel.edgesOf( s ).isEmpty() ) );
+
+		final int[][] edgeMap = SpotCollectionDataset.createEdgeMap( spots, trackModel );
+		final int[][] expected = createEdgeMapAllPairs( spots, trackModel );
+		assertEquals( spots.size(), edgeMap.length );
+		for ( int i = 0; i < spots.size(); i++ )
+		{
+			if ( expected[ i ] == null )
+			{
+				assertNull( "Spot " + i + " has no link to plot.", edgeMap[ i ] );
+				continue;
+			}
+			final int[] actual = edgeMap[ i ].clone();
+			Arrays.sort( actual );
+			assertArrayEquals( "Links of spot " + i, expected[ i ], actual );
+		}
+	}
+
+	@Test
+	public void testFeatureValues()
+	{
+		final Model model = new Model();
+		final Spot a = new Spot( 1., 2., 0., 1., 10. );
+		final Spot b = new Spot( 3., 4., 0., 1., 20. );
+		final Spot c = new Spot( 5., 6., 0., 1., 30. );
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( a, 0 );
+			model.addSpotTo( b, 1 );
+			model.addSpotTo( c, 2 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		b.putFeature( Spot.QUALITY, Double.NaN );
+		c.removeFeature( Spot.QUALITY );
+
+		final SpotCollectionDataset dataset = new SpotCollectionDataset( model, null, DisplaySettings.defaultStyle().copy(),
+				Spot.POSITION_X, Arrays.asList( Spot.POSITION_Y, Spot.QUALITY ), Arrays.asList( a, b, c ), false );
+
+		assertEquals( 3, dataset.getItemCount( 0 ) );
+		assertEquals( 5., dataset.getXValue( 0, 2 ), 0. );
+		assertEquals( Double.valueOf( 5. ), dataset.getX( 1, 2 ) );
+		assertEquals( 4., dataset.getYValue( 0, 1 ), 0. );
+
+		// Set value.
+		assertEquals( Double.valueOf( 10. ), dataset.getY( 1, 0 ) );
+		assertEquals( 10., dataset.getYValue( 1, 0 ), 0. );
+
+		// NaN value.
+		assertEquals( Double.valueOf( Double.NaN ), dataset.getY( 1, 1 ) );
+		assertTrue( Double.isNaN( dataset.getYValue( 1, 1 ) ) );
+
+		// Missing value.
+		assertNull( dataset.getY( 1, 2 ) );
+		assertTrue( Double.isNaN( dataset.getYValue( 1, 2 ) ) );
+
+		// Items are queried with the series keys.
+		final String qualityKey = dataset.getSeriesKey( 1 );
+		final List< Double > qualities = new ArrayList<>();
+		dataset.forEach( item -> qualities.add( item.get( qualityKey ) ) );
+		assertEquals( Arrays.asList( 10., Double.NaN, null ), qualities );
+
+		// The values are sampled again after a model change.
+		c.putFeature( Spot.QUALITY, 30. );
+		assertNull( dataset.getY( 1, 2 ) );
+		model.beginUpdate();
+		try
+		{
+			model.updateFeatures( c );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertEquals( Double.valueOf( 30. ), dataset.getY( 1, 2 ) );
+		dataset.close();
+	}
+
+	/**
+	 * Links spots with random source and target, possibly in the same frame
+	 * or with the source after the target.
+	 */
+	private static Model createModel( final Random ran )
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			final List< List< Spot > > frames = new ArrayList<>();
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final List< Spot > frame = new ArrayList<>();
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+					frame.add( model.addSpotTo( new Spot( ran.nextDouble(), ran.nextDouble(), 0., 1., -1. ), t ) );
+				frames.add( frame );
+			}
+
+			for ( int k = 0; k < N_FRAMES * N_SPOTS_PER_FRAME; k++ )
+			{
+				final int ts = ran.nextInt( N_FRAMES );
+				final int tt = Math.max( 0, Math.min( N_FRAMES - 1, ts + ran.nextInt( 5 ) - 2 ) );
+				final Spot source = frames.get( ts ).get( ran.nextInt( N_SPOTS_PER_FRAME ) );
+				final Spot target = frames.get( tt ).get( ran.nextInt( N_SPOTS_PER_FRAME ) );
+				if ( source != target && !model.getTrackModel().containsEdge( source, target ) )
+					model.addEdge( source, target, 1. );
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	/**
+	 * Checks all the pairs of spots for a link, with the first spot not in a
+	 * later frame than the second one.
+	 */
+	private static int[][] createEdgeMapAllPairs( final List< Spot > spots, final TrackModel trackModel )
+	{
+		final int[][] edgeMap = new int[ spots.size() ][];
+		for ( int i = 0; i < spots.size(); i++ )
+		{
+			final Spot source = spots.get( i );
+			final List< Integer > targets = new ArrayList<>();
+			for ( int j = 0; j < spots.size(); j++ )
+			{
+				final Spot target = spots.get( j );
+				if ( frame( source ) > frame( target ) )
+					continue;
+				if ( trackModel.containsEdge( source, target ) )
+					targets.add( Integer.valueOf( j ) );
+			}
+			if ( !targets.isEmpty() )
+				edgeMap[ i ] = targets.stream().mapToInt( Integer::intValue ).toArray();
+		}
+		return edgeMap;
+	}
+
+	private static int frame( final Spot spot )
+	{
+		return spot.getFeature( Spot.FRAME ).intValue();
+	}
+}
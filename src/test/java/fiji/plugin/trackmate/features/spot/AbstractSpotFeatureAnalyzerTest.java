@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.spot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import net.imglib2.type.numeric.real.DoubleType;
+
+public class AbstractSpotFeatureAnalyzerTest
+{
+
+	@Test
+	public void testProcessesEachSpotOnce()
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int i = 0; i < 10000; i++ )
+			spots.add( new Spot( i, 0., 0., ( i % 100 == 0 ) ? 20. : 1., -1. ) );
+
+		final Map< Spot, AtomicInteger > counts = new ConcurrentHashMap<>();
+		final Map< AbstractSpotFeatureAnalyzer.Scratch, Thread > owners = new ConcurrentHashMap<>();
+		final AtomicBoolean shared = new AtomicBoolean( false );
+		final AbstractSpotFeatureAnalyzer< DoubleType > analyzer = new AbstractSpotFeatureAnalyzer< DoubleType >()
+		{
+			@Override
+			public void process( final Spot spot )
+			{
+				process( spot, new Scratch() );
+			}
+
+			@Override
+			public void process( final Spot spot, final Scratch scratch )
+			{
+				// A scratch space is never shared between threads.
+				final Thread owner = owners.putIfAbsent( scratch, Thread.currentThread() );
+				if ( null != owner && owner != Thread.currentThread() )
+					shared.set( true );
+				counts.computeIfAbsent( spot, s -> new AtomicInteger() ).incrementAndGet();
+			}
+		};
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			counts.clear();
+			analyzer.setNumThreads( numThreads );
+			analyzer.process( spots );
+
+			assertEquals( spots.size(), counts.size() );
+			for ( final AtomicInteger count : counts.values() )
+				assertEquals( 1, count.get() );
+			assertTrue( analyzer.getThroughput() > 0. );
+			assertFalse( shared.get() );
+		}
+	}
+}
@@ -23,11 +23,18 @@ package fiji.plugin.trackmate.features.spot;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.util.SpotNeighborhood;
+import fiji.plugin.trackmate.util.SpotUtil;
+import fiji.plugin.trackmate.util.TMUtils;
 import net.imagej.ImgPlus;
 import net.imagej.axis.Axes;
 import net.imagej.axis.AxisType;
@@ -35,6 +42,7 @@ import net.imglib2.RandomAccess;
 import net.imglib2.img.Img;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Util;
 
 public class SpotIntensityAnalyzerTest
 {
@@ -89,6 +97,46 @@ public class SpotIntensityAnalyzerTest
 		assertEquals( TEST_VAL, spot.getFeature( SpotIntensityMultiCAnalyzerFactory.MIN_INTENSITY + '1' ).doubleValue(), 1e-10 );
 	}
 
+	@Test
+	public void testStatisticsMatchSortedValues()
+	{
+		// Random values in the image.
+		final Random ran = new Random( 1l );
+		for ( final UnsignedShortType pixel : img2D )
+			pixel.set( ran.nextInt( 4096 ) );
+
+		final SpotIntensityMultiCAnalyzer< UnsignedShortType > analyzer = new SpotIntensityMultiCAnalyzer<>( img2D, 0 );
+		analyzer.process( spot );
+
+		final List< Double > values = new ArrayList<>();
+		for ( final UnsignedShortType pixel : SpotUtil.iterable( spot, img2D ) )
+			values.add( pixel.getRealDouble() );
+		final double[] sorted = values.stream().mapToDouble( Double::doubleValue ).sorted().toArray();
+
+		assertEquals( Util.average( sorted ), spot.getFeature( SpotIntensityMultiCAnalyzerFactory.MEAN_INTENSITY + '1' ).doubleValue(), 1e-9 );
+		assertEquals( sorted[ sorted.length / 2 ], spot.getFeature( SpotIntensityMultiCAnalyzerFactory.MEDIAN_INTENSITY + '1' ).doubleValue(), 0. );
+		assertEquals( sorted[ 0 ], spot.getFeature( SpotIntensityMultiCAnalyzerFactory.MIN_INTENSITY + '1' ).doubleValue(), 0. );
+		assertEquals( sorted[ sorted.length - 1 ], spot.getFeature( SpotIntensityMultiCAnalyzerFactory.MAX_INTENSITY + '1' ).doubleValue(), 0. );
+		assertEquals( TMUtils.sum( sorted ), spot.getFeature( SpotIntensityMultiCAnalyzerFactory.TOTAL_INTENSITY + '1' ).doubleValue(), 1e-6 );
+		assertEquals( TMUtils.standardDeviation( sorted ), spot.getFeature( SpotIntensityMultiCAnalyzerFactory.STD_INTENSITY + '1' ).doubleValue(), 1e-9 );
+	}
+
+	@Test
+	public void testSelect()
+	{
+		final Random ran = new Random( 2l );
+		for ( int n = 1; n < 50; n++ )
+		{
+			final double[] data = new double[ n + 5 ];
+			for ( int i = 0; i < data.length; i++ )
+				data[ i ] = ran.nextInt( 10 );
+			final double[] sorted = Arrays.copyOf( data, n );
+			Arrays.sort( sorted );
+			for ( int k = 0; k < n; k++ )
+				assertEquals( sorted[ k ], TMUtils.select( Arrays.copyOf( data, data.length ), n, k ), 0. );
+		}
+	}
+
 	/**
 	 * Interactive test.
 	 */
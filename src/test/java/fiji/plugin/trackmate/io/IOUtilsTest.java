@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IOUtilsTest
+{
+
+	@Test
+	public void testParseDoubleMatchesJdk()
+	{
+		final String[] values = new String[] {
+				"0", "0.0", "-0.0", "+1", "1.", ".5", "12.5", "-0.003", "1.0E-4", "1e5", "2.5E+10",
+				"123456789012345", "1234567890123456", "0.1", "0.30000000000000004", "9007199254740993",
+				"1.7976931348623157E308", "4.9E-324", "1.0E-320", "1.0E23", "1e22", "00012.0500",
+				"NaN", "Infinity", "-Infinity", "0x1p3", "1d", " 2.5", "2.5 " };
+		for ( final String str : values )
+			assertParse( str );
+
+		final Random ran = new Random( 1l );
+		for ( int i = 0; i < 100000; i++ )
+		{
+			final double val = ( ran.nextDouble() - 0.5 ) * Math.pow( 10, ran.nextInt( 40 ) - 20 );
+			assertParse( Double.toString( val ) );
+			assertParse( String.format( "%.3f", val ) );
+			assertParse( Float.toString( ( float ) val ) );
+			assertParse( Integer.toString( ran.nextInt() ) );
+		}
+	}
+
+	@Test
+	public void testParseDoubleFullPrecision()
+	{
+		final String[] values = new String[] {
+				"9999999999999999999", "18446744073709551615", "9223372036854775808", "9223372036854775807",
+				"976069.9434331620757E0", "2.2250738585072014E-308", "2.225073858507201E-308", "8.98846567431158E307",
+				"9007199254740993", "9007199254740992.5", "0.1000000000000000055511151231257827", "7.2057594037927933E16",
+				"1.00000000000000011102230246251565404236316680908203125", "5e-324", "1e-342", "1e308", "1.8e308" };
+		for ( final String str : values )
+			assertParse( str );
+
+		final Random ran = new Random( 2l );
+		for ( int i = 0; i < 100000; i++ )
+		{
+			// Any finite double, as written by TmXmlWriter.
+			final double val = Double.longBitsToDouble( ran.nextLong() & 0x7FEFFFFFFFFFFFFFl );
+			assertParse( Double.toString( val ) );
+
+			// Close to halfway between two consecutive doubles.
+			final BigDecimal halfway = new BigDecimal( val ).add( new BigDecimal( Math.nextUp( val ) ) ).divide( BigDecimal.valueOf( 2 ) );
+			assertParse( halfway.round( new MathContext( 19 ) ).toString() );
+			assertParse( halfway.round( new MathContext( 17 ) ).toString() );
+
+			// 19-digit mantissas with any exponent.
+			final long mantissa = ran.nextLong() >>> ran.nextInt( 8 );
+			assertParse( Long.toUnsignedString( mantissa ) + "e" + ( ran.nextInt( 700 ) - 350 ) );
+		}
+	}
+
+	@Test
+	public void testParseDoubleRejectsInvalid()
+	{
+		final String[] values = new String[] { "", "-", ".", "1e", "1e+", "1.2.3", "--1", "abc", "1,5" };
+		for ( final String str : values )
+		{
+			try
+			{
+				IOUtils.parseDouble( str );
+				fail( "Parsing '" + str + "' should have failed." );
+			}
+			catch ( final NumberFormatException e )
+			{}
+		}
+	}
+
+	private static void assertParse( final String str )
+	{
+		final double expected = Double.parseDouble( str );
+		final double actual = IOUtils.parseDouble( str );
+		assertEquals( str, Double.doubleToRawLongBits( expected ), Double.doubleToRawLongBits( actual ) );
+	}
+}
@@ -0,0 +1,237 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.TrackModel;
+
+public class TmBinaryIOTest
+{
+
+	private static final int N_TRACKS = 20;
+
+	private static final int N_FRAMES = 10;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRoundTripMatchesXml() throws IOException
+	{
+		final Model source = createModel();
+
+		final File xmlFile = folder.newFile( "model.xml" );
+		final TmXmlWriter xmlWriter = new TmXmlWriter( xmlFile );
+		xmlWriter.appendLog( "log" );
+		xmlWriter.appendModel( source );
+		xmlWriter.writeToFile();
+
+		final File binaryFile = folder.newFile( "model.tmb" );
+		final TmBinaryWriter binaryWriter = new TmBinaryWriter( binaryFile );
+		binaryWriter.appendLog( "log" );
+		binaryWriter.appendModel( source );
+		binaryWriter.writeToFile();
+
+		assertTrue( TmBinaryReader.isBinaryFile( binaryFile ) );
+		assertTrue( !TmBinaryReader.isBinaryFile( xmlFile ) );
+
+		final TmXmlReader xmlReader = new TmXmlReader( xmlFile );
+		final Model expected = xmlReader.getModel();
+		assertTrue( xmlReader.getErrorMessage(), xmlReader.isReadingOk() );
+
+		final TmBinaryReader binaryReader = new TmBinaryReader( binaryFile );
+		final Model actual = binaryReader.getModel();
+		assertTrue( binaryReader.getErrorMessage(), binaryReader.isReadingOk() );
+		assertEquals( "log", binaryReader.getLog() );
+		assertNotNull( actual );
+
+		assertModelEquals( expected, actual );
+	}
+
+	private static void assertModelEquals( final Model expected, final Model actual )
+	{
+		assertEquals( expected.getSpaceUnits(), actual.getSpaceUnits() );
+		assertEquals( expected.getTimeUnits(), actual.getTimeUnits() );
+
+		final FeatureModel efm = expected.getFeatureModel();
+		final FeatureModel afm = actual.getFeatureModel();
+		assertEquals( efm.getSpotFeatures(), afm.getSpotFeatures() );
+		assertEquals( efm.getEdgeFeatures(), afm.getEdgeFeatures() );
+		assertEquals( efm.getTrackFeatures(), afm.getTrackFeatures() );
+		assertEquals( efm.getEdgeFeatureIsInt(), afm.getEdgeFeatureIsInt() );
+
+		// Spots.
+		assertEquals( expected.getSpots().getNSpots( false ), actual.getSpots().getNSpots( false ) );
+		final Map< Integer, Spot > actualSpots = new HashMap<>();
+		for ( final Spot spot : actual.getSpots().iterable( false ) )
+			actualSpots.put( Integer.valueOf( spot.ID() ), spot );
+		for ( final Spot e : expected.getSpots().iterable( false ) )
+		{
+			final Spot a = actualSpots.get( Integer.valueOf( e.ID() ) );
+			assertNotNull( a );
+			assertEquals( e.getName(), a.getName() );
+			assertEquals( e.getFeatures(), a.getFeatures() );
+			if ( null == e.getRoi() )
+			{
+				assertEquals( null, a.getRoi() );
+			}
+			else
+			{
+				assertArrayEquals( e.getRoi().x, a.getRoi().x, 0. );
+				assertArrayEquals( e.getRoi().y, a.getRoi().y, 0. );
+			}
+		}
+
+		// Tracks.
+		final TrackModel etm = expected.getTrackModel();
+		final TrackModel atm = actual.getTrackModel();
+		assertEquals( etm.trackIDs( false ), atm.trackIDs( false ) );
+		assertEquals( etm.trackIDs( true ), atm.trackIDs( true ) );
+		for ( final Integer trackID : etm.trackIDs( false ) )
+		{
+			assertEquals( etm.name( trackID ), atm.name( trackID ) );
+			for ( final String feature : efm.getTrackFeatures() )
+				assertEquals( feature, efm.getTrackFeature( trackID, feature ), afm.getTrackFeature( trackID, feature ) );
+
+			final Set< DefaultWeightedEdge > edges = etm.trackEdges( trackID );
+			assertEquals( edges.size(), atm.trackEdges( trackID ).size() );
+			for ( final DefaultWeightedEdge e : edges )
+			{
+				final DefaultWeightedEdge a = atm.getEdge(
+						actualSpots.get( Integer.valueOf( etm.getEdgeSource( e ).ID() ) ),
+						actualSpots.get( Integer.valueOf( etm.getEdgeTarget( e ).ID() ) ) );
+				assertNotNull( a );
+				assertEquals( etm.getEdgeWeight( e ), atm.getEdgeWeight( a ), 0. );
+				for ( final String feature : efm.getEdgeFeatures() )
+					assertEquals( feature, efm.getEdgeFeature( e, feature ), afm.getEdgeFeature( a, feature ) );
+			}
+		}
+	}
+
+	private static Model createModel()
+	{
+		final Model model = new Model();
+		model.setPhysicalUnits( "µm", "s" );
+		final FeatureModel fm = model.getFeatureModel();
+		fm.declareEdgeFeatures( Arrays.asList( "COST", "INDEX" ),
+				map( "COST", "Cost", "INDEX", "Index" ),
+				map( "COST", "C", "INDEX", "I" ),
+				dimensions( "COST", "INDEX" ),
+				isInt( "COST", false, "INDEX", true ) );
+		fm.declareTrackFeatures( Arrays.asList( "LENGTH" ),
+				map( "LENGTH", "Length" ),
+				map( "LENGTH", "L" ),
+				dimensions( "LENGTH" ),
+				isInt( "LENGTH", false ) );
+
+		final Random ran = new Random( 1l );
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < N_FRAMES; t++ )
+				{
+					final Spot spot = new Spot( ran.nextDouble(), ran.nextDouble(), 0., 1., ran.nextDouble() );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+					// Undeclared feature, with special and missing values.
+					if ( t % 4 != 0 )
+						spot.putFeature( "EXTRA", ( t % 3 == 0 ) ? Double.NaN : Double.NEGATIVE_INFINITY );
+					if ( t == 1 )
+						spot.setRoi( new SpotRoi( new double[] { 0., 1., 2. }, new double[] { -1., 0.5, 3. } ) );
+					if ( t == 2 )
+						spot.setName( "Named spot " + i );
+					model.addSpotTo( spot, Integer.valueOf( t ) );
+					if ( null != previous )
+					{
+						final DefaultWeightedEdge edge = model.addEdge( previous, spot, ran.nextDouble() );
+						fm.putEdgeFeature( edge, "COST", Double.valueOf( ran.nextDouble() ) );
+						if ( t % 2 == 0 )
+							fm.putEdgeFeature( edge, "INDEX", Double.valueOf( t ) );
+					}
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		int i = 0;
+		for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+		{
+			if ( i++ % 3 == 0 )
+				model.setTrackVisibility( trackID, false );
+			else
+				fm.putTrackFeature( trackID, "LENGTH", Double.valueOf( 1.5 * trackID ) );
+		}
+		return model;
+	}
+
+	private static Map< String, String > map( final String... keyValues )
+	{
+		final Map< String, String > map = new HashMap<>();
+		for ( int i = 0; i < keyValues.length; i += 2 )
+			map.put( keyValues[ i ], keyValues[ i + 1 ] );
+		return map;
+	}
+
+	private static Map< String, Dimension > dimensions( final String... keys )
+	{
+		final Map< String, Dimension > map = new HashMap<>();
+		for ( final String key : keys )
+			map.put( key, Dimension.NONE );
+		return map;
+	}
+
+	private static Map< String, Boolean > isInt( final Object... keyValues )
+	{
+		final Map< String, Boolean > map = new HashMap<>();
+		for ( int i = 0; i < keyValues.length; i += 2 )
+			map.put( ( String ) keyValues[ i ], ( Boolean ) keyValues[ i + 1 ] );
+		return map;
+	}
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmXmlKeys.FEATURE_DECLARATIONS_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.FILTERED_TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.MODEL_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_FRAME_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.SPOT_NAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_COLLECTION_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_EDGE_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_ELEMENT_KEY;
+import static fiji.plugin.trackmate.io.TmXmlKeys.TRACK_NAME_ATTRIBUTE_NAME;
+import static fiji.plugin.trackmate.io.TmXmlTestUtils.assertModelEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.jdom2.output.Format;
+import org.jdom2.output.XMLOutputter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Model;
+
+/**
+ * Checks that the model read with {@link TmXmlStreamReader} is the one read
+ * from the JDOM document by {@link TmXmlReader}.
+ */
+public class TmXmlStreamReaderTest
+{
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Model source;
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		source = TmXmlTestUtils.createModel();
+		file = folder.newFile( "model.xml" );
+		final TmXmlWriter writer = new TmXmlWriter( file );
+		writer.appendLog( "log" );
+		writer.appendModel( source );
+		writer.writeToFile();
+	}
+
+	@Test
+	public void testSavedFile()
+	{
+		final Model streamed = assertSameModel( file, true );
+		assertModelEquals( source, streamed );
+	}
+
+	@Test
+	public void testOutOfOrderElements() throws IOException, JDOMException
+	{
+		// Model children in reverse order, with an unknown element.
+		final File reversed = rewrite( file, model -> {
+			final List< Element > children = new ArrayList<>( model.getChildren() );
+			model.removeContent();
+			Collections.reverse( children );
+			children.add( 2, new Element( "Unknown" ).addContent( new Element( TRACK_ELEMENT_KEY ) ) );
+			model.addContent( children );
+		} );
+		assertModelEquals( source, assertSameModel( reversed, true ) );
+
+		// Tracks first, then the filtered tracks, then the rest.
+		final File tracksFirst = rewrite( file, model -> {
+			final Element tracks = model.getChild( TRACK_COLLECTION_ELEMENT_KEY );
+			final Element filtered = model.getChild( FILTERED_TRACK_ELEMENT_KEY );
+			tracks.detach();
+			filtered.detach();
+			model.addContent( 0, filtered );
+			model.addContent( 0, tracks );
+		} );
+		assertModelEquals( source, assertSameModel( tracksFirst, true ) );
+
+		// Frames in reverse order.
+		final File framesReversed = rewrite( file, model -> {
+			final Element spots = model.getChild( SPOT_COLLECTION_ELEMENT_KEY );
+			final List< Element > frames = new ArrayList<>( spots.getChildren() );
+			spots.removeContent();
+			Collections.reverse( frames );
+			spots.addContent( frames );
+		} );
+		assertModelEquals( source, assertSameModel( framesReversed, true ) );
+	}
+
+	@Test
+	public void testMissingAttributes() throws IOException, JDOMException
+	{
+		final File stripped = rewrite( file, model -> {
+			model.getChild( SPOT_COLLECTION_ELEMENT_KEY ).removeAttribute( SPOT_COLLECTION_NSPOTS_ATTRIBUTE_NAME );
+			for ( final Element frame : model.getChild( SPOT_COLLECTION_ELEMENT_KEY ).getChildren( SPOT_FRAME_COLLECTION_ELEMENT_KEY ) )
+				for ( final Element spot : frame.getChildren( SPOT_ELEMENT_KEY ) )
+					spot.removeAttribute( SPOT_NAME_ATTRIBUTE_NAME );
+			for ( final Element track : model.getChild( TRACK_COLLECTION_ELEMENT_KEY ).getChildren( TRACK_ELEMENT_KEY ) )
+			{
+				track.removeAttribute( TRACK_NAME_ATTRIBUTE_NAME );
+				for ( final Element edge : track.getChildren( TRACK_EDGE_ELEMENT_KEY ) )
+					edge.removeAttribute( "COST" );
+			}
+		} );
+		assertSameModel( stripped, true );
+	}
+
+	@Test
+	public void testMissingElements() throws IOException, JDOMException
+	{
+		final String[] elements = new String[] {
+				FEATURE_DECLARATIONS_ELEMENT_KEY,
+				SPOT_COLLECTION_ELEMENT_KEY,
+				TRACK_COLLECTION_ELEMENT_KEY,
+				FILTERED_TRACK_ELEMENT_KEY };
+		for ( final String element : elements )
+		{
+			final File missing = rewrite( file, model -> model.removeChild( element ) );
+			assertSameModel( missing, false );
+		}
+	}
+
+	@Test
+	public void testInvalidValues() throws IOException, JDOMException
+	{
+		final File invalid = rewrite( file, model -> {
+			final Element frame = model.getChild( SPOT_COLLECTION_ELEMENT_KEY ).getChildren( SPOT_FRAME_COLLECTION_ELEMENT_KEY ).get( 1 );
+			frame.getChildren( SPOT_ELEMENT_KEY ).get( 0 ).setAttribute( "EXTRA", "abc" );
+			final Element track = model.getChild( TRACK_COLLECTION_ELEMENT_KEY ).getChildren( TRACK_ELEMENT_KEY ).get( 1 );
+			track.setAttribute( "LENGTH", "xyz" );
+			track.getChildren( TRACK_EDGE_ELEMENT_KEY ).get( 0 ).setAttribute( "COST", "1.2.3" );
+			track.getChildren( TRACK_EDGE_ELEMENT_KEY ).get( 1 ).setAttribute( "INDEX", "2.5" );
+		} );
+		assertSameModel( invalid, false );
+	}
+
+	/**
+	 * Reads the model of a file with and without streaming, checks that both
+	 * readings report the expected status and give the same model, and
+	 * returns the streamed one.
+	 */
+	private static Model assertSameModel( final File file, final boolean expectOk )
+	{
+		final TmXmlReader domReader = new TmXmlReader( file, false );
+		final Model expected = domReader.getModel();
+		assertEquals( domReader.getErrorMessage(), expectOk, domReader.isReadingOk() );
+
+		final TmXmlReader streamReader = new TmXmlReader( file, true );
+		final Model actual = streamReader.getModel();
+		assertEquals( streamReader.getErrorMessage(), expectOk, streamReader.isReadingOk() );
+		assertEquals( "log", streamReader.getLog() );
+
+		assertModelEquals( expected, actual );
+		if ( expectOk )
+			assertTrue( actual.getSpots().getNSpots( false ) > 0 );
+		else
+			assertFalse( streamReader.getErrorMessage().isEmpty() );
+		return actual;
+	}
+
+	/**
+	 * Writes a copy of the file in which the model element is edited.
+	 */
+	private File rewrite( final File file, final Consumer< Element > edit ) throws IOException, JDOMException
+	{
+		final Document document = new SAXBuilder().build( file );
+		edit.accept( document.getRootElement().getChild( MODEL_ELEMENT_KEY ) );
+		final File out = folder.newFile();
+		try (final OutputStream os = new FileOutputStream( out ))
+		{
+			new XMLOutputter( Format.getPrettyFormat() ).output( document, os );
+		}
+		return out;
+	}
+}
@@ -0,0 +1,254 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Dimension;
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.track.TrackIndexAnalyzer;
+
+/**
+ * Model creation and comparison shared by the XML reader and writer tests.
+ */
+final class TmXmlTestUtils
+{
+
+	private static final int N_TRACKS = 12;
+
+	private static final int N_FRAMES = 8;
+
+	private TmXmlTestUtils()
+	{}
+
+	/**
+	 * Creates a model with ROIs, names, special and missing feature values,
+	 * hidden and renamed tracks.
+	 */
+	static Model createModel()
+	{
+		final Model model = new Model();
+		model.setPhysicalUnits( "µm", "s" );
+		final FeatureModel fm = model.getFeatureModel();
+		fm.declareSpotFeatures( Arrays.asList( "EXTRA" ),
+				map( "EXTRA", "Extra" ),
+				map( "EXTRA", "E" ),
+				dimensions( "EXTRA" ),
+				isInt( "EXTRA", false ) );
+		fm.declareEdgeFeatures( Arrays.asList( EdgeTargetAnalyzer.EDGE_COST, "COST", "INDEX" ),
+				map( EdgeTargetAnalyzer.EDGE_COST, "Link cost", "COST", "Cost", "INDEX", "Index" ),
+				map( EdgeTargetAnalyzer.EDGE_COST, "LC", "COST", "C", "INDEX", "I" ),
+				dimensions( EdgeTargetAnalyzer.EDGE_COST, "COST", "INDEX" ),
+				isInt( EdgeTargetAnalyzer.EDGE_COST, false, "COST", false, "INDEX", true ) );
+		fm.declareTrackFeatures( Arrays.asList( "LENGTH" ),
+				map( "LENGTH", "Length" ),
+				map( "LENGTH", "L" ),
+				dimensions( "LENGTH" ),
+				isInt( "LENGTH", false ) );
+
+		final Random ran = new Random( 1l );
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < N_FRAMES; t++ )
+				{
+					final Spot spot = new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 0., 1. + ran.nextDouble(), ran.nextDouble() );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( t ) );
+					if ( t % 4 == 1 )
+						spot.putFeature( "EXTRA", Double.NaN );
+					else if ( t % 4 == 2 )
+						spot.putFeature( "EXTRA", Double.NEGATIVE_INFINITY );
+					else if ( t % 4 == 3 )
+						spot.putFeature( "EXTRA", Double.valueOf( ran.nextGaussian() ) );
+					if ( t == 1 )
+						spot.setRoi( new SpotRoi( new double[] { 0., 1.25, 2. }, new double[] { -1., 0.5, 3. } ) );
+					if ( t == 2 )
+						spot.setRoi( new SpotRoi( new double[] { -0.1, 0.3, 0.7, 0.2 }, new double[] { 1. / 3., -2. / 3., 1e-7, 5. } ) );
+					if ( t == 3 )
+						spot.setName( "Named spot " + i );
+					model.addSpotTo( spot, Integer.valueOf( t ) );
+
+					// Some tracks are split in two.
+					if ( null != previous && !( i % 5 == 0 && t == 4 ) )
+					{
+						final double weight = ran.nextDouble();
+						final DefaultWeightedEdge edge = model.addEdge( previous, spot, weight );
+						// Always written to the file.
+						fm.putEdgeFeature( edge, EdgeTargetAnalyzer.EDGE_COST, Double.valueOf( weight ) );
+						fm.putEdgeFeature( edge, EdgeTargetAnalyzer.SPOT_SOURCE_ID, Double.valueOf( previous.ID() ) );
+						fm.putEdgeFeature( edge, EdgeTargetAnalyzer.SPOT_TARGET_ID, Double.valueOf( spot.ID() ) );
+						fm.putEdgeFeature( edge, "COST", ( t == 3 ) ? Double.NaN : Double.valueOf( ran.nextDouble() ) );
+						if ( t % 2 == 0 )
+							fm.putEdgeFeature( edge, "INDEX", Double.valueOf( t ) );
+					}
+					previous = spot;
+				}
+			}
+
+			// Lonely spots.
+			for ( int t = 0; t < N_FRAMES; t += 3 )
+				model.addSpotTo( new Spot( 50., 50., 0., 2., 0.5 ), Integer.valueOf( t ) );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		int i = 0;
+		for ( final Integer trackID : model.getTrackModel().trackIDs( false ) )
+		{
+			if ( i % 3 == 0 )
+				model.setTrackVisibility( trackID, false );
+			if ( i % 4 == 0 )
+				model.getTrackModel().setName( trackID, "Renamed track " + i );
+			// Always written to the file.
+			fm.putTrackFeature( trackID, TrackIndexAnalyzer.TRACK_ID, Double.valueOf( trackID ) );
+			fm.putTrackFeature( trackID, "LENGTH", ( i % 5 == 0 ) ? Double.NaN : Double.valueOf( 1.5 * trackID ) );
+			i++;
+		}
+		return model;
+	}
+
+	/**
+	 * Checks that two models have the same units, feature declarations,
+	 * spots, edges, tracks and feature values. Spots are matched by ID.
+	 */
+	static void assertModelEquals( final Model expected, final Model actual )
+	{
+		assertNotNull( expected );
+		assertNotNull( actual );
+		assertEquals( expected.getSpaceUnits(), actual.getSpaceUnits() );
+		assertEquals( expected.getTimeUnits(), actual.getTimeUnits() );
+
+		final FeatureModel efm = expected.getFeatureModel();
+		final FeatureModel afm = actual.getFeatureModel();
+		assertEquals( efm.getSpotFeatures(), afm.getSpotFeatures() );
+		assertEquals( efm.getEdgeFeatures(), afm.getEdgeFeatures() );
+		assertEquals( efm.getTrackFeatures(), afm.getTrackFeatures() );
+		assertEquals( efm.getSpotFeatureIsInt(), afm.getSpotFeatureIsInt() );
+		assertEquals( efm.getEdgeFeatureIsInt(), afm.getEdgeFeatureIsInt() );
+		assertEquals( efm.getTrackFeatureIsInt(), afm.getTrackFeatureIsInt() );
+
+		// Spots.
+		assertEquals( expected.getSpots().keySet(), actual.getSpots().keySet() );
+		assertEquals( expected.getSpots().getNSpots( false ), actual.getSpots().getNSpots( false ) );
+		final Map< Integer, Spot > actualSpots = new HashMap<>();
+		for ( final Integer frame : actual.getSpots().keySet() )
+			for ( final Spot spot : actual.getSpots().iterable( frame, false ) )
+				actualSpots.put( Integer.valueOf( spot.ID() ), spot );
+		for ( final Integer frame : expected.getSpots().keySet() )
+		{
+			assertEquals( expected.getSpots().getNSpots( frame, false ), actual.getSpots().getNSpots( frame, false ) );
+			for ( final Spot e : expected.getSpots().iterable( frame, false ) )
+			{
+				final Spot a = actualSpots.get( Integer.valueOf( e.ID() ) );
+				assertNotNull( "Missing spot " + e.ID(), a );
+				assertEquals( e.getName(), a.getName() );
+				assertEquals( "Features of spot " + e.ID(), e.getFeatures(), a.getFeatures() );
+				if ( null == e.getRoi() )
+				{
+					assertEquals( null, a.getRoi() );
+				}
+				else
+				{
+					assertNotNull( a.getRoi() );
+					assertArrayEquals( e.getRoi().x, a.getRoi().x, 0. );
+					assertArrayEquals( e.getRoi().y, a.getRoi().y, 0. );
+				}
+			}
+		}
+
+		// Tracks.
+		final TrackModel etm = expected.getTrackModel();
+		final TrackModel atm = actual.getTrackModel();
+		assertEquals( etm.edgeSet().size(), atm.edgeSet().size() );
+		assertEquals( etm.trackIDs( false ), atm.trackIDs( false ) );
+		assertEquals( etm.trackIDs( true ), atm.trackIDs( true ) );
+		for ( final Integer trackID : etm.trackIDs( false ) )
+		{
+			assertEquals( etm.name( trackID ), atm.name( trackID ) );
+			assertEquals( etm.isVisible( trackID ), atm.isVisible( trackID ) );
+			for ( final String feature : efm.getTrackFeatures() )
+				assertEquals( feature, efm.getTrackFeature( trackID, feature ), afm.getTrackFeature( trackID, feature ) );
+
+			final Set< Spot > spots = etm.trackSpots( trackID );
+			assertEquals( spots.size(), atm.trackSpots( trackID ).size() );
+			for ( final Spot spot : spots )
+				assertEquals( trackID, atm.trackIDOf( actualSpots.get( Integer.valueOf( spot.ID() ) ) ) );
+
+			final Set< DefaultWeightedEdge > edges = etm.trackEdges( trackID );
+			assertEquals( edges.size(), atm.trackEdges( trackID ).size() );
+			for ( final DefaultWeightedEdge e : edges )
+			{
+				final DefaultWeightedEdge a = atm.getEdge(
+						actualSpots.get( Integer.valueOf( etm.getEdgeSource( e ).ID() ) ),
+						actualSpots.get( Integer.valueOf( etm.getEdgeTarget( e ).ID() ) ) );
+				assertNotNull( a );
+				assertEquals( etm.getEdgeWeight( e ), atm.getEdgeWeight( a ), 0. );
+				for ( final String feature : efm.getEdgeFeatures() )
+					assertEquals( feature, efm.getEdgeFeature( e, feature ), afm.getEdgeFeature( a, feature ) );
+			}
+		}
+	}
+
+	static Map< String, String > map( final String... keyValues )
+	{
+		final Map< String, String > map = new HashMap<>();
+		for ( int i = 0; i < keyValues.length; i += 2 )
+			map.put( keyValues[ i ], keyValues[ i + 1 ] );
+		return map;
+	}
+
+	static Map< String, Dimension > dimensions( final String... keys )
+	{
+		final Map< String, Dimension > map = new HashMap<>();
+		for ( final String key : keys )
+			map.put( key, Dimension.NONE );
+		return map;
+	}
+
+	static Map< String, Boolean > isInt( final Object... keyValues )
+	{
+		final Map< String, Boolean > map = new HashMap<>();
+		for ( int i = 0; i < keyValues.length; i += 2 )
+			map.put( ( String ) keyValues[ i ], ( Boolean ) keyValues[ i + 1 ] );
+		return map;
+	}
+}
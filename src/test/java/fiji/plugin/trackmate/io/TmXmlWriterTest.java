@@ -0,0 +1,216 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.io;
+
+import static fiji.plugin.trackmate.io.TmXmlTestUtils.assertModelEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.detection.LogDetectorFactory;
+import fiji.plugin.trackmate.features.FeatureFilter;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPTrackerFactory;
+
+/**
+ * Writes a model and its settings with {@link TmXmlWriter}, plain and
+ * compressed, and reads them back with {@link TmXmlReader} in DOM and
+ * streaming modes.
+ */
+public class TmXmlWriterTest
+{
+
+	private static final String LOG = "Line 1.\nLine 2 with <markup> & \"quotes\".\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private Model model;
+
+	private Settings settings;
+
+	@Before
+	public void setUp()
+	{
+		model = TmXmlTestUtils.createModel();
+
+		settings = new Settings();
+		settings.dx = 0.2;
+		settings.dy = 0.2;
+		settings.dz = 1.5;
+		settings.dt = 3.;
+		settings.width = 256;
+		settings.height = 128;
+		settings.nslices = 5;
+		settings.nframes = 8;
+		settings.imageFileName = "image.tif";
+		settings.imageFolder = "/data/";
+		settings.xstart = 10;
+		settings.xend = 200;
+		settings.ystart = 5;
+		settings.yend = 100;
+		settings.zstart = 1;
+		settings.zend = 4;
+		settings.tstart = 0;
+		settings.tend = 7;
+
+		final LogDetectorFactory< ? > detectorFactory = new LogDetectorFactory<>();
+		settings.detectorFactory = detectorFactory;
+		settings.detectorSettings = detectorFactory.getDefaultSettings();
+		final SparseLAPTrackerFactory trackerFactory = new SparseLAPTrackerFactory();
+		settings.trackerFactory = trackerFactory;
+		settings.trackerSettings = trackerFactory.getDefaultSettings();
+
+		settings.initialSpotFilterValue = 2.5;
+		settings.addSpotFilter( new FeatureFilter( "QUALITY", 10., true ) );
+		settings.addSpotFilter( new FeatureFilter( "EXTRA", 0.5, false ) );
+		settings.addTrackFilter( new FeatureFilter( "TRACK_DURATION", 3., true ) );
+	}
+
+	@Test
+	public void testPlainFile() throws IOException
+	{
+		final File file = write( "model.xml" );
+		assertFalse( isCompressed( file ) );
+		assertRoundTrip( file );
+	}
+
+	@Test
+	public void testCompressedFile() throws IOException
+	{
+		final File file = write( "model.xml.gz" );
+		assertTrue( isCompressed( file ) );
+		assertRoundTrip( file );
+	}
+
+	@Test
+	public void testForcedCompression() throws IOException
+	{
+		// Compression is decided by the constructor flag, not the file name.
+		final File file = folder.newFile( "forced.xml" );
+		final TmXmlWriter writer = new TmXmlWriter( file, new Logger.StringBuilderLogger(), true );
+		writer.appendLog( LOG );
+		writer.appendModel( model );
+		writer.appendSettings( settings );
+		writer.writeToFile();
+		assertTrue( isCompressed( file ) );
+		assertRoundTrip( file );
+	}
+
+	private File write( final String name ) throws IOException
+	{
+		final File file = folder.newFile( name );
+		final TmXmlWriter writer = new TmXmlWriter( file );
+		writer.appendLog( LOG );
+		writer.appendModel( model );
+		writer.appendSettings( settings );
+		writer.writeToFile();
+		return file;
+	}
+
+	private void assertRoundTrip( final File file )
+	{
+		for ( final boolean streamModel : new boolean[] { false, true } )
+		{
+			final String mode = streamModel ? "Streaming reader: " : "DOM reader: ";
+			final TmXmlReader reader = new TmXmlReader( file, streamModel );
+			assertTrue( mode + reader.getErrorMessage(), reader.isReadingOk() );
+			assertEquals( mode, LOG.trim(), reader.getLog() );
+			assertModelEquals( model, reader.getModel() );
+			assertSettingsEquals( settings, reader.readSettings( null ) );
+			assertTrue( mode + reader.getErrorMessage(), reader.isReadingOk() );
+		}
+	}
+
+	private static void assertSettingsEquals( final Settings expected, final Settings actual )
+	{
+		assertNotNull( actual );
+		assertEquals( expected.dx, actual.dx, 0. );
+		assertEquals( expected.dy, actual.dy, 0. );
+		assertEquals( expected.dz, actual.dz, 0. );
+		assertEquals( expected.dt, actual.dt, 0. );
+		assertEquals( expected.width, actual.width );
+		assertEquals( expected.height, actual.height );
+		assertEquals( expected.nslices, actual.nslices );
+		assertEquals( expected.nframes, actual.nframes );
+		assertEquals( expected.imageFileName, actual.imageFileName );
+		assertEquals( expected.imageFolder, actual.imageFolder );
+
+		assertEquals( expected.xstart, actual.xstart );
+		assertEquals( expected.xend, actual.xend );
+		assertEquals( expected.ystart, actual.ystart );
+		assertEquals( expected.yend, actual.yend );
+		assertEquals( expected.zstart, actual.zstart );
+		assertEquals( expected.zend, actual.zend );
+		assertEquals( expected.tstart, actual.tstart );
+		assertEquals( expected.tend, actual.tend );
+
+		assertNotNull( actual.detectorFactory );
+		assertEquals( expected.detectorFactory.getKey(), actual.detectorFactory.getKey() );
+		assertEquals( expected.detectorSettings, actual.detectorSettings );
+		assertNotNull( actual.trackerFactory );
+		assertEquals( expected.trackerFactory.getKey(), actual.trackerFactory.getKey() );
+		assertEquals( expected.trackerSettings, actual.trackerSettings );
+
+		assertEquals( expected.initialSpotFilterValue, actual.initialSpotFilterValue );
+		assertFiltersEquals( expected.getSpotFilters(), actual.getSpotFilters() );
+		assertFiltersEquals( expected.getTrackFilters(), actual.getTrackFilters() );
+	}
+
+	private static void assertFiltersEquals( final List< FeatureFilter > expected, final List< FeatureFilter > actual )
+	{
+		assertEquals( expected.size(), actual.size() );
+		for ( int i = 0; i < expected.size(); i++ )
+		{
+			assertEquals( expected.get( i ).feature, actual.get( i ).feature );
+			assertEquals( expected.get( i ).value, actual.get( i ).value, 0. );
+			assertEquals( expected.get( i ).isAbove, actual.get( i ).isAbove );
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if the file starts with the gzip magic number.
+	 */
+	private static boolean isCompressed( final File file ) throws IOException
+	{
+		try (InputStream is = new FileInputStream( file ))
+		{
+			final int magic = is.read() | ( is.read() << 8 );
+			return magic == GZIPInputStream.GZIP_MAGIC;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.overlap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotRoi;
+import fiji.plugin.trackmate.tracking.overlap.OverlapTracker.IoUCalculation;
+import math.geom2d.AffineTransform2D;
+import math.geom2d.Point2D;
+import math.geom2d.conic.Circle2D;
+import math.geom2d.polygon.Polygon2D;
+import math.geom2d.polygon.Polygons2D;
+import math.geom2d.polygon.Rectangle2D;
+import math.geom2d.polygon.SimplePolygon2D;
+
+/**
+ * Compares the links of the {@link OverlapTracker} with the ones of a brute
+ * force matching, that computes the IoU of all the source and target pairs of
+ * consecutive frames.
+ */
+public class OverlapTrackerTest
+{
+
+	@Test
+	public void testSameAsBruteForce()
+	{
+		final Random ran = new Random( 1l );
+		final SpotCollection spots = new SpotCollection();
+		final int[] frames = new int[] { 0, 1, 2, 3, 5, 6, 7, 8, 9 };
+		final double[][] positions = new double[ 150 ][ 2 ];
+		for ( final double[] position : positions )
+		{
+			position[ 0 ] = 150. * ran.nextDouble();
+			position[ 1 ] = 100. * ran.nextDouble();
+		}
+		for ( final int frame : frames )
+		{
+			for ( final double[] position : positions )
+			{
+				position[ 0 ] += ran.nextGaussian();
+				position[ 1 ] += ran.nextGaussian();
+				final Spot spot = new Spot( position[ 0 ], position[ 1 ], 0., 1. + 3. * ran.nextDouble(), 1. );
+				if ( ran.nextBoolean() )
+					spot.setRoi( randomRoi( ran, spot.getRadius() ) );
+				spots.add( spot, Integer.valueOf( frame ) );
+			}
+		}
+		spots.setVisible( true );
+		// A frame without visible spots is skipped.
+		for ( final Spot spot : spots.iterable( 6, false ) )
+			spot.putFeature( SpotCollection.VISIBILITY, SpotCollection.ZERO );
+
+		for ( final IoUCalculation method : IoUCalculation.values() )
+			for ( final double minIoU : new double[] { 0., 0.3 } )
+				for ( final double enlargeFactor : new double[] { 1., 1.5 } )
+					assertSameAsBruteForce( spots, method, minIoU, enlargeFactor );
+	}
+
+	@Test
+	public void testTouchingAndDisjoint()
+	{
+		final SpotCollection spots = new SpotCollection();
+		final Spot source = square( 1., 1. );
+		spots.add( source, 0 );
+		// Shares an edge, shares a corner, disjoint, overlapping.
+		spots.add( square( 3., 1. ), 1 );
+		spots.add( square( 3., 3. ), 1 );
+		spots.add( square( 10., 10. ), 1 );
+		final Spot overlapping = square( 1.5, 1. );
+		spots.add( overlapping, 1 );
+		spots.setVisible( true );
+
+		for ( final IoUCalculation method : IoUCalculation.values() )
+		{
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = assertSameAsBruteForce( spots, method, 0., 1. );
+			assertEquals( 1, graph.edgeSet().size() );
+			final DefaultWeightedEdge edge = graph.getEdge( source, overlapping );
+			// Intersection 3, union 5.
+			assertEquals( 1. - 3. / 5., graph.getEdgeWeight( edge ), 1e-12 );
+		}
+	}
+
+	@Test
+	public void testFastAndPrecise()
+	{
+		// Disjoint circles with overlapping bounding boxes.
+		final SpotCollection spots = new SpotCollection();
+		spots.add( new Spot( 0., 0., 0., 1., 1. ), 0 );
+		spots.add( new Spot( 1.6, 1.6, 0., 1., 1. ), 1 );
+		spots.setVisible( true );
+
+		assertEquals( 1, assertSameAsBruteForce( spots, IoUCalculation.FAST, 0., 1. ).edgeSet().size() );
+		assertEquals( 0, assertSameAsBruteForce( spots, IoUCalculation.PRECISE, 0., 1. ).edgeSet().size() );
+	}
+
+	@Test
+	public void testTieBreaking()
+	{
+		// The target overlaps two sources with the same IoU.
+		final SpotCollection spots = new SpotCollection();
+		for ( int i = 0; i < 40; i++ )
+		{
+			spots.add( square( 1. + 4. * i, 1. ), 0 );
+			spots.add( square( 3. + 4. * i, 1. ), 0 );
+			spots.add( square( 2. + 4. * i, 1. ), 1 );
+		}
+		spots.setVisible( true );
+
+		for ( final IoUCalculation method : IoUCalculation.values() )
+		{
+			final SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = assertSameAsBruteForce( spots, method, 0., 1. );
+			assertEquals( 40, graph.edgeSet().size() );
+		}
+	}
+
+	@Test
+	public void testMinIoU()
+	{
+		// IoU of 1/3.
+		final SpotCollection spots = new SpotCollection();
+		spots.add( square( 1., 1. ), 0 );
+		spots.add( square( 2., 1. ), 1 );
+		spots.setVisible( true );
+
+		for ( final IoUCalculation method : IoUCalculation.values() )
+		{
+			assertEquals( 1, assertSameAsBruteForce( spots, method, 0.3, 1. ).edgeSet().size() );
+			assertEquals( 0, assertSameAsBruteForce( spots, method, 0.4, 1. ).edgeSet().size() );
+		}
+	}
+
+	private static SimpleWeightedGraph< Spot, DefaultWeightedEdge > assertSameAsBruteForce( final SpotCollection spots, final IoUCalculation method, final double minIoU, final double enlargeFactor )
+	{
+		final Map< String, Double > expected = bruteForce( spots, method, minIoU, enlargeFactor );
+		SimpleWeightedGraph< Spot, DefaultWeightedEdge > graph = null;
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final OverlapTracker tracker = new OverlapTracker( spots, method, minIoU, enlargeFactor );
+			tracker.setNumThreads( numThreads );
+			assertTrue( tracker.checkInput() );
+			assertTrue( tracker.getErrorMessage(), tracker.process() );
+			graph = tracker.getResult();
+
+			final String str = method + ", min IoU " + minIoU + ", " + numThreads + " threads";
+			assertEquals( str, expected.size(), graph.edgeSet().size() );
+			for ( final DefaultWeightedEdge edge : graph.edgeSet() )
+			{
+				final Double weight = expected.get( key( graph.getEdgeSource( edge ), graph.getEdgeTarget( edge ) ) );
+				assertFalse( str, weight == null );
+				assertEquals( str, weight.doubleValue(), graph.getEdgeWeight( edge ), 1e-9 );
+			}
+		}
+		return graph;
+	}
+
+	/*
+	 * BRUTE FORCE MATCHING.
+	 */
+
+	/**
+	 * Returns the weight of the links between the visible spots of
+	 * consecutive non-empty frames, keyed by source and target IDs. Each
+	 * target is linked to the first source with the largest IoU, over all the
+	 * sources.
+	 */
+	private static Map< String, Double > bruteForce( final SpotCollection spots, final IoUCalculation method, final double minIoU, final double scale )
+	{
+		final Map< String, Double > links = new HashMap<>();
+		Map< Spot, Polygon2D > sourceGeometries = null;
+		for ( final Integer frame : spots.keySet() )
+		{
+			final Map< Spot, Polygon2D > targetGeometries = new HashMap<>();
+			for ( final Spot spot : spots.iterable( frame, true ) )
+				targetGeometries.put( spot, method == IoUCalculation.FAST ? toBoundingBox( spot, scale ) : toPolygon( spot, scale ) );
+			if ( targetGeometries.isEmpty() )
+				continue;
+
+			if ( sourceGeometries != null )
+			{
+				for ( final Spot target : targetGeometries.keySet() )
+				{
+					final Polygon2D targetPoly = targetGeometries.get( target );
+					final double targetArea = Math.abs( targetPoly.area() );
+					double maxIoU = minIoU;
+					Spot bestSpot = null;
+					for ( final Spot source : sourceGeometries.keySet() )
+					{
+						final Polygon2D sourcePoly = sourceGeometries.get( source );
+						final double intersection = Math.abs( Polygons2D.intersection( targetPoly, sourcePoly ).area() );
+						if ( intersection == 0. )
+							continue;
+
+						final double iou = intersection / ( Math.abs( sourcePoly.area() ) + targetArea - intersection );
+						if ( iou > maxIoU )
+						{
+							maxIoU = iou;
+							bestSpot = source;
+						}
+					}
+					if ( bestSpot != null )
+						links.put( key( bestSpot, target ), 1. - maxIoU );
+				}
+			}
+			sourceGeometries = targetGeometries;
+		}
+		return links;
+	}
+
+	private static SimplePolygon2D toPolygon( final Spot spot, final double scale )
+	{
+		final double xc = spot.getDoublePosition( 0 );
+		final double yc = spot.getDoublePosition( 1 );
+		final SpotRoi roi = spot.getRoi();
+		final SimplePolygon2D poly;
+		if ( roi == null )
+			poly = new SimplePolygon2D( new Circle2D( xc, yc, spot.getRadius() ).asPolyline( 32 ) );
+		else
+			poly = new SimplePolygon2D( roi.toPolygonX( 1., 0., xc, 1. ), roi.toPolygonY( 1., 0., yc, 1. ) );
+		return poly.transform( AffineTransform2D.createScaling( new Point2D( xc, yc ), scale, scale ) );
+	}
+
+	private static Rectangle2D toBoundingBox( final Spot spot, final double scale )
+	{
+		final double xc = spot.getDoublePosition( 0 );
+		final double yc = spot.getDoublePosition( 1 );
+		final SpotRoi roi = spot.getRoi();
+		if ( roi == null )
+		{
+			final double radius = spot.getRadius() * scale;
+			return new Rectangle2D( xc - radius, yc - radius, 2 * radius, 2 * radius );
+		}
+		final double minX = Arrays.stream( roi.x ).min().getAsDouble() * scale;
+		final double maxX = Arrays.stream( roi.x ).max().getAsDouble() * scale;
+		final double minY = Arrays.stream( roi.y ).min().getAsDouble() * scale;
+		final double maxY = Arrays.stream( roi.y ).max().getAsDouble() * scale;
+		return new Rectangle2D( xc + minX, yc + minY, maxX - minX, maxY - minY );
+	}
+
+	/*
+	 * UTILS.
+	 */
+
+	private static String key( final Spot source, final Spot target )
+	{
+		return source.ID() + " -> " + target.ID();
+	}
+
+	/**
+	 * Returns a spot with a 2x2 square ROI centered on the specified position.
+	 */
+	private static Spot square( final double x, final double y )
+	{
+		final Spot spot = new Spot( x, y, 0., 1., 1. );
+		spot.setRoi( new SpotRoi( new double[] { -1., 1., 1., -1. }, new double[] { -1., -1., 1., 1. } ) );
+		return spot;
+	}
+
+	/**
+	 * Returns a star-shaped ROI, with vertices at random distances from the
+	 * center.
+	 */
+	private static SpotRoi randomRoi( final Random ran, final double radius )
+	{
+		final int n = 5 + ran.nextInt( 8 );
+		final double[] x = new double[ n ];
+		final double[] y = new double[ n ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final double r = radius * ( 0.5 + ran.nextDouble() );
+			final double theta = 2. * Math.PI * i / n;
+			x[ i ] = r * Math.cos( theta );
+			y[ i ] = r * Math.sin( theta );
+		}
+		return new SpotRoi( x, y );
+	}
+}
@@ -0,0 +1,327 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_GAP_CLOSING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_MERGING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALLOW_TRACK_SPLITTING;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_CUTOFF_PERCENTILE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_GAP_CLOSING_MAX_FRAME_GAP;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_MERGING_MAX_DISTANCE;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_SPLITTING_MAX_DISTANCE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jgrapht.Graph;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleWeightedGraph;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.FeaturePenaltyCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+
+public class JaqamanSegmentCostMatrixCreatorTest
+{
+
+	private static final int MAX_FRAME_GAP = 3;
+
+	private static final double GAP_CLOSING_MAX_DISTANCE = 10.;
+
+	private static final double MERGING_MAX_DISTANCE = 8.;
+
+	private static final double SPLITTING_MAX_DISTANCE = 6.;
+
+	@Test
+	public void testSameAsAllPairs()
+	{
+		final Graph< Spot, DefaultWeightedEdge > graph = randomSegments( new Random( 1l ), 1500 );
+
+		final Map< String, Object > settings = settings( true, true, true );
+		assertSameAsAllPairs( graph, settings );
+
+		final Map< String, Double > penalties = Collections.singletonMap( Spot.QUALITY, 1. );
+		settings.put( KEY_GAP_CLOSING_FEATURE_PENALTIES, penalties );
+		settings.put( KEY_MERGING_FEATURE_PENALTIES, penalties );
+		settings.put( KEY_SPLITTING_FEATURE_PENALTIES, penalties );
+		assertSameAsAllPairs( graph, settings );
+
+		assertSameAsAllPairs( graph, settings( true, false, false ) );
+		assertSameAsAllPairs( graph, settings( false, true, false ) );
+		assertSameAsAllPairs( graph, settings( false, false, true ) );
+	}
+
+	@Test
+	public void testBoundaries()
+	{
+		final Graph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+
+		// Segment ending at frame 1, at the origin.
+		final Spot end = spot( 0., 0., 1 );
+		link( graph, spot( -50., 0., 0 ), end );
+
+		// Gap-closing: exactly at the max frame gap and max distance.
+		final Spot gcIn = spot( GAP_CLOSING_MAX_DISTANCE, 0., 1 + MAX_FRAME_GAP );
+		link( graph, gcIn, spot( 50., 50., 2 + MAX_FRAME_GAP ) );
+		// One frame too far.
+		final Spot gcFrameOut = spot( 0., 0., 2 + MAX_FRAME_GAP );
+		link( graph, gcFrameOut, spot( 50., 50., 3 + MAX_FRAME_GAP ) );
+		// Just beyond the max distance.
+		final Spot gcDistanceOut = spot( 0., -Math.nextUp( GAP_CLOSING_MAX_DISTANCE ), 2 );
+		link( graph, gcDistanceOut, spot( -50., -50., 3 ) );
+		// Same frame as the end.
+		final Spot gcSameFrame = spot( 0., 1., 1 );
+		link( graph, gcSameFrame, spot( -50., 50., 2 ) );
+
+		/*
+		 * Merging and splitting: a middle point exactly at the merging max
+		 * distance, whose next frame holds a segment start exactly at the
+		 * splitting max distance and one just beyond it.
+		 */
+		final Spot middle = spot( 0., MERGING_MAX_DISTANCE, 2 );
+		link( graph, spot( 100., 100., 1 ), middle );
+		link( graph, middle, spot( 100., 100., 3 ) );
+		final Spot sIn = spot( 0., MERGING_MAX_DISTANCE + SPLITTING_MAX_DISTANCE, 3 );
+		link( graph, sIn, spot( 0., 80., 4 ) );
+		final Spot sOut = spot( Math.nextUp( SPLITTING_MAX_DISTANCE ), MERGING_MAX_DISTANCE, 3 );
+		link( graph, sOut, spot( 0., -80., 4 ) );
+		// A middle point just beyond the merging max distance.
+		final Spot middleOut = spot( -Math.nextUp( MERGING_MAX_DISTANCE ), 0., 2 );
+		link( graph, spot( -100., 100., 1 ), middleOut );
+		link( graph, middleOut, spot( -100., -100., 3 ) );
+
+		final JaqamanSegmentCostMatrixCreator creator = assertSameAsAllPairs( graph, settings( true, true, true ) );
+
+		assertLinked( creator, end, gcIn, GAP_CLOSING_MAX_DISTANCE * GAP_CLOSING_MAX_DISTANCE );
+		assertNotLinked( creator, end, gcFrameOut );
+		assertNotLinked( creator, end, gcDistanceOut );
+		assertNotLinked( creator, end, gcSameFrame );
+		assertLinked( creator, end, middle, MERGING_MAX_DISTANCE * MERGING_MAX_DISTANCE );
+		assertNotLinked( creator, end, middleOut );
+		assertLinked( creator, middle, sIn, SPLITTING_MAX_DISTANCE * SPLITTING_MAX_DISTANCE );
+		assertNotLinked( creator, middle, sOut );
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	private static JaqamanSegmentCostMatrixCreator assertSameAsAllPairs( final Graph< Spot, DefaultWeightedEdge > graph, final Map< String, Object > settings )
+	{
+		final DefaultCostMatrixCreator< Spot, Spot > expected = allPairs( graph, settings );
+		JaqamanSegmentCostMatrixCreator creator = null;
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			creator = new JaqamanSegmentCostMatrixCreator( graph, settings );
+			creator.setNumThreads( numThreads );
+			assertTrue( creator.getErrorMessage(), creator.checkInput() );
+			assertTrue( creator.getErrorMessage(), creator.process() );
+
+			assertEquals( expected.getSourceList(), creator.getSourceList() );
+			assertEquals( expected.getTargetList(), creator.getTargetList() );
+			assertEquals( expected.computeAlternativeCosts(), creator.getAlternativeCostForSource( null ), 0. );
+
+			final double[][] expectedFull = expected.getResult().toFullMatrix();
+			final double[][] actualFull = creator.getResult().toFullMatrix();
+			assertEquals( expectedFull.length, actualFull.length );
+			for ( int i = 0; i < expectedFull.length; i++ )
+				assertArrayEquals( expectedFull[ i ], actualFull[ i ], 0. );
+		}
+		return creator;
+	}
+
+	/**
+	 * Computes the candidate links by examining all the pairs of segment
+	 * extremities and middle points.
+	 */
+	private static DefaultCostMatrixCreator< Spot, Spot > allPairs( final Graph< Spot, DefaultWeightedEdge > graph, final Map< String, Object > settings )
+	{
+		final boolean allowGapClosing = ( Boolean ) settings.get( KEY_ALLOW_GAP_CLOSING );
+		final boolean allowMerging = ( Boolean ) settings.get( KEY_ALLOW_TRACK_MERGING );
+		final boolean allowSplitting = ( Boolean ) settings.get( KEY_ALLOW_TRACK_SPLITTING );
+		final int maxFrameGap = ( Integer ) settings.get( KEY_GAP_CLOSING_MAX_FRAME_GAP );
+		final double gcThreshold = square( ( Double ) settings.get( KEY_GAP_CLOSING_MAX_DISTANCE ) );
+		final double mThreshold = square( ( Double ) settings.get( KEY_MERGING_MAX_DISTANCE ) );
+		final double sThreshold = square( ( Double ) settings.get( KEY_SPLITTING_MAX_DISTANCE ) );
+		final CostFunction< Spot, Spot > gcCostFunction = costFunction( settings, KEY_GAP_CLOSING_FEATURE_PENALTIES );
+		final CostFunction< Spot, Spot > mCostFunction = costFunction( settings, KEY_MERGING_FEATURE_PENALTIES );
+		final CostFunction< Spot, Spot > sCostFunction = costFunction( settings, KEY_SPLITTING_FEATURE_PENALTIES );
+
+		final GraphSegmentSplitter splitter = new GraphSegmentSplitter( graph, allowMerging || allowSplitting );
+		final List< Spot > middles = new ArrayList<>();
+		for ( final List< Spot > segment : splitter.getSegmentMiddles() )
+			middles.addAll( segment );
+
+		final List< Spot > sources = new ArrayList<>();
+		final List< Spot > targets = new ArrayList<>();
+		final ResizableDoubleArray costs = new ResizableDoubleArray();
+		for ( final Spot source : splitter.getSegmentEnds() )
+		{
+			if ( allowGapClosing )
+				for ( final Spot target : splitter.getSegmentStarts() )
+				{
+					final int tdiff = frame( target ) - frame( source );
+					if ( tdiff >= 1 && tdiff <= maxFrameGap )
+						add( source, target, gcCostFunction.linkingCost( source, target ), gcThreshold, sources, targets, costs );
+				}
+			if ( allowMerging )
+				for ( final Spot target : middles )
+					if ( frame( target ) - frame( source ) == 1 )
+						add( source, target, mCostFunction.linkingCost( source, target ), mThreshold, sources, targets, costs );
+		}
+		if ( allowSplitting )
+			for ( final Spot source : middles )
+				for ( final Spot target : splitter.getSegmentStarts() )
+					if ( frame( target ) - frame( source ) == 1 )
+						add( source, target, sCostFunction.linkingCost( source, target ), sThreshold, sources, targets, costs );
+		costs.trimToSize();
+
+		final DefaultCostMatrixCreator< Spot, Spot > creator = new DefaultCostMatrixCreator<>( sources, targets, costs.data,
+				( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR ), ( Double ) settings.get( KEY_CUTOFF_PERCENTILE ) );
+		assertTrue( creator.getErrorMessage(), creator.checkInput() );
+		assertTrue( creator.getErrorMessage(), creator.process() );
+		return creator;
+	}
+
+	private static void add( final Spot source, final Spot target, final double cost, final double threshold, final List< Spot > sources, final List< Spot > targets, final ResizableDoubleArray costs )
+	{
+		if ( cost > threshold )
+			return;
+		sources.add( source );
+		targets.add( target );
+		costs.add( cost );
+	}
+
+	@SuppressWarnings( "unchecked" )
+	private static CostFunction< Spot, Spot > costFunction( final Map< String, Object > settings, final String key )
+	{
+		final Map< String, Double > penalties = ( Map< String, Double > ) settings.get( key );
+		if ( null == penalties || penalties.isEmpty() )
+			return new SquareDistCostFunction();
+		return new FeaturePenaltyCostFunction( penalties );
+	}
+
+	private static void assertLinked( final JaqamanSegmentCostMatrixCreator creator, final Spot source, final Spot target, final double cost )
+	{
+		final int i = creator.getSourceList().indexOf( source );
+		final int j = creator.getTargetList().indexOf( target );
+		assertTrue( i >= 0 && j >= 0 );
+		assertEquals( cost, creator.getResult().get( i, j, Double.NaN ), 0. );
+	}
+
+	private static void assertNotLinked( final JaqamanSegmentCostMatrixCreator creator, final Spot source, final Spot target )
+	{
+		final int i = creator.getSourceList().indexOf( source );
+		final int j = creator.getTargetList().indexOf( target );
+		if ( i >= 0 && j >= 0 )
+			assertFalse( Double.isFinite( creator.getResult().get( i, j, Double.NaN ) ) );
+	}
+
+	/**
+	 * Generates segments of 2 to 6 spots, that randomly walk over a few tens
+	 * of frames, with a random quality.
+	 */
+	private static Graph< Spot, DefaultWeightedEdge > randomSegments( final Random ran, final int nSegments )
+	{
+		final Graph< Spot, DefaultWeightedEdge > graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
+		for ( int i = 0; i < nSegments; i++ )
+		{
+			final int length = 2 + ran.nextInt( 5 );
+			final int firstFrame = ran.nextInt( 40 );
+			double x = 200. * ran.nextDouble();
+			double y = 200. * ran.nextDouble();
+			double z = 20. * ran.nextDouble();
+			Spot previous = null;
+			for ( int t = firstFrame; t < firstFrame + length; t++ )
+			{
+				final Spot spot = new Spot( x, y, z, 1., 10. * ran.nextDouble() );
+				spot.putFeature( Spot.FRAME, Double.valueOf( t ) );
+				graph.addVertex( spot );
+				if ( null != previous )
+					graph.addEdge( previous, spot );
+				previous = spot;
+				x += 3. * ran.nextGaussian();
+				y += 3. * ran.nextGaussian();
+				z += ran.nextGaussian();
+			}
+		}
+		return graph;
+	}
+
+	private static Spot spot( final double x, final double y, final int t )
+	{
+		final Spot spot = new Spot( x, y, 0., 1., 1. );
+		spot.putFeature( Spot.FRAME, Double.valueOf( t ) );
+		return spot;
+	}
+
+	private static void link( final Graph< Spot, DefaultWeightedEdge > graph, final Spot source, final Spot target )
+	{
+		graph.addVertex( source );
+		graph.addVertex( target );
+		graph.addEdge( source, target );
+	}
+
+	private static Map< String, Object > settings( final boolean allowGapClosing, final boolean allowMerging, final boolean allowSplitting )
+	{
+		final Map< String, Object > settings = new HashMap<>();
+		settings.put( KEY_ALLOW_GAP_CLOSING, allowGapClosing );
+		settings.put( KEY_GAP_CLOSING_MAX_FRAME_GAP, MAX_FRAME_GAP );
+		settings.put( KEY_GAP_CLOSING_MAX_DISTANCE, GAP_CLOSING_MAX_DISTANCE );
+		settings.put( KEY_GAP_CLOSING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+		settings.put( KEY_ALLOW_TRACK_MERGING, allowMerging );
+		settings.put( KEY_MERGING_MAX_DISTANCE, MERGING_MAX_DISTANCE );
+		settings.put( KEY_MERGING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+		settings.put( KEY_ALLOW_TRACK_SPLITTING, allowSplitting );
+		settings.put( KEY_SPLITTING_MAX_DISTANCE, SPLITTING_MAX_DISTANCE );
+		settings.put( KEY_SPLITTING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+		settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, 1.05 );
+		settings.put( KEY_CUTOFF_PERCENTILE, 0.9 );
+		return settings;
+	}
+
+	private static int frame( final Spot spot )
+	{
+		return spot.getFeature( Spot.FRAME ).intValue();
+	}
+
+	private static double square( final double d )
+	{
+		return d * d;
+	}
+}
@@ -0,0 +1,86 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.costmatrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.sparselap.costfunction.SquareDistCostFunction;
+import fiji.plugin.trackmate.tracking.sparselap.linker.SparseCostMatrix;
+
+public class KDTreeLinkingCostMatrixCreatorTest
+{
+
+	private static final double MAX_DISTANCE = 5.;
+
+	@Test
+	public void testSameAsExhaustive()
+	{
+		final Random ran = new Random( 1l );
+		final List< Spot > sources = new ArrayList<>();
+		final List< Spot > targets = new ArrayList<>();
+		for ( int i = 0; i < 2000; i++ )
+		{
+			final double x = 200. * ran.nextDouble();
+			final double y = 200. * ran.nextDouble();
+			final double z = 20. * ran.nextDouble();
+			sources.add( new Spot( x, y, z, 1., 1. ) );
+			targets.add( new Spot( x + 2. * ran.nextGaussian(), y + 2. * ran.nextGaussian(), z + ran.nextGaussian(), 1., 1. ) );
+		}
+
+		final SquareDistCostFunction costFunction = new SquareDistCostFunction();
+		final double costThreshold = MAX_DISTANCE * MAX_DISTANCE;
+
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > exhaustive = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, 1.05, 1. );
+		assertTrue( exhaustive.checkInput() );
+		assertTrue( exhaustive.process() );
+
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final KDTreeLinkingCostMatrixCreator< Spot, Spot > kdtree = new KDTreeLinkingCostMatrixCreator<>( sources, targets, costFunction, MAX_DISTANCE, costThreshold, 1.05, 1. );
+			kdtree.setNumThreads( numThreads );
+			assertTrue( kdtree.checkInput() );
+			assertTrue( kdtree.process() );
+
+			assertEquals( exhaustive.getSourceList(), kdtree.getSourceList() );
+			assertEquals( exhaustive.getTargetList(), kdtree.getTargetList() );
+			assertEquals( exhaustive.getAlternativeCostForSource( null ), kdtree.getAlternativeCostForSource( null ), 0. );
+
+			final SparseCostMatrix expected = exhaustive.getResult();
+			final SparseCostMatrix actual = kdtree.getResult();
+			assertEquals( expected.getNRows(), actual.getNRows() );
+			assertEquals( expected.getNCols(), actual.getNCols() );
+			final double[][] expectedFull = expected.toFullMatrix();
+			final double[][] actualFull = actual.toFullMatrix();
+			for ( int i = 0; i < expectedFull.length; i++ )
+				assertArrayEquals( expectedFull[ i ], actualFull[ i ], 0. );
+		}
+	}
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BlockLAPJVTest
+{
+
+	@Test
+	public void testSameCostAsLAPJV()
+	{
+		final int nBlocks = 50;
+		final SparseCostMatrix cm = blockMatrix( new Random( 1l ), nBlocks, 20 );
+
+		final LAPJV reference = new LAPJV( cm );
+		assertTrue( reference.checkInput() );
+		assertTrue( reference.process() );
+		final double expected = totalCost( cm, reference.getResult() );
+
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final BlockLAPJV solver = new BlockLAPJV( cm );
+			solver.setNumThreads( numThreads );
+			assertTrue( solver.checkInput() );
+			assertTrue( solver.getErrorMessage(), solver.process() );
+			assertEquals( "Bad number of blocks.", nBlocks, solver.getNBlocks() );
+
+			final int[] assignment = solver.getResult();
+			final boolean[] taken = new boolean[ cm.nCols ];
+			for ( final int j : assignment )
+			{
+				assertFalse( "Column " + j + " is assigned twice.", taken[ j ] );
+				taken[ j ] = true;
+			}
+			assertEquals( "Bad total cost with " + numThreads + " threads.", expected, totalCost( cm, assignment ), 1e-9 );
+		}
+	}
+
+	@Test
+	public void testInfeasibleBlock()
+	{
+		// Rows 0 and 1 compete for column 0 only.
+		final double[] cc = new double[] { 1., 2., 3., 4. };
+		final int[] kk = new int[] { 0, 0, 1, 2 };
+		final int[] number = new int[] { 1, 1, 2 };
+		final BlockLAPJV solver = new BlockLAPJV( new SparseCostMatrix( cc, kk, number, 3 ) );
+		assertTrue( solver.checkInput() );
+		assertFalse( solver.process() );
+	}
+
+	/**
+	 * Generates a square sparse cost matrix made of several independent square
+	 * blocks, with shuffled row and column indices.
+	 */
+	private static SparseCostMatrix blockMatrix( final Random ran, final int nBlocks, final int blockSize )
+	{
+		final int n = nBlocks * blockSize;
+		final List< Integer > perm = new ArrayList<>( n );
+		for ( int i = 0; i < n; i++ )
+			perm.add( Integer.valueOf( i ) );
+		Collections.shuffle( perm, ran );
+
+		final List< Integer > rowPerm = new ArrayList<>( perm );
+		Collections.shuffle( rowPerm, ran );
+		final double[][] dense = new double[ n ][ n ];
+		for ( int b = 0; b < nBlocks; b++ )
+		{
+			for ( int r = 0; r < blockSize; r++ )
+			{
+				final int i = rowPerm.get( b * blockSize + r ).intValue();
+				for ( int c = 0; c < blockSize; c++ )
+				{
+					// Diagonal ensures feasibility, the rest is sparse.
+					if ( r != c && ran.nextDouble() > 0.3 )
+						continue;
+					final int j = perm.get( b * blockSize + c ).intValue();
+					dense[ i ][ j ] = 1. + 100. * ran.nextDouble();
+				}
+			}
+		}
+
+		final int[] number = new int[ n ];
+		final double[] cc = new double[ n * blockSize ];
+		final int[] kk = new int[ n * blockSize ];
+		int index = 0;
+		for ( int i = 0; i < n; i++ )
+		{
+			for ( int j = 0; j < n; j++ )
+			{
+				if ( dense[ i ][ j ] == 0. )
+					continue;
+				cc[ index ] = dense[ i ][ j ];
+				kk[ index ] = j;
+				index++;
+				number[ i ]++;
+			}
+		}
+		final double[] ccs = new double[ index ];
+		final int[] kks = new int[ index ];
+		System.arraycopy( cc, 0, ccs, 0, index );
+		System.arraycopy( kk, 0, kks, 0, index );
+		return new SparseCostMatrix( ccs, kks, number, n );
+	}
+
+	private static double totalCost( final SparseCostMatrix cm, final int[] assignment )
+	{
+		double sum = 0.;
+		for ( int i = 0; i < assignment.length; i++ )
+			sum += cm.get( i, assignment[ i ], Double.POSITIVE_INFINITY );
+		return sum;
+	}
+}
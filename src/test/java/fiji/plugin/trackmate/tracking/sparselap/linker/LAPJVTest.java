@@ -0,0 +1,163 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LAPJVTest
+{
+
+	private static final int N = 200;
+
+	@Test
+	public void testAlreadyAssigned()
+	{
+		final double[] cc = new double[] { 1., 2., 3. };
+		final int[] kk = new int[] { 0, 1, 2 };
+		final int[] number = new int[] { 1, 1, 1 };
+		final LAPJV solver = new LAPJV( new SparseCostMatrix( cc, kk, number, 3 ) );
+		assertTrue( solver.checkInput() );
+		assertTrue( solver.process() );
+		assertArrayEquals( new int[] { 0, 1, 2 }, solver.getResult() );
+	}
+
+	@Test
+	public void testWarmStartGivesSameCost()
+	{
+		final Random ran = new Random( 1l );
+		final SparseCostMatrix cm = randomMatrix( ran, null );
+		final LAPJV.Workspace workspace = new LAPJV.Workspace();
+		final LAPJV first = new LAPJV( cm, workspace );
+		assertTrue( first.process() );
+		assertFalse( first.isWarmStarted() );
+		assertEquals( "Bad cost for the workspace solver.", totalCost( cm, new LAPJV( cm ) ), totalCost( cm, first.getResult() ), 1e-9 );
+
+		for ( int t = 0; t < 10; t++ )
+		{
+			final SparseCostMatrix perturbed = randomMatrix( new Random( 1l ), ran );
+			final LAPJV warm = new LAPJV( perturbed, workspace );
+			assertTrue( warm.process() );
+			assertTrue( warm.isWarmStarted() );
+			assertEquals( "Warm start did not find the optimal assignment.", totalCost( perturbed, new LAPJV( perturbed ) ), totalCost( perturbed, warm.getResult() ), 1e-9 );
+		}
+	}
+
+	@Test
+	public void testSeedWithArbitraryDuals()
+	{
+		final Random ran = new Random( 2l );
+		final SparseCostMatrix cm = randomMatrix( ran, null );
+		final double[] v = new double[ N ];
+		final int[] assignment = new int[ N ];
+		for ( int i = 0; i < N; i++ )
+		{
+			v[ i ] = 10. * ran.nextGaussian();
+			assignment[ i ] = ran.nextInt( N + 1 ) - 1;
+		}
+		final LAPJV.Workspace workspace = new LAPJV.Workspace();
+		workspace.seed( v, assignment );
+
+		final LAPJV warm = new LAPJV( cm, workspace );
+		assertTrue( warm.process() );
+		assertTrue( warm.isWarmStarted() );
+		assertEquals( "Seeded solver did not find the optimal assignment.", totalCost( cm, new LAPJV( cm ) ), totalCost( cm, warm.getResult() ), 1e-9 );
+		assertNotNull( workspace.getDuals() );
+	}
+
+	@Test
+	public void testNoWarmStartOnSizeChange()
+	{
+		final LAPJV.Workspace workspace = new LAPJV.Workspace();
+		final SparseCostMatrix cm = randomMatrix( new Random( 3l ), null );
+		assertTrue( new LAPJV( cm, workspace ).process() );
+
+		final double[] cc = new double[] { 1., 2. };
+		final int[] kk = new int[] { 1, 0 };
+		final int[] number = new int[] { 1, 1 };
+		final LAPJV small = new LAPJV( new SparseCostMatrix( cc, kk, number, 2 ), workspace );
+		assertTrue( small.process() );
+		assertFalse( small.isWarmStarted() );
+		assertArrayEquals( new int[] { 1, 0 }, small.getResult() );
+	}
+
+	/**
+	 * Generates a square sparse cost matrix with a feasible diagonal. The
+	 * structure only depends on <code>ran</code>. If <code>noise</code> is not
+	 * <code>null</code>, it is used to perturb the costs by a few percents.
+	 */
+	private static SparseCostMatrix randomMatrix( final Random ran, final Random noise )
+	{
+		final int perRow = 10;
+		final double[] cc = new double[ N * perRow ];
+		final int[] kk = new int[ N * perRow ];
+		final int[] number = new int[ N ];
+		int index = 0;
+		for ( int i = 0; i < N; i++ )
+		{
+			final boolean[] taken = new boolean[ N ];
+			taken[ i ] = true;
+			for ( int k = 1; k < perRow; k++ )
+				taken[ ran.nextInt( N ) ] = true;
+
+			for ( int j = 0; j < N; j++ )
+			{
+				if ( !taken[ j ] )
+					continue;
+				double cost = 1. + 100. * ran.nextDouble();
+				if ( null != noise )
+					cost *= 1. + 0.05 * noise.nextDouble();
+				kk[ index ] = j;
+				cc[ index ] = cost;
+				index++;
+				number[ i ]++;
+			}
+		}
+		final double[] ccs = new double[ index ];
+		final int[] kks = new int[ index ];
+		System.arraycopy( cc, 0, ccs, 0, index );
+		System.arraycopy( kk, 0, kks, 0, index );
+		return new SparseCostMatrix( ccs, kks, number, N );
+	}
+
+	private static double totalCost( final SparseCostMatrix cm, final LAPJV solver )
+	{
+		assertTrue( solver.checkInput() );
+		assertTrue( solver.process() );
+		return totalCost( cm, solver.getResult() );
+	}
+
+	private static double totalCost( final SparseCostMatrix cm, final int[] assignment )
+	{
+		double sum = 0.;
+		for ( int i = 0; i < assignment.length; i++ )
+			sum += cm.get( i, assignment[ i ], Double.POSITIVE_INFINITY );
+		return sum;
+	}
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.sparselap.linker;
+
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_ALTERNATIVE_LINKING_COST_FACTOR;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_FEATURE_PENALTIES;
+import static fiji.plugin.trackmate.tracking.TrackerKeys.KEY_LINKING_MAX_DISTANCE;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.tracking.sparselap.SparseLAPFrameToFrameTracker;
+import net.imglib2.util.Util;
+
+/**
+ * Compares the time taken by the {@link SparseLAPFrameToFrameTracker} to
+ * re-track the same spots with several values of the alternative cost factor,
+ * with and without reusing the LAP solver workspaces between runs.
+ */
+public class LAPJVWarmStartBenchmark
+{
+
+	public static void main( final String[] args )
+	{
+		final int N_SPOTS = 3000;
+		final int N_FRAMES = 20;
+		final int N_TESTS = 5;
+		final double[] factors = new double[] { 1.05, 1.06, 1.07, 1.08, 1.09, 1.10 };
+
+		// Brownian particles in a 1000 x 1000 field.
+		final Random ran = new Random( 1l );
+		final SpotCollection spots = new SpotCollection();
+		final double[][] pos = new double[ N_SPOTS ][ 2 ];
+		for ( final double[] p : pos )
+		{
+			p[ 0 ] = 1000. * ran.nextDouble();
+			p[ 1 ] = 1000. * ran.nextDouble();
+		}
+		for ( int t = 0; t < N_FRAMES; t++ )
+		{
+			for ( final double[] p : pos )
+			{
+				p[ 0 ] += 2. * ran.nextGaussian();
+				p[ 1 ] += 2. * ran.nextGaussian();
+				spots.add( new Spot( p[ 0 ], p[ 1 ], 0., 1., 1. ), Integer.valueOf( t ) );
+			}
+		}
+		spots.setVisible( true );
+		System.out.println( "Tracking " + spots.getNSpots( true ) + " spots over " + N_FRAMES + " frames." );
+
+		final double[] cold = new double[ N_TESTS ];
+		final double[] warm = new double[ N_TESTS ];
+		for ( int i = 0; i < N_TESTS; i++ )
+		{
+			cold[ i ] = track( spots, factors, null );
+			warm[ i ] = track( spots, factors, new HashMap<>() );
+		}
+		System.out.println( String.format( "Median over %d tests, cold start: %.3f s", N_TESTS, Util.median( cold ) ) );
+		System.out.println( String.format( "Median over %d tests, warm start: %.3f s", N_TESTS, Util.median( warm ) ) );
+	}
+
+	private static double track( final SpotCollection spots, final double[] factors, final Map< Integer, LAPJV.Workspace > workspaces )
+	{
+		final long start = System.currentTimeMillis();
+		for ( final double factor : factors )
+		{
+			final Map< String, Object > settings = new HashMap<>();
+			settings.put( KEY_LINKING_MAX_DISTANCE, Double.valueOf( 10. ) );
+			settings.put( KEY_ALTERNATIVE_LINKING_COST_FACTOR, Double.valueOf( factor ) );
+			settings.put( KEY_LINKING_FEATURE_PENALTIES, new HashMap< String, Double >() );
+
+			final SparseLAPFrameToFrameTracker tracker = new SparseLAPFrameToFrameTracker( spots, settings );
+			tracker.setNumThreads( 1 );
+			tracker.setWorkspaces( workspaces );
+			if ( !tracker.checkInput() || !tracker.process() )
+			{
+				System.err.println( tracker.getErrorMessage() );
+				return Double.NaN;
+			}
+		}
+		final long end = System.currentTimeMillis();
+		return ( end - start ) / 1000.;
+	}
+}
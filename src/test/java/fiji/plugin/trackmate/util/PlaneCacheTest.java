@@ -0,0 +1,332 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.LazyCellImg;
+
+public class PlaneCacheTest
+{
+
+	private static final int WIDTH = 4;
+
+	private static final int HEIGHT = 3;
+
+	private static final int PLANE_BYTES = WIDTH * HEIGHT;
+
+	@Test
+	public void testLeastRecentlyUsedEviction()
+	{
+		final CountingStack stack = new CountingStack( 10 );
+		final PlaneCache cache = new PlaneCache( image( stack, 1, 10 ), 3 * PLANE_BYTES );
+
+		// Fill the cache.
+		for ( int t = 0; t < 3; t++ )
+			assertEquals( t, load( cache, t ) );
+		assertEquals( 3, cache.getReadCount() );
+		assertEquals( 0, cache.getHitCount() );
+
+		// Use 0 again: 1 becomes the least recently used.
+		assertEquals( 0, load( cache, 0 ) );
+		assertEquals( 3, cache.getReadCount() );
+		assertEquals( 1, cache.getHitCount() );
+
+		// Reading 3 evicts 1.
+		assertEquals( 3, load( cache, 3 ) );
+		assertEquals( 4, cache.getReadCount() );
+		assertEquals( 0, load( cache, 0 ) );
+		assertEquals( 2, load( cache, 2 ) );
+		assertEquals( 3, load( cache, 3 ) );
+		assertEquals( 4, cache.getReadCount() );
+		assertEquals( 4, cache.getHitCount() );
+
+		// 1 must be read again, and evicts 0.
+		assertEquals( 1, load( cache, 1 ) );
+		assertEquals( 5, cache.getReadCount() );
+		assertEquals( 0, load( cache, 0 ) );
+		assertEquals( 6, cache.getReadCount() );
+		assertEquals( 6, stack.reads.get() );
+	}
+
+	@Test
+	public void testBudgetSmallerThanOnePlane()
+	{
+		final CountingStack stack = new CountingStack( 4 );
+		final PlaneCache cache = new PlaneCache( image( stack, 1, 4 ), PLANE_BYTES / 2 );
+
+		// The last plane read is kept.
+		assertEquals( 2, load( cache, 2 ) );
+		assertEquals( 2, load( cache, 2 ) );
+		assertEquals( 1, cache.getReadCount() );
+		assertEquals( 1, cache.getHitCount() );
+		assertEquals( 3, load( cache, 3 ) );
+		assertEquals( 2, load( cache, 2 ) );
+		assertEquals( 3, cache.getReadCount() );
+	}
+
+	@Test
+	public void testConcurrentLoadsReadOnce() throws Exception
+	{
+		final CountingStack stack = new CountingStack( 10 );
+		final PlaneCache cache = new PlaneCache( image( stack, 1, 10 ), 10 * PLANE_BYTES );
+		stack.block( 5 );
+
+		final AtomicReference< Cell< ? > > cell1 = new AtomicReference<>();
+		final AtomicReference< Cell< ? > > cell2 = new AtomicReference<>();
+		final Thread t1 = new Thread( () -> cell1.set( cell( cache, 5 ) ) );
+		final Thread t2 = new Thread( () -> cell2.set( cell( cache, 5 ) ) );
+		t1.start();
+		assertTrue( stack.entered.await( 10, TimeUnit.SECONDS ) );
+
+		// The second thread waits for the read of the first one.
+		t2.start();
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ( t2.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline )
+			Thread.sleep( 1 );
+		assertEquals( Thread.State.WAITING, t2.getState() );
+
+		stack.release.countDown();
+		t1.join( 10000 );
+		t2.join( 10000 );
+		assertSame( cell1.get(), cell2.get() );
+		assertEquals( 5, value( cell1.get() ) );
+		assertEquals( 1, stack.reads.get() );
+		assertEquals( 1, cache.getReadCount() );
+	}
+
+	@Test
+	public void testEvictCancelsPrefetch() throws Exception
+	{
+		// 3 slices per frame.
+		final CountingStack stack = new CountingStack( 30 );
+		final PlaneCache cache = new PlaneCache( image( stack, 3, 10 ), 30 * PLANE_BYTES );
+
+		// Frame 7 starts at plane 21, and its first plane blocks.
+		stack.block( 21 );
+		cache.prefetch( 7 );
+		assertTrue( stack.entered.await( 10, TimeUnit.SECONDS ) );
+		cache.evict( 7 );
+		stack.release.countDown();
+
+		// Frame 8 is read by the same thread, once frame 7 is done with.
+		cache.prefetch( 8 );
+		final long deadline = System.currentTimeMillis() + 10000;
+		while ( stack.reads.get() < 4 && System.currentTimeMillis() < deadline )
+			Thread.sleep( 1 );
+		assertEquals( 4, stack.reads.get() );
+		assertEquals( 1, stack.readsOf( 21, 24 ) );
+		assertEquals( 3, stack.readsOf( 24, 27 ) );
+
+		// Frame 8 comes from the cache.
+		for ( int t = 0; t < 3; t++ )
+			assertEquals( 24 + t, value( cell( cache, 8 * 3 + t ) ) );
+		assertEquals( 4, cache.getReadCount() );
+		assertEquals( 3, cache.getHitCount() );
+
+		// The plane of frame 7 read before the eviction was not kept.
+		assertEquals( 21, load( cache, 21 ) );
+		assertEquals( 5, cache.getReadCount() );
+		assertEquals( 3, cache.getHitCount() );
+		cache.clear();
+	}
+
+	@Test
+	public void testClearStopsPrefetcher() throws Exception
+	{
+		final CountingStack stack = new CountingStack( 30 );
+		final PlaneCache cache = new PlaneCache( image( stack, 3, 10 ), 30 * PLANE_BYTES );
+
+		stack.block( 6 );
+		cache.prefetch( 2 );
+		assertTrue( stack.entered.await( 10, TimeUnit.SECONDS ) );
+		final Thread prefetcher = stack.blockedThread;
+		assertEquals( "TrackMate-plane-prefetcher", prefetcher.getName() );
+		cache.clear();
+
+		// The blocked read is interrupted and the thread terminates.
+		prefetcher.join( 10000 );
+		assertFalse( prefetcher.isAlive() );
+		assertEquals( 1, stack.reads.get() );
+
+		// The plane being read was not kept, and the cache is still usable.
+		assertEquals( 6, load( cache, 6 ) );
+		assertEquals( 2, stack.reads.get() );
+		assertEquals( 6, load( cache, 6 ) );
+		assertEquals( 2, stack.reads.get() );
+		assertEquals( 1, cache.getHitCount() );
+	}
+
+	/*
+	 * UTILS
+	 */
+
+	private static ImagePlus image( final CountingStack stack, final int nSlices, final int nFrames )
+	{
+		final ImagePlus imp = new ImagePlus( "test", stack );
+		imp.setDimensions( 1, nSlices, nFrames );
+		return imp;
+	}
+
+	/**
+	 * Returns the plane with the specified index, over Z then T.
+	 */
+	@SuppressWarnings( { "rawtypes", "unchecked" } )
+	private static Cell< ? > cell( final PlaneCache cache, final long index )
+	{
+		final LazyCellImg img = ( LazyCellImg ) cache.getImgPlus().getImg();
+		final RandomAccess< Cell< ? > > ra = img.getCells().randomAccess();
+		final long[] position = new long[ img.numDimensions() ];
+		ra.setPosition( position );
+		// Cells are laid out over the Z and T dimensions, planes are 1 cell.
+		long rest = index;
+		for ( int d = 2; d < position.length; d++ )
+		{
+			position[ d ] = rest % img.dimension( d );
+			rest /= img.dimension( d );
+		}
+		ra.setPosition( position );
+		return ra.get();
+	}
+
+	/**
+	 * Returns the value of the pixels of the plane with the specified index.
+	 */
+	private static int load( final PlaneCache cache, final long index )
+	{
+		return value( cell( cache, index ) );
+	}
+
+	private static int value( final Cell< ? > cell )
+	{
+		return ( ( ByteArray ) cell.getData() ).getCurrentStorageArray()[ 0 ] & 0xff;
+	}
+
+	/**
+	 * A virtual stack of 8-bit planes whose pixels are all equal to the
+	 * 0-based plane index. It counts the planes read, and can block on the
+	 * first read of one plane until released.
+	 */
+	private static final class CountingStack extends VirtualStack
+	{
+
+		private final int size;
+
+		private final AtomicInteger reads = new AtomicInteger();
+
+		private final int[] readsPerPlane;
+
+		private volatile int blocked = -1;
+
+		private volatile Thread blockedThread;
+
+		private final CountDownLatch entered = new CountDownLatch( 1 );
+
+		private final CountDownLatch release = new CountDownLatch( 1 );
+
+		public CountingStack( final int size )
+		{
+			super( WIDTH, HEIGHT, null, null );
+			this.size = size;
+			this.readsPerPlane = new int[ size ];
+		}
+
+		private void block( final int plane )
+		{
+			blocked = plane;
+		}
+
+		private int readsOf( final int from, final int to )
+		{
+			int n = 0;
+			for ( int i = from; i < to; i++ )
+				n += readsPerPlane[ i ];
+			return n;
+		}
+
+		@Override
+		public Object getPixels( final int n )
+		{
+			if ( n - 1 == blocked )
+			{
+				// Block the first read only.
+				blocked = -1;
+				blockedThread = Thread.currentThread();
+				entered.countDown();
+				try
+				{
+					release.await();
+				}
+				catch ( final InterruptedException e )
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+			reads.incrementAndGet();
+			readsPerPlane[ n - 1 ]++;
+			return pixels( n );
+		}
+
+		@Override
+		public ImageProcessor getProcessor( final int n )
+		{
+			return new ByteProcessor( WIDTH, HEIGHT, pixels( n ) );
+		}
+
+		@Override
+		public int getSize()
+		{
+			return size;
+		}
+
+		@Override
+		public String getSliceLabel( final int n )
+		{
+			return null;
+		}
+
+		private static byte[] pixels( final int n )
+		{
+			final byte[] pixels = new byte[ PLANE_BYTES ];
+			Arrays.fill( pixels, ( byte ) ( n - 1 ) );
+			return pixels;
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.util.ProfilingReport.Entry;
+import fiji.plugin.trackmate.util.ProfilingReport.Measurement;
+
+public class ProfilingReportTest
+{
+
+	@Test
+	public void testStageBeforeItsComponents()
+	{
+		final ProfilingReport report = new ProfilingReport();
+		assertTrue( report.isEmpty() );
+
+		final Measurement measurement = report.start( "Spot features", null, 2 );
+		report.add( "Spot features", "ANALYZER_A", 3000000l, 100, "spots" );
+		report.add( "Spot features", "ANALYZER_B", 1000000l, 100, "spots" );
+		// Burn some CPU in this thread.
+		double sum = 0.;
+		for ( int i = 0; i < 1000000; i++ )
+			sum += Math.sqrt( i );
+		assertTrue( sum > 0. );
+		measurement.stop( 100, "spots" );
+
+		final List< Entry > entries = report.getEntries();
+		assertEquals( 3, entries.size() );
+		assertTrue( entries.get( 0 ).isStage() );
+		assertEquals( "Spot features", entries.get( 0 ).getStage() );
+		assertEquals( 100, entries.get( 0 ).getItems() );
+		assertTrue( entries.get( 0 ).getWallTime() > 0 );
+		final double utilization = entries.get( 0 ).getThreadUtilization();
+		assertTrue( Double.isNaN( utilization ) || ( utilization >= 0. && utilization <= 1. ) );
+
+		assertFalse( entries.get( 1 ).isStage() );
+		assertEquals( "ANALYZER_A", entries.get( 1 ).getComponent() );
+		assertEquals( 3000000l, entries.get( 1 ).getWallTime() );
+		assertEquals( -1l, entries.get( 1 ).getCpuTime() );
+		assertEquals( "ANALYZER_B", entries.get( 2 ).getComponent() );
+
+		final String str = report.toString();
+		assertTrue( str.contains( "Spot features - ANALYZER_A" ) );
+
+		report.clear();
+		assertTrue( report.isEmpty() );
+	}
+
+	@Test
+	public void testCpuTimeOfSharedWorkersOnly() throws Exception
+	{
+		final ProfilingReport report = new ProfilingReport();
+
+		// CPU burnt by another thread is not accounted for.
+		final long[] otherCpuTime = new long[ 1 ];
+		final Measurement other = report.start( "Other thread", null, 1 );
+		final Thread thread = new Thread( () -> otherCpuTime[ 0 ] = burn() );
+		thread.start();
+		thread.join();
+		final Entry otherEntry = other.stop( -1, null );
+		assumeTrue( otherEntry.getCpuTime() >= 0 );
+		assertTrue( otherEntry.getCpuTime() < otherCpuTime[ 0 ] / 2 );
+
+		// CPU burnt by the workers of the shared executor is.
+		final List< Callable< Long > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 4; i++ )
+			tasks.add( ProfilingReportTest::burn );
+		final Measurement shared = report.start( "Shared executor", null, 4 );
+		long workersCpuTime = 0l;
+		for ( final Long time : TMExecutors.invokeAll( tasks, 4 ) )
+			workersCpuTime += time.longValue();
+		final Entry sharedEntry = shared.stop( -1, null );
+		assertTrue( sharedEntry.getCpuTime() >= workersCpuTime / 2 );
+	}
+
+	/**
+	 * Burns some CPU and returns the CPU time used by the current thread.
+	 */
+	private static long burn()
+	{
+		final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		final long start = bean.getCurrentThreadCpuTime();
+		double sum = 0.;
+		for ( int i = 0; i < 20000000; i++ )
+			sum += Math.sqrt( i );
+		assertTrue( sum > 0. );
+		return bean.getCurrentThreadCpuTime() - start;
+	}
+}
@@ -0,0 +1,143 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TMExecutorsTest
+{
+
+	@Test
+	public void testResultsInOrder() throws InterruptedException, ExecutionException
+	{
+		final List< Callable< Integer > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 100; i++ )
+		{
+			final int val = i;
+			tasks.add( () -> Integer.valueOf( val * val ) );
+		}
+		for ( final int numThreads : new int[] { 1, 4 } )
+		{
+			final List< Integer > results = TMExecutors.invokeAll( tasks, numThreads );
+			assertEquals( tasks.size(), results.size() );
+			for ( int i = 0; i < results.size(); i++ )
+				assertEquals( i * i, results.get( i ).intValue() );
+		}
+	}
+
+	@Test
+	public void testBoundedConcurrency() throws InterruptedException, ExecutionException
+	{
+		final int numThreads = 2;
+		final AtomicInteger running = new AtomicInteger( 0 );
+		final AtomicInteger maxRunning = new AtomicInteger( 0 );
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 20; i++ )
+		{
+			tasks.add( () -> {
+				final int n = running.incrementAndGet();
+				maxRunning.accumulateAndGet( n, Math::max );
+				Thread.sleep( 5 );
+				running.decrementAndGet();
+				return null;
+			} );
+		}
+		TMExecutors.invokeAll( tasks, numThreads );
+		assertTrue( "Too many tasks ran concurrently: " + maxRunning.get(), maxRunning.get() <= numThreads );
+	}
+
+	@Test
+	public void testNestedDoesNotDeadlock() throws InterruptedException, ExecutionException
+	{
+		final AtomicInteger count = new AtomicInteger( 0 );
+		final List< Callable< Void > > outer = new ArrayList<>();
+		for ( int i = 0; i < 8; i++ )
+		{
+			outer.add( () -> {
+				final List< Callable< Void > > inner = new ArrayList<>();
+				for ( int j = 0; j < 8; j++ )
+					inner.add( () -> {
+						count.incrementAndGet();
+						return null;
+					} );
+				TMExecutors.invokeAll( inner, 4 );
+				return null;
+			} );
+		}
+		TMExecutors.invokeAll( outer, 4 );
+		assertEquals( 64, count.get() );
+	}
+
+	@Test
+	public void testExecutorIsShared() throws InterruptedException, ExecutionException
+	{
+		final ForkJoinPool executor = TMExecutors.getExecutor();
+		final List< Callable< Integer > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 4; i++ )
+		{
+			final int val = i;
+			tasks.add( () -> val );
+		}
+		TMExecutors.invokeAll( tasks, 1 );
+		TMExecutors.invokeAll( tasks, 4 );
+		assertSame( executor, TMExecutors.getExecutor() );
+		assertFalse( executor.isShutdown() );
+		assertEquals( Runtime.getRuntime().availableProcessors(), TMExecutors.getParallelism() );
+	}
+
+	@Test
+	public void testException() throws InterruptedException
+	{
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 10; i++ )
+		{
+			final int val = i;
+			tasks.add( () -> {
+				if ( val == 5 )
+					throw new IllegalStateException( "Task " + val );
+				return null;
+			} );
+		}
+		try
+		{
+			TMExecutors.invokeAll( tasks, 3 );
+			fail( "An ExecutionException should have been thrown." );
+		}
+		catch ( final ExecutionException e )
+		{
+			// Expected.
+		}
+	}
+}
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+public class EdgeIndexTest
+{
+
+	private static final int N_FRAMES = 10;
+
+	private static final int N_SPOTS_PER_FRAME = 200;
+
+	private static final double[] CALIBRATION = new double[] { 0.5, 0.5, 1. };
+
+	@Test
+	public void testQueries()
+	{
+		final Random ran = new Random( 1l );
+		final Model model = createModel( ran );
+		final EdgeIndex index = new EdgeIndex( model, CALIBRATION );
+		index.update();
+		assertMatches( model, index, ran );
+	}
+
+	@Test
+	public void testUpdates()
+	{
+		final Random ran = new Random( 2l );
+		final Model model = createModel( ran );
+		final EdgeIndex index = new EdgeIndex( model, CALIBRATION );
+		model.addModelChangeListener( e -> index.modelChanged( e ) );
+		index.update();
+
+		for ( int round = 0; round < 10; round++ )
+		{
+			final List< Spot > spots = new ArrayList<>( model.getTrackModel().vertexSet() );
+			final List< DefaultWeightedEdge > edges = new ArrayList<>( model.getTrackModel().edgeSet() );
+			model.beginUpdate();
+			try
+			{
+				for ( int i = 0; i < 20; i++ )
+					model.removeEdge( edges.get( ran.nextInt( edges.size() ) ) );
+				for ( int i = 0; i < 20; i++ )
+				{
+					final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+					spot.putFeature( Spot.POSITION_X, 500. * ran.nextDouble() );
+					spot.putFeature( Spot.POSITION_Y, 500. * ran.nextDouble() );
+					model.updateFeatures( spot );
+				}
+				for ( int i = 0; i < 20; i++ )
+				{
+					final Spot source = spots.get( ran.nextInt( spots.size() ) );
+					final Spot target = spots.get( ran.nextInt( spots.size() ) );
+					if ( source.getFeature( Spot.FRAME ).intValue() + 1 == target.getFeature( Spot.FRAME ).intValue()
+							&& !model.getTrackModel().containsEdge( source, target ) )
+						model.addEdge( source, target, 1. );
+				}
+			}
+			finally
+			{
+				model.endUpdate();
+			}
+			index.update();
+			assertMatches( model, index, ran );
+		}
+	}
+
+	private static Model createModel( final Random ran )
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			List< Spot > previous = new ArrayList<>();
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final List< Spot > current = new ArrayList<>();
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+				{
+					final Spot spot = new Spot( 500. * ran.nextDouble(), 500. * ran.nextDouble(), 10. * ran.nextDouble(), 1., -1. );
+					model.addSpotTo( spot, t );
+					current.add( spot );
+				}
+				for ( int i = 0; i < previous.size(); i++ )
+					if ( ran.nextInt( 10 ) > 0 )
+						model.addEdge( previous.get( i ), current.get( ran.nextInt( current.size() ) ), 1. );
+				previous = current;
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	/**
+	 * Checks that the index visits, once, each live edge whose bounding box
+	 * intersects random rectangles, and only edges of the queried frame.
+	 */
+	private static void assertMatches( final Model model, final EdgeIndex index, final Random ran )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		for ( int q = 0; q < 50; q++ )
+		{
+			final double minx = 1000. * ran.nextDouble() - 100.;
+			final double miny = 1000. * ran.nextDouble() - 100.;
+			final double maxx = minx + 300. * ran.nextDouble();
+			final double maxy = miny + 300. * ran.nextDouble();
+			for ( int t = 0; t < N_FRAMES; t++ )
+			{
+				final EdgeIndex.Frame frame = index.frame( t );
+				final List< DefaultWeightedEdge > visited = new ArrayList<>();
+				frame.forEach( minx, miny, maxx, maxy, i -> visited.add( frame.edges[ i ] ) );
+				final Set< DefaultWeightedEdge > unique = new HashSet<>( visited );
+				assertEquals( "Edges visited more than once.", unique.size(), visited.size() );
+
+				final Set< DefaultWeightedEdge > live = new HashSet<>();
+				for ( int i = 0; i < frame.size(); i++ )
+				{
+					final DefaultWeightedEdge edge = frame.edges[ i ];
+					if ( !trackModel.edgeSet().contains( edge ) )
+						continue;
+					live.add( edge );
+					final Spot source = trackModel.getEdgeSource( edge );
+					final Spot target = trackModel.getEdgeTarget( edge );
+					assertEquals( t, source.getFeature( Spot.FRAME ).intValue() );
+					assertEquals( source.getFeature( Spot.POSITION_X ) / CALIBRATION[ 0 ] + 0.5f, frame.coords[ 6 * i ], 1e-9 );
+					assertEquals( target.getFeature( Spot.POSITION_Y ) / CALIBRATION[ 1 ] + 0.5f, frame.coords[ 6 * i + 3 ], 1e-9 );
+
+					final double x0 = Math.min( frame.coords[ 6 * i ], frame.coords[ 6 * i + 2 ] );
+					final double x1 = Math.max( frame.coords[ 6 * i ], frame.coords[ 6 * i + 2 ] );
+					final double y0 = Math.min( frame.coords[ 6 * i + 1 ], frame.coords[ 6 * i + 3 ] );
+					final double y1 = Math.max( frame.coords[ 6 * i + 1 ], frame.coords[ 6 * i + 3 ] );
+					if ( x1 >= minx && x0 <= maxx && y1 >= miny && y0 <= maxy )
+						assertTrue( "Edge intersecting the clip not visited.", unique.contains( edge ) );
+				}
+
+				// All the live edges of the frame are in the index.
+				int expected = 0;
+				for ( final DefaultWeightedEdge edge : trackModel.edgeSet() )
+					if ( trackModel.getEdgeSource( edge ).getFeature( Spot.FRAME ).intValue() == t )
+						expected++;
+				assertEquals( expected, live.size() );
+			}
+		}
+	}
+}
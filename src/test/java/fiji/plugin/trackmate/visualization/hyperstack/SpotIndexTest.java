@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class SpotIndexTest
+{
+
+	private static final int N_FRAMES = 5;
+
+	private static final int N_SPOTS_PER_FRAME = 1000;
+
+	private static final double[] CALIBRATION = new double[] { 0.5, 0.25, 1. };
+
+	@Test
+	public void testQueriesAndUpdates()
+	{
+		final Random ran = new Random( 1l );
+		final Model model = new Model();
+		final List< Spot > spots = new ArrayList<>();
+		model.beginUpdate();
+		try
+		{
+			for ( int t = 0; t < N_FRAMES; t++ )
+				for ( int i = 0; i < N_SPOTS_PER_FRAME; i++ )
+					spots.add( model.addSpotTo( new Spot( 500. * ran.nextDouble(), 500. * ran.nextDouble(), 0., 1. + ran.nextDouble(), -1. ), t ) );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final SpotIndex index = new SpotIndex( model, CALIBRATION );
+		model.addModelChangeListener( e -> index.modelChanged( e ) );
+		assertMatches( model, index, ran );
+
+		// Move and remove spots.
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < 100; i++ )
+			{
+				final Spot spot = spots.get( ran.nextInt( spots.size() ) );
+				spot.putFeature( Spot.POSITION_X, 500. * ran.nextDouble() );
+				model.updateFeatures( spot );
+			}
+			for ( int i = 0; i < 100; i++ )
+				model.removeSpot( spots.remove( ran.nextInt( spots.size() ) ) );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		assertMatches( model, index, ran );
+	}
+
+	/**
+	 * Checks that the index visits, once, each visible spot whose center is
+	 * in random rectangles.
+	 */
+	private static void assertMatches( final Model model, final SpotIndex index, final Random ran )
+	{
+		for ( int t = 0; t < N_FRAMES; t++ )
+		{
+			final SpotIndex.Frame frame = index.frame( t );
+			assertEquals( model.getSpots().getNSpots( t, true ), frame.size() );
+			for ( int q = 0; q < 50; q++ )
+			{
+				final double minx = 1200. * ran.nextDouble() - 100.;
+				final double miny = 2200. * ran.nextDouble() - 100.;
+				final double maxx = minx + 300. * ran.nextDouble();
+				final double maxy = miny + 300. * ran.nextDouble();
+
+				final Set< Spot > visited = new HashSet<>();
+				frame.forEach( minx, miny, maxx, maxy, i -> {
+					final double xp = frame.xy[ 2 * i ];
+					final double yp = frame.xy[ 2 * i + 1 ];
+					if ( xp >= minx && xp <= maxx && yp >= miny && yp <= maxy )
+						assertEquals( true, visited.add( frame.spots[ i ] ) );
+				} );
+
+				final Set< Spot > expected = new HashSet<>();
+				for ( final Spot spot : model.getSpots().iterable( t, true ) )
+				{
+					final double xp = spot.getFeature( Spot.POSITION_X ) / CALIBRATION[ 0 ] + 0.5f;
+					final double yp = spot.getFeature( Spot.POSITION_Y ) / CALIBRATION[ 1 ] + 0.5f;
+					if ( xp >= minx && xp <= maxx && yp >= miny && yp <= maxy )
+						expected.add( spot );
+				}
+				assertEquals( expected, visited );
+			}
+		}
+	}
+}
@@ -0,0 +1,193 @@
+/*-
+ * #%L
+ * Fiji distribution of ImageJ for the life sciences.
+ * %%
+ * Copyright (C) 2010 - 2022 Fiji developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackDisplayMode;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.ImageCanvas;
+import ij.gui.Roi;
+
+/**
+ * Checks that the overlays paint a spot moved without a model change event,
+ * as the spot edit tool does when moving a spot with the space key held, at
+ * its new location.
+ */
+public class SpotMovedTest
+{
+
+	private static final int WIDTH = 100;
+
+	private static final int HEIGHT = 100;
+
+	@Test
+	public void testSpotOverlay()
+	{
+		final Model model = new Model();
+		final Spot spot = new Spot( 300., 50., 0., 5., -1. );
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( spot, 0 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		// Outside of the painted area.
+		final ImagePlus imp = createImage();
+		final SpotOverlay overlay = new SpotOverlay( model, imp, createDisplaySettings() )
+		{
+			private static final long serialVersionUID = 1L;
+			{
+				ic = createCanvas( imp );
+			}
+		};
+		assertFalse( isPainted( paint( overlay ), 40, 40, 62, 62 ) );
+
+		// Moved in the painted area.
+		move( spot, 50., 50. );
+		overlay.spotMoved( spot );
+		assertTrue( isPainted( paint( overlay ), 40, 40, 62, 62 ) );
+	}
+
+	@Test
+	public void testTrackOverlay()
+	{
+		final Model model = new Model();
+		final Spot source = new Spot( 20., 20., 0., 1., -1. );
+		final Spot target = new Spot( 30., 20., 0., 1., -1. );
+		model.beginUpdate();
+		try
+		{
+			model.addSpotTo( source, 0 );
+			model.addSpotTo( target, 1 );
+			model.addEdge( source, target, 1. );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+
+		final ImagePlus imp = createImage();
+		final TrackOverlay overlay = new TrackOverlay( model, imp, createDisplaySettings() )
+		{
+			private static final long serialVersionUID = 1L;
+			{
+				ic = createCanvas( imp );
+			}
+		};
+		BufferedImage painted = paint( overlay );
+		assertTrue( isPainted( painted, 24, 20, 28, 22 ) );
+		assertFalse( isPainted( painted, 49, 49, 53, 53 ) );
+
+		// The edge now goes through the middle of the image.
+		move( target, 80., 80. );
+		overlay.spotMoved( target );
+		painted = paint( overlay );
+		assertFalse( isPainted( painted, 24, 20, 28, 22 ) );
+		assertTrue( isPainted( painted, 49, 49, 53, 53 ) );
+	}
+
+	private static void move( final Spot spot, final double x, final double y )
+	{
+		spot.putFeature( Spot.POSITION_X, x );
+		spot.putFeature( Spot.POSITION_Y, y );
+	}
+
+	private static ImagePlus createImage()
+	{
+		final ImagePlus imp = IJ.createHyperStack( "Spot moved", 4 * WIDTH, HEIGHT, 1, 1, 2, 8 );
+		imp.setPosition( 1, 1, 1 );
+		return imp;
+	}
+
+	/**
+	 * Returns a canvas showing the top-left corner of the specified image, at
+	 * magnification 1.
+	 */
+	private static ImageCanvas createCanvas( final ImagePlus imp )
+	{
+		final ImageCanvas canvas = new ImageCanvas( imp );
+		canvas.setSize( WIDTH, HEIGHT );
+		canvas.setSourceRect( new Rectangle( 0, 0, WIDTH, HEIGHT ) );
+		canvas.setMagnification( 1. );
+		return canvas;
+	}
+
+	private static DisplaySettings createDisplaySettings()
+	{
+		final DisplaySettings ds = DisplaySettings.defaultStyle().copy();
+		ds.setSpotColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+		ds.setTrackColorBy( TrackMateObject.DEFAULT, FeatureUtils.USE_UNIFORM_COLOR_KEY );
+		ds.setTrackDisplayMode( TrackDisplayMode.FULL );
+		ds.setSpotShowName( false );
+		ds.setSpotFilled( false );
+		ds.setSpotTransparencyAlpha( 1. );
+		ds.setZDrawingDepthLimited( false );
+		ds.setUseAntialiasing( false );
+		return ds;
+	}
+
+	private static BufferedImage paint( final Roi overlay )
+	{
+		final BufferedImage img = new BufferedImage( WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB );
+		final Graphics2D g = img.createGraphics();
+		try
+		{
+			overlay.drawOverlay( g );
+		}
+		finally
+		{
+			g.dispose();
+		}
+		return img;
+	}
+
+	/**
+	 * Returns <code>true</code> if a pixel was painted in the specified
+	 * rectangle, bounds included.
+	 */
+	private static boolean isPainted( final BufferedImage img, final int x0, final int y0, final int x1, final int y1 )
+	{
+		for ( int y = y0; y <= y1; y++ )
+			for ( int x = x0; x <= x1; x++ )
+				if ( ( img.getRGB( x, y ) >>> 24 ) != 0 )
+					return true;
+		return false;
+	}
+}